@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+import net.micode.notes.ui.AlarmScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提醒的调度：在带有 N 个提醒的数据库上查询最近一个提醒，即 AlarmScheduler.scheduleNext
+ * 经由内容提供者执行的带行数限制的查询；作为对比，查询全部未到期的提醒，
+ * 即改为链式闹钟之前 AlarmInitReceiver 逐个注册闹钟时的查询。
+ * 向 AlarmManager 注册闹钟的开销不在普通 JVM 上测量。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlarmBenchmark {
+    // 与 AlarmScheduler.scheduleNext 的查询相同，内容提供者把 Notes.PARAM_LIMIT 作为 LIMIT
+    private static final String NEXT_ALERT_QUERY = "SELECT " + NoteColumns.ALERTED_DATE
+            + " FROM " + TABLE.NOTE + " WHERE " + AlarmScheduler.NEXT_ALERT_SELECTION
+            + " ORDER BY " + NoteColumns.ALERTED_DATE + " LIMIT 1";
+
+    // 改为链式闹钟之前 AlarmInitReceiver 的查询
+    private static final String ALL_ALERTS_QUERY = "SELECT " + NoteColumns.ID + ","
+            + NoteColumns.ALERTED_DATE + " FROM " + TABLE.NOTE + " WHERE "
+            + NoteColumns.ALERTED_DATE + ">? AND " + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE;
+
+    // 提醒之间的间隔
+    private static final long ALERT_INTERVAL = 60000L;
+
+    @Param({ "10000" })
+    public int reminders;
+
+    private File mFile;
+
+    private Connection mConn;
+
+    private long mNow;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("alarm", ".db");
+        mConn = NotesDb.create(mFile);
+        // 每两篇笔记中有一篇带提醒，其中一成已经过去
+        int notes = reminders * 2;
+        NotesDb.populate(mConn, notes);
+        mNow = System.currentTimeMillis();
+        PreparedStatement st = mConn.prepareStatement("UPDATE " + TABLE.NOTE + " SET "
+                + NoteColumns.ALERTED_DATE + "=?+(" + NoteColumns.ID + "-?)*?/2 WHERE "
+                + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE + " AND " + NoteColumns.ID + "%2=1");
+        try {
+            st.setLong(1, mNow);
+            st.setLong(2, notes / 10);
+            st.setLong(3, ALERT_INTERVAL);
+            st.executeUpdate();
+        } finally {
+            st.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    /**
+     * 链式闹钟：只取最近一个提醒。
+     */
+    @Benchmark
+    public long scheduleNext() throws Exception {
+        Rows rows = NotesDb.query(mConn, NEXT_ALERT_QUERY, mNow);
+        return rows.moveToNext() ? rows.getLong(0) : 0;
+    }
+
+    /**
+     * 逐个注册：读取全部未到期的提醒。
+     */
+    @Benchmark
+    public long scheduleAll() throws Exception {
+        Rows rows = NotesDb.query(mConn, ALL_ALERTS_QUERY, mNow);
+        long last = 0;
+        while (rows.moveToNext()) {
+            last = Math.max(last, rows.getLong(1));
+        }
+        return last;
+    }
+}
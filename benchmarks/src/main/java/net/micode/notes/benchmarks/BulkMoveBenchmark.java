@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.FolderDeltas;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量移动笔记：在 10000 篇笔记的数据库中把 N 篇笔记在两个文件夹之间来回移动，
+ * 每次移动一批，与 DataUtils.batchMoveToFolder 经由 applyBatch 对每篇笔记执行一次更新相同。
+ * <p>
+ * {@link #moveBatched()} 与 NotesProvider 相同：每次更新前按父文件夹统计移出的行数，
+ * 由 {@link FolderDeltas} 累加，提交前每个文件夹写入一次。
+ * {@link #moveByTrigger()} 按改为批量维护之前的方式只执行更新，
+ * 由版本 7 的触发器逐行增减两个文件夹的数量。变化通知的收集两者相同，不计入。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class BulkMoveBenchmark {
+    // 数据库中的笔记数
+    private static final int NOTES = 10000;
+
+    // 与 FolderCounts.addByParent 的查询相同，参数为笔记 ID
+    private static final String COUNT_BY_PARENT = "SELECT " + NoteColumns.PARENT_ID
+            + ",COUNT(*) FROM " + TABLE.NOTE + " WHERE " + NoteColumns.ID + ">0 AND ("
+            + NoteColumns.ID + "=?) GROUP BY " + NoteColumns.PARENT_ID;
+
+    // 与 NotesProvider.increaseNoteVersion 相同
+    private static final String INCREASE_VERSION = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.VERSION + "=" + NoteColumns.VERSION + "+1 WHERE " + NoteColumns.ID
+            + "=?";
+
+    // 与 DataUtils.batchMoveToFolder 的每个更新相同
+    private static final String MOVE_NOTE = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.PARENT_ID + "=?," + NoteColumns.LOCAL_MODIFIED + "=1 WHERE "
+            + NoteColumns.ID + "=?";
+
+    // 与版本 7 的 increase_folder_count_on_update 相同
+    private static final String V7_INCREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER =
+            "CREATE TRIGGER increase_folder_count_on_update AFTER UPDATE OF "
+            + NoteColumns.PARENT_ID + " ON " + TABLE.NOTE + " BEGIN UPDATE " + TABLE.NOTE
+            + " SET " + NoteColumns.NOTES_COUNT + "=" + NoteColumns.NOTES_COUNT + "+1 WHERE "
+            + NoteColumns.ID + "=new." + NoteColumns.PARENT_ID + "; END";
+
+    // 与版本 7 的 decrease_folder_count_on_update 相同
+    private static final String V7_DECREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER =
+            "CREATE TRIGGER decrease_folder_count_on_update AFTER UPDATE OF "
+            + NoteColumns.PARENT_ID + " ON " + TABLE.NOTE + " BEGIN UPDATE " + TABLE.NOTE
+            + " SET " + NoteColumns.NOTES_COUNT + "=" + NoteColumns.NOTES_COUNT + "-1 WHERE "
+            + NoteColumns.ID + "=old." + NoteColumns.PARENT_ID + " AND "
+            + NoteColumns.NOTES_COUNT + ">0; END";
+
+    @Param({ "100", "1000", "5000" })
+    public int moved;
+
+    private File mFile;
+    private Connection mConn;
+
+    private File mV7File;
+    private Connection mV7Conn;
+
+    // 来回移动的两个用户文件夹
+    private long mFolderA;
+    private long mFolderB;
+
+    // 移动的笔记 ID，跳过回收站中的笔记
+    private long[] mIds;
+
+    private int mMoves;
+    private int mV7Moves;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("move", ".db");
+        mConn = NotesDb.create(mFile);
+        int folders = NotesDb.populate(mConn, NOTES);
+        mV7File = File.createTempFile("move-v7", ".db");
+        mV7Conn = NotesDb.create(mV7File);
+        NotesDb.populate(mV7Conn, NOTES);
+        Statement st = mV7Conn.createStatement();
+        try {
+            st.execute(V7_INCREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER);
+            st.execute(V7_DECREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER);
+        } finally {
+            st.close();
+        }
+
+        mFolderA = NOTES + 1;
+        mFolderB = NOTES + Math.min(2, folders);
+        mIds = new long[moved];
+        for (int i = 0, id = 1; i < moved; id++) {
+            if (id % 100 != 0) {
+                mIds[i++] = id;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConn.close();
+        mV7Conn.close();
+        NotesDb.delete(mFile);
+        NotesDb.delete(mV7File);
+    }
+
+    /**
+     * 按父文件夹累加数量变化，提交前每个文件夹执行一条 UPDATE。
+     */
+    @Benchmark
+    public int moveBatched() throws SQLException {
+        long folderId = mMoves++ % 2 == 0 ? mFolderA : mFolderB;
+        FolderDeltas deltas = new FolderDeltas();
+        mConn.setAutoCommit(false);
+        PreparedStatement count = mConn.prepareStatement(COUNT_BY_PARENT);
+        PreparedStatement version = mConn.prepareStatement(INCREASE_VERSION);
+        PreparedStatement move = mConn.prepareStatement(MOVE_NOTE);
+        final PreparedStatement update = mConn.prepareStatement(NotesDb.UPDATE_FOLDER_COUNT);
+        try {
+            for (long id : mIds) {
+                count.setLong(1, id);
+                ResultSet rs = count.executeQuery();
+                try {
+                    int total = 0;
+                    while (rs.next()) {
+                        deltas.add(rs.getLong(1), -rs.getInt(2));
+                        total += rs.getInt(2);
+                    }
+                    deltas.add(folderId, total);
+                } finally {
+                    rs.close();
+                }
+                version.setLong(1, id);
+                version.executeUpdate();
+                move.setLong(1, folderId);
+                move.setLong(2, id);
+                move.executeUpdate();
+            }
+            deltas.apply(new FolderDeltas.Writer<SQLException>() {
+                public void write(long folder, int delta) throws SQLException {
+                    update.setInt(1, delta);
+                    update.setLong(2, folder);
+                    update.executeUpdate();
+                }
+            });
+            mConn.commit();
+            return mIds.length;
+        } finally {
+            count.close();
+            version.close();
+            move.close();
+            update.close();
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 只执行更新，每移动一篇笔记由触发器更新两个文件夹的数量。
+     */
+    @Benchmark
+    public int moveByTrigger() throws SQLException {
+        long folderId = mV7Moves++ % 2 == 0 ? mFolderA : mFolderB;
+        mV7Conn.setAutoCommit(false);
+        PreparedStatement version = mV7Conn.prepareStatement(INCREASE_VERSION);
+        PreparedStatement move = mV7Conn.prepareStatement(MOVE_NOTE);
+        try {
+            for (long id : mIds) {
+                version.setLong(1, id);
+                version.executeUpdate();
+                move.setLong(1, folderId);
+                move.setLong(2, id);
+                move.executeUpdate();
+            }
+            mV7Conn.commit();
+            return mIds.length;
+        } finally {
+            version.close();
+            move.close();
+            mV7Conn.setAutoCommit(true);
+        }
+    }
+}
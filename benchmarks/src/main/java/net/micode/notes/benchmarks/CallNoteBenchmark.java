@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.CallNote;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.Function;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在带有 N 条通话记录的数据库中查找来电对应的笔记。
+ * {@link #lookupByPhoneKey()} 与 DataUtils.getNoteIdByPhoneNumberAndCallDate 相同，
+ * 先按最小匹配键和通话日期走索引，再精确比较号码；{@link #lookupByPhoneNumber()}
+ * 是改为匹配键之前的查询，对每个数据行比较号码；{@link #lookupByNoteId()} 与
+ * DataUtils.getCallNumberByNoteId 相同，按笔记 ID 取号码。
+ * <p>
+ * PHONE_NUMBERS_EQUAL 是 Android 注册的 SQL 函数，这里以比较号码末尾数字的近似实现注册，
+ * 最小匹配键按 PhoneNumberUtils.toCallerIDMinMatch 的规则计算。查询参数与内容提供者相同，都以字符串绑定。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CallNoteBenchmark {
+    // 与 PhoneNumberUtils 的最小匹配位数相同
+    private static final int MIN_MATCH = 7;
+
+    // 数据库中普通笔记的数量
+    private static final int TEXT_NOTES = 5000;
+
+    // 不同号码的个数，同一号码有多条通话记录
+    private static final int PHONE_NUMBERS = 20000;
+
+    // 通话记录之间的间隔
+    private static final long CALL_INTERVAL = 60000L;
+
+    // 与 DataUtils.getNoteIdByPhoneNumberAndCallDate 的查询相同
+    private static final String PHONE_KEY_QUERY = "SELECT " + CallNote.NOTE_ID + " FROM "
+            + TABLE.DATA + " WHERE " + CallNote.PHONE_KEY + "=? AND " + CallNote.CALL_DATE
+            + "=? AND " + CallNote.MIME_TYPE + "=? AND PHONE_NUMBERS_EQUAL("
+            + CallNote.PHONE_NUMBER + ",?)";
+
+    // 改为匹配键之前 DataUtils.getNoteIdByPhoneNumberAndCallDate 的查询
+    private static final String PHONE_NUMBER_QUERY = "SELECT " + CallNote.NOTE_ID + " FROM "
+            + TABLE.DATA + " WHERE " + CallNote.CALL_DATE + "=? AND " + CallNote.MIME_TYPE
+            + "=? AND PHONE_NUMBERS_EQUAL(" + CallNote.PHONE_NUMBER + ",?)";
+
+    // 与 DataUtils.getCallNumberByNoteId 的查询相同
+    private static final String NOTE_ID_QUERY = "SELECT " + CallNote.PHONE_NUMBER + " FROM "
+            + TABLE.DATA + " WHERE " + CallNote.NOTE_ID + "=? AND " + CallNote.MIME_TYPE + "=?";
+
+    @Param({ "100000" })
+    public int calls;
+
+    private File mFile;
+    private Connection mConn;
+
+    // 通话记录笔记的第一个 ID
+    private long mFirstNoteId;
+    private long mStartDate;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("callnote", ".db");
+        mConn = NotesDb.create(mFile);
+        // 其余的普通笔记，通话记录笔记在这些笔记和文件夹之后
+        mFirstNoteId = TEXT_NOTES + NotesDb.populate(mConn, TEXT_NOTES) + 1;
+        mStartDate = System.currentTimeMillis() - calls * CALL_INTERVAL;
+        Function.create(mConn, "PHONE_NUMBERS_EQUAL", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(phoneNumbersEqual(value_text(0), value_text(1)) ? 1 : 0);
+            }
+        });
+        insertCallNotes();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    /**
+     * 按最小匹配键和通话日期查找。
+     */
+    @Benchmark
+    public long lookupByPhoneKey() throws SQLException {
+        int i = mNext++ % calls;
+        String number = phoneNumber(i);
+        Rows rows = NotesDb.query(mConn, PHONE_KEY_QUERY, getPhoneKey(number),
+                String.valueOf(callDate(i)), CallNote.CONTENT_ITEM_TYPE, number);
+        return rows.moveToNext() ? rows.getLong(0) : 0;
+    }
+
+    /**
+     * 只按通话日期和号码比较查找。
+     */
+    @Benchmark
+    public long lookupByPhoneNumber() throws SQLException {
+        int i = mNext++ % calls;
+        String number = phoneNumber(i);
+        Rows rows = NotesDb.query(mConn, PHONE_NUMBER_QUERY, String.valueOf(callDate(i)),
+                CallNote.CONTENT_ITEM_TYPE, number);
+        return rows.moveToNext() ? rows.getLong(0) : 0;
+    }
+
+    /**
+     * 按笔记 ID 取号码。
+     */
+    @Benchmark
+    public String lookupByNoteId() throws SQLException {
+        long noteId = mFirstNoteId + mNext++ % calls;
+        Rows rows = NotesDb.query(mConn, NOTE_ID_QUERY, String.valueOf(noteId),
+                CallNote.CONTENT_ITEM_TYPE);
+        return rows.moveToNext() ? rows.getString(0) : null;
+    }
+
+    /**
+     * 在通话记录文件夹中写入通话记录笔记，与 NotesProvider 插入通话记录数据时一并写入匹配键相同。
+     */
+    private void insertCallNotes() throws SQLException {
+        mConn.setAutoCommit(false);
+        PreparedStatement note = mConn.prepareStatement("INSERT INTO " + TABLE.NOTE + "("
+                + NoteColumns.ID + "," + NoteColumns.PARENT_ID + "," + NoteColumns.TYPE + ","
+                + NoteColumns.CREATED_DATE + "," + NoteColumns.MODIFIED_DATE + ") VALUES(?,"
+                + Notes.ID_CALL_RECORD_FOLDER + "," + Notes.TYPE_NOTE + ",?,?)");
+        PreparedStatement data = mConn.prepareStatement("INSERT INTO " + TABLE.DATA + "("
+                + CallNote.MIME_TYPE + "," + CallNote.NOTE_ID + "," + CallNote.CALL_DATE + ","
+                + CallNote.PHONE_NUMBER + "," + CallNote.PHONE_KEY + ") VALUES('"
+                + CallNote.CONTENT_ITEM_TYPE + "',?,?,?,?)");
+        try {
+            for (int i = 0; i < calls; i++) {
+                long id = mFirstNoteId + i;
+                long date = callDate(i);
+                note.setLong(1, id);
+                note.setLong(2, date);
+                note.setLong(3, date);
+                note.executeUpdate();
+                String number = phoneNumber(i);
+                data.setLong(1, id);
+                data.setLong(2, date);
+                data.setString(3, number);
+                data.setString(4, getPhoneKey(number));
+                data.executeUpdate();
+            }
+            mConn.commit();
+        } finally {
+            note.close();
+            data.close();
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    private long callDate(int i) {
+        return mStartDate + i * CALL_INTERVAL;
+    }
+
+    /**
+     * 第 i 条通话记录的号码，一部分带有国家码和分隔符。
+     */
+    private static String phoneNumber(int i) {
+        int n = i % PHONE_NUMBERS;
+        String local = String.valueOf(13800000000L + n * 7919L % 100000000L);
+        return n % 3 == 0 ? "+86 " + local.substring(0, 3) + "-" + local.substring(3) : local;
+    }
+
+    /**
+     * 与 Contact.getPhoneKey 相同：号码数字部分的最后 7 位，逆序。
+     */
+    private static String getPhoneKey(String phoneNumber) {
+        String digits = digits(phoneNumber);
+        StringBuilder key = new StringBuilder(MIN_MATCH);
+        for (int i = digits.length() - 1; i >= 0 && key.length() < MIN_MATCH; i--) {
+            key.append(digits.charAt(i));
+        }
+        return key.toString();
+    }
+
+    /**
+     * PHONE_NUMBERS_EQUAL 的近似：去掉分隔符后从末尾比较，较短号码的数字全部相同且不少于 7 位。
+     */
+    private static boolean phoneNumbersEqual(String a, String b) {
+        String x = digits(a);
+        String y = digits(b);
+        int length = Math.min(x.length(), y.length());
+        if (length < MIN_MATCH) {
+            return x.equals(y);
+        }
+        return x.regionMatches(x.length() - length, y, y.length() - length, length);
+    }
+
+    private static String digits(String phoneNumber) {
+        StringBuilder sb = new StringBuilder(phoneNumber == null ? 0 : phoneNumber.length());
+        if (phoneNumber != null) {
+            for (int i = 0; i < phoneNumber.length(); i++) {
+                char c = phoneNumber.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.ChildList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务列表子任务的增删、移动和查找，子任务数为一个任务列表中的任务数。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChildListBenchmark {
+    @Param({ "100", "1000", "10000" })
+    public int size;
+
+    private Item[] mItems;
+
+    private ChildList<ChildListBenchmark, Item> mList;
+
+    static class Item implements ChildList.Child<ChildListBenchmark, Item> {
+        private final String mGid;
+
+        Item mPriorSibling;
+
+        Item(String gid) {
+            mGid = gid;
+        }
+
+        public void setPriorSibling(Item priorSibling) {
+            mPriorSibling = priorSibling;
+        }
+
+        public void setParent(ChildListBenchmark parent) {
+        }
+
+        public String getGid() {
+            return mGid;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        mItems = new Item[size];
+        mList = new ChildList<ChildListBenchmark, Item>(this);
+        for (int i = 0; i < size; i++) {
+            mItems[i] = new Item("gid-" + i);
+            mList.add(mItems[i]);
+        }
+    }
+
+    // 初始化时按远端顺序依次追加
+    @Benchmark
+    public ChildList<ChildListBenchmark, Item> appendAll() {
+        ChildList<ChildListBenchmark, Item> list = new ChildList<ChildListBenchmark, Item>(this);
+        for (Item item : mItems) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    // 把最后一个子任务移到最前再移回
+    @Benchmark
+    public boolean moveFirstAndBack() {
+        Item last = mItems[size - 1];
+        return mList.move(last, 0) && mList.move(last, size - 1);
+    }
+
+    // 删除中间的子任务再插回原位
+    @Benchmark
+    public boolean removeAndInsert() {
+        Item middle = mItems[size / 2];
+        return mList.remove(middle) && mList.add(middle, size / 2);
+    }
+
+    @Benchmark
+    public Item findLastByGid() {
+        return mList.findByGid(mItems[size - 1].getGid());
+    }
+}
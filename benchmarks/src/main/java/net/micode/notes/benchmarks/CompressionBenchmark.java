@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 冷数据压缩前后的对比：同样生成的数据库，每 5 篇笔记中有一篇的正文超过压缩阈值，
+ * compressed 为 true 时按 ContentCompressor.compressCold 把全部笔记视为冷数据压缩一遍。
+ * 结束时输出数据库文件在压缩后和 VACUUM 后的大小，以及笔记表和数据表占用的页数。
+ * <p>
+ * {@link #openNote()} 执行 WorkingNote.loadNote 的联合查询并读出正文，压缩的正文与
+ * DecompressingCursor 相同在读取时解压；{@link #openAndList()} 新建一个连接并执行根文件夹的
+ * 列表查询，SQLite 的页缓存为空，相当于打开应用后第一次显示列表。
+ * 压缩和解压与 ContentCompressor 相同，内容提供者和游标窗口本身不在普通 JVM 上测量。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    // 与 ContentCompressor 的 BATCH_ROWS 和 MIN_SAVING 相同
+    private static final int BATCH_ROWS = 100;
+    private static final float MIN_SAVING = 0.1f;
+
+    // 长正文的笔记间隔
+    private static final int LONG_NOTE_INTERVAL = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({ "10000" })
+    public int notes;
+
+    @Param({ "false", "true" })
+    public boolean compressed;
+
+    private File mFile;
+    private Connection mConn;
+
+    private long mCompressedSize;
+    private long mVacuumedSize;
+    private int mCompressedRows;
+
+    private int mNext;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("compression", ".db");
+        mConn = NotesDb.create(mFile);
+        NotesDb.populate(mConn, notes);
+        lengthenContent();
+        if (compressed) {
+            mCompressedRows = compressCold(Long.MAX_VALUE);
+        }
+        mCompressedSize = checkpoint();
+        execute("VACUUM");
+        mVacuumedSize = checkpoint();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        System.out.println();
+        System.out.println("compressed rows " + mCompressedRows + ", file " + mCompressedSize
+                + " bytes, after VACUUM " + mVacuumedSize + " bytes, pages: note "
+                + pages(TABLE.NOTE) + ", data " + pages(TABLE.DATA));
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    /**
+     * 打开一篇长正文的笔记。
+     *
+     * @return 正文的字符数
+     */
+    @Benchmark
+    public int openNote() throws SQLException {
+        long id = (mNext++ % (notes / LONG_NOTE_INTERVAL) + 1) * LONG_NOTE_INTERVAL;
+        Rows rows = NotesDb.query(mConn, NotesDb.NOTE_DATA_QUERY, id);
+        int length = 0;
+        // 正文在联合查询的第 9 列
+        while (rows.moveToNext()) {
+            length += rows.getType(8) == Rows.FIELD_TYPE_BLOB
+                    ? decompress(rows.getBlob(8)).length() : rows.getString(8).length();
+        }
+        return length;
+    }
+
+    /**
+     * 打开数据库并显示根文件夹的列表。
+     *
+     * @return 列表的行数
+     */
+    @Benchmark
+    public int openAndList() throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + mFile.getPath());
+        try {
+            return NotesDb.queryList(conn).getCount();
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * 把每 5 篇笔记中一篇的正文加长到压缩阈值的两到三倍，内容由多段生成的正文拼接而成。
+     */
+    private void lengthenContent() throws SQLException {
+        mConn.setAutoCommit(false);
+        PreparedStatement st = mConn.prepareStatement("UPDATE " + TABLE.DATA + " SET "
+                + DataColumns.CONTENT + "=? WHERE " + DataColumns.NOTE_ID + "=? AND "
+                + DataColumns.MIME_TYPE + "='" + Notes.DataConstants.NOTE + "' AND "
+                + Notes.TextNote.MODE + "=0");
+        try {
+            for (int i = LONG_NOTE_INTERVAL; i <= notes; i += LONG_NOTE_INTERVAL) {
+                int length = NotesDb.COMPRESS_THRESHOLD * (2 + i % 2);
+                StringBuilder sb = new StringBuilder(length + 512);
+                for (int j = i; sb.length() < length; j += 7) {
+                    sb.append(NotesDb.text(j));
+                }
+                st.setString(1, sb.toString());
+                st.setLong(2, i);
+                st.executeUpdate();
+            }
+            mConn.commit();
+        } finally {
+            st.close();
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 与 ContentCompressor.compressCold 相同，每批行在一个事务中写入。
+     *
+     * @return 压缩的行数
+     */
+    private int compressCold(long before) throws SQLException {
+        int count = 0;
+        long lastId = 0;
+        PreparedStatement update = mConn.prepareStatement("UPDATE " + TABLE.DATA + " SET "
+                + DataColumns.CONTENT + "=? WHERE " + DataColumns.ID + "=?");
+        try {
+            while (true) {
+                Rows rows = NotesDb.query(mConn, NotesDb.COLD_CONTENT_QUERY, before, lastId,
+                        BATCH_ROWS);
+                mConn.setAutoCommit(false);
+                while (rows.moveToNext()) {
+                    lastId = rows.getLong(0);
+                    byte[] data = compress(rows.getString(1));
+                    if (data != null) {
+                        update.setBytes(1, data);
+                        update.setLong(2, lastId);
+                        count += update.executeUpdate();
+                    }
+                }
+                mConn.commit();
+                mConn.setAutoCommit(true);
+                if (rows.getCount() < BATCH_ROWS) {
+                    return count;
+                }
+            }
+        } finally {
+            update.close();
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 与 ContentCompressor.compress 相同。
+     */
+    private static byte[] compress(String content) {
+        byte[] input = content.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            int limit = (int) (input.length * (1 - MIN_SAVING));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(limit);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() > limit) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 与 ContentCompressor.decompress 相同。
+     */
+    private static String decompress(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 把 WAL 写回数据库文件。
+     *
+     * @return 数据库文件的大小
+     */
+    private long checkpoint() throws SQLException {
+        execute("PRAGMA wal_checkpoint(TRUNCATE)");
+        return mFile.length();
+    }
+
+    private int pages(String table) throws SQLException {
+        Rows rows = NotesDb.query(mConn, "SELECT COUNT(*) FROM dbstat WHERE name=?", table);
+        return rows.moveToNext() ? rows.getInt(0) : 0;
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement st = mConn.createStatement();
+        try {
+            st.execute(sql);
+        } finally {
+            st.close();
+        }
+    }
+}
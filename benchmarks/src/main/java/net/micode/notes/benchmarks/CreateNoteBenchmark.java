@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每秒新建的笔记数。{@link #createInBatch()} 与 Note.createNote 相同，笔记和正文在一批操作中插入，
+ * 只有一个事务；{@link #createInSteps()} 按改为一批操作之前 WorkingNote.saveNote 的方式，
+ * 先由 Note.getNewNoteId 插入空笔记，再由 syncNote 更新笔记和插入正文，每一步各是一个事务。
+ * 文件夹数量的变化与 FolderCounts 相同，提交前写入。变化通知和 Binder 调用不在普通 JVM 上测量。
+ * 每轮测量结束后删除本轮新建的笔记。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CreateNoteBenchmark {
+    // 与 Note.createNote 插入笔记行相同
+    private static final String INSERT_NOTE = "INSERT INTO " + TABLE.NOTE + "("
+            + NoteColumns.CREATED_DATE + "," + NoteColumns.MODIFIED_DATE + "," + NoteColumns.TYPE
+            + "," + NoteColumns.LOCAL_MODIFIED + "," + NoteColumns.PARENT_ID + ") VALUES(?,?,"
+            + Notes.TYPE_NOTE + ",1," + Notes.ID_ROOT_FOLDER + ")";
+
+    // 插入正文，由触发器更新笔记的摘要
+    private static final String INSERT_DATA = "INSERT INTO " + TABLE.DATA + "("
+            + DataColumns.MIME_TYPE + "," + DataColumns.NOTE_ID + "," + DataColumns.CONTENT + ","
+            + TextNote.MODE + ") VALUES('" + DataConstants.NOTE + "',?,?,0)";
+
+    // 与 NotesProvider.increaseNoteVersion 相同
+    private static final String INCREASE_VERSION = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.VERSION + "=" + NoteColumns.VERSION + "+1 WHERE " + NoteColumns.ID
+            + "=?";
+
+    // syncNote 写入笔记的修改时间和本地修改标记
+    private static final String UPDATE_NOTE = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.MODIFIED_DATE + "=?," + NoteColumns.LOCAL_MODIFIED + "=1 WHERE "
+            + NoteColumns.ID + "=?";
+
+    @Param({ "10000" })
+    public int notes;
+
+    private File mFile;
+    private Connection mConn;
+    private long mMaxId;
+
+    // 本轮测量新建的笔记数
+    private int mInserted;
+
+    private PreparedStatement mInsertNote;
+    private PreparedStatement mInsertData;
+    private PreparedStatement mIncreaseVersion;
+    private PreparedStatement mUpdateNote;
+    private PreparedStatement mUpdateCount;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("create", ".db");
+        mConn = NotesDb.create(mFile);
+        mMaxId = notes + NotesDb.populate(mConn, notes);
+        mInsertNote = mConn.prepareStatement(INSERT_NOTE, Statement.RETURN_GENERATED_KEYS);
+        mInsertData = mConn.prepareStatement(INSERT_DATA);
+        mIncreaseVersion = mConn.prepareStatement(INCREASE_VERSION);
+        mUpdateNote = mConn.prepareStatement(UPDATE_NOTE);
+        mUpdateCount = mConn.prepareStatement(NotesDb.UPDATE_FOLDER_COUNT);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeInserted() throws SQLException {
+        Statement st = mConn.createStatement();
+        try {
+            // 删除笔记时由触发器删除其数据
+            st.executeUpdate("DELETE FROM " + TABLE.NOTE + " WHERE " + NoteColumns.ID + ">"
+                    + mMaxId);
+        } finally {
+            st.close();
+        }
+        updateCount(-mInserted);
+        mInserted = 0;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mInsertNote.close();
+        mInsertData.close();
+        mIncreaseVersion.close();
+        mUpdateNote.close();
+        mUpdateCount.close();
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    /**
+     * 一个事务中插入笔记和正文。
+     */
+    @Benchmark
+    public long createInBatch() throws SQLException {
+        long now = System.currentTimeMillis();
+        mConn.setAutoCommit(false);
+        try {
+            long id = insertNote(now);
+            insertData(id);
+            updateCount(1);
+            mConn.commit();
+            mInserted++;
+            return id;
+        } finally {
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 插入空笔记、更新笔记和插入正文各在一个事务中。
+     */
+    @Benchmark
+    public long createInSteps() throws SQLException {
+        long now = System.currentTimeMillis();
+        long id;
+        mConn.setAutoCommit(false);
+        try {
+            id = insertNote(now);
+            updateCount(1);
+            mConn.commit();
+            mInserted++;
+
+            mIncreaseVersion.setLong(1, id);
+            mIncreaseVersion.executeUpdate();
+            mUpdateNote.setLong(1, now);
+            mUpdateNote.setLong(2, id);
+            mUpdateNote.executeUpdate();
+            mConn.commit();
+
+            insertData(id);
+            mConn.commit();
+            return id;
+        } finally {
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    private long insertNote(long now) throws SQLException {
+        mInsertNote.setLong(1, now);
+        mInsertNote.setLong(2, now);
+        mInsertNote.executeUpdate();
+        ResultSet keys = mInsertNote.getGeneratedKeys();
+        try {
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            keys.close();
+        }
+    }
+
+    private void insertData(long id) throws SQLException {
+        mInsertData.setLong(1, id);
+        mInsertData.setString(2, NotesDb.text((int) id));
+        mInsertData.executeUpdate();
+    }
+
+    private void updateCount(int delta) throws SQLException {
+        mUpdateCount.setInt(1, delta);
+        mUpdateCount.setLong(2, Notes.ID_ROOT_FOLDER);
+        mUpdateCount.executeUpdate();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.core.TextExportWriter;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.sql.Connection;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出文本：执行 BackupUtils.TextExport 的联合查询，由 {@link TextExportWriter}
+ * 逐行写入带缓冲的文件，与应用相同。
+ * <p>
+ * 作为对比，{@link #exportPerNote()} 按改为联合查询之前的方式导出：先查询文件夹，
+ * 每个文件夹查询一次其中的笔记，每篇笔记再查询一次数据，经不带缓冲的 PrintStream 逐行
+ * String.format 写出。结束时输出两种方式各自执行的查询数。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+    // 与 R.array.format_for_exported_note 相同
+    static final String[] FORMATS = { "-%s", "--%s", "--%s", "--%s" };
+
+    // 与 R.string.format_datetime_mdhm 相同
+    private static final String DATE_FORMAT = "MMMd kk:mm";
+
+    // 与 R.string.call_record_folder_name 相同
+    private static final String CALL_RECORD_FOLDER_NAME = "Call notes";
+
+    // 与 BackupUtils.TextExport 相同
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // 改为联合查询之前 BackupUtils.TextExport 的查询
+    private static final String OLD_NOTE_COLUMNS = NoteColumns.ID + ","
+            + NoteColumns.MODIFIED_DATE + "," + NoteColumns.SNIPPET + "," + NoteColumns.TYPE;
+    private static final String OLD_FOLDER_QUERY = "SELECT " + OLD_NOTE_COLUMNS + " FROM "
+            + TABLE.NOTE + " WHERE (" + NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER + " AND "
+            + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER + ") OR " + NoteColumns.ID
+            + "=" + Notes.ID_CALL_RECORD_FOLDER;
+    private static final String OLD_FOLDER_NOTES_QUERY = "SELECT " + OLD_NOTE_COLUMNS
+            + " FROM " + TABLE.NOTE + " WHERE " + NoteColumns.PARENT_ID + "=?";
+    private static final String OLD_ROOT_NOTES_QUERY = "SELECT " + OLD_NOTE_COLUMNS + " FROM "
+            + TABLE.NOTE + " WHERE " + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE + " AND "
+            + NoteColumns.PARENT_ID + "=" + Notes.ID_ROOT_FOLDER;
+    private static final String OLD_DATA_QUERY = "SELECT " + DataColumns.CONTENT + ","
+            + DataColumns.MIME_TYPE + "," + DataColumns.DATA1 + "," + DataColumns.DATA2 + ","
+            + DataColumns.DATA3 + "," + DataColumns.DATA4 + " FROM " + TABLE.DATA + " WHERE "
+            + DataColumns.NOTE_ID + "=?";
+
+    /**
+     * 以 SimpleDateFormat 代替 Android 的 DateFormat 格式化日期，其余与 BackupUtils.TextExport 相同。
+     */
+    static class ExportWriter extends TextExportWriter {
+        private final SimpleDateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT);
+
+        ExportWriter() {
+            super(FORMATS);
+        }
+
+        @Override
+        protected CharSequence formatDate(long millis) {
+            return mDateFormat.format(new Date(millis));
+        }
+
+        @Override
+        protected String getFolderName(long folderId, String snippet) {
+            return folderId == Notes.ID_CALL_RECORD_FOLDER ? CALL_RECORD_FOLDER_NAME : snippet;
+        }
+    }
+
+    @Param({ "1000", "10000" })
+    public int notes;
+
+    private File mFile;
+
+    private File mExportFile;
+
+    private Connection mConn;
+
+    private ExportWriter mWriter;
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT);
+
+    // 最近一次导出执行的查询数
+    private int mJoinQueries;
+    private int mPerNoteQueries;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("export", ".db");
+        mExportFile = File.createTempFile("export", ".txt");
+        mConn = NotesDb.create(mFile);
+        NotesDb.populate(mConn, notes);
+        mWriter = new ExportWriter();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        // 每个基准方法有各自的状态，只输出执行过的导出方式
+        System.out.println();
+        System.out.println(notes + " notes: " + (mJoinQueries > 0 ? mJoinQueries
+                + " queries with the join export" : mPerNoteQueries
+                + " queries with the per-note export"));
+        mConn.close();
+        NotesDb.delete(mFile);
+        mExportFile.delete();
+    }
+
+    /**
+     * 导出全部笔记。
+     *
+     * @return 导出的行数
+     */
+    @Benchmark
+    public int exportToText() throws Exception {
+        Rows rows = NotesDb.query(mConn, NotesDb.EXPORT_QUERY);
+        mJoinQueries = 1;
+        Writer writer = new BufferedWriter(Channels.newWriter(
+                new FileOutputStream(mExportFile).getChannel(), "UTF-8"), WRITE_BUFFER_SIZE);
+        try {
+            mWriter.write(rows, writer, null);
+        } finally {
+            writer.close();
+        }
+        return rows.getCount();
+    }
+
+    /**
+     * 按改为联合查询之前的方式导出全部笔记。
+     *
+     * @return 执行的查询数
+     */
+    @Benchmark
+    public int exportPerNote() throws Exception {
+        mPerNoteQueries = 0;
+        PrintStream ps = new PrintStream(new FileOutputStream(mExportFile));
+        try {
+            Rows folders = query(OLD_FOLDER_QUERY);
+            while (folders.moveToNext()) {
+                long folderId = folders.getLong(0);
+                String folderName = folderId == Notes.ID_CALL_RECORD_FOLDER
+                        ? CALL_RECORD_FOLDER_NAME : folders.getString(2);
+                if (folderName != null && folderName.length() > 0) {
+                    ps.println(String.format(FORMATS[TextExportWriter.FORMAT_FOLDER_NAME],
+                            folderName));
+                }
+                exportNotesPerNote(query(OLD_FOLDER_NOTES_QUERY, folderId), ps);
+            }
+            exportNotesPerNote(query(OLD_ROOT_NOTES_QUERY), ps);
+        } finally {
+            ps.close();
+        }
+        return mPerNoteQueries;
+    }
+
+    private void exportNotesPerNote(Rows notes, PrintStream ps) throws Exception {
+        while (notes.moveToNext()) {
+            ps.println(String.format(FORMATS[TextExportWriter.FORMAT_NOTE_DATE],
+                    mDateFormat.format(new Date(notes.getLong(1)))));
+            Rows data = query(OLD_DATA_QUERY, notes.getLong(0));
+            while (data.moveToNext()) {
+                String mimeType = data.getString(1);
+                if (DataConstants.CALL_NOTE.equals(mimeType)) {
+                    String phoneNumber = data.getString(4);
+                    String location = data.getString(0);
+                    if (phoneNumber != null && phoneNumber.length() > 0) {
+                        ps.println(String.format(FORMATS[TextExportWriter.FORMAT_NOTE_CONTENT],
+                                phoneNumber));
+                    }
+                    ps.println(String.format(FORMATS[TextExportWriter.FORMAT_NOTE_CONTENT],
+                            mDateFormat.format(new Date(data.getLong(2)))));
+                    if (location != null && location.length() > 0) {
+                        ps.println(String.format(FORMATS[TextExportWriter.FORMAT_NOTE_CONTENT],
+                                location));
+                    }
+                } else if (DataConstants.NOTE.equals(mimeType)) {
+                    String content = data.getString(0);
+                    if (content != null && content.length() > 0) {
+                        ps.println(String.format(FORMATS[TextExportWriter.FORMAT_NOTE_CONTENT],
+                                content));
+                    }
+                }
+            }
+            ps.write(new byte[] {
+                    Character.LINE_SEPARATOR, Character.LETTER_NUMBER
+            });
+        }
+    }
+
+    private Rows query(String sql, Object... args) throws Exception {
+        mPerNoteQueries++;
+        return NotesDb.query(mConn, sql, args);
+    }
+}
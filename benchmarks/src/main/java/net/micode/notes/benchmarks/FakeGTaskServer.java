@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的 Google 任务服务端，实现 GTaskClient 用到的部分协议：
+ * <ul>
+ * <li>GET {@code <base>ig}：返回带 {@code _setup(...)} 的页面，其中有客户端版本号和全部任务列表，
+ * 带 auth 参数时同时设置 GTL cookie；</li>
+ * <li>POST {@code <base>r/ig}：表单字段 r 中的 action_list，支持 get_all、create、update、move
+ * 和 delete。GTaskClient.deleteNode 以 deleted 为 true 的 update 删除，效果与 delete 相同；
+ * 删除的任务列表连同其中的任务一起删除。get_all 只在 get_deleted 为 true 时返回删除的任务。</li>
+ * </ul>
+ * 自定义域名的 {@code <base>a/<domain>/} 路径同样处理。可以设置每个请求的延迟、
+ * 返回 500 的比例和每秒请求数的上限，超出上限的请求返回 429。
+ * <p>
+ * 单独运行时监听所有地址，模拟器中把设置里的同步服务器设为
+ * {@code http://10.0.2.2:<port>/tasks/} 即可与它同步。
+ */
+public class FakeGTaskServer {
+    // 服务端的基础路径
+    public static final String CONTEXT_PATH = "/tasks/";
+    // 返回给客户端的版本号
+    public static final long CLIENT_VERSION = 1;
+
+    // 删除任务或任务列表的动作，GTaskStringUtils 中没有，客户端不使用
+    public static final String ACTION_TYPE_DELETE = "delete";
+
+    private static final String GET_PATH = "/ig";
+    private static final String POST_PATH = "/r/ig";
+    private static final String FORM_FIELD = "r=";
+    private static final String AUTH_PARAM = "auth=";
+    private static final String CHARSET = "UTF-8";
+
+    static {
+        // 关闭 Nagle 算法，否则分开写出的响应头和正文与客户端的延迟确认叠加，每个请求多等约 40 毫秒
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer mServer;
+
+    private final ExecutorService mExecutor;
+
+    // 任务列表按创建顺序排列，以 ID 为键
+    private final LinkedHashMap<String, Node> mLists = new LinkedHashMap<String, Node>();
+
+    // 全部任务列表和任务，以 ID 为键
+    private final HashMap<String, Node> mNodes = new HashMap<String, Node>();
+
+    private long mNextId;
+
+    // 修改时间，每次修改递增，初始值之前的时间留给预置的数据
+    private long mClock = 1L << 40;
+
+    private volatile int mLatencyMillis;
+
+    private volatile double mErrorRate;
+
+    private volatile int mRateLimit;
+
+    private final Random mRandom = new Random(1);
+
+    private long mWindowStart;
+
+    private int mWindowCount;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mErrors = new AtomicLong();
+    private final AtomicLong mThrottled = new AtomicLong();
+
+    /**
+     * 任务列表或任务。
+     */
+    private static class Node {
+        final String mGid;
+        final boolean mGroup;
+        String mName;
+        String mNotes;
+        boolean mDeleted;
+        long mLastModified;
+        // 任务所在的任务列表，任务列表为 null
+        Node mList;
+        // 任务列表中的任务，按顺序排列
+        final List<Node> mChildren;
+
+        Node(String gid, boolean group) {
+            mGid = gid;
+            mGroup = group;
+            mChildren = group ? new ArrayList<Node>() : null;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject js = new JSONObject();
+            js.put(GTaskStringUtils.GTASK_JSON_ID, mGid);
+            js.put(GTaskStringUtils.GTASK_JSON_NAME, mName);
+            js.put(GTaskStringUtils.GTASK_JSON_LAST_MODIFIED, mLastModified);
+            if (!mGroup) {
+                if (mNotes != null) {
+                    js.put(GTaskStringUtils.GTASK_JSON_NOTES, mNotes);
+                }
+                js.put(GTaskStringUtils.GTASK_JSON_DELETED, mDeleted);
+                js.put(GTaskStringUtils.GTASK_JSON_COMPLETED, false);
+                js.put(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE,
+                        GTaskStringUtils.GTASK_JSON_TYPE_TASK);
+                js.put(GTaskStringUtils.GTASK_JSON_LIST_ID, mList.mGid);
+                js.put(GTaskStringUtils.GTASK_JSON_PARENT_ID, mList.mGid);
+            }
+            return js;
+        }
+    }
+
+    /**
+     * 创建服务端，调用 {@link #start} 后开始处理请求。
+     *
+     * @param address 监听的地址，端口为 0 时由系统分配
+     */
+    public FakeGTaskServer(InetSocketAddress address) throws IOException {
+        mServer = HttpServer.create(address, 0);
+        mServer.createContext(CONTEXT_PATH, new Handler());
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * 客户端使用的基础 URL，以 "/" 结尾。
+     */
+    public String getBaseUrl() {
+        InetSocketAddress address = mServer.getAddress();
+        String host = address.getAddress().isAnyLocalAddress() ? "127.0.0.1"
+                : address.getAddress().getHostAddress();
+        return "http://" + host + ":" + address.getPort() + CONTEXT_PATH;
+    }
+
+    /**
+     * 设置每个请求处理前的延迟。
+     */
+    public void setLatency(int millis) {
+        mLatencyMillis = millis;
+    }
+
+    /**
+     * 设置返回 500 的请求的比例，0 表示不注入错误。
+     */
+    public void setErrorRate(double rate) {
+        mErrorRate = rate;
+    }
+
+    /**
+     * 设置每秒最多处理的请求数，超出的返回 429，0 表示不限制。
+     */
+    public void setRateLimit(int requestsPerSecond) {
+        mRateLimit = requestsPerSecond;
+    }
+
+    /**
+     * 预置一个任务列表。
+     *
+     * @param gid 任务列表的 ID
+     * @param name 名称
+     * @param lastModified 修改时间
+     */
+    public synchronized void addList(String gid, String name, long lastModified) {
+        Node list = new Node(gid, true);
+        list.mName = name;
+        list.mLastModified = lastModified;
+        mLists.put(gid, list);
+        mNodes.put(gid, list);
+    }
+
+    /**
+     * 预置一个任务，放在任务列表的末尾。
+     *
+     * @param listGid 任务列表的 ID
+     * @param gid 任务的 ID
+     * @param name 名称
+     * @param notes 备注，可以为 null
+     * @param lastModified 修改时间
+     */
+    public synchronized void addTask(String listGid, String gid, String name, String notes,
+            long lastModified) {
+        Node task = new Node(gid, false);
+        task.mName = name;
+        task.mNotes = notes;
+        task.mLastModified = lastModified;
+        task.mList = list(listGid);
+        task.mList.mChildren.add(task);
+        mNodes.put(gid, task);
+    }
+
+    /**
+     * 未删除的任务数，不含任务列表。
+     */
+    public synchronized int getTaskCount() {
+        int count = 0;
+        for (Node list : mLists.values()) {
+            for (Node task : list.mChildren) {
+                if (!task.mDeleted) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    // 注入的错误数，不含限流
+    public long getErrorCount() {
+        return mErrors.get();
+    }
+
+    public long getThrottledCount() {
+        return mThrottled.get();
+    }
+
+    private String newId() {
+        return "fake-" + (++mNextId);
+    }
+
+    private synchronized boolean throttle() {
+        if (mRateLimit <= 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - mWindowStart >= 1000000000L) {
+            mWindowStart = now;
+            mWindowCount = 0;
+        }
+        return ++mWindowCount > mRateLimit;
+    }
+
+    private synchronized boolean injectError() {
+        return mErrorRate > 0 && mRandom.nextDouble() < mErrorRate;
+    }
+
+    private class Handler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                byte[] body = readAll(exchange.getRequestBody());
+                mRequests.incrementAndGet();
+                mBytesReceived.addAndGet(body.length);
+
+                if (mLatencyMillis > 0) {
+                    Thread.sleep(mLatencyMillis);
+                }
+                if (throttle()) {
+                    mThrottled.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 429, "text/plain", "rate limit exceeded");
+                    return;
+                }
+                if (injectError()) {
+                    mErrors.incrementAndGet();
+                    respond(exchange, 500, "text/plain", "injected error");
+                    return;
+                }
+
+                String method = exchange.getRequestMethod();
+                String path = exchange.getRequestURI().getPath();
+                if ("POST".equals(method) && path.endsWith(POST_PATH)) {
+                    String form = new String(body, CHARSET);
+                    if (!form.startsWith(FORM_FIELD)) {
+                        respond(exchange, 400, "text/plain", "missing form field r");
+                        return;
+                    }
+                    JSONObject request = new JSONObject(URLDecoder.decode(
+                            form.substring(FORM_FIELD.length()), CHARSET));
+                    respond(exchange, 200, "application/json", post(request).toString());
+                } else if ("GET".equals(method) && path.endsWith(GET_PATH)) {
+                    String query = exchange.getRequestURI().getRawQuery();
+                    if (query != null && query.startsWith(AUTH_PARAM)) {
+                        exchange.getResponseHeaders().add("Set-Cookie", "GTL=fake; Path=/");
+                    }
+                    respond(exchange, 200, "text/html; charset=utf-8", setupPage());
+                } else {
+                    respond(exchange, 404, "text/plain", "not found: " + path);
+                }
+            } catch (JSONException e) {
+                respond(exchange, 400, "text/plain", e.getMessage());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, "text/plain", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "text/plain", "server stopping");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    // 与 Google 任务的页面相同，GTaskClient 取 "_setup(" 与最后一个 ")}</script>" 之间的内容
+    private synchronized String setupPage() throws JSONException {
+        JSONArray lists = new JSONArray();
+        for (Node list : mLists.values()) {
+            if (!list.mDeleted) {
+                lists.put(list.toJson());
+            }
+        }
+        JSONObject t = new JSONObject();
+        t.put(GTaskStringUtils.GTASK_JSON_LISTS, lists);
+        JSONObject setup = new JSONObject();
+        setup.put("v", CLIENT_VERSION);
+        setup.put("t", t);
+        return "<html><head><script type=\"text/javascript\">function _init(){_setup("
+                + setup + ")}</script></head><body onload=\"_init()\"></body></html>";
+    }
+
+    private synchronized JSONObject post(JSONObject request) throws JSONException {
+        JSONArray actions = request.getJSONArray(GTaskStringUtils.GTASK_JSON_ACTION_LIST);
+        JSONArray results = new JSONArray();
+        JSONObject response = new JSONObject();
+        for (int i = 0; i < actions.length(); i++) {
+            JSONObject action = actions.getJSONObject(i);
+            String type = action.getString(GTaskStringUtils.GTASK_JSON_ACTION_TYPE);
+            JSONObject result = new JSONObject();
+            result.put(GTaskStringUtils.GTASK_JSON_ACTION_ID,
+                    action.getInt(GTaskStringUtils.GTASK_JSON_ACTION_ID));
+            if (GTaskStringUtils.GTASK_JSON_ACTION_TYPE_GETALL.equals(type)) {
+                response.put(GTaskStringUtils.GTASK_JSON_TASKS, getAll(action));
+            } else if (GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE.equals(type)) {
+                result.put(GTaskStringUtils.GTASK_JSON_NEW_ID, create(action));
+            } else if (GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE.equals(type)) {
+                update(action);
+            } else if (GTaskStringUtils.GTASK_JSON_ACTION_TYPE_MOVE.equals(type)) {
+                move(action);
+            } else if (ACTION_TYPE_DELETE.equals(type)) {
+                delete(action);
+            } else {
+                throw new IllegalArgumentException("unknown action type: " + type);
+            }
+            results.put(result);
+        }
+        response.put(GTaskStringUtils.GTASK_JSON_RESULTS, results);
+        response.put(GTaskStringUtils.GTASK_JSON_LATEST_SYNC_POINT, mClock);
+        return response;
+    }
+
+    private JSONArray getAll(JSONObject action) throws JSONException {
+        Node list = list(action.getString(GTaskStringUtils.GTASK_JSON_LIST_ID));
+        boolean getDeleted = action.optBoolean(GTaskStringUtils.GTASK_JSON_GET_DELETED);
+        JSONArray tasks = new JSONArray();
+        for (Node task : list.mChildren) {
+            if (getDeleted || !task.mDeleted) {
+                tasks.put(task.toJson());
+            }
+        }
+        return tasks;
+    }
+
+    private String create(JSONObject action) throws JSONException {
+        JSONObject delta = action.getJSONObject(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        String name = delta.getString(GTaskStringUtils.GTASK_JSON_NAME);
+        if (GTaskStringUtils.GTASK_JSON_TYPE_GROUP.equals(
+                delta.getString(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE))) {
+            String gid = newId();
+            addList(gid, name, ++mClock);
+            return gid;
+        }
+
+        Node list = list(action.getString(GTaskStringUtils.GTASK_JSON_LIST_ID));
+        Node task = new Node(newId(), false);
+        task.mName = name;
+        task.mNotes = delta.optString(GTaskStringUtils.GTASK_JSON_NOTES, null);
+        task.mLastModified = ++mClock;
+        task.mList = list;
+        insert(list, task, action.optString(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID, null));
+        mNodes.put(task.mGid, task);
+        return task.mGid;
+    }
+
+    private void update(JSONObject action) throws JSONException {
+        Node node = node(action.getString(GTaskStringUtils.GTASK_JSON_ID));
+        JSONObject delta = action.getJSONObject(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        if (delta.has(GTaskStringUtils.GTASK_JSON_NAME)) {
+            node.mName = delta.getString(GTaskStringUtils.GTASK_JSON_NAME);
+        }
+        if (delta.has(GTaskStringUtils.GTASK_JSON_NOTES)) {
+            node.mNotes = delta.getString(GTaskStringUtils.GTASK_JSON_NOTES);
+        }
+        if (delta.has(GTaskStringUtils.GTASK_JSON_DELETED)) {
+            node.mDeleted = delta.getBoolean(GTaskStringUtils.GTASK_JSON_DELETED);
+        }
+        node.mLastModified = ++mClock;
+    }
+
+    private void delete(JSONObject action) throws JSONException {
+        Node node = node(action.getString(GTaskStringUtils.GTASK_JSON_ID));
+        node.mDeleted = true;
+        node.mLastModified = ++mClock;
+        if (node.mGroup) {
+            for (Node task : node.mChildren) {
+                if (!task.mDeleted) {
+                    task.mDeleted = true;
+                    task.mLastModified = mClock;
+                }
+            }
+        }
+    }
+
+    private void move(JSONObject action) throws JSONException {
+        Node task = node(action.getString(GTaskStringUtils.GTASK_JSON_ID));
+        Node source = list(action.getString(GTaskStringUtils.GTASK_JSON_SOURCE_LIST));
+        // 只在任务列表之间移动时带有目标任务列表
+        Node dest = action.has(GTaskStringUtils.GTASK_JSON_DEST_LIST)
+                ? list(action.getString(GTaskStringUtils.GTASK_JSON_DEST_LIST)) : source;
+        if (task.mList != source) {
+            throw new IllegalArgumentException("task " + task.mGid + " is not in "
+                    + source.mGid);
+        }
+        source.mChildren.remove(task);
+        task.mList = dest;
+        insert(dest, task, action.optString(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID, null));
+        task.mLastModified = ++mClock;
+    }
+
+    // 放在前一个兄弟任务之后，没有时放在末尾
+    private static void insert(Node list, Node task, String priorSiblingGid) {
+        if (priorSiblingGid != null) {
+            for (int i = 0; i < list.mChildren.size(); i++) {
+                if (list.mChildren.get(i).mGid.equals(priorSiblingGid)) {
+                    list.mChildren.add(i + 1, task);
+                    return;
+                }
+            }
+        }
+        list.mChildren.add(task);
+    }
+
+    private Node node(String gid) {
+        Node node = mNodes.get(gid);
+        if (node == null) {
+            throw new IllegalArgumentException("no such node: " + gid);
+        }
+        return node;
+    }
+
+    private Node list(String gid) {
+        Node list = mLists.get(gid);
+        if (list == null) {
+            throw new IllegalArgumentException("no such task list: " + gid);
+        }
+        return list;
+    }
+
+    private void respond(HttpExchange exchange, int code, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(CHARSET);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+        mBytesSent.addAndGet(bytes.length);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 单独运行服务端。
+     * <p>
+     * 参数：{@code [--port 8080] [--latency ms] [--error-rate 0.01] [--rate-limit n]}
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int latency = 0;
+        double errorRate = 0;
+        int rateLimit = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--port".equals(args[i])) {
+                port = Integer.parseInt(args[i + 1]);
+            } else if ("--latency".equals(args[i])) {
+                latency = Integer.parseInt(args[i + 1]);
+            } else if ("--error-rate".equals(args[i])) {
+                errorRate = Double.parseDouble(args[i + 1]);
+            } else if ("--rate-limit".equals(args[i])) {
+                rateLimit = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        FakeGTaskServer server = new FakeGTaskServer(new InetSocketAddress(port));
+        server.setLatency(latency);
+        server.setErrorRate(errorRate);
+        server.setRateLimit(rateLimit);
+        server.start();
+        System.out.println("Fake task server listening on " + server.getBaseUrl());
+    }
+}
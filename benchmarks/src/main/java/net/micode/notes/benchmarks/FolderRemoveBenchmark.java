@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 删除文件夹和把文件夹移到回收站的耗时与文件夹大小的关系。每轮测量前在一个已有 10000 篇笔记的
+ * 数据库中新建一个带 N 篇笔记的文件夹，测量一次删除或移到回收站。
+ * <p>
+ * {@link #trashFolder()} 和 {@link #deleteFolder()} 执行与 NotesProvider.removeFolder 相同的整体语句，
+ * 使用当前的触发器和索引；{@link #trashFolderByTrigger()} 和 {@link #deleteFolderByTrigger()}
+ * 按改为整体语句之前的方式只修改文件夹行，由版本 6 的触发器逐行处理其中的笔记，数据库同样没有
+ * 版本 7 新增的 parent_id 和 data_id 索引。两者都不包含之后已经去掉的文件夹数量触发器，
+ * 内容提供者的变化通知和小部件刷新不在普通 JVM 上测量。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class FolderRemoveBenchmark {
+    // 数据库中其余的笔记数
+    private static final int BACKGROUND_NOTES = 10000;
+
+    // 被删除的文件夹的 ID，在生成的笔记和文件夹之后
+    private static final long FOLDER_ID = 1000000L;
+
+    // 与 NotesProvider.removeFolder 的查询相同，一次查出文件夹中的笔记及其小部件
+    private static final String CHILDREN_QUERY = "SELECT " + NoteColumns.ID + ","
+            + NoteColumns.WIDGET_ID + "," + NoteColumns.WIDGET_TYPE + " FROM " + TABLE.NOTE
+            + " WHERE " + NoteColumns.PARENT_ID + "=?";
+
+    // 与 NotesProvider.removeFolder 的语句相同
+    private static final String TRASH_CHILDREN = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER + "," + NoteColumns.VERSION + "="
+            + NoteColumns.VERSION + "+1 WHERE " + NoteColumns.PARENT_ID + "=?";
+    private static final String TRASH_FOLDER = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER + ","
+            + NoteColumns.ORIGIN_PARENT_ID + "=" + NoteColumns.PARENT_ID + ","
+            + NoteColumns.LOCAL_MODIFIED + "=1," + NoteColumns.VERSION + "="
+            + NoteColumns.VERSION + "+1 WHERE " + NoteColumns.ID + "=?";
+    private static final String DELETE_CHILDREN = "DELETE FROM " + TABLE.NOTE + " WHERE "
+            + NoteColumns.PARENT_ID + "=?";
+    private static final String DELETE_FOLDER = "DELETE FROM " + TABLE.NOTE + " WHERE "
+            + NoteColumns.ID + "=?";
+
+    // 与 FolderCounts.recompute 相同，按子项重新计算根文件夹、回收站和被删除文件夹的数量
+    private static final String RECOMPUTE_COUNTS = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.NOTES_COUNT + "=(SELECT COUNT(*) FROM " + TABLE.NOTE + " AS child"
+            + " WHERE child." + NoteColumns.PARENT_ID + "=" + TABLE.NOTE + "." + NoteColumns.ID
+            + " AND child." + NoteColumns.ID + ">0) WHERE " + NoteColumns.ID + " IN ("
+            + Notes.ID_ROOT_FOLDER + "," + Notes.ID_TRASH_FOLER + "," + FOLDER_ID + ")";
+
+    // 改为整体语句之前 DataUtils.batchMoveToFolder 经由内容提供者执行的修改
+    private static final String MOVE_FOLDER_TO_TRASH = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER + ","
+            + NoteColumns.LOCAL_MODIFIED + "=1," + NoteColumns.VERSION + "="
+            + NoteColumns.VERSION + "+1 WHERE " + NoteColumns.ID + "=?";
+
+    // 与版本 6 的 folder_delete_notes_on_delete 相同，删除任何一行都查找其子项
+    private static final String V6_FOLDER_DELETE_NOTES_ON_DELETE_TRIGGER =
+            "CREATE TRIGGER folder_delete_notes_on_delete AFTER DELETE ON " + TABLE.NOTE
+            + " BEGIN DELETE FROM " + TABLE.NOTE + " WHERE " + NoteColumns.PARENT_ID + "=old."
+            + NoteColumns.ID + "; END";
+
+    // 与版本 6 的 folder_move_notes_on_trash 相同，回收站中的行每次修改都查找其子项
+    private static final String V6_FOLDER_MOVE_NOTES_ON_TRASH_TRIGGER =
+            "CREATE TRIGGER folder_move_notes_on_trash AFTER UPDATE ON " + TABLE.NOTE
+            + " WHEN new." + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER
+            + " BEGIN UPDATE " + TABLE.NOTE + " SET " + NoteColumns.PARENT_ID + "="
+            + Notes.ID_TRASH_FOLER + " WHERE " + NoteColumns.PARENT_ID + "=old."
+            + NoteColumns.ID + "; END";
+
+    @Param({ "100", "1000", "10000" })
+    public int folderSize;
+
+    private File mFile;
+    private Connection mConn;
+
+    private File mV6File;
+    private Connection mV6Conn;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("folder", ".db");
+        mConn = NotesDb.create(mFile);
+        NotesDb.populate(mConn, BACKGROUND_NOTES);
+
+        mV6File = File.createTempFile("folder-v6", ".db");
+        mV6Conn = NotesDb.create(mV6File);
+        NotesDb.populate(mV6Conn, BACKGROUND_NOTES);
+        Statement st = mV6Conn.createStatement();
+        try {
+            st.execute("DROP INDEX note_parent_id_index");
+            st.execute("DROP INDEX checklist_data_id_index");
+            st.execute("DROP TRIGGER folder_delete_notes_on_delete");
+            st.execute("DROP TRIGGER folder_move_notes_on_trash");
+            st.execute(V6_FOLDER_DELETE_NOTES_ON_DELETE_TRIGGER);
+            st.execute(V6_FOLDER_MOVE_NOTES_ON_TRASH_TRIGGER);
+        } finally {
+            st.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConn.close();
+        mV6Conn.close();
+        NotesDb.delete(mFile);
+        NotesDb.delete(mV6File);
+    }
+
+    /**
+     * 每轮测量前清除上一轮留下的笔记，在两个数据库中重新建立同样的文件夹。
+     */
+    @Setup(Level.Iteration)
+    public void createFolder() throws SQLException {
+        createFolder(mConn);
+        createFolder(mV6Conn);
+    }
+
+    /**
+     * 整体语句：一次移动文件夹中的笔记，再移动文件夹本身。
+     */
+    @Benchmark
+    public int trashFolder() throws SQLException {
+        return removeFolder(true);
+    }
+
+    /**
+     * 整体语句：一次删除文件夹中的笔记，再删除文件夹本身。
+     */
+    @Benchmark
+    public int deleteFolder() throws SQLException {
+        return removeFolder(false);
+    }
+
+    /**
+     * 改为整体语句之前：先查询小部件，再只移动文件夹行，由触发器移动其中的笔记。
+     */
+    @Benchmark
+    public int trashFolderByTrigger() throws SQLException {
+        return removeFolderByTrigger(MOVE_FOLDER_TO_TRASH);
+    }
+
+    /**
+     * 改为整体语句之前：先查询小部件，再只删除文件夹行，由触发器删除其中的笔记。
+     */
+    @Benchmark
+    public int deleteFolderByTrigger() throws SQLException {
+        return removeFolderByTrigger(DELETE_FOLDER);
+    }
+
+    private int removeFolder(boolean toTrash) throws SQLException {
+        mConn.setAutoCommit(false);
+        try {
+            int widgets = countWidgets(mConn);
+            execute(mConn, toTrash ? TRASH_CHILDREN : DELETE_CHILDREN);
+            execute(mConn, toTrash ? TRASH_FOLDER : DELETE_FOLDER);
+            Statement st = mConn.createStatement();
+            try {
+                st.executeUpdate(RECOMPUTE_COUNTS);
+            } finally {
+                st.close();
+            }
+            mConn.commit();
+            return widgets;
+        } finally {
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    private int removeFolderByTrigger(String sql) throws SQLException {
+        // DataUtils.getFolderNoteWidget 的查询在事务之外
+        int widgets = countWidgets(mV6Conn);
+        mV6Conn.setAutoCommit(false);
+        try {
+            execute(mV6Conn, sql);
+            mV6Conn.commit();
+            return widgets;
+        } finally {
+            mV6Conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 读取文件夹中笔记的小部件，返回有效的小部件数。
+     */
+    private static int countWidgets(Connection conn) throws SQLException {
+        Rows rows = NotesDb.query(conn, CHILDREN_QUERY, FOLDER_ID);
+        int widgets = 0;
+        while (rows.moveToNext()) {
+            if (rows.getInt(1) != 0 && rows.getInt(2) != Notes.TYPE_WIDGET_INVALIDE) {
+                widgets++;
+            }
+        }
+        return widgets;
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        PreparedStatement st = conn.prepareStatement(sql);
+        try {
+            st.setLong(1, FOLDER_ID);
+            st.executeUpdate();
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * 删除上一轮的文件夹及其笔记，无论它们在回收站中还是已被删除，再新建文件夹和其中的笔记。
+     */
+    private void createFolder(Connection conn) throws SQLException {
+        long now = System.currentTimeMillis();
+        long firstId = FOLDER_ID + 1;
+        conn.setAutoCommit(false);
+        Statement st = conn.createStatement();
+        PreparedStatement note = conn.prepareStatement("INSERT INTO " + TABLE.NOTE + "("
+                + NoteColumns.ID + "," + NoteColumns.PARENT_ID + "," + NoteColumns.TYPE + ","
+                + NoteColumns.CREATED_DATE + "," + NoteColumns.MODIFIED_DATE + ","
+                + NoteColumns.NOTES_COUNT + "," + NoteColumns.SNIPPET + ") VALUES(?,?,?,?,?,?,?)");
+        PreparedStatement data = conn.prepareStatement("INSERT INTO " + TABLE.DATA + "("
+                + DataColumns.MIME_TYPE + "," + DataColumns.NOTE_ID + "," + DataColumns.CONTENT
+                + ") VALUES('" + DataConstants.NOTE + "',?,?)");
+        try {
+            st.executeUpdate("DELETE FROM " + TABLE.NOTE + " WHERE " + NoteColumns.ID + ">="
+                    + FOLDER_ID);
+            note.setLong(1, FOLDER_ID);
+            note.setLong(2, Notes.ID_ROOT_FOLDER);
+            note.setInt(3, Notes.TYPE_FOLDER);
+            note.setLong(4, now);
+            note.setLong(5, now);
+            note.setInt(6, folderSize);
+            note.setString(7, "Removed folder");
+            note.executeUpdate();
+            for (int i = 0; i < folderSize; i++) {
+                note.setLong(1, firstId + i);
+                note.setLong(2, FOLDER_ID);
+                note.setInt(3, Notes.TYPE_NOTE);
+                note.setInt(6, 0);
+                note.setString(7, "");
+                note.executeUpdate();
+                data.setLong(1, firstId + i);
+                data.setString(2, NotesDb.text(i));
+                data.executeUpdate();
+            }
+            st.executeUpdate(RECOMPUTE_COUNTS);
+            conn.commit();
+        } finally {
+            st.close();
+            note.close();
+            data.close();
+            conn.setAutoCommit(true);
+        }
+    }
+}
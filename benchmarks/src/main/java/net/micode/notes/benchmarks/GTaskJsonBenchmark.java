@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.NoteMeta;
+import net.micode.notes.data.NotesDb;
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步时任务和元数据的 JSON：解析获取任务列表的响应，与 Task 和 MetaData 的
+ * setContentByRemoteJSON 读取相同的字段；上传前压缩并写出元数据；读取元数据。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GTaskJsonBenchmark {
+    @Param({ "1000", "10000" })
+    public int notes;
+
+    private String mResponse;
+
+    private String mMetaTemplate;
+
+    private String mPackedMeta;
+
+    @Setup
+    public void setUp() throws Exception {
+        mResponse = RemoteTasks.getAllResponse(notes);
+        mMetaTemplate = RemoteTasks.content(1).toString();
+        mPackedMeta = RemoteTasks.meta(1).toString();
+    }
+
+    // 解析一个任务列表的全部任务，元数据按关联的任务分组
+    @Benchmark
+    public int parseGetAll() throws Exception {
+        JSONArray tasks = new JSONObject(mResponse)
+                .getJSONArray(GTaskStringUtils.GTASK_JSON_TASKS);
+        HashMap<String, JSONObject> metas = new HashMap<String, JSONObject>();
+        HashMap<String, Long> modified = new HashMap<String, Long>();
+        for (int i = 0; i < tasks.length(); i++) {
+            JSONObject js = tasks.getJSONObject(i);
+            String gid = js.getString(GTaskStringUtils.GTASK_JSON_ID);
+            String name = js.getString(GTaskStringUtils.GTASK_JSON_NAME);
+            long lastModified = js.getLong(GTaskStringUtils.GTASK_JSON_LAST_MODIFIED);
+            js.getBoolean(GTaskStringUtils.GTASK_JSON_DELETED);
+            js.getBoolean(GTaskStringUtils.GTASK_JSON_COMPLETED);
+            if (GTaskStringUtils.META_NOTE_NAME.equals(name)) {
+                JSONObject meta = NoteMeta.parse(js.getString(GTaskStringUtils.GTASK_JSON_NOTES));
+                metas.put(meta.getString(NoteMeta.HEAD_GTASK_ID), meta);
+            } else {
+                modified.put(gid, lastModified);
+            }
+        }
+        return metas.size() + modified.size();
+    }
+
+    // 上传前压缩元数据并转换为任务的备注
+    @Benchmark
+    public String packMeta() throws Exception {
+        JSONObject meta = new JSONObject(mMetaTemplate);
+        NoteMeta.pack(NotesDb.gid(1), meta);
+        return meta.toString();
+    }
+
+    // 读取元数据中关联的任务
+    @Benchmark
+    public String parseMeta() throws Exception {
+        return NoteMeta.parse(mPackedMeta).getString(NoteMeta.HEAD_GTASK_ID);
+    }
+}
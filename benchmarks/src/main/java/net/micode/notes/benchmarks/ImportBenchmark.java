@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.TextImportReader;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导入文本：读取一个含 N 篇笔记的导出文件，由 {@link TextImportReader} 逐项解析出文件夹和笔记，
+ * 与 NoteImporter.importText 相同。导出文件由 {@link ExportBenchmark.ExportWriter} 从生成的数据库写出。
+ * 笔记经内容提供者批量插入的部分不在普通 JVM 上运行，插入一篇笔记的开销见 ProviderBenchmark.insertNote。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ImportBenchmark {
+    // 与 NoteImporter 相同
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Param({ "1000", "10000" })
+    public int notes;
+
+    private File mExportFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        File db = File.createTempFile("import", ".db");
+        mExportFile = File.createTempFile("import", ".txt");
+        Connection conn = NotesDb.create(db);
+        try {
+            NotesDb.populate(conn, notes);
+            Writer writer = new BufferedWriter(Channels.newWriter(
+                    new FileOutputStream(mExportFile).getChannel(), "UTF-8"));
+            try {
+                new ExportBenchmark.ExportWriter().write(
+                        NotesDb.query(conn, NotesDb.EXPORT_QUERY), writer, null);
+            } finally {
+                writer.close();
+            }
+        } finally {
+            conn.close();
+            NotesDb.delete(db);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExportFile.delete();
+    }
+
+    /**
+     * 解析整个导出文件。
+     *
+     * @return 根文件夹中的笔记数乘以 1000000 加上全部笔记数，便于核对根文件夹的笔记没有并入其他文件夹
+     */
+    @Benchmark
+    public long importText() throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(mExportFile), "UTF-8"), READ_BUFFER_SIZE);
+        long total = 0;
+        long root = 0;
+        try {
+            TextImportReader in = new TextImportReader(reader, ExportBenchmark.FORMATS);
+            boolean inRoot = true;
+            int item;
+            while ((item = in.next()) != TextImportReader.END) {
+                if (item == TextImportReader.FOLDER) {
+                    inRoot = in.getText().length() == 0;
+                } else {
+                    total++;
+                    if (inRoot) {
+                        root++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return root * 1000000 + total;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.NoteListEntry;
+import net.micode.notes.core.Rows;
+import net.micode.notes.core.Snippet;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔记列表的绑定：对列表查询结果的每一行构造 {@link NoteListEntry}，即 NoteItemData
+ * 读取各列、去掉摘要中的勾选标记和判断位置的部分，再按 NotesListItem.bind 生成标题文本。
+ * 设置视图、加载资源和查找通话记录的联系人不在普通 JVM 上测量。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoteListBenchmark {
+    // 文件夹的笔记数量格式，与 R.string.format_folder_files_count 相同
+    private static final String FORMAT_FOLDER_FILES_COUNT = "(%d)";
+
+    @Param({ "1000", "10000" })
+    public int notes;
+
+    private File mFile;
+
+    private Connection mConn;
+
+    private Rows mRows;
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("list", ".db");
+        mConn = NotesDb.create(mFile);
+        NotesDb.populate(mConn, notes);
+        mRows = NotesDb.queryList(mConn);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    // 绑定已查询出的全部行，相当于列表滚动一遍
+    @Benchmark
+    public void bind(Blackhole bh) {
+        bindAll(mRows, bh);
+    }
+
+    // 查询并绑定全部行，相当于进入文件夹后滚动一遍
+    @Benchmark
+    public void queryAndBind(Blackhole bh) throws Exception {
+        bindAll(NotesDb.queryList(mConn), bh);
+    }
+
+    private static void bindAll(Rows rows, Blackhole bh) {
+        rows.moveToPosition(-1);
+        while (rows.moveToNext()) {
+            NoteListEntry entry = new NoteListEntry(rows);
+            // 与 NotesListItem.bind 相同，文件夹显示名称和笔记数量，笔记显示格式化的摘要
+            String title;
+            if (entry.getId() == Notes.ID_CALL_RECORD_FOLDER
+                    || entry.getType() == Notes.TYPE_FOLDER) {
+                title = entry.getSnippet()
+                        + String.format(FORMAT_FOLDER_FILES_COUNT, entry.getNotesCount());
+            } else {
+                title = Snippet.format(entry.getSnippet());
+            }
+            bh.consume(title);
+            bh.consume(entry);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.NoteRecord;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步元数据中笔记行的 JSON 映射：写出、解析并比较差异。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoteRecordBenchmark {
+    private NoteRecord mRecord;
+
+    private String mJson;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mRecord = new NoteRecord(0);
+        JSONObject note = new JSONObject();
+        note.put(NoteRecord.ID, 1024);
+        note.put(NoteRecord.TYPE, NoteRecord.TYPE_NOTE);
+        note.put(NoteRecord.PARENT_ID, 7);
+        note.put(NoteRecord.SNIPPET, "Buy milk, eggs and bread on the way home");
+        note.put(NoteRecord.CREATED_DATE, 1300000000000L);
+        note.put(NoteRecord.MODIFIED_DATE, 1300000500000L);
+        note.put(NoteRecord.BG_COLOR_ID, 2);
+        mRecord.applyJson(note, true, 0, new HashMap<String, Object>());
+        mJson = note.toString();
+    }
+
+    @Benchmark
+    public String toJson() throws JSONException {
+        return mRecord.toJson().toString();
+    }
+
+    // 元数据解析后与本地记录比较，没有变化时差异为空
+    @Benchmark
+    public HashMap<String, Object> parseAndDiff() throws JSONException {
+        HashMap<String, Object> diff = new HashMap<String, Object>();
+        mRecord.applyJson(new JSONObject(mJson), false, 0, diff);
+        return diff;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.FolderDeltas;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内容提供者在笔记数据库上执行的语句：列表查询、新建笔记和修改笔记正文。
+ * 写入与 NotesProvider 相同，在一个事务中执行，触发器和文件夹数量的维护一并计入；
+ * 文件夹数量的变化由 {@link FolderDeltas} 累加，提交前写入，与 FolderCounts 相同。
+ * 每轮测量结束后删除本轮新建的笔记，数据量不随测量增长。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProviderBenchmark {
+    // 新建笔记，与 NotesProvider.insert 插入笔记行相同
+    private static final String INSERT_NOTE = "INSERT INTO " + TABLE.NOTE + "("
+            + NoteColumns.PARENT_ID + "," + NoteColumns.MODIFIED_DATE + ","
+            + NoteColumns.LOCAL_MODIFIED + ") VALUES(" + Notes.ID_ROOT_FOLDER + ",?,1)";
+
+    // 新建笔记的正文，插入后由触发器更新笔记的摘要
+    private static final String INSERT_DATA = "INSERT INTO " + TABLE.DATA + "("
+            + DataColumns.MIME_TYPE + "," + DataColumns.NOTE_ID + "," + DataColumns.CONTENT + ","
+            + TextNote.MODE + ") VALUES('" + DataConstants.NOTE + "',?,?,0)";
+
+    // 修改正文，由触发器更新笔记的摘要
+    private static final String UPDATE_DATA = "UPDATE " + TABLE.DATA + " SET "
+            + DataColumns.CONTENT + "=?," + DataColumns.MODIFIED_DATE + "=? WHERE "
+            + DataColumns.NOTE_ID + "=? AND " + DataColumns.MIME_TYPE + "='"
+            + DataConstants.NOTE + "'";
+
+    // 修改正文时笔记的修改时间和本地修改标记，与 WorkingNote 保存时相同
+    private static final String UPDATE_NOTE = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.MODIFIED_DATE + "=?," + NoteColumns.LOCAL_MODIFIED + "=1 WHERE "
+            + NoteColumns.ID + "=?";
+
+    @Param({ "1000", "10000" })
+    public int notes;
+
+    private File mFile;
+
+    private Connection mConn;
+
+    private long mMaxId;
+
+    private int mNext;
+
+    // 本轮测量新建的笔记数
+    private int mInserted;
+
+    private PreparedStatement mInsertNote;
+    private PreparedStatement mUpdateCount;
+    private PreparedStatement mInsertData;
+    private PreparedStatement mUpdateData;
+    private PreparedStatement mUpdateNote;
+
+    // 以预编译的语句写入文件夹数量的变化，相当于 FolderCounts.apply 中的 execSQL
+    private final FolderDeltas.Writer<SQLException> mCountWriter =
+            new FolderDeltas.Writer<SQLException>() {
+                public void write(long folderId, int delta) throws SQLException {
+                    mUpdateCount.setInt(1, delta);
+                    mUpdateCount.setLong(2, folderId);
+                    mUpdateCount.executeUpdate();
+                }
+            };
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("provider", ".db");
+        mConn = NotesDb.create(mFile);
+        int folders = NotesDb.populate(mConn, notes);
+        mMaxId = notes + folders;
+        mInsertNote = mConn.prepareStatement(INSERT_NOTE, Statement.RETURN_GENERATED_KEYS);
+        mUpdateCount = mConn.prepareStatement(NotesDb.UPDATE_FOLDER_COUNT);
+        mInsertData = mConn.prepareStatement(INSERT_DATA);
+        mUpdateData = mConn.prepareStatement(UPDATE_DATA);
+        mUpdateNote = mConn.prepareStatement(UPDATE_NOTE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeInserted() throws SQLException {
+        Statement st = mConn.createStatement();
+        try {
+            // 删除笔记时由触发器删除其数据
+            st.executeUpdate("DELETE FROM " + TABLE.NOTE + " WHERE " + NoteColumns.ID + ">"
+                    + mMaxId);
+        } finally {
+            st.close();
+        }
+        updateCount(-mInserted);
+        mInserted = 0;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    // 根文件夹的列表查询，读取全部行
+    @Benchmark
+    public int queryList() throws SQLException {
+        return NotesDb.queryList(mConn).getCount();
+    }
+
+    // 新建一篇带正文的笔记
+    @Benchmark
+    public long insertNote() throws SQLException {
+        long now = System.currentTimeMillis();
+        mConn.setAutoCommit(false);
+        try {
+            mInsertNote.setLong(1, now);
+            mInsertNote.executeUpdate();
+            long id = generatedId(mInsertNote);
+            updateCount(1);
+            mInsertData.setLong(1, id);
+            mInsertData.setString(2, NotesDb.text((int) id));
+            mInsertData.executeUpdate();
+            mConn.commit();
+            mInserted++;
+            return id;
+        } finally {
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    // 修改一篇已有笔记的正文
+    @Benchmark
+    public int updateContent() throws SQLException {
+        int id = mNext % notes + 1;
+        mNext++;
+        long now = System.currentTimeMillis();
+        mConn.setAutoCommit(false);
+        try {
+            mUpdateData.setString(1, NotesDb.text(id + mNext));
+            mUpdateData.setLong(2, now);
+            mUpdateData.setLong(3, id);
+            int count = mUpdateData.executeUpdate();
+            mUpdateNote.setLong(1, now);
+            mUpdateNote.setLong(2, id);
+            count += mUpdateNote.executeUpdate();
+            mConn.commit();
+            return count;
+        } finally {
+            mConn.setAutoCommit(true);
+        }
+    }
+
+    private void updateCount(int delta) throws SQLException {
+        FolderDeltas counts = new FolderDeltas();
+        counts.add(Notes.ID_ROOT_FOLDER, delta);
+        counts.apply(mCountWriter);
+    }
+
+    private static long generatedId(Statement st) throws SQLException {
+        ResultSet keys = st.getGeneratedKeys();
+        try {
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            keys.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.NoteMeta;
+import net.micode.notes.core.NoteRecord;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.NotesDb;
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 与 {@link NotesDb} 生成的笔记对应的远端任务和元数据。
+ */
+final class RemoteTasks {
+    private RemoteTasks() {
+    }
+
+    /**
+     * 笔记上传后的元数据，与 SqlNote.getContent 经 MetaData.setMeta 压缩后的结果相同。
+     *
+     * @param id 笔记 ID
+     * @return 元数据
+     */
+    static JSONObject meta(int id) throws JSONException {
+        JSONObject meta = content(id);
+        NoteMeta.pack(NotesDb.gid(id), meta);
+        return meta;
+    }
+
+    /**
+     * 压缩前的元数据，与 SqlNote.getContent 的结果相同。
+     *
+     * @param id 笔记 ID
+     * @return 元数据
+     */
+    static JSONObject content(int id) throws JSONException {
+        String content = NotesDb.text(id);
+        NoteRecord record = new NoteRecord(0);
+        record.setId(id);
+        record.setModifiedDate(NotesDb.SYNC_ID);
+        record.setCreatedDate(NotesDb.SYNC_ID);
+        record.setSnippet(content);
+
+        JSONObject data = new JSONObject();
+        data.put(DataColumns.ID, id);
+        data.put(DataColumns.MIME_TYPE, DataConstants.NOTE);
+        data.put(DataColumns.CONTENT, content);
+        data.put(DataColumns.DATA1, 0);
+        data.put(DataColumns.DATA3, "");
+
+        JSONObject meta = new JSONObject();
+        meta.put(NoteMeta.HEAD_NOTE, record.toJson());
+        meta.put(NoteMeta.HEAD_DATA, new JSONArray().put(data));
+        return meta;
+    }
+
+    /**
+     * 获取一个任务列表时的响应，每篇笔记一个任务，另有同样数量的元数据任务。
+     *
+     * @param notes 笔记数
+     * @return 响应的正文
+     */
+    static String getAllResponse(int notes) throws JSONException {
+        JSONArray tasks = new JSONArray();
+        for (int i = 1; i <= notes; i++) {
+            tasks.put(task(NotesDb.gid(i), NotesDb.text(i), null));
+            tasks.put(task("meta-" + i, GTaskStringUtils.META_NOTE_NAME, meta(i).toString()));
+        }
+        JSONObject response = new JSONObject();
+        response.put(GTaskStringUtils.GTASK_JSON_TASKS, tasks);
+        return response.toString();
+    }
+
+    private static JSONObject task(String gid, String name, String notes) throws JSONException {
+        JSONObject task = new JSONObject();
+        task.put(GTaskStringUtils.GTASK_JSON_ID, gid);
+        task.put(GTaskStringUtils.GTASK_JSON_NAME, name);
+        if (notes != null) {
+            task.put(GTaskStringUtils.GTASK_JSON_NOTES, notes);
+        }
+        task.put(GTaskStringUtils.GTASK_JSON_LAST_MODIFIED, NotesDb.SYNC_ID);
+        task.put(GTaskStringUtils.GTASK_JSON_DELETED, false);
+        task.put(GTaskStringUtils.GTASK_JSON_COMPLETED, false);
+        task.put(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE, GTaskStringUtils.GTASK_JSON_TYPE_TASK);
+        return task;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.core.SnapshotReader;
+import net.micode.notes.core.SnapshotWriter;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 快照备份与文本导出的对比：同一个生成的数据库分别写成全量快照和导出文本，
+ * 以及从快照恢复到空数据库。结束时输出两种文件的大小。
+ * <p>
+ * 快照的记录由 {@link SnapshotWriter} 和 {@link SnapshotReader} 编解码，与 SnapshotBackup 相同；
+ * 恢复同样先完整校验一遍再写入，每 1000 行一个事务。内容提供者的批量操作在普通 JVM 上不能运行，
+ * 以直接插入代替，不包含暂存文件夹的移动。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+    // 与 SnapshotBackup.BATCH_OPERATIONS 相同
+    private static final int BATCH_ROWS = 1000;
+
+    // 与 BackupUtils.TextExport 相同
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final String INSERT_NOTE = insert(TABLE.NOTE,
+            NotesDb.SNAPSHOT_NOTE_COLUMNS);
+    private static final String INSERT_DATA = insert(TABLE.DATA,
+            NotesDb.SNAPSHOT_DATA_COLUMNS);
+    private static final String INSERT_CHECKLIST = insert(TABLE.CHECKLIST,
+            NotesDb.SNAPSHOT_CHECKLIST_COLUMNS);
+
+    // 记录中需要换成恢复后 ID 的列
+    private static final int NOTE_PARENT_ID = 1;
+    private static final int NOTE_ORIGIN_PARENT_ID = 13;
+    private static final int DATA_NOTE_ID = 1;
+    private static final int CHECKLIST_NOTE_ID = 1;
+    private static final int CHECKLIST_DATA_ID = 2;
+
+    @Param({ "50000" })
+    public int notes;
+
+    private File mDb;
+    private Connection mConn;
+    private File mSnapshot;
+    private File mText;
+    private File mRestoreDb;
+    private Connection mRestoreConn;
+
+    @Setup
+    public void setUp() throws Exception {
+        mDb = File.createTempFile("snapshot", ".db");
+        mSnapshot = File.createTempFile("snapshot", ".bak");
+        mText = File.createTempFile("snapshot", ".txt");
+        mRestoreDb = File.createTempFile("restore", ".db");
+        mConn = NotesDb.create(mDb);
+        NotesDb.populate(mConn, notes);
+        backup();
+        textExport();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        System.out.println();
+        System.out.println(notes + " notes: snapshot " + mSnapshot.length() + " bytes, text "
+                + mText.length() + " bytes");
+        mConn.close();
+        NotesDb.delete(mDb);
+        NotesDb.delete(mRestoreDb);
+        mSnapshot.delete();
+        mText.delete();
+    }
+
+    /**
+     * 每次恢复前换成空的数据库。
+     */
+    @Setup(Level.Iteration)
+    public void createRestoreDb() throws SQLException {
+        mRestoreConn = NotesDb.create(mRestoreDb);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeRestoreDb() throws SQLException {
+        mRestoreConn.close();
+    }
+
+    /**
+     * 写出全量快照，与 SnapshotBackup.backup 的全量备份相同，同时收集各笔记的版本号作为索引。
+     *
+     * @return 快照文件的大小
+     */
+    @Benchmark
+    public long backup() throws Exception {
+        int columns = NotesDb.SNAPSHOT_NOTE_COLUMNS.length;
+        HashMap<Long, Long> versions = new HashMap<Long, Long>();
+        SnapshotWriter out = new SnapshotWriter(new FileOutputStream(mSnapshot),
+                SnapshotWriter.TYPE_FULL, 1, 0, System.currentTimeMillis());
+        try {
+            Rows rows = NotesDb.query(mConn, NotesDb.SNAPSHOT_NOTE_QUERY);
+            while (rows.moveToNext()) {
+                // 版本号是最后一列
+                versions.put(rows.getLong(0), rows.getLong(columns - 1));
+                out.writeNote(rows, columns, true);
+            }
+            rows = NotesDb.query(mConn, NotesDb.SNAPSHOT_DATA_QUERY);
+            while (rows.moveToNext()) {
+                out.writeData(rows, NotesDb.SNAPSHOT_DATA_COLUMNS.length);
+            }
+            rows = NotesDb.query(mConn, NotesDb.SNAPSHOT_CHECKLIST_QUERY);
+            while (rows.moveToNext()) {
+                out.writeCheckList(rows, NotesDb.SNAPSHOT_CHECKLIST_COLUMNS.length);
+            }
+            out.finish();
+        } finally {
+            out.close();
+        }
+        return mSnapshot.length() + versions.size();
+    }
+
+    /**
+     * 校验快照后写入空数据库。
+     *
+     * @return 恢复的笔记数
+     */
+    @Benchmark
+    public long restore() throws Exception {
+        if (!verify()) {
+            throw new IOException("snapshot is destroyed");
+        }
+        HashMap<Long, Long> noteIds = new HashMap<Long, Long>();
+        HashMap<Long, Long> dataIds = new HashMap<Long, Long>();
+        Object[] note = new Object[NotesDb.SNAPSHOT_NOTE_COLUMNS.length];
+        Object[] data = new Object[NotesDb.SNAPSHOT_DATA_COLUMNS.length];
+        Object[] item = new Object[NotesDb.SNAPSHOT_CHECKLIST_COLUMNS.length];
+
+        mRestoreConn.setAutoCommit(false);
+        PreparedStatement insertNote = mRestoreConn.prepareStatement(INSERT_NOTE,
+                Statement.RETURN_GENERATED_KEYS);
+        PreparedStatement insertData = mRestoreConn.prepareStatement(INSERT_DATA,
+                Statement.RETURN_GENERATED_KEYS);
+        PreparedStatement insertItem = mRestoreConn.prepareStatement(INSERT_CHECKLIST,
+                Statement.RETURN_GENERATED_KEYS);
+        SnapshotReader in = new SnapshotReader(new FileInputStream(mSnapshot));
+        try {
+            int rows = 0;
+            byte record;
+            while ((record = in.next()) != SnapshotWriter.RECORD_END) {
+                switch (record) {
+                    case SnapshotWriter.RECORD_NOTE:
+                        in.readRow(note);
+                        in.readWithData();
+                        mapId(note, NOTE_PARENT_ID, noteIds);
+                        mapId(note, NOTE_ORIGIN_PARENT_ID, noteIds);
+                        noteIds.put((Long) note[0], insert(insertNote, note));
+                        break;
+                    case SnapshotWriter.RECORD_DATA:
+                        in.readRow(data);
+                        mapId(data, DATA_NOTE_ID, noteIds);
+                        dataIds.put((Long) data[0], insert(insertData, data));
+                        break;
+                    case SnapshotWriter.RECORD_CHECKLIST:
+                        in.readRow(item);
+                        mapId(item, CHECKLIST_NOTE_ID, noteIds);
+                        mapId(item, CHECKLIST_DATA_ID, dataIds);
+                        insert(insertItem, item);
+                        break;
+                    default:
+                        throw new IOException("Unknown record " + record);
+                }
+                if (++rows % BATCH_ROWS == 0) {
+                    mRestoreConn.commit();
+                }
+            }
+            mRestoreConn.commit();
+        } finally {
+            in.close();
+            insertNote.close();
+            insertData.close();
+            insertItem.close();
+            mRestoreConn.setAutoCommit(true);
+        }
+        return noteIds.size();
+    }
+
+    /**
+     * 执行导出查询并写出文本，与 ExportBenchmark.exportToText 相同。
+     *
+     * @return 文本文件的大小
+     */
+    @Benchmark
+    public long textExport() throws Exception {
+        Writer writer = new BufferedWriter(Channels.newWriter(
+                new FileOutputStream(mText).getChannel(), "UTF-8"), WRITE_BUFFER_SIZE);
+        try {
+            new ExportBenchmark.ExportWriter().write(
+                    NotesDb.query(mConn, NotesDb.EXPORT_QUERY), writer, null);
+        } finally {
+            writer.close();
+        }
+        return mText.length();
+    }
+
+    /**
+     * 完整读取一遍快照并核对校验值，与 SnapshotBackup.verify 相同。
+     */
+    private boolean verify() throws IOException {
+        SnapshotReader in = new SnapshotReader(new FileInputStream(mSnapshot));
+        try {
+            byte record;
+            while ((record = in.next()) != SnapshotWriter.RECORD_END) {
+                switch (record) {
+                    case SnapshotWriter.RECORD_NOTE:
+                        in.readRow(new Object[NotesDb.SNAPSHOT_NOTE_COLUMNS.length]);
+                        in.readWithData();
+                        break;
+                    case SnapshotWriter.RECORD_DATA:
+                        in.readRow(new Object[NotesDb.SNAPSHOT_DATA_COLUMNS.length]);
+                        break;
+                    case SnapshotWriter.RECORD_CHECKLIST:
+                        in.readRow(new Object[NotesDb.SNAPSHOT_CHECKLIST_COLUMNS.length]);
+                        break;
+                    case SnapshotWriter.RECORD_NOTE_IDS:
+                        in.readNoteIds();
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            return in.checkCrc();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 把引用快照中 ID 的列换成恢复后的 ID，系统文件夹的 ID 不变。
+     */
+    private static void mapId(Object[] row, int column, HashMap<Long, Long> ids) {
+        Long id = (Long) row[column];
+        if (id != null && id > 0) {
+            row[column] = ids.get(id);
+        }
+    }
+
+    /**
+     * 插入除 ID 以外的各列。
+     *
+     * @return 新行的 ID
+     */
+    private static long insert(PreparedStatement st, Object[] row) throws SQLException {
+        for (int i = 1; i < row.length; i++) {
+            st.setObject(i, row[i]);
+        }
+        st.executeUpdate();
+        ResultSet keys = st.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getLong(1) : -1;
+        } finally {
+            keys.close();
+        }
+    }
+
+    private static String insert(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(');
+        StringBuilder values = new StringBuilder();
+        for (int i = 1; i < columns.length; i++) {
+            sql.append(i > 1 ? "," : "").append(columns[i]);
+            values.append(i > 1 ? ",?" : "?");
+        }
+        return sql.append(") VALUES(").append(values).append(')').toString();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.SyncAction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个笔记和文件夹的同步动作判定，状态覆盖无变化、本地修改、远端修改和冲突。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyncActionBenchmark {
+    private static final int STATES = 1024;
+
+    private Local[] mStates;
+
+    private long[] mRemoteModified;
+
+    static class Local implements SyncAction.LocalState {
+        final long mId;
+        final boolean mModified;
+        final long mSyncId;
+        final String mGid;
+
+        Local(long id, boolean modified, long syncId, String gid) {
+            mId = id;
+            mModified = modified;
+            mSyncId = syncId;
+            mGid = gid;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public boolean isLocalModified() {
+            return mModified;
+        }
+
+        public long getSyncId() {
+            return mSyncId;
+        }
+
+        public String getGtaskId() {
+            return mGid;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        mStates = new Local[STATES];
+        mRemoteModified = new long[STATES];
+        for (int i = 0; i < STATES; i++) {
+            mStates[i] = new Local(i + 1, (i & 1) != 0, 1000, "gid-" + i);
+            mRemoteModified[i] = (i & 2) != 0 ? 2000 : 1000;
+        }
+    }
+
+    @Benchmark
+    public int forNote() {
+        int sum = 0;
+        for (int i = 0; i < STATES; i++) {
+            Local s = mStates[i];
+            sum += SyncAction.forNote(s, true, s.mId, s.mGid, mRemoteModified[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int forFolder() {
+        int sum = 0;
+        for (int i = 0; i < STATES; i++) {
+            Local s = mStates[i];
+            sum += SyncAction.forFolder(s, s.mGid, mRemoteModified[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.FormEncodingStream;
+import net.micode.notes.core.GTaskResponse;
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * 在普通 JVM 上发出与 GTaskClient 相同的请求：相同的地址、请求头和表单格式的请求体，
+ * 相同的动作字段，更新动作同样累积超过 10 个时提交。响应不是 200 时抛出 IOException，
+ * 相当于 GTaskClient 的 NetworkFailureException，一次同步因此中止。
+ * <p>
+ * 请求体由 {@link FormEncodingStream} 编码，响应由 {@link GTaskResponse} 读取和解析，
+ * 与 GTaskClient 运行的是同一份代码。HTTP 客户端以 HttpURLConnection 代替 Android 的 Apache 客户端，
+ * 动作以 JSONObject 代替 android.util.JsonWriter 写出，两者不能在普通 JVM 上运行。
+ */
+class SyncClient {
+    private static final String GET_PATH = "ig";
+    private static final String POST_PATH = "r/ig";
+    private static final String CONTENT_TYPE = "application/x-www-form-urlencoded;charset=utf-8";
+    private static final String CHARSET = "UTF-8";
+    // 与 GTaskClient.addUpdateNode 相同，超过该数量时先提交
+    private static final int MAX_UPDATE_ACTIONS = 10;
+
+    private final String mGetUrl;
+    private final String mPostUrl;
+    private long mClientVersion = -1;
+    private int mActionId = 1;
+    private JSONArray mUpdateActions = new JSONArray();
+
+    private long mRequests;
+    private long mBytesSent;
+    private long mBytesReceived;
+
+    SyncClient(String baseUrl) {
+        mGetUrl = baseUrl + GET_PATH;
+        mPostUrl = baseUrl + POST_PATH;
+    }
+
+    long getRequestCount() {
+        return mRequests;
+    }
+
+    long getBytesSent() {
+        return mBytesSent;
+    }
+
+    long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * 登录并读取客户端版本号，与 GTaskClient.loginGtask 相同。
+     */
+    void login() throws IOException, JSONException {
+        mClientVersion = GTaskResponse.parseSetup(get(mGetUrl + "?auth=token")).getLong("v");
+    }
+
+    /**
+     * 获取全部任务列表。
+     */
+    JSONArray getTaskLists() throws IOException, JSONException {
+        return GTaskResponse.parseSetup(get(mGetUrl)).getJSONObject("t")
+                .getJSONArray(GTaskStringUtils.GTASK_JSON_LISTS);
+    }
+
+    /**
+     * 获取一个任务列表中未删除的任务。
+     */
+    JSONArray getTaskList(String listGid) throws IOException, JSONException {
+        commitUpdate();
+        JSONObject action = action(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_GETALL);
+        action.put(GTaskStringUtils.GTASK_JSON_LIST_ID, listGid);
+        action.put(GTaskStringUtils.GTASK_JSON_GET_DELETED, false);
+        return post(new JSONArray().put(action))
+                .getJSONArray(GTaskStringUtils.GTASK_JSON_TASKS);
+    }
+
+    /**
+     * 创建任务列表，与 TaskList.writeCreateAction 的字段相同。
+     *
+     * @return 新任务列表的 ID
+     */
+    String createTaskList(String name, int index) throws IOException, JSONException {
+        commitUpdate();
+        JSONObject action = action(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE);
+        action.put(GTaskStringUtils.GTASK_JSON_INDEX, index);
+        JSONObject delta = new JSONObject();
+        delta.put(GTaskStringUtils.GTASK_JSON_NAME, name);
+        delta.put(GTaskStringUtils.GTASK_JSON_CREATOR_ID, "null");
+        delta.put(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE, GTaskStringUtils.GTASK_JSON_TYPE_GROUP);
+        action.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, delta);
+        return newId(post(new JSONArray().put(action)));
+    }
+
+    /**
+     * 创建任务，与 Task.writeCreateAction 的字段相同。
+     *
+     * @param priorSiblingGid 前一个兄弟任务的 ID，没有时为 null
+     * @return 新任务的 ID
+     */
+    String createTask(String listGid, String name, String notes, int index,
+            String priorSiblingGid) throws IOException, JSONException {
+        commitUpdate();
+        JSONObject action = action(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE);
+        action.put(GTaskStringUtils.GTASK_JSON_INDEX, index);
+        JSONObject delta = new JSONObject();
+        delta.put(GTaskStringUtils.GTASK_JSON_NAME, name);
+        delta.put(GTaskStringUtils.GTASK_JSON_CREATOR_ID, "null");
+        delta.put(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE, GTaskStringUtils.GTASK_JSON_TYPE_TASK);
+        if (notes != null) {
+            delta.put(GTaskStringUtils.GTASK_JSON_NOTES, notes);
+        }
+        action.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, delta);
+        action.put(GTaskStringUtils.GTASK_JSON_PARENT_ID, listGid);
+        action.put(GTaskStringUtils.GTASK_JSON_DEST_PARENT_TYPE,
+                GTaskStringUtils.GTASK_JSON_TYPE_GROUP);
+        action.put(GTaskStringUtils.GTASK_JSON_LIST_ID, listGid);
+        if (priorSiblingGid != null) {
+            action.put(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID, priorSiblingGid);
+        }
+        return newId(post(new JSONArray().put(action)));
+    }
+
+    /**
+     * 累积一个更新动作，与 Task.writeUpdateAction 的字段相同。
+     */
+    void addUpdate(String gid, String name, String notes) throws IOException, JSONException {
+        if (mUpdateActions.length() > MAX_UPDATE_ACTIONS) {
+            commitUpdate();
+        }
+        mUpdateActions.put(update(gid, name, notes, false));
+    }
+
+    /**
+     * 提交累积的更新动作。
+     */
+    void commitUpdate() throws IOException, JSONException {
+        if (mUpdateActions.length() > 0) {
+            JSONArray actions = mUpdateActions;
+            mUpdateActions = new JSONArray();
+            post(actions);
+        }
+    }
+
+    /**
+     * 移动任务，与 GTaskClient.moveTask 相同。
+     */
+    void moveTask(String gid, String priorSiblingGid, String sourceList, String destList)
+            throws IOException, JSONException {
+        commitUpdate();
+        JSONObject action = action(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_MOVE);
+        action.put(GTaskStringUtils.GTASK_JSON_ID, gid);
+        if (sourceList.equals(destList) && priorSiblingGid != null) {
+            action.put(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID, priorSiblingGid);
+        }
+        action.put(GTaskStringUtils.GTASK_JSON_SOURCE_LIST, sourceList);
+        action.put(GTaskStringUtils.GTASK_JSON_DEST_PARENT, destList);
+        if (!sourceList.equals(destList)) {
+            action.put(GTaskStringUtils.GTASK_JSON_DEST_LIST, destList);
+        }
+        post(new JSONArray().put(action));
+    }
+
+    /**
+     * 删除任务，与 GTaskClient.deleteNode 相同，即单独提交 deleted 为 true 的更新。
+     */
+    void deleteNode(String gid, String name, String notes) throws IOException, JSONException {
+        commitUpdate();
+        post(new JSONArray().put(update(gid, name, notes, true)));
+    }
+
+    private JSONObject action(String type) throws JSONException {
+        JSONObject action = new JSONObject();
+        action.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE, type);
+        action.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, mActionId++);
+        return action;
+    }
+
+    private JSONObject update(String gid, String name, String notes, boolean deleted)
+            throws JSONException {
+        JSONObject action = action(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
+        action.put(GTaskStringUtils.GTASK_JSON_ID, gid);
+        JSONObject delta = new JSONObject();
+        delta.put(GTaskStringUtils.GTASK_JSON_NAME, name);
+        if (notes != null) {
+            delta.put(GTaskStringUtils.GTASK_JSON_NOTES, notes);
+        }
+        delta.put(GTaskStringUtils.GTASK_JSON_DELETED, deleted);
+        action.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, delta);
+        return action;
+    }
+
+    private static String newId(JSONObject response) throws JSONException {
+        return response.getJSONArray(GTaskStringUtils.GTASK_JSON_RESULTS).getJSONObject(0)
+                .getString(GTaskStringUtils.GTASK_JSON_NEW_ID);
+    }
+
+    private String get(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        return read(conn);
+    }
+
+    private JSONObject post(JSONArray actions) throws IOException, JSONException {
+        JSONObject request = new JSONObject();
+        request.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, actions);
+        request.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
+        // 与 ActionRequest 相同，写入的同时完成 UTF-8 编码和表单编码
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('r');
+        body.write('=');
+        Writer writer = new OutputStreamWriter(new FormEncodingStream(body), CHARSET);
+        writer.write(request.toString());
+        writer.close();
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(mPostUrl).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", CONTENT_TYPE);
+        conn.setRequestProperty("AT", "1");
+        conn.setDoOutput(true);
+        OutputStream out = conn.getOutputStream();
+        body.writeTo(out);
+        out.close();
+        mBytesSent += body.size();
+        return new JSONObject(read(conn));
+    }
+
+    private String read(HttpURLConnection conn) throws IOException {
+        mRequests++;
+        int code = conn.getResponseCode();
+        InputStream in = code == HttpURLConnection.HTTP_OK ? conn.getInputStream()
+                : conn.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+            }
+            in.close();
+        }
+        mBytesReceived += body.size();
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP " + code + " from " + conn.getURL() + ": "
+                    + body.toString(CHARSET));
+        }
+        return GTaskResponse.read(new ByteArrayInputStream(body.toByteArray()),
+                conn.getContentEncoding());
+    }
+}
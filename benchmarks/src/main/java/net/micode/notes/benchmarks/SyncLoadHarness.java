@@ -0,0 +1,772 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.NoteMeta;
+import net.micode.notes.core.Rows;
+import net.micode.notes.core.SyncAction;
+import net.micode.notes.core.SyncPlanner;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.data.NotesDb;
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 端到端的同步负载测试：用 {@link NotesDb} 生成 1k 到 100k 篇笔记的账户，
+ * 按 GTaskManager.sync 的顺序与 {@link FakeGTaskServer} 同步，报告耗时、请求数和收发的字节数。
+ * <p>
+ * 与 GTaskManager 运行同一份代码的部分：回收站和笔记的配对与动作判定由 {@link SyncPlanner}
+ * 和 {@link SyncAction} 完成，查询与 GTaskManager.syncContent 相同；元数据由 {@link NoteMeta}
+ * 压缩和解析；请求体的编码和响应的读取见 {@link SyncClient}。
+ * <p>
+ * 其余部分经由 ContentResolver、SqlNote 和 Android 的 HTTP 客户端，不能在普通 JVM 上运行，
+ * 这里按 GTaskManager 的步骤重述：登录、获取任务列表和各列表的任务、同步文件夹、
+ * 执行各同步动作的请求、提交更新，最后重新获取任务列表刷新同步 ID。
+ * 本地写入与 SqlNote.commit 一样逐条提交。
+ * <p>
+ * 两种场景：first 为首次同步，远端为空，全部笔记和文件夹都要上传；
+ * incremental 的远端与上次同步时一致，本地每 7 篇笔记有一篇修改，其中每 7 篇有一篇换了文件夹，
+ * 回收站中的笔记要从远端删除，未同步的笔记要上传。远端没有其他客户端的修改。
+ * <p>
+ * 运行：{@code java -cp benchmarks/target/benchmarks.jar net.micode.notes.benchmarks.SyncLoadHarness
+ * [--notes 1000,10000,100000] [--scenarios first,incremental] [--latency ms]
+ * [--error-rate 0.01] [--rate-limit n] [--out sync-load.json]}。
+ * GTaskClient 不重试，注入错误或限流后同步在第一个失败的请求处中止，结果中记录为未完成。
+ */
+public class SyncLoadHarness {
+    public static final String SCENARIO_FIRST = "first";
+    public static final String SCENARIO_INCREMENTAL = "incremental";
+
+    private static final String FOLDER_META = GTaskStringUtils.MIUI_FOLDER_PREFFIX
+            + GTaskStringUtils.FOLDER_META;
+    private static final String FOLDER_DEFAULT = GTaskStringUtils.MIUI_FOLDER_PREFFIX
+            + GTaskStringUtils.FOLDER_DEFAULT;
+    private static final String FOLDER_CALL_NOTE = GTaskStringUtils.MIUI_FOLDER_PREFFIX
+            + GTaskStringUtils.FOLDER_CALL_NOTE;
+
+    // 换了文件夹的笔记，在本地修改的笔记中每 7 篇有一篇
+    private static final int MOVED_EVERY = 49;
+
+    private static final String PROJECTION = NoteColumns.ID + "," + NoteColumns.PARENT_ID + ","
+            + NoteColumns.TYPE + "," + NoteColumns.SNIPPET + "," + NoteColumns.GTASK_ID + ","
+            + NoteColumns.SYNC_ID + "," + NoteColumns.LOCAL_MODIFIED;
+
+    // 笔记查询结果中父文件夹、摘要和类型的列，与 SqlNote 的 *_COLUMN 相同
+    private static final int PARENT_ID_COLUMN = 7;
+    private static final int SNIPPET_COLUMN = 8;
+    private static final int TYPE_COLUMN = 9;
+
+    // 与 GTaskManager.syncFolder 的查询相同
+    private static final String FOLDER_QUERY = "SELECT " + PROJECTION + " FROM " + TABLE.NOTE
+            + " WHERE " + NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER + " AND "
+            + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER;
+
+    // 与 GTaskManager.refreshLocalSyncId 的查询相同
+    private static final String REFRESH_QUERY = "SELECT " + PROJECTION + " FROM " + TABLE.NOTE
+            + " WHERE " + NoteColumns.TYPE + "<>" + Notes.TYPE_SYSTEM + " AND "
+            + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER;
+
+    private static final String SYSTEM_FOLDER_QUERY = "SELECT " + PROJECTION + " FROM "
+            + TABLE.NOTE + " WHERE " + NoteColumns.ID + "=?";
+
+    /**
+     * 本地笔记或文件夹的一行，相当于 SqlNote 读取的游标。
+     */
+    static class Row implements SyncAction.LocalState {
+        final long mId;
+        final long mParentId;
+        final int mType;
+        final String mSnippet;
+        final String mGtaskId;
+        final long mSyncId;
+        final boolean mLocalModified;
+
+        Row(ResultSet rs) throws SQLException {
+            mId = rs.getLong(1);
+            mParentId = rs.getLong(2);
+            mType = rs.getInt(3);
+            mSnippet = rs.getString(4);
+            mGtaskId = rs.getString(5);
+            mSyncId = rs.getLong(6);
+            mLocalModified = rs.getInt(7) != 0;
+        }
+
+        // 读取同步查询结果的当前行，列与 SqlNote.PROJECTION_NOTE 相同
+        Row(Rows rows) {
+            mId = rows.getLong(SyncPlanner.COLUMN_ID);
+            mParentId = rows.getLong(PARENT_ID_COLUMN);
+            mType = rows.getInt(TYPE_COLUMN);
+            mSnippet = rows.getString(SNIPPET_COLUMN);
+            mGtaskId = rows.getString(SyncPlanner.COLUMN_GTASK_ID);
+            mSyncId = rows.getLong(SyncPlanner.COLUMN_SYNC_ID);
+            mLocalModified = rows.getInt(SyncPlanner.COLUMN_LOCAL_MODIFIED) != 0;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public boolean isLocalModified() {
+            return mLocalModified;
+        }
+
+        public long getSyncId() {
+            return mSyncId;
+        }
+
+        public String getGtaskId() {
+            return mGtaskId;
+        }
+    }
+
+    /**
+     * 笔记的同步动作，与 GTaskManager.newPlanner 的处理相同。
+     */
+    private class ContentHandler implements SyncPlanner.Handler<Remote, Exception> {
+        // 与 Task.getSyncAction 相同，元数据已在获取任务列表时读出
+        public int getSyncAction(Remote node, SyncPlanner.LocalRow local) {
+            return SyncAction.forNote(local, mMetaGids.containsKey(node.mGid),
+                    mMetaNoteIds.get(node.mGid), node.mGid, node.mLastModified);
+        }
+
+        public void sync(int action, Remote node, SyncPlanner.LocalRow local) throws Exception {
+            doContentSync(action, node, local != null ? new Row(local.getRows()) : null);
+        }
+    }
+
+    /**
+     * 远端的任务或任务列表。
+     */
+    static class Remote {
+        final String mGid;
+        final String mName;
+        final long mLastModified;
+        // 任务所在的任务列表，任务列表为 null
+        String mListGid;
+
+        Remote(JSONObject js, String listGid) throws JSONException {
+            mGid = js.getString(GTaskStringUtils.GTASK_JSON_ID);
+            mName = js.getString(GTaskStringUtils.GTASK_JSON_NAME);
+            mLastModified = js.getLong(GTaskStringUtils.GTASK_JSON_LAST_MODIFIED);
+            mListGid = listGid;
+        }
+    }
+
+    /**
+     * 任务列表中的任务数和最后一个任务，用于新任务的位置，与 TaskList.addChildTask 相同。
+     */
+    static class Children {
+        int mCount;
+        String mLast;
+
+        void add(String gid) {
+            mCount++;
+            mLast = gid;
+        }
+    }
+
+    /**
+     * 一次同步的结果。
+     */
+    static class Result {
+        String mScenario;
+        int mNotes;
+        boolean mCompleted;
+        String mError;
+        long mMillis;
+        long mRequests;
+        long mBytesSent;
+        long mBytesReceived;
+        long mServerErrors;
+        long mThrottled;
+        int mCreated;
+        int mUpdated;
+        int mMoved;
+        int mDeleted;
+        int mRemoteTasks;
+
+        JSONObject toJson() throws JSONException {
+            JSONObject js = new JSONObject();
+            js.put("scenario", mScenario);
+            js.put("notes", mNotes);
+            js.put("completed", mCompleted);
+            if (mError != null) {
+                js.put("error", mError);
+            }
+            js.put("millis", mMillis);
+            js.put("requests", mRequests);
+            js.put("bytesSent", mBytesSent);
+            js.put("bytesReceived", mBytesReceived);
+            js.put("serverErrors", mServerErrors);
+            js.put("throttled", mThrottled);
+            js.put("created", mCreated);
+            js.put("updated", mUpdated);
+            js.put("moved", mMoved);
+            js.put("deleted", mDeleted);
+            js.put("remoteTasks", mRemoteTasks);
+            return js;
+        }
+    }
+
+    private final Connection mConn;
+    private final SyncClient mClient;
+    private final Result mResult;
+
+    private String mMetaListGid;
+    // 任务列表，以 ID 为键
+    private final HashMap<String, Remote> mLists = new HashMap<String, Remote>();
+    // 尚未与本地配对的任务和任务列表，以 ID 为键
+    private final HashMap<String, Remote> mRemote = new HashMap<String, Remote>();
+    // 元数据任务的 ID，以关联的任务的 ID 为键
+    private final HashMap<String, String> mMetaGids = new HashMap<String, String>();
+    // 元数据中记录的笔记 ID，以关联的任务的 ID 为键
+    private final HashMap<String, Long> mMetaNoteIds = new HashMap<String, Long>();
+    private final HashMap<String, Children> mChildren = new HashMap<String, Children>();
+    private final HashMap<String, Long> mGidToNid = new HashMap<String, Long>();
+    private final HashMap<Long, String> mNidToGid = new HashMap<Long, String>();
+    private final HashSet<Long> mLocalDeleted = new HashSet<Long>();
+
+    private PreparedStatement mSetGid;
+    private PreparedStatement mResetLocalModified;
+    private PreparedStatement mSetSyncId;
+
+    SyncLoadHarness(Connection conn, SyncClient client, Result result) {
+        mConn = conn;
+        mClient = client;
+        mResult = result;
+    }
+
+    /**
+     * 与 GTaskManager.sync 相同的步骤。
+     */
+    void sync() throws Exception {
+        mSetGid = mConn.prepareStatement("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.GTASK_ID
+                + "=?," + NoteColumns.LOCAL_MODIFIED + "=0 WHERE " + NoteColumns.ID + "=?");
+        mResetLocalModified = mConn.prepareStatement("UPDATE " + TABLE.NOTE + " SET "
+                + NoteColumns.LOCAL_MODIFIED + "=0 WHERE " + NoteColumns.ID + "=?");
+        mSetSyncId = mConn.prepareStatement("UPDATE " + TABLE.NOTE + " SET "
+                + NoteColumns.SYNC_ID + "=? WHERE " + NoteColumns.ID + "=?");
+        try {
+            mClient.login();
+            initGTaskList();
+            syncContent();
+        } finally {
+            mSetGid.close();
+            mResetLocalModified.close();
+            mSetSyncId.close();
+        }
+    }
+
+    // 与 GTaskManager.initGTaskList 相同
+    private void initGTaskList() throws IOException, JSONException {
+        mLists.clear();
+        mRemote.clear();
+        mMetaGids.clear();
+        mMetaNoteIds.clear();
+        mChildren.clear();
+        mMetaListGid = null;
+
+        JSONArray lists = mClient.getTaskLists();
+        for (int i = 0; i < lists.length(); i++) {
+            JSONObject object = lists.getJSONObject(i);
+            if (FOLDER_META.equals(object.getString(GTaskStringUtils.GTASK_JSON_NAME))) {
+                mMetaListGid = object.getString(GTaskStringUtils.GTASK_JSON_ID);
+                Children children = children(mMetaListGid);
+                JSONArray metas = mClient.getTaskList(mMetaListGid);
+                for (int j = 0; j < metas.length(); j++) {
+                    JSONObject meta = metas.getJSONObject(j);
+                    String gid = meta.getString(GTaskStringUtils.GTASK_JSON_ID);
+                    children.add(gid);
+                    if (!meta.has(GTaskStringUtils.GTASK_JSON_NOTES)) {
+                        continue;
+                    }
+                    JSONObject info = NoteMeta.parse(
+                            meta.getString(GTaskStringUtils.GTASK_JSON_NOTES));
+                    String related = info.getString(NoteMeta.HEAD_GTASK_ID);
+                    mMetaGids.put(related, gid);
+                    JSONObject note = info.optJSONObject(NoteMeta.HEAD_NOTE);
+                    if (note != null && note.has(NoteColumns.ID)) {
+                        mMetaNoteIds.put(related, note.getLong(NoteColumns.ID));
+                    }
+                }
+            }
+        }
+
+        if (mMetaListGid == null) {
+            mMetaListGid = mClient.createTaskList(FOLDER_META, lists.length());
+            children(mMetaListGid);
+        }
+
+        for (int i = 0; i < lists.length(); i++) {
+            JSONObject object = lists.getJSONObject(i);
+            String name = object.getString(GTaskStringUtils.GTASK_JSON_NAME);
+            if (name.startsWith(GTaskStringUtils.MIUI_FOLDER_PREFFIX)
+                    && !name.equals(FOLDER_META)) {
+                Remote list = new Remote(object, null);
+                mLists.put(list.mGid, list);
+                mRemote.put(list.mGid, list);
+                Children children = children(list.mGid);
+                JSONArray tasks = mClient.getTaskList(list.mGid);
+                for (int j = 0; j < tasks.length(); j++) {
+                    Remote task = new Remote(tasks.getJSONObject(j), list.mGid);
+                    children.add(task.mGid);
+                    mRemote.put(task.mGid, task);
+                }
+            }
+        }
+    }
+
+    // 与 GTaskManager.syncContent 相同
+    private void syncContent() throws Exception {
+        mLocalDeleted.clear();
+        ContentHandler handler = new ContentHandler();
+        new SyncPlanner<Remote, Exception>(mRemote, handler)
+                .syncTrash(NotesDb.querySyncTrash(mConn), mLocalDeleted);
+
+        syncFolder();
+
+        new SyncPlanner<Remote, Exception>(mRemote, handler)
+                .syncNotes(NotesDb.querySyncNotes(mConn), mGidToNid, mNidToGid);
+        new SyncPlanner<Remote, Exception>(mRemote, handler).syncRemaining();
+
+        deleteLocal();
+        mClient.commitUpdate();
+        refreshLocalSyncId();
+    }
+
+    // 与 GTaskManager.doContentSync 中笔记的部分相同
+    private void doContentSync(int action, Remote node, Row row)
+            throws IOException, JSONException, SQLException {
+        switch (action) {
+            case SyncAction.DEL_REMOTE:
+                deleteRemote(node.mGid, node.mName);
+                break;
+            case SyncAction.ADD_REMOTE:
+                addRemoteNote(row);
+                break;
+            case SyncAction.UPDATE_REMOTE:
+            case SyncAction.UPDATE_CONFLICT:
+                updateRemoteNote(node, row);
+                break;
+            case SyncAction.DEL_LOCAL:
+                String metaGid = mMetaGids.get(row.mGtaskId);
+                if (metaGid != null) {
+                    mClient.deleteNode(metaGid, GTaskStringUtils.META_NOTE_NAME, null);
+                    mResult.mDeleted++;
+                }
+                mLocalDeleted.add(row.mId);
+                break;
+            case SyncAction.NONE:
+            case SyncAction.UPDATE_LOCAL:
+            case SyncAction.ADD_LOCAL:
+                // 只修改本地，没有请求
+                break;
+            default:
+                throw new IllegalStateException("unexpected sync action " + action);
+        }
+    }
+
+    // 与 GTaskManager.syncFolder 相同，文件夹在本场景中没有本地修改
+    private void syncFolder() throws IOException, JSONException, SQLException {
+        syncSystemFolder(Notes.ID_ROOT_FOLDER, FOLDER_DEFAULT);
+        syncSystemFolder(Notes.ID_CALL_RECORD_FOLDER, FOLDER_CALL_NOTE);
+
+        for (Row row : query(FOLDER_QUERY)) {
+            Remote node = mRemote.remove(row.mGtaskId);
+            if (node != null) {
+                mNidToGid.put(row.mId, node.mGid);
+                if (SyncAction.forFolder(row, node.mGid, node.mLastModified)
+                        == SyncAction.UPDATE_REMOTE) {
+                    mClient.addUpdate(node.mGid, GTaskStringUtils.MIUI_FOLDER_PREFFIX
+                            + row.mSnippet, null);
+                    mResult.mUpdated++;
+                    resetLocalModified(row.mId);
+                }
+            } else if (row.mGtaskId.trim().length() == 0) {
+                addRemoteFolder(row, GTaskStringUtils.MIUI_FOLDER_PREFFIX + row.mSnippet);
+            } else {
+                mLocalDeleted.add(row.mId);
+            }
+        }
+
+        mClient.commitUpdate();
+    }
+
+    private void syncSystemFolder(long id, String name)
+            throws IOException, JSONException, SQLException {
+        PreparedStatement st = mConn.prepareStatement(SYSTEM_FOLDER_QUERY);
+        Row row;
+        try {
+            st.setLong(1, id);
+            ResultSet rs = st.executeQuery();
+            row = rs.next() ? new Row(rs) : null;
+            rs.close();
+        } finally {
+            st.close();
+        }
+        if (row == null) {
+            return;
+        }
+        Remote node = mRemote.remove(row.mGtaskId);
+        if (node != null) {
+            mNidToGid.put(id, node.mGid);
+        } else {
+            addRemoteFolder(row, name);
+        }
+    }
+
+    // 与 GTaskManager.addRemoteNode 中文件夹的部分相同，已有同名的任务列表时直接使用
+    private void addRemoteFolder(Row row, String name)
+            throws IOException, JSONException, SQLException {
+        String gid = null;
+        for (Remote list : mLists.values()) {
+            if (list.mName.equals(name)) {
+                gid = list.mGid;
+                mRemote.remove(gid);
+                break;
+            }
+        }
+        if (gid == null) {
+            gid = mClient.createTaskList(name, mChildren.size());
+            mResult.mCreated++;
+            children(gid);
+        }
+        setGid(row.mId, gid);
+        mNidToGid.put(row.mId, gid);
+    }
+
+    // 与 GTaskManager.addRemoteNode 中笔记的部分相同
+    private void addRemoteNote(Row row) throws IOException, JSONException, SQLException {
+        String listGid = mNidToGid.get(row.mParentId);
+        if (listGid == null) {
+            throw new IllegalStateException("cannot find task's parent tasklist");
+        }
+        Children children = children(listGid);
+        String gid = mClient.createTask(listGid, row.mSnippet, null, children.mCount,
+                children.mLast);
+        children.add(gid);
+        mResult.mCreated++;
+        updateRemoteMeta(gid, row);
+        setGid(row.mId, gid);
+        mNidToGid.put(row.mId, gid);
+    }
+
+    // 与 GTaskManager.updateRemoteNode 相同
+    private void updateRemoteNote(Remote node, Row row)
+            throws IOException, JSONException, SQLException {
+        mClient.addUpdate(node.mGid, row.mSnippet, null);
+        mResult.mUpdated++;
+        updateRemoteMeta(node.mGid, row);
+
+        String curListGid = mNidToGid.get(row.mParentId);
+        if (curListGid == null) {
+            throw new IllegalStateException("cannot find task's parent tasklist");
+        }
+        if (!curListGid.equals(node.mListGid)) {
+            mClient.moveTask(node.mGid, null, node.mListGid, curListGid);
+            children(curListGid).add(node.mGid);
+            node.mListGid = curListGid;
+            mResult.mMoved++;
+        }
+        resetLocalModified(row.mId);
+    }
+
+    // 与 GTaskManager.updateRemoteMeta 相同
+    private void updateRemoteMeta(String gid, Row row) throws IOException, JSONException {
+        JSONObject meta = RemoteTasks.content((int) row.mId);
+        NoteMeta.pack(gid, meta);
+        String metaGid = mMetaGids.get(gid);
+        if (metaGid != null) {
+            mClient.addUpdate(metaGid, GTaskStringUtils.META_NOTE_NAME, meta.toString());
+            mResult.mUpdated++;
+        } else {
+            Children children = children(mMetaListGid);
+            metaGid = mClient.createTask(mMetaListGid, GTaskStringUtils.META_NOTE_NAME,
+                    meta.toString(), children.mCount, children.mLast);
+            children.add(metaGid);
+            mMetaGids.put(gid, metaGid);
+            mResult.mCreated++;
+        }
+    }
+
+    // 与 GTaskManager.doContentSync 的 DEL_REMOTE 相同
+    private void deleteRemote(String gid, String name) throws IOException, JSONException {
+        String metaGid = mMetaGids.get(gid);
+        if (metaGid != null) {
+            mClient.deleteNode(metaGid, GTaskStringUtils.META_NOTE_NAME, null);
+            mResult.mDeleted++;
+        }
+        mClient.deleteNode(gid, name, null);
+        mResult.mDeleted++;
+    }
+
+    // 与 DataUtils.batchDeleteNotes 相同
+    private void deleteLocal() throws SQLException {
+        if (mLocalDeleted.isEmpty()) {
+            return;
+        }
+        PreparedStatement st = mConn.prepareStatement("DELETE FROM " + TABLE.NOTE + " WHERE "
+                + NoteColumns.ID + "=?");
+        try {
+            mConn.setAutoCommit(false);
+            for (long id : mLocalDeleted) {
+                st.setLong(1, id);
+                st.executeUpdate();
+            }
+            mConn.commit();
+        } finally {
+            mConn.setAutoCommit(true);
+            st.close();
+        }
+    }
+
+    // 与 GTaskManager.refreshLocalSyncId 相同
+    private void refreshLocalSyncId() throws IOException, JSONException, SQLException {
+        initGTaskList();
+        for (Row row : query(REFRESH_QUERY)) {
+            Remote node = mRemote.remove(row.mGtaskId);
+            if (node == null) {
+                throw new IllegalStateException("some local items don't have gid after sync");
+            }
+            mSetSyncId.setLong(1, node.mLastModified);
+            mSetSyncId.setLong(2, row.mId);
+            mSetSyncId.executeUpdate();
+        }
+    }
+
+    private Children children(String listGid) {
+        Children children = mChildren.get(listGid);
+        if (children == null) {
+            children = new Children();
+            mChildren.put(listGid, children);
+        }
+        return children;
+    }
+
+    private void setGid(long id, String gid) throws SQLException {
+        mSetGid.setString(1, gid);
+        mSetGid.setLong(2, id);
+        mSetGid.executeUpdate();
+    }
+
+    private void resetLocalModified(long id) throws SQLException {
+        mResetLocalModified.setLong(1, id);
+        mResetLocalModified.executeUpdate();
+    }
+
+    private List<Row> query(String sql) throws SQLException {
+        List<Row> rows = new ArrayList<Row>();
+        Statement st = mConn.createStatement();
+        try {
+            ResultSet rs = st.executeQuery(sql);
+            while (rs.next()) {
+                rows.add(new Row(rs));
+            }
+            rs.close();
+        } finally {
+            st.close();
+        }
+        return rows;
+    }
+
+    /**
+     * 让本地与远端处于上次同步后的状态：远端有全部已同步的文件夹、笔记和元数据，
+     * 回收站中的笔记视为同步后才删除的。换了文件夹的笔记在远端仍在原来的任务列表中。
+     */
+    static void seed(Connection conn, FakeGTaskServer server) throws SQLException, JSONException {
+        Statement st = conn.createStatement();
+        try {
+            st.executeUpdate("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.GTASK_ID + "='gid-'||"
+                    + NoteColumns.ID + "," + NoteColumns.SYNC_ID + "=" + NotesDb.SYNC_ID + ","
+                    + NoteColumns.LOCAL_MODIFIED + "=0 WHERE " + NoteColumns.PARENT_ID + "="
+                    + Notes.ID_TRASH_FOLER);
+            String defaultGid = "gid-default";
+            server.addList("gid-meta", FOLDER_META, NotesDb.SYNC_ID);
+            server.addList(defaultGid, FOLDER_DEFAULT, NotesDb.SYNC_ID);
+            server.addList("gid-call-note", FOLDER_CALL_NOTE, NotesDb.SYNC_ID);
+
+            String firstFolderGid = null;
+            ResultSet rs = st.executeQuery("SELECT " + NoteColumns.GTASK_ID + ","
+                    + NoteColumns.SNIPPET + " FROM " + TABLE.NOTE + " WHERE " + NoteColumns.TYPE
+                    + "=" + Notes.TYPE_FOLDER + " ORDER BY " + NoteColumns.ID);
+            while (rs.next()) {
+                String gid = rs.getString(1);
+                server.addList(gid, GTaskStringUtils.MIUI_FOLDER_PREFFIX + rs.getString(2),
+                        NotesDb.SYNC_ID);
+                if (firstFolderGid == null) {
+                    firstFolderGid = gid;
+                }
+            }
+            rs.close();
+
+            rs = st.executeQuery("SELECT " + NoteColumns.ID + "," + NoteColumns.PARENT_ID + ","
+                    + NoteColumns.SNIPPET + "," + NoteColumns.GTASK_ID + ","
+                    + NoteColumns.LOCAL_MODIFIED + " FROM " + TABLE.NOTE + " WHERE "
+                    + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE + " AND " + NoteColumns.GTASK_ID
+                    + "<>'' ORDER BY " + NoteColumns.ID);
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                long parentId = rs.getLong(2);
+                String gid = rs.getString(4);
+                String listGid = parentId == Notes.ID_ROOT_FOLDER
+                        || parentId == Notes.ID_TRASH_FOLER ? defaultGid : NotesDb.gid(parentId);
+                if (rs.getInt(5) != 0 && id % MOVED_EVERY == 0) {
+                    listGid = listGid.equals(defaultGid) ? firstFolderGid : defaultGid;
+                }
+                server.addTask(listGid, gid, rs.getString(3), null, NotesDb.SYNC_ID);
+                server.addTask("gid-meta", "meta-" + id, GTaskStringUtils.META_NOTE_NAME,
+                        RemoteTasks.meta(id).toString(), NotesDb.SYNC_ID);
+            }
+            rs.close();
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * 首次同步前的本地状态：没有任何笔记或文件夹同步过。
+     */
+    static void resetSyncState(Connection conn) throws SQLException {
+        Statement st = conn.createStatement();
+        try {
+            st.executeUpdate("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.GTASK_ID + "='',"
+                    + NoteColumns.SYNC_ID + "=0," + NoteColumns.LOCAL_MODIFIED + "=1 WHERE "
+                    + NoteColumns.TYPE + "<>" + Notes.TYPE_SYSTEM);
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * 生成账户并同步一次。
+     */
+    static Result run(String scenario, int notes, int latency, double errorRate, int rateLimit)
+            throws Exception {
+        Result result = new Result();
+        result.mScenario = scenario;
+        result.mNotes = notes;
+
+        File file = File.createTempFile("sync-load", ".db");
+        Connection conn = NotesDb.create(file);
+        FakeGTaskServer server = new FakeGTaskServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            NotesDb.populate(conn, notes);
+            if (SCENARIO_FIRST.equals(scenario)) {
+                resetSyncState(conn);
+            } else if (SCENARIO_INCREMENTAL.equals(scenario)) {
+                seed(conn, server);
+            } else {
+                throw new IllegalArgumentException("unknown scenario: " + scenario);
+            }
+            server.setLatency(latency);
+            server.setErrorRate(errorRate);
+            server.setRateLimit(rateLimit);
+            server.start();
+
+            SyncClient client = new SyncClient(server.getBaseUrl());
+            long start = System.nanoTime();
+            try {
+                new SyncLoadHarness(conn, client, result).sync();
+                result.mCompleted = true;
+            } catch (IOException e) {
+                result.mError = e.getMessage();
+            }
+            result.mMillis = (System.nanoTime() - start) / 1000000;
+            result.mRequests = client.getRequestCount();
+            result.mBytesSent = client.getBytesSent();
+            result.mBytesReceived = client.getBytesReceived();
+            result.mServerErrors = server.getErrorCount();
+            result.mThrottled = server.getThrottledCount();
+            result.mRemoteTasks = server.getTaskCount();
+        } finally {
+            server.stop();
+            conn.close();
+            NotesDb.delete(file);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] notes = { "1000", "10000", "100000" };
+        String[] scenarios = { SCENARIO_FIRST, SCENARIO_INCREMENTAL };
+        int latency = 0;
+        double errorRate = 0;
+        int rateLimit = 0;
+        String out = "sync-load.json";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--notes".equals(args[i])) {
+                notes = args[i + 1].split(",");
+            } else if ("--scenarios".equals(args[i])) {
+                scenarios = args[i + 1].split(",");
+            } else if ("--latency".equals(args[i])) {
+                latency = Integer.parseInt(args[i + 1]);
+            } else if ("--error-rate".equals(args[i])) {
+                errorRate = Double.parseDouble(args[i + 1]);
+            } else if ("--rate-limit".equals(args[i])) {
+                rateLimit = Integer.parseInt(args[i + 1]);
+            } else if ("--out".equals(args[i])) {
+                out = args[i + 1];
+            } else {
+                throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+
+        JSONArray results = new JSONArray();
+        for (String n : notes) {
+            for (String scenario : scenarios) {
+                Result r = run(scenario, Integer.parseInt(n.trim()), latency, errorRate,
+                        rateLimit);
+                results.put(r.toJson());
+                System.out.println(String.format("%-11s %7d notes: %s in %d ms, %d requests, "
+                        + "%d bytes sent, %d bytes received", r.mScenario, r.mNotes,
+                        r.mCompleted ? "done" : "failed (" + r.mError + ")", r.mMillis,
+                        r.mRequests, r.mBytesSent, r.mBytesReceived));
+            }
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(out), "UTF-8");
+        try {
+            writer.write(results.toString(2));
+        } finally {
+            writer.close();
+        }
+        System.out.println("Results written to " + out);
+    }
+}
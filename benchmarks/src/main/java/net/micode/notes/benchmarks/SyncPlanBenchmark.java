@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.NoteMeta;
+import net.micode.notes.core.SyncAction;
+import net.micode.notes.core.SyncPlanner;
+import net.micode.notes.data.NotesDb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GTaskManager.syncContent 中笔记部分的规划：查出回收站中的笔记和其余笔记，
+ * 由 {@link SyncPlanner} 按 GID 与远端任务配对，用 Task.getSyncAction 同样的
+ * {@link SyncAction#forNote(SyncAction.LocalState, JSONObject, String, long)} 判定每篇笔记的同步动作，
+ * 剩下的远端任务需要在本地添加。远端任务已解析并带有元数据，执行同步动作的网络请求和数据库写入不计入。
+ * <p>
+ * 远端有每篇已同步笔记的任务，每 3 个中有一个在上次同步后被修改，另有 1% 的任务只在远端。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SyncPlanBenchmark {
+    @Param({ "10000", "100000" })
+    public int notes;
+
+    private File mFile;
+
+    private Connection mConn;
+
+    // 解析后的远端任务，以 GID 为键
+    private HashMap<String, Remote> mRemote;
+
+    static class Remote {
+        final String mGid;
+        final long mLastModified;
+        final JSONObject mMetaInfo;
+
+        Remote(String gid, long lastModified, JSONObject metaInfo) {
+            mGid = gid;
+            mLastModified = lastModified;
+            mMetaInfo = metaInfo;
+        }
+    }
+
+    /**
+     * 统计各同步动作的笔记数，不执行动作。
+     */
+    static class Counter implements SyncPlanner.Handler<Remote, JSONException> {
+        // 以动作为下标
+        final int[] mActions = new int[SyncAction.ERROR + 1];
+
+        public int getSyncAction(Remote node, SyncPlanner.LocalRow local) throws JSONException {
+            return SyncAction.forNote(local, node.mMetaInfo, node.mGid, node.mLastModified);
+        }
+
+        public void sync(int action, Remote node, SyncPlanner.LocalRow local) {
+            mActions[action]++;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("sync", ".db");
+        mConn = NotesDb.create(mFile);
+        NotesDb.populate(mConn, notes);
+
+        mRemote = new HashMap<String, Remote>();
+        for (int i = 1; i <= notes; i++) {
+            if (i % 10 == 0) {
+                // 从未同步过的笔记
+                continue;
+            }
+            String gid = NotesDb.gid(i);
+            long lastModified = i % 3 == 0 ? NotesDb.SYNC_ID + 1 : NotesDb.SYNC_ID;
+            mRemote.put(gid, new Remote(gid, lastModified,
+                    NoteMeta.parse(RemoteTasks.meta(i).toString())));
+        }
+        for (int i = 1; i <= notes / 100; i++) {
+            String gid = "remote-" + i;
+            mRemote.put(gid, new Remote(gid, NotesDb.SYNC_ID, null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mConn.close();
+        NotesDb.delete(mFile);
+    }
+
+    /**
+     * 规划一次同步。
+     *
+     * @return 各同步动作的笔记数，以动作为下标
+     */
+    @Benchmark
+    public int[] plan() throws Exception {
+        Counter counter = new Counter();
+        SyncPlanner<Remote, JSONException> planner = new SyncPlanner<Remote, JSONException>(
+                new HashMap<String, Remote>(mRemote), counter);
+        planner.syncTrash(NotesDb.querySyncTrash(mConn), new HashSet<Long>());
+        planner.syncNotes(NotesDb.querySyncNotes(mConn),
+                new HashMap<String, Long>(), new HashMap<Long, String>());
+        planner.syncRemaining();
+        return counter.mActions;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.FormEncodingStream;
+import net.micode.notes.data.NotesDb;
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次同步中 N 个更新动作的请求体：每篇笔记更新任务和元数据任务各一个动作，
+ * 与 GTaskClient.addUpdateNode 相同，每个请求超过 10 个动作时发送。
+ * 分配量用 {@code -prof gc} 的 gc.alloc.rate.norm 查看。
+ * <p>
+ * {@link #streamed()} 与 ActionRequest 相同，动作经 BufferedWriter 直接写入复用的缓冲区，
+ * 写入时完成 UTF-8 编码和表单编码。android.util.JsonWriter 不能在普通 JVM 上运行，
+ * 这里以同样逐个字符转义写出的 {@link JsonStream} 代替，写出的字段与 Task.writeUpdateAction 相同。
+ * {@link #jsonTree()} 是改为流式写入之前的方式：每个动作一个 JSONObject 树，
+ * 发送时整体转成字符串，再由 UrlEncodedFormEntity 编码。
+ * 结束时输出请求的总字节数，两者相同。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyncRequestBenchmark {
+    // 与 GTaskClient.addUpdateNode 相同，超过这个数量时先发送
+    private static final int MAX_UPDATE_ACTIONS = 10;
+
+    // 与 ActionRequest 的初始缓冲区相同
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+
+    private static final long CLIENT_VERSION = NotesDb.SYNC_ID;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({ "2000" })
+    public int actions;
+
+    // 每个动作更新的任务
+    private String[] mGids;
+    private String[] mNames;
+    private String[] mNotes;
+
+    // 流式写入复用的缓冲区和编码器
+    private ByteArrayOutputStream mBody;
+    private Writer mWriter;
+
+    // 最近一次写出的请求总字节数
+    private long mBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        mGids = new String[actions];
+        mNames = new String[actions];
+        mNotes = new String[actions];
+        for (int i = 0; i < actions; i++) {
+            int id = i / 2 + 1;
+            if (i % 2 == 0) {
+                mGids[i] = NotesDb.gid(id);
+                mNames[i] = NotesDb.text(id);
+            } else {
+                mGids[i] = "meta-" + id;
+                mNames[i] = GTaskStringUtils.META_NOTE_NAME;
+                mNotes[i] = RemoteTasks.meta(id).toString();
+            }
+        }
+        mBody = new ByteArrayOutputStream(INITIAL_CAPACITY);
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FormEncodingStream(mBody),
+                UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("request bytes " + mBytes);
+    }
+
+    /**
+     * 动作直接写入复用的缓冲区。
+     *
+     * @return 全部请求的字节数
+     */
+    @Benchmark
+    public long streamed() throws IOException {
+        long bytes = 0;
+        JsonStream json = null;
+        int count = 0;
+        for (int i = 0; i < actions; i++) {
+            if (count > MAX_UPDATE_ACTIONS) {
+                bytes += finish(json);
+                json = null;
+                count = 0;
+            }
+            if (json == null) {
+                mBody.write('r');
+                mBody.write('=');
+                json = new JsonStream(mWriter);
+                json.beginObject();
+                json.name(GTaskStringUtils.GTASK_JSON_ACTION_LIST);
+                json.beginArray();
+            }
+            count++;
+            writeUpdateAction(json, i);
+        }
+        bytes += finish(json);
+        mBytes = bytes;
+        return bytes;
+    }
+
+    /**
+     * 每个动作构造 JSONObject 树，发送时转成字符串后整体编码。
+     *
+     * @return 全部请求的字节数
+     */
+    @Benchmark
+    public long jsonTree() throws JSONException, UnsupportedEncodingException {
+        long bytes = 0;
+        JSONArray updateArray = null;
+        for (int i = 0; i < actions; i++) {
+            if (updateArray != null && updateArray.length() > MAX_UPDATE_ACTIONS) {
+                bytes += post(updateArray);
+                updateArray = null;
+            }
+            if (updateArray == null) {
+                updateArray = new JSONArray();
+            }
+            updateArray.put(getUpdateAction(i));
+        }
+        bytes += post(updateArray);
+        mBytes = bytes;
+        return bytes;
+    }
+
+    /**
+     * 与 ActionRequest.finish 相同结束请求体，请求实体直接写出缓冲区，之后清空缓冲区。
+     */
+    private long finish(JsonStream json) throws IOException {
+        json.endArray();
+        json.name(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION).value(CLIENT_VERSION);
+        json.endObject();
+        mWriter.flush();
+        long size = mBody.size();
+        mBody.reset();
+        return size;
+    }
+
+    /**
+     * 与 Task.writeUpdateAction 相同。
+     */
+    private void writeUpdateAction(JsonStream json, int i) throws IOException {
+        json.beginObject();
+        json.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
+        json.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(i + 1);
+        json.name(GTaskStringUtils.GTASK_JSON_ID).value(mGids[i]);
+        json.name(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        json.beginObject();
+        json.name(GTaskStringUtils.GTASK_JSON_NAME).value(mNames[i]);
+        if (mNotes[i] != null) {
+            json.name(GTaskStringUtils.GTASK_JSON_NOTES).value(mNotes[i]);
+        }
+        json.name(GTaskStringUtils.GTASK_JSON_DELETED).value(false);
+        json.endObject();
+        json.endObject();
+    }
+
+    /**
+     * 与改为流式写入之前的 Task.getUpdateAction 相同。
+     */
+    private JSONObject getUpdateAction(int i) throws JSONException {
+        JSONObject js = new JSONObject();
+        js.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
+                GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
+        js.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, i + 1);
+        js.put(GTaskStringUtils.GTASK_JSON_ID, mGids[i]);
+        JSONObject entity = new JSONObject();
+        entity.put(GTaskStringUtils.GTASK_JSON_NAME, mNames[i]);
+        if (mNotes[i] != null) {
+            entity.put(GTaskStringUtils.GTASK_JSON_NOTES, mNotes[i]);
+        }
+        entity.put(GTaskStringUtils.GTASK_JSON_DELETED, false);
+        js.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, entity);
+        return js;
+    }
+
+    /**
+     * 与改为流式写入之前的 GTaskClient.commitUpdate 和 postRequest 相同，
+     * UrlEncodedFormEntity 把编码后的表单转成字节。
+     */
+    private static long post(JSONArray updateArray)
+            throws JSONException, UnsupportedEncodingException {
+        JSONObject jsPost = new JSONObject();
+        jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, updateArray);
+        jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, CLIENT_VERSION);
+        String form = "r=" + URLEncoder.encode(jsPost.toString(), "UTF-8");
+        return form.getBytes("ISO-8859-1").length;
+    }
+
+    /**
+     * android.util.JsonWriter 的一个子集：不缩进，字符串按同样的规则转义后直接写出。
+     */
+    private static final class JsonStream {
+        private final Writer mOut;
+        // 当前对象或数组中还没有写出元素，开始时是空的文档
+        private boolean mEmpty = true;
+        // 刚写出名称，接下来是它的值
+        private boolean mNamed;
+
+        JsonStream(Writer out) {
+            mOut = out;
+        }
+
+        JsonStream beginObject() throws IOException {
+            open('{');
+            return this;
+        }
+
+        JsonStream endObject() throws IOException {
+            close('}');
+            return this;
+        }
+
+        JsonStream beginArray() throws IOException {
+            open('[');
+            return this;
+        }
+
+        JsonStream endArray() throws IOException {
+            close(']');
+            return this;
+        }
+
+        JsonStream name(String name) throws IOException {
+            separate();
+            string(name);
+            mOut.write(':');
+            mNamed = true;
+            return this;
+        }
+
+        JsonStream value(String value) throws IOException {
+            separate();
+            string(value);
+            return this;
+        }
+
+        JsonStream value(long value) throws IOException {
+            separate();
+            mOut.write(Long.toString(value));
+            return this;
+        }
+
+        JsonStream value(boolean value) throws IOException {
+            separate();
+            mOut.write(value ? "true" : "false");
+            return this;
+        }
+
+        private void open(char c) throws IOException {
+            separate();
+            mOut.write(c);
+            mEmpty = true;
+        }
+
+        private void close(char c) throws IOException {
+            mOut.write(c);
+            mEmpty = false;
+        }
+
+        private void separate() throws IOException {
+            if (mNamed) {
+                mNamed = false;
+            } else if (mEmpty) {
+                mEmpty = false;
+            } else {
+                mOut.write(',');
+            }
+        }
+
+        private void string(String value) throws IOException {
+            mOut.write('"');
+            for (int i = 0, length = value.length(); i < length; i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        mOut.write('\\');
+                        mOut.write(c);
+                        break;
+                    case '\t':
+                        mOut.write("\\t");
+                        break;
+                    case '\b':
+                        mOut.write("\\b");
+                        break;
+                    case '\n':
+                        mOut.write("\\n");
+                        break;
+                    case '\r':
+                        mOut.write("\\r");
+                        break;
+                    case '\f':
+                        mOut.write("\\f");
+                        break;
+                    case '\u2028':
+                    case '\u2029':
+                        mOut.write(String.format("\\u%04x", (int) c));
+                        break;
+                    default:
+                        if (c <= 0x1F) {
+                            mOut.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            mOut.write(c);
+                        }
+                        break;
+                }
+            }
+            mOut.write('"');
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.benchmarks;
+
+import net.micode.notes.core.CheckListText;
+import net.micode.notes.core.Snippet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 清单文本的解析和生成，以及列表中摘要的格式化。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TextBenchmark {
+    @Param({ "10", "200" })
+    public int items;
+
+    private String mCheckList;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < items; i++) {
+            CheckListText.appendItem(sb, i % 3 == 0, "item " + i + " of the shopping list");
+        }
+        mCheckList = sb.toString();
+    }
+
+    @Benchmark
+    public void parseCheckList(final Blackhole bh) {
+        CheckListText.parse(mCheckList, new CheckListText.ItemHandler() {
+            public void onItem(boolean checked, String text) {
+                bh.consume(text);
+            }
+        });
+    }
+
+    @Benchmark
+    public String stripTags() {
+        return CheckListText.stripTags(mCheckList);
+    }
+
+    @Benchmark
+    public String formatSnippet() {
+        return Snippet.format(mCheckList);
+    }
+}
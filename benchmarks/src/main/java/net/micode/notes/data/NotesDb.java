@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import net.micode.notes.core.Rows;
+import net.micode.notes.core.SyncPlanner;
+import net.micode.notes.data.Notes.CheckListColumns;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.tool.TextExportQuery;
+import net.micode.notes.ui.NoteItemData;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 基准测试用的笔记数据库，运行在进程内的 SQLite 上。
+ * 建表、索引和触发器使用 {@link NotesDatabaseHelper} 中的语句，编译时内联，
+ * 运行时不加载任何 Android 的类。
+ * <p>
+ * 生成的数据：用户文件夹按每 50 篇笔记一个，笔记轮流放入根文件夹和各文件夹；
+ * 每篇笔记一条文本数据，每 10 篇中有一篇为 5 个条目的清单；每 100 篇中有一篇在回收站；
+ * 九成笔记已同步过，其中每 7 篇有一篇有本地修改。
+ */
+public final class NotesDb {
+    // 每个用户文件夹对应的笔记数
+    public static final int NOTES_PER_FOLDER = 50;
+    // 清单笔记的条目数
+    public static final int CHECK_LIST_ITEMS = 5;
+    // 上次同步时远端节点的修改时间
+    public static final long SYNC_ID = 1000000L;
+
+    // 笔记列表的查询，与 NotesListActivity 的查询相同，列与 NoteItemData.PROJECTION 相同，
+    // 文件夹 ID 为查询参数
+    public static final String LIST_QUERY = "SELECT " + NoteColumns.ID + ","
+            + NoteColumns.ALERTED_DATE + "," + NoteColumns.BG_COLOR_ID + ","
+            + NoteColumns.CREATED_DATE + "," + NoteColumns.HAS_ATTACHMENT + ","
+            + NoteColumns.MODIFIED_DATE + "," + NoteColumns.NOTES_COUNT + ","
+            + NoteColumns.PARENT_ID + "," + NoteColumns.SNIPPET + "," + NoteColumns.TYPE + ","
+            + NoteColumns.WIDGET_ID + "," + NoteColumns.WIDGET_TYPE + " FROM " + TABLE.NOTE
+            + " WHERE " + NoteItemData.ROOT_FOLDER_SELECTION + " ORDER BY "
+            + NoteItemData.SORT_ORDER;
+
+    // 写入一个文件夹的笔记数量变化，与 FolderCounts.apply 相同，参数为变化量和文件夹 ID
+    public static final String UPDATE_FOLDER_COUNT = FolderCounts.UPDATE_COUNT_SQL;
+
+    // 同步时查询笔记的投影，与 SqlNote.PROJECTION_NOTE 相同
+    private static final String SYNC_NOTE_COLUMNS = NoteColumns.ID + ","
+            + NoteColumns.ALERTED_DATE + "," + NoteColumns.BG_COLOR_ID + ","
+            + NoteColumns.CREATED_DATE + "," + NoteColumns.HAS_ATTACHMENT + ","
+            + NoteColumns.MODIFIED_DATE + "," + NoteColumns.NOTES_COUNT + ","
+            + NoteColumns.PARENT_ID + "," + NoteColumns.SNIPPET + "," + NoteColumns.TYPE + ","
+            + NoteColumns.WIDGET_ID + "," + NoteColumns.WIDGET_TYPE + "," + NoteColumns.SYNC_ID
+            + "," + NoteColumns.LOCAL_MODIFIED + "," + NoteColumns.ORIGIN_PARENT_ID + ","
+            + NoteColumns.GTASK_ID + "," + NoteColumns.VERSION;
+
+    // 回收站中的笔记，与 GTaskManager.syncContent 的第一个查询相同，参数见 querySyncTrash
+    private static final String SYNC_TRASH_QUERY = "SELECT " + SYNC_NOTE_COLUMNS + " FROM "
+            + TABLE.NOTE + " WHERE " + SyncPlanner.TRASH_SELECTION;
+
+    // 其余的笔记，与 GTaskManager.syncContent 的第二个查询相同，参数见 querySyncNotes
+    private static final String SYNC_NOTE_QUERY = "SELECT " + SYNC_NOTE_COLUMNS + " FROM "
+            + TABLE.NOTE + " WHERE " + SyncPlanner.NOTE_SELECTION + " ORDER BY "
+            + SyncPlanner.NOTE_SORT_ORDER;
+
+    // 文本导出的查询，与 BackupUtils.TextExport 经由 NotesProvider 执行的查询相同
+    public static final String EXPORT_QUERY = "SELECT " + TextExportQuery.COLUMNS + " FROM "
+            + NotesDatabaseHelper.NOTE_DATA_JOIN_TABLE + " WHERE " + TextExportQuery.SELECTION
+            + " ORDER BY " + TextExportQuery.SORT_ORDER;
+
+    // 快照备份的笔记、数据行和清单条目的列，与 SnapshotBackup 的 NOTE_PROJECTION、DATA_PROJECTION
+    // 和 CHECKLIST_PROJECTION 相同
+    public static final String[] SNAPSHOT_NOTE_COLUMNS = {
+            NoteColumns.ID, NoteColumns.PARENT_ID, NoteColumns.ALERTED_DATE,
+            NoteColumns.BG_COLOR_ID, NoteColumns.CREATED_DATE, NoteColumns.MODIFIED_DATE,
+            NoteColumns.HAS_ATTACHMENT, NoteColumns.SNIPPET, NoteColumns.TYPE,
+            NoteColumns.WIDGET_ID, NoteColumns.WIDGET_TYPE, NoteColumns.SYNC_ID,
+            NoteColumns.LOCAL_MODIFIED, NoteColumns.ORIGIN_PARENT_ID, NoteColumns.GTASK_ID,
+            NoteColumns.VERSION
+    };
+    public static final String[] SNAPSHOT_DATA_COLUMNS = {
+            DataColumns.ID, DataColumns.NOTE_ID, DataColumns.MIME_TYPE, DataColumns.CREATED_DATE,
+            DataColumns.MODIFIED_DATE, DataColumns.CONTENT, DataColumns.DATA1, DataColumns.DATA2,
+            DataColumns.DATA3, DataColumns.DATA4, DataColumns.DATA5
+    };
+    public static final String[] SNAPSHOT_CHECKLIST_COLUMNS = {
+            CheckListColumns.ID, CheckListColumns.NOTE_ID, CheckListColumns.DATA_ID,
+            CheckListColumns.POSITION, CheckListColumns.CHECKED, CheckListColumns.CONTENT
+    };
+
+    // 快照备份的查询，与 SnapshotBackup 经由 NotesProvider 执行的查询相同，文件夹排在笔记之前
+    public static final String SNAPSHOT_NOTE_QUERY = "SELECT " + join(SNAPSHOT_NOTE_COLUMNS)
+            + " FROM " + TABLE.NOTE + " WHERE " + NoteColumns.ID + ">0 ORDER BY "
+            + NoteColumns.TYPE + " DESC," + NoteColumns.ID;
+    public static final String SNAPSHOT_DATA_QUERY = "SELECT " + join(SNAPSHOT_DATA_COLUMNS)
+            + " FROM " + TABLE.DATA + " ORDER BY " + DataColumns.NOTE_ID;
+    public static final String SNAPSHOT_CHECKLIST_QUERY = "SELECT "
+            + join(SNAPSHOT_CHECKLIST_COLUMNS) + " FROM " + TABLE.CHECKLIST + " ORDER BY "
+            + CheckListColumns.NOTE_ID;
+
+    // 打开笔记的查询，与 WorkingNote.loadNote 经由 NotesProvider 执行的查询相同，列与
+    // WorkingNote.NOTE_DATA_PROJECTION 相同，笔记 ID 为查询参数
+    public static final String NOTE_DATA_QUERY = "SELECT " + TABLE.NOTE + "."
+            + NoteColumns.PARENT_ID + "," + TABLE.NOTE + "." + NoteColumns.ALERTED_DATE + ","
+            + TABLE.NOTE + "." + NoteColumns.BG_COLOR_ID + "," + TABLE.NOTE + "."
+            + NoteColumns.WIDGET_ID + "," + TABLE.NOTE + "." + NoteColumns.WIDGET_TYPE + ","
+            + TABLE.NOTE + "." + NoteColumns.MODIFIED_DATE + "," + TABLE.NOTE + "."
+            + NoteColumns.VERSION + "," + TABLE.DATA + "." + DataColumns.ID + "," + TABLE.DATA
+            + "." + DataColumns.CONTENT + "," + TABLE.DATA + "." + DataColumns.MIME_TYPE + ","
+            + TABLE.DATA + "." + DataColumns.DATA1 + "," + TABLE.DATA + "." + TextNote.BODY_LENGTH
+            + " FROM " + NotesDatabaseHelper.NOTE_DATA_JOIN_TABLE + " WHERE " + TABLE.NOTE + "."
+            + NoteColumns.ID + "=?";
+
+    // 可以压缩的冷数据行，与 ContentCompressor.compressCold 的查询相同，
+    // 参数为修改时间上限、上一批最后的数据 ID 和行数
+    public static final String COLD_CONTENT_QUERY = "SELECT " + DataColumns.ID + ","
+            + DataColumns.CONTENT + " FROM " + TABLE.DATA + " WHERE "
+            + ContentCompressor.COLD_SELECTION + " ORDER BY " + DataColumns.ID + " LIMIT ?";
+
+    // 压缩的最小字符数，与 ContentCompressor.THRESHOLD_CHARS 相同
+    public static final int COMPRESS_THRESHOLD = ContentCompressor.THRESHOLD_CHARS;
+
+    private static final String[] WORDS = {
+            "meeting", "groceries", "call", "review", "draft", "travel", "budget", "notes",
+            "idea", "book", "project", "weekend", "reminder", "gift", "recipe", "plan"
+    };
+
+    private NotesDb() {
+    }
+
+    /**
+     * 创建一个空的笔记数据库，已有的文件会被删除。与应用相同，数据库使用 WAL 日志。
+     *
+     * @param file 数据库文件
+     * @return 数据库连接
+     */
+    public static Connection create(File file) throws SQLException {
+        delete(file);
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        Statement st = conn.createStatement();
+        try {
+            st.execute("PRAGMA journal_mode=WAL");
+            // Android 在 WAL 模式下默认使用 NORMAL 同步
+            st.execute("PRAGMA synchronous=NORMAL");
+
+            // 与 NotesDatabaseHelper.onCreate 的顺序相同
+            st.execute(NotesDatabaseHelper.CREATE_NOTE_TABLE_SQL);
+            st.execute(NotesDatabaseHelper.NOTE_DELETE_DATA_ON_DELETE_TRIGGER);
+            st.execute(NotesDatabaseHelper.FOLDER_DELETE_NOTES_ON_DELETE_TRIGGER);
+            st.execute(NotesDatabaseHelper.FOLDER_MOVE_NOTES_ON_TRASH_TRIGGER);
+            st.execute(NotesDatabaseHelper.NOTE_STAMP_TRASH_DATE_TRIGGER);
+            st.execute(NotesDatabaseHelper.CREATE_NOTE_ALERTED_DATE_INDEX_SQL);
+            st.execute(NotesDatabaseHelper.CREATE_NOTE_PARENT_ID_INDEX_SQL);
+            st.execute(NotesDatabaseHelper.CREATE_NOTE_TYPE_SNIPPET_INDEX_SQL);
+            for (int id : new int[] {
+                    Notes.ID_CALL_RECORD_FOLDER, Notes.ID_ROOT_FOLDER, Notes.ID_TEMPARAY_FOLDER,
+                    Notes.ID_TRASH_FOLER
+            }) {
+                st.execute("INSERT INTO " + TABLE.NOTE + "(" + NoteColumns.ID + ","
+                        + NoteColumns.TYPE + ") VALUES(" + id + "," + Notes.TYPE_SYSTEM + ")");
+            }
+
+            st.execute(NotesDatabaseHelper.CREATE_DATA_TABLE_SQL);
+            st.execute(NotesDatabaseHelper.DATA_UPDATE_NOTE_CONTENT_ON_INSERT_TRIGGER);
+            st.execute(NotesDatabaseHelper.DATA_UPDATE_NOTE_CONTENT_ON_UPDATE_TRIGGER);
+            st.execute(NotesDatabaseHelper.DATA_UPDATE_NOTE_CONTENT_ON_DELETE_TRIGGER);
+            st.execute(NotesDatabaseHelper.CREATE_DATA_NOTE_ID_INDEX_SQL);
+            st.execute(NotesDatabaseHelper.CREATE_CALL_NOTE_PHONE_KEY_INDEX_SQL);
+
+            st.execute(NotesDatabaseHelper.CREATE_CHECKLIST_TABLE_SQL);
+            st.execute(NotesDatabaseHelper.DATA_DELETE_CHECKLIST_ON_DELETE_TRIGGER);
+            st.execute(NotesDatabaseHelper.CREATE_CHECKLIST_NOTE_ID_INDEX_SQL);
+            st.execute(NotesDatabaseHelper.CREATE_CHECKLIST_DATA_ID_INDEX_SQL);
+        } finally {
+            st.close();
+        }
+        return conn;
+    }
+
+    /**
+     * 在一个事务中写入生成的文件夹和笔记，笔记 ID 从 1 开始连续编号，文件夹在笔记之后。
+     * 用户文件夹的笔记数量按实际子项写入。
+     *
+     * @param conn 数据库连接
+     * @param notes 笔记数
+     * @return 用户文件夹数
+     */
+    public static int populate(Connection conn, int notes) throws SQLException {
+        int folders = Math.max(1, notes / NOTES_PER_FOLDER);
+        int[] counts = new int[folders + 1];
+        long now = System.currentTimeMillis();
+
+        conn.setAutoCommit(false);
+        PreparedStatement note = conn.prepareStatement("INSERT INTO " + TABLE.NOTE + "("
+                + NoteColumns.ID + "," + NoteColumns.PARENT_ID + "," + NoteColumns.TYPE + ","
+                + NoteColumns.CREATED_DATE + "," + NoteColumns.MODIFIED_DATE + ","
+                + NoteColumns.NOTES_COUNT + "," + NoteColumns.SNIPPET + ","
+                + NoteColumns.GTASK_ID + "," + NoteColumns.SYNC_ID + ","
+                + NoteColumns.LOCAL_MODIFIED + ") VALUES(?,?,?,?,?,?,?,?,?,?)");
+        PreparedStatement data = conn.prepareStatement("INSERT INTO " + TABLE.DATA + "("
+                + DataColumns.MIME_TYPE + "," + DataColumns.NOTE_ID + "," + DataColumns.CONTENT
+                + "," + TextNote.MODE + ") VALUES('" + DataConstants.NOTE + "',?,?,?)");
+        PreparedStatement item = conn.prepareStatement("INSERT INTO " + TABLE.CHECKLIST + "("
+                + CheckListColumns.NOTE_ID + "," + CheckListColumns.DATA_ID + ","
+                + CheckListColumns.POSITION + "," + CheckListColumns.CHECKED + ","
+                + CheckListColumns.CONTENT + ") VALUES(?,?,?,?,?)");
+        // 清单的摘要由内容提供者在提交前重建，见 CheckListSnippets
+        PreparedStatement snippet = conn.prepareStatement("UPDATE " + TABLE.NOTE + " SET "
+                + NoteColumns.SNIPPET + "=? WHERE " + NoteColumns.ID + "=?");
+        try {
+            for (int i = 1; i <= notes; i++) {
+                int folder = i % (folders + 1);
+                long parentId = i % 100 == 0 ? Notes.ID_TRASH_FOLER
+                        : folder == 0 ? Notes.ID_ROOT_FOLDER : notes + folder;
+                if (parentId != Notes.ID_TRASH_FOLER) {
+                    counts[folder]++;
+                }
+                boolean synced = i % 10 != 0;
+                long modified = now - (notes - i) * 60000L;
+                note.setLong(1, i);
+                note.setLong(2, parentId);
+                note.setInt(3, Notes.TYPE_NOTE);
+                note.setLong(4, modified);
+                note.setLong(5, modified);
+                note.setInt(6, 0);
+                note.setString(7, "");
+                note.setString(8, synced ? gid(i) : "");
+                note.setLong(9, synced ? SYNC_ID : 0);
+                note.setInt(10, !synced || i % 7 == 0 ? 1 : 0);
+                note.executeUpdate();
+
+                boolean checkList = i % 10 == 5;
+                data.setLong(1, i);
+                data.setString(2, checkList ? "" : text(i));
+                data.setInt(3, checkList ? TextNote.MODE_CHECK_LIST : 0);
+                data.executeUpdate();
+                if (checkList) {
+                    StringBuilder items = new StringBuilder();
+                    for (int j = 0; j < CHECK_LIST_ITEMS; j++) {
+                        String content = WORDS[(i + j) % WORDS.length] + " " + j;
+                        item.setLong(1, i);
+                        // 每篇笔记一条数据，数据 ID 与笔记 ID 相同
+                        item.setLong(2, i);
+                        item.setInt(3, j);
+                        item.setInt(4, j % 2);
+                        item.setString(5, content);
+                        item.executeUpdate();
+                        items.append(j == 0 ? "" : "\n").append(content);
+                    }
+                    snippet.setString(1, items.toString());
+                    snippet.setLong(2, i);
+                    snippet.executeUpdate();
+                }
+            }
+
+            for (int f = 1; f <= folders; f++) {
+                note.setLong(1, notes + f);
+                note.setLong(2, Notes.ID_ROOT_FOLDER);
+                note.setInt(3, Notes.TYPE_FOLDER);
+                note.setLong(4, now);
+                note.setLong(5, now);
+                note.setInt(6, counts[f]);
+                note.setString(7, "Folder " + f);
+                note.setString(8, gid(notes + f));
+                note.setLong(9, SYNC_ID);
+                note.setInt(10, 0);
+                note.executeUpdate();
+            }
+            conn.commit();
+        } finally {
+            note.close();
+            data.close();
+            item.close();
+            snippet.close();
+            conn.setAutoCommit(true);
+        }
+        return folders;
+    }
+
+    /**
+     * 执行根文件夹的列表查询。
+     *
+     * @param conn 数据库连接
+     * @return 可以像游标一样逐行读取的结果
+     */
+    public static Rows queryList(Connection conn) throws SQLException {
+        return query(conn, LIST_QUERY, Notes.ID_ROOT_FOLDER);
+    }
+
+    /**
+     * 查询同步时回收站中的笔记。
+     */
+    public static Rows querySyncTrash(Connection conn) throws SQLException {
+        return query(conn, SYNC_TRASH_QUERY, Notes.TYPE_SYSTEM, Notes.ID_TRASH_FOLER);
+    }
+
+    /**
+     * 查询同步时不在回收站中的笔记。
+     */
+    public static Rows querySyncNotes(Connection conn) throws SQLException {
+        return query(conn, SYNC_NOTE_QUERY, Notes.TYPE_NOTE, Notes.ID_TRASH_FOLER);
+    }
+
+    /**
+     * 执行查询，把结果整行读入内存，相当于游标填充窗口。
+     *
+     * @param conn 数据库连接
+     * @param sql 查询语句
+     * @param args 查询参数
+     * @return 可以像游标一样逐行读取的结果
+     */
+    public static Rows query(Connection conn, String sql, Object... args) throws SQLException {
+        PreparedStatement st = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                st.setObject(i + 1, args[i]);
+            }
+            ResultSet rs = st.executeQuery();
+            try {
+                return new ResultSetRows(rs);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * 以逗号连接列名。
+     */
+    public static String join(String[] columns) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(columns[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成的笔记或文件夹已同步时的远端 ID。
+     */
+    public static String gid(long id) {
+        return "gid-" + id;
+    }
+
+    /**
+     * 生成的笔记正文，长度在几十到几百个字符之间，部分为多行。
+     */
+    public static String text(int i) {
+        StringBuilder sb = new StringBuilder();
+        int words = 8 + i % 48;
+        for (int j = 0; j < words; j++) {
+            sb.append(WORDS[(i * 31 + j) % WORDS.length]);
+            sb.append(j % 12 == 11 ? '\n' : ' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 删除数据库文件及其 WAL 文件。
+     */
+    public static void delete(File file) {
+        file.delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+    }
+}
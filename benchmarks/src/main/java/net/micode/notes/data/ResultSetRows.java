@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import net.micode.notes.core.Rows;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以 JDBC 查询结果实现 {@link Rows}。构造时把全部行读入内存，与游标填充窗口相同，
+ * 之后的读取不再访问数据库；整数列按 long、浮点列按 double、二进制列按字节数组保存，其余按字符串保存。
+ */
+public class ResultSetRows implements Rows {
+    private final List<Object[]> mRows = new ArrayList<Object[]>();
+    private int mPosition = -1;
+    private Object[] mRow;
+
+    public ResultSetRows(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        while (rs.next()) {
+            Object[] row = new Object[columns];
+            for (int i = 0; i < columns; i++) {
+                Object value = rs.getObject(i + 1);
+                if (value instanceof Double || value instanceof Float) {
+                    row[i] = ((Number) value).doubleValue();
+                } else if (value instanceof Number) {
+                    row[i] = ((Number) value).longValue();
+                } else if (value instanceof byte[] || value == null) {
+                    row[i] = value;
+                } else {
+                    row[i] = value.toString();
+                }
+            }
+            mRows.add(row);
+        }
+    }
+
+    public int getCount() {
+        return mRows.size();
+    }
+
+    public int getPosition() {
+        return mPosition;
+    }
+
+    public boolean moveToPosition(int position) {
+        if (position < 0 || position >= mRows.size()) {
+            mPosition = position < 0 ? -1 : mRows.size();
+            mRow = null;
+            return false;
+        }
+        mPosition = position;
+        mRow = mRows.get(position);
+        return true;
+    }
+
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    public boolean isNull(int column) {
+        return mRow[column] == null;
+    }
+
+    public int getType(int column) {
+        Object value = mRow[column];
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        } else if (value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        } else if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    public long getLong(int column) {
+        Object value = mRow[column];
+        if (value == null) {
+            return 0;
+        }
+        return value instanceof Number ? ((Number) value).longValue()
+                : Long.parseLong((String) value);
+    }
+
+    public double getDouble(int column) {
+        Object value = mRow[column];
+        if (value == null) {
+            return 0;
+        }
+        return value instanceof Number ? ((Number) value).doubleValue()
+                : Double.parseDouble((String) value);
+    }
+
+    public String getString(int column) {
+        Object value = mRow[column];
+        return value == null ? null : value.toString();
+    }
+
+    public byte[] getBlob(int column) {
+        return (byte[]) mRow[column];
+    }
+}
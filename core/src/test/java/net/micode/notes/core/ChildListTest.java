@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChildListTest {
+
+    private Object mParent;
+
+    private ChildList<Object, Item> mList;
+
+    static class Item implements ChildList.Child<Object, Item> {
+        private final String mGid;
+
+        Item mPriorSibling;
+
+        Object mParent;
+
+        Item(String gid) {
+            mGid = gid;
+        }
+
+        public void setPriorSibling(Item priorSibling) {
+            mPriorSibling = priorSibling;
+        }
+
+        public void setParent(Object parent) {
+            mParent = parent;
+        }
+
+        public String getGid() {
+            return mGid;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mParent = new Object();
+        mList = new ChildList<Object, Item>(mParent);
+    }
+
+    // 追加的子任务接在原来的最后一个子任务后面，而不是以自己为前一个兄弟
+    @Test
+    public void addLinksToPreviousLastChild() {
+        Item first = new Item("a");
+        Item second = new Item("b");
+        Item third = new Item("c");
+
+        assertTrue(mList.add(first));
+        assertTrue(mList.add(second));
+        assertTrue(mList.add(third));
+
+        assertNull(first.mPriorSibling);
+        assertSame(first, second.mPriorSibling);
+        assertSame(second, third.mPriorSibling);
+        assertSame(mParent, third.mParent);
+    }
+
+    // 移动是先移除再插入，移动后的子任务仍属于原来的任务列表
+    @Test
+    public void moveKeepsParent() {
+        Item first = new Item("a");
+        Item second = new Item("b");
+        Item third = new Item("c");
+        mList.add(first);
+        mList.add(second);
+        mList.add(third);
+
+        assertTrue(mList.move(third, 0));
+
+        assertSame(mParent, third.mParent);
+        assertNull(third.mPriorSibling);
+        assertSame(third, first.mPriorSibling);
+        assertSame(second, mList.get(2));
+        assertSame(first, second.mPriorSibling);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+/**
+ * 清单的旧文本格式：每个条目一行，以勾选标记 {@link #TAG_CHECKED} 或 {@link #TAG_UNCHECKED}
+ * 加一个空格开头。同步、导出、分享和导入都使用这种格式。
+ * <p>
+ * 只依赖 Java 标准库，可以在普通 JVM 上测试和测量。
+ */
+public final class CheckListText {
+    // 已勾选的条目
+    public static final String TAG_CHECKED = "\u221A";
+    // 未勾选的条目
+    public static final String TAG_UNCHECKED = "\u25A1";
+
+    /**
+     * 接收解析出的清单条目。
+     */
+    public interface ItemHandler {
+        void onItem(boolean checked, String text);
+    }
+
+    private CheckListText() {
+    }
+
+    /**
+     * 解析清单文本，依次回调每个非空条目，空行和只有勾选标记的行会被忽略。
+     * 没有勾选标记的行作为未勾选的条目。
+     *
+     * @param text 清单文本，可以为 null
+     * @param handler 条目的接收方
+     */
+    public static void parse(String text, ItemHandler handler) {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+        for (String line : text.split("\n")) {
+            if (line.length() == 0) {
+                continue;
+            }
+            boolean checked = false;
+            if (line.startsWith(TAG_CHECKED)) {
+                checked = true;
+                line = line.substring(TAG_CHECKED.length()).trim();
+            } else if (line.startsWith(TAG_UNCHECKED)) {
+                line = line.substring(TAG_UNCHECKED.length()).trim();
+            }
+            if (line.length() > 0) {
+                handler.onItem(checked, line);
+            }
+        }
+    }
+
+    /**
+     * 追加一个条目，条目中的换行会替换为空格。
+     *
+     * @param sb 输出
+     * @param checked 是否勾选
+     * @param text 条目内容
+     * @return 传入的 sb
+     */
+    public static StringBuilder appendItem(StringBuilder sb, boolean checked, String text) {
+        return sb.append(checked ? TAG_CHECKED : TAG_UNCHECKED).append(' ')
+                .append(text.replace('\n', ' ')).append('\n');
+    }
+
+    /**
+     * 判断文本的每个非空行是否都带有勾选标记，且至少有一行。
+     *
+     * @param text 文本
+     * @return 是清单文本时返回 true
+     */
+    public static boolean isCheckListText(String text) {
+        boolean hasItem = false;
+        for (String line : text.split("\n")) {
+            if (line.length() == 0) {
+                continue;
+            }
+            if (!line.startsWith(TAG_CHECKED) && !line.startsWith(TAG_UNCHECKED)) {
+                return false;
+            }
+            hasItem = true;
+        }
+        return hasItem;
+    }
+
+    /**
+     * 去掉文本中的所有勾选标记。
+     *
+     * @param text 文本
+     * @return 去掉标记后的文本，不含标记时返回原对象
+     */
+    public static String stripTags(String text) {
+        if (text.indexOf(TAG_CHECKED) < 0 && text.indexOf(TAG_UNCHECKED) < 0) {
+            return text;
+        }
+        return text.replace(TAG_CHECKED, "").replace(TAG_UNCHECKED, "");
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import java.util.ArrayList;
+
+/**
+ * 任务列表中有序的子任务。每个子任务记录它的前一个兄弟和所属的任务列表，远端的创建和移动动作
+ * 用它们确定位置，增删和移动子任务时同时维护受影响的子任务的前一个兄弟。
+ * <p>
+ * 只依赖 Java 标准库，子任务通过 {@link Child} 提供，可以在普通 JVM 上测试和测量。
+ *
+ * @param <P> 任务列表的类型
+ * @param <T> 子任务的类型
+ */
+public class ChildList<P, T extends ChildList.Child<P, T>> {
+
+    /**
+     * 列表中的子任务。
+     */
+    public interface Child<P, T> {
+        void setPriorSibling(T priorSibling);
+
+        void setParent(P parent);
+
+        String getGid();
+    }
+
+    private final P mParent;
+
+    private final ArrayList<T> mChildren;
+
+    /**
+     * @param parent 子任务所属的任务列表
+     */
+    public ChildList(P parent) {
+        mParent = parent;
+        mChildren = new ArrayList<T>();
+    }
+
+    public int size() {
+        return mChildren.size();
+    }
+
+    /**
+     * 把子任务添加到末尾，前一个兄弟为原来的最后一个子任务。
+     *
+     * @param child 子任务
+     * @return 是否添加了子任务，子任务为 null 或已在列表中时返回 false
+     */
+    public boolean add(T child) {
+        if (child == null || mChildren.contains(child)) {
+            return false;
+        }
+        T prior = mChildren.isEmpty() ? null : mChildren.get(mChildren.size() - 1);
+        mChildren.add(child);
+        child.setPriorSibling(prior);
+        child.setParent(mParent);
+        return true;
+    }
+
+    /**
+     * 把子任务插入到指定位置并设置它所属的任务列表，同时更新它后面的子任务的前一个兄弟。
+     * 子任务为 null 或已在列表中时不做改变。
+     *
+     * @param child 子任务
+     * @param index 插入的位置
+     * @return 位置是否有效
+     */
+    public boolean add(T child, int index) {
+        if (index < 0 || index > mChildren.size()) {
+            return false;
+        }
+        if (child != null && !mChildren.contains(child)) {
+            mChildren.add(index, child);
+            child.setPriorSibling(index == 0 ? null : mChildren.get(index - 1));
+            child.setParent(mParent);
+            if (index != mChildren.size() - 1) {
+                mChildren.get(index + 1).setPriorSibling(child);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 移除子任务，被移除的子任务没有前一个兄弟和所属的任务列表，原来在它后面的子任务
+     * 接到它的前一个兄弟后面。
+     *
+     * @param child 子任务
+     * @return 是否移除了子任务
+     */
+    public boolean remove(T child) {
+        int index = mChildren.indexOf(child);
+        if (index == -1) {
+            return false;
+        }
+        mChildren.remove(index);
+        child.setPriorSibling(null);
+        child.setParent(null);
+        if (index != mChildren.size()) {
+            mChildren.get(index).setPriorSibling(index == 0 ? null : mChildren.get(index - 1));
+        }
+        return true;
+    }
+
+    /**
+     * 把列表中的子任务移动到指定位置。
+     *
+     * @param child 子任务
+     * @param index 移动后的位置
+     * @return 是否移动成功，位置无效或子任务不在列表中时返回 false
+     */
+    public boolean move(T child, int index) {
+        if (index < 0 || index >= mChildren.size()) {
+            return false;
+        }
+        int pos = mChildren.indexOf(child);
+        if (pos == -1) {
+            return false;
+        }
+        if (pos == index) {
+            return true;
+        }
+        return remove(child) && add(child, index);
+    }
+
+    /**
+     * 按远端 ID 查找子任务。
+     *
+     * @param gid 远端 ID
+     * @return 子任务，没有时返回 null
+     */
+    public T findByGid(String gid) {
+        for (T child : mChildren) {
+            if (child.getGid().equals(gid)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    public int indexOf(T child) {
+        return mChildren.indexOf(child);
+    }
+
+    /**
+     * 按位置取子任务。
+     *
+     * @param index 位置
+     * @return 子任务，位置无效时返回 null
+     */
+    public T get(int index) {
+        if (index < 0 || index >= mChildren.size()) {
+            return null;
+        }
+        return mChildren.get(index);
+    }
+
+    /**
+     * 子任务列表本身，按顺序排列。
+     */
+    public ArrayList<T> asList() {
+        return mChildren;
+    }
+}
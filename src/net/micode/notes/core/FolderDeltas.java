@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一次事务中各文件夹笔记数量的增减。变化先累加在这里，提交前每个文件夹只写入一次，
+ * 写入由 {@link Writer} 完成。
+ */
+public class FolderDeltas {
+    /**
+     * 写入一个文件夹的数量变化。
+     */
+    public interface Writer<E extends Exception> {
+        void write(long folderId, int delta) throws E;
+    }
+
+    private final HashMap<Long, Integer> mDeltas = new HashMap<Long, Integer>();
+
+    /**
+     * 累加某个文件夹的数量变化。
+     *
+     * @param folderId 文件夹 ID
+     * @param delta 数量变化
+     */
+    public void add(long folderId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        Integer old = mDeltas.get(folderId);
+        int sum = (old == null ? 0 : old) + delta;
+        if (sum == 0) {
+            mDeltas.remove(folderId);
+        } else {
+            mDeltas.put(folderId, sum);
+        }
+    }
+
+    /**
+     * 合并另一组数量变化。
+     *
+     * @param other 另一组数量变化
+     */
+    public void addAll(FolderDeltas other) {
+        for (Map.Entry<Long, Integer> entry : other.mDeltas.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public boolean isEmpty() {
+        return mDeltas.isEmpty();
+    }
+
+    /**
+     * 逐个文件夹写入累加的变化并清空。
+     *
+     * @param writer 写入一个文件夹的变化
+     */
+    public <E extends Exception> void apply(Writer<E> writer) throws E {
+        for (Map.Entry<Long, Integer> entry : mDeltas.entrySet()) {
+            writer.write(entry.getKey(), entry.getValue());
+        }
+        mDeltas.clear();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 按 application/x-www-form-urlencoded 编码写入的字节，与 URLEncoder 的结果一致。
+ */
+public class FormEncodingStream extends FilterOutputStream {
+    private static final int ENCODED_CAPACITY = 1024;
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    // 编码后的字节先写入这里，再整块写出
+    private final byte[] mEncoded = new byte[ENCODED_CAPACITY];
+    private final byte[] mByte = new byte[1];
+
+    public FormEncodingStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mByte[0] = (byte) b;
+        write(mByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int n = 0;
+        for (int i = off; i < off + len; i++) {
+            if (n > mEncoded.length - 3) {
+                out.write(mEncoded, 0, n);
+                n = 0;
+            }
+            int c = b[i] & 0xff;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                mEncoded[n++] = (byte) c;
+            } else if (c == ' ') {
+                mEncoded[n++] = '+';
+            } else {
+                mEncoded[n++] = '%';
+                mEncoded[n++] = HEX[c >> 4];
+                mEncoded[n++] = HEX[c & 0x0f];
+            }
+        }
+        out.write(mEncoded, 0, n);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 读取 Google 任务服务的响应：解压并读出响应正文，从登录和获取任务列表的页面中取出
+ * {@code _setup(...)} 的参数。与 HTTP 客户端无关，GTaskClient 和普通 JVM 上的负载测试共用。
+ */
+public final class GTaskResponse {
+    // 页面中 JSON 的起止标记
+    private static final String JS_BEGIN = "_setup(";
+    private static final String JS_END = ")}</script>";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private GTaskResponse() {
+    }
+
+    /**
+     * 读出响应正文，按内容编码解压，各行直接拼接。
+     *
+     * @param content 响应实体的内容，读完后关闭
+     * @param contentEncoding 响应的内容编码，没有时为 null
+     * @return 响应正文
+     * @throws IOException 读取失败
+     */
+    public static String read(InputStream content, String contentEncoding) throws IOException {
+        InputStream input = content;
+        if (contentEncoding != null && contentEncoding.equalsIgnoreCase("gzip")) {
+            input = new GZIPInputStream(content);
+        } else if (contentEncoding != null && contentEncoding.equalsIgnoreCase("deflate")) {
+            Inflater inflater = new Inflater(true);
+            input = new InflaterInputStream(content, inflater);
+        }
+
+        try {
+            // Android 的默认字符集就是 UTF-8，这里写明，在普通 JVM 上结果相同
+            BufferedReader br = new BufferedReader(new InputStreamReader(input, UTF_8));
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                String buff = br.readLine();
+                if (buff == null) {
+                    PerfStats.add(PerfStats.SYNC_RESPONSE_CHARS, sb.length());
+                    return sb.toString();
+                }
+                sb.append(buff);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * 取出页面中 {@code _setup(} 与最后一个 {@code )}</script>} 之间的 JSON。
+     *
+     * @param page 页面内容
+     * @return 其中的 JSON 对象，含客户端版本号 v 和任务列表 t
+     * @throws JSONException 页面中没有可解析的 JSON
+     */
+    public static JSONObject parseSetup(String page) throws JSONException {
+        int begin = page.indexOf(JS_BEGIN);
+        int end = page.lastIndexOf(JS_END);
+        String js = null;
+        if (begin != -1 && end != -1 && begin < end) {
+            js = page.substring(begin + JS_BEGIN.length(), end);
+        }
+        return new JSONObject(js);
+    }
+}
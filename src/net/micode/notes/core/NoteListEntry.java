@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.core;
+
+/**
+ * 笔记列表中的一项：从列表查询结果的当前行读取各列，去掉摘要中的勾选标记，
+ * 并根据前后各行判断该项在列表中的位置，用于选择背景。
+ * <p>
+ * 查询结果的列按下面的 COLUMN_* 排列，与 NoteItemData.PROJECTION 相同。
+ */
+public class NoteListEntry {
+    // 列表查询结果中各列的下标
+    public static final int COLUMN_ID = 0;
+    public static final int COLUMN_ALERTED_DATE = 1;
+    public static final int COLUMN_BG_COLOR_ID = 2;
+    public static final int COLUMN_CREATED_DATE = 3;
+    public static final int COLUMN_HAS_ATTACHMENT = 4;
+    public static final int COLUMN_MODIFIED_DATE = 5;
+    public static final int COLUMN_NOTES_COUNT = 6;
+    public static final int COLUMN_PARENT_ID = 7;
+    public static final int COLUMN_SNIPPET = 8;
+    public static final int COLUMN_TYPE = 9;
+    public static final int COLUMN_WIDGET_ID = 10;
+    public static final int COLUMN_WIDGET_TYPE = 11;
+
+    private long mId;
+
+    private long mAlertDate;
+
+    private int mBgColorId;
+
+    private long mCreatedDate;
+
+    private boolean mHasAttachment;
+
+    private long mModifiedDate;
+
+    private int mNotesCount;
+
+    private long mParentId;
+
+    private String mSnippet;
+
+    private int mType;
+
+    private int mWidgetId;
+
+    private int mWidgetType;
+
+    private boolean mIsLastItem;
+
+    private boolean mIsFirstItem;
+
+    private boolean mIsOnlyOneItem;
+
+    // 紧跟在文件夹后的笔记，且是列表中最后一项
+    private boolean mIsOneNoteFollowingFolder;
+
+    // 紧跟在文件夹后的笔记，后面还有其他项
+    private boolean mIsMultiNotesFollowingFolder;
+
+    /**
+     * 读取查询结果的当前行，读取后仍停在该行。
+     *
+     * @param rows 列表查询的结果，已移动到要读取的行
+     */
+    public NoteListEntry(Rows rows) {
+        mId = rows.getLong(COLUMN_ID);
+        mAlertDate = rows.getLong(COLUMN_ALERTED_DATE);
+        mBgColorId = rows.getInt(COLUMN_BG_COLOR_ID);
+        mCreatedDate = rows.getLong(COLUMN_CREATED_DATE);
+        mHasAttachment = rows.getInt(COLUMN_HAS_ATTACHMENT) > 0;
+        mModifiedDate = rows.getLong(COLUMN_MODIFIED_DATE);
+        mNotesCount = rows.getInt(COLUMN_NOTES_COUNT);
+        mParentId = rows.getLong(COLUMN_PARENT_ID);
+        // 清单条目生成的摘要不带勾选标记，只有旧格式的正文才需要去除标记
+        mSnippet = CheckListText.stripTags(rows.getString(COLUMN_SNIPPET));
+        mType = rows.getInt(COLUMN_TYPE);
+        mWidgetId = rows.getInt(COLUMN_WIDGET_ID);
+        mWidgetType = rows.getInt(COLUMN_WIDGET_TYPE);
+        checkPosition(rows);
+    }
+
+    private void checkPosition(Rows rows) {
+        int position = rows.getPosition();
+        int count = rows.getCount();
+        mIsLastItem = position == count - 1;
+        mIsFirstItem = position == 0;
+        mIsOnlyOneItem = count == 1;
+        mIsMultiNotesFollowingFolder = false;
+        mIsOneNoteFollowingFolder = false;
+
+        if (mType == NoteRecord.TYPE_NOTE && !mIsFirstItem) {
+            // 前一行是文件夹时，按后面是否还有项选择背景
+            if (rows.moveToPosition(position - 1)) {
+                int prevType = rows.getInt(COLUMN_TYPE);
+                if (prevType == NoteRecord.TYPE_FOLDER || prevType == NoteRecord.TYPE_SYSTEM) {
+                    if (count > position + 1) {
+                        mIsMultiNotesFollowingFolder = true;
+                    } else {
+                        mIsOneNoteFollowingFolder = true;
+                    }
+                }
+                if (!rows.moveToPosition(position)) {
+                    throw new IllegalStateException("cursor move to previous but can't move back");
+                }
+            }
+        }
+    }
+
+    public boolean isOneFollowingFolder() {
+        return mIsOneNoteFollowingFolder;
+    }
+
+    public boolean isMultiFollowingFolder() {
+        return mIsMultiNotesFollowingFolder;
+    }
+
+    public boolean isLast() {
+        return mIsLastItem;
+    }
+
+    public boolean isFirst() {
+        return mIsFirstItem;
+    }
+
+    public boolean isSingle() {
+        return mIsOnlyOneItem;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public long getAlertDate() {
+        return mAlertDate;
+    }
+
+    public long getCreatedDate() {
+        return mCreatedDate;
+    }
+
+    public boolean hasAttachment() {
+        return mHasAttachment;
+    }
+
+    public long getModifiedDate() {
+        return mModifiedDate;
+    }
+
+    public int getBgColorId() {
+        return mBgColorId;
+    }
+
+    public long getParentId() {
+        return mParentId;
+    }
+
+    public int getNotesCount() {
+        return mNotesCount;
+    }
+
+    public long getFolderId() {
+        return mParentId;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public int getWidgetType() {
+        return mWidgetType;
+    }
+
+    public int getWidgetId() {
+        return mWidgetId;
+    }
+
+    public String getSnippet() {
+        return mSnippet;
+    }
+
+    public boolean hasAlert() {
+        return mAlertDate > 0;
+    }
+}
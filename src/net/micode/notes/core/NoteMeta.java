@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 同步元数据的编码。元数据保存笔记行和它的数据行，作为一个任务的备注上传。
+ * <p>
+ * 从第 {@link #VERSION} 版起采用紧凑编码：笔记正文已经作为任务名称上传，
+ * 不再在元数据中重复；摘要与正文相同时省略；取默认值的字段省略，读取时按默认值还原。
+ * 键名与旧版本相同，旧版本的元数据仍可正常读取。
+ * <p>
+ * 只依赖 Java 标准库和 org.json，可以在普通 JVM 上测试和测量。
+ */
+public final class NoteMeta {
+    // 元数据中的键，与 GTaskStringUtils.META_HEAD_* 相同
+    public static final String HEAD_GTASK_ID = "meta_gid";
+    public static final String HEAD_NOTE = "meta_note";
+    public static final String HEAD_DATA = "meta_data";
+    public static final String HEAD_VERSION = "meta_ver";
+
+    // 元数据的编码版本
+    public static final int VERSION = 2;
+
+    // 数据表的列名，与 Notes.DataColumns 相同
+    private static final String MIME_TYPE = "mime_type";
+    private static final String CONTENT = "content";
+    private static final String DATA1 = "data1";
+    private static final String DATA3 = "data3";
+
+    // 文本笔记数据的 MIME 类型，与 Notes.DataConstants.NOTE 相同
+    private static final String MIME_TYPE_NOTE = "vnd.android.cursor.item/text_note";
+
+    private NoteMeta() {
+    }
+
+    /**
+     * 压缩元数据，并写入关联的 GID 和编码版本。
+     *
+     * @param gid 关联的任务的 GID
+     * @param metaInfo 元数据，会被修改
+     * @throws JSONException 写入 JSON 失败
+     */
+    public static void pack(String gid, JSONObject metaInfo) throws JSONException {
+        compact(metaInfo);
+        metaInfo.put(HEAD_GTASK_ID, gid);
+        metaInfo.put(HEAD_VERSION, VERSION);
+    }
+
+    /**
+     * 压缩笔记的元数据：第一条文本数据的内容与任务名称相同，予以省略；
+     * 摘要与该内容相同时省略；其余取默认值的字段省略。
+     * 读取时由 Task.getLocalJSONFromContent 和 {@link NoteRecord} 的默认值还原。
+     *
+     * @param metaInfo 元数据，会被修改
+     * @throws JSONException 数据行格式错误
+     */
+    public static void compact(JSONObject metaInfo) throws JSONException {
+        JSONObject note = metaInfo.optJSONObject(HEAD_NOTE);
+        JSONArray dataArray = metaInfo.optJSONArray(HEAD_DATA);
+        if (note == null || dataArray == null) {
+            return;
+        }
+
+        String content = null;
+        for (int i = 0; i < dataArray.length(); i++) {
+            JSONObject data = dataArray.getJSONObject(i);
+            if (content == null && MIME_TYPE_NOTE.equals(data.optString(MIME_TYPE))) {
+                content = data.optString(CONTENT);
+                data.remove(CONTENT);
+            }
+            removeIfEquals(data, DATA1, 0);
+            if (data.optString(DATA3).length() == 0) {
+                data.remove(DATA3);
+            }
+        }
+
+        if (content != null && content.equals(note.optString(NoteRecord.SNIPPET))) {
+            note.remove(NoteRecord.SNIPPET);
+        }
+        removeIfEquals(note, NoteRecord.ALERTED_DATE, 0);
+        removeIfEquals(note, NoteRecord.HAS_ATTACHMENT, 0);
+        removeIfEquals(note, NoteRecord.WIDGET_ID, NoteRecord.INVALID_WIDGET_ID);
+        removeIfEquals(note, NoteRecord.WIDGET_TYPE, NoteRecord.INVALID_WIDGET_TYPE);
+        removeIfEquals(note, NoteRecord.ORIGIN_PARENT_ID, 0);
+    }
+
+    /**
+     * 解析远端任务备注中的元数据。
+     *
+     * @param notes 任务的备注
+     * @return 元数据
+     * @throws JSONException 备注不是 JSON 对象
+     */
+    public static JSONObject parse(String notes) throws JSONException {
+        return new JSONObject(notes.trim());
+    }
+
+    private static void removeIfEquals(JSONObject js, String name, long value) {
+        if (js.has(name) && js.optLong(name, value + 1) == value) {
+            js.remove(name);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * 同步元数据中笔记行的 JSON 映射。JSON 的键与笔记表的列名相同，
+ * 笔记保存全部字段，文件夹和系统文件夹只保存 ID、类型和摘要。
+ * <p>
+ * 只依赖 Java 标准库和 org.json，可以在普通 JVM 上测试和测量。
+ */
+public class NoteRecord {
+    // 笔记表的列名，与 Notes.NoteColumns 相同
+    public static final String ID = "_id";
+    public static final String ALERTED_DATE = "alert_date";
+    public static final String BG_COLOR_ID = "bg_color_id";
+    public static final String CREATED_DATE = "created_date";
+    public static final String HAS_ATTACHMENT = "has_attachment";
+    public static final String MODIFIED_DATE = "modified_date";
+    public static final String PARENT_ID = "parent_id";
+    public static final String SNIPPET = "snippet";
+    public static final String TYPE = "type";
+    public static final String WIDGET_ID = "widget_id";
+    public static final String WIDGET_TYPE = "widget_type";
+    public static final String ORIGIN_PARENT_ID = "origin_parent_id";
+
+    // 笔记类型，与 Notes.TYPE_* 相同
+    public static final int TYPE_NOTE = 0;
+    public static final int TYPE_FOLDER = 1;
+    public static final int TYPE_SYSTEM = 2;
+
+    // 尚未插入数据库的笔记的 ID
+    public static final long INVALID_ID = -99999;
+
+    // 没有小部件时的 ID 和类型，与 AppWidgetManager.INVALID_APPWIDGET_ID 和
+    // Notes.TYPE_WIDGET_INVALIDE 相同
+    public static final int INVALID_WIDGET_ID = 0;
+    public static final int INVALID_WIDGET_TYPE = -1;
+
+    private long mId;
+
+    private long mAlertDate;
+
+    private int mBgColorId;
+
+    private long mCreatedDate;
+
+    private int mHasAttachment;
+
+    private long mModifiedDate;
+
+    private long mParentId;
+
+    private String mSnippet;
+
+    private int mType;
+
+    private int mWidgetId;
+
+    private int mWidgetType;
+
+    private long mOriginParent;
+
+    /**
+     * 创建一个新笔记的记录，字段取新建笔记的默认值。
+     *
+     * @param bgColorId 默认背景颜色 ID
+     */
+    public NoteRecord(int bgColorId) {
+        mId = INVALID_ID;
+        mAlertDate = 0;
+        mBgColorId = bgColorId;
+        mCreatedDate = System.currentTimeMillis();
+        mHasAttachment = 0;
+        mModifiedDate = System.currentTimeMillis();
+        mParentId = 0;
+        mSnippet = "";
+        mType = TYPE_NOTE;
+        mWidgetId = INVALID_WIDGET_ID;
+        mWidgetType = INVALID_WIDGET_TYPE;
+        mOriginParent = 0;
+    }
+
+    /**
+     * 用 JSON 中的笔记更新记录，JSON 中缺少的字段取默认值。
+     * 文件夹只更新摘要和类型，系统文件夹和未知类型不能更新。
+     *
+     * @param note JSON 中的笔记
+     * @param isCreate 是否为新建的笔记，新建时所有字段都记为变化
+     * @param defaultBgId JSON 中没有背景颜色时使用的背景颜色 ID
+     * @param diff 收集发生变化的字段，键为列名，值为 Integer、Long 或 String
+     * @return 是否更新了记录，系统文件夹和未知类型返回 false
+     * @throws JSONException JSON 中的类型字段缺失或格式错误
+     */
+    public boolean applyJson(JSONObject note, boolean isCreate, int defaultBgId,
+            Map<String, Object> diff) throws JSONException {
+        int noteType = note.getInt(TYPE);
+        if (noteType != TYPE_NOTE && noteType != TYPE_FOLDER) {
+            return false;
+        }
+
+        if (noteType == TYPE_NOTE) {
+            long id = note.has(ID) ? note.getLong(ID) : INVALID_ID;
+            if (isCreate || mId != id) {
+                diff.put(ID, id);
+            }
+            mId = id;
+
+            long alertDate = note.has(ALERTED_DATE) ? note.getLong(ALERTED_DATE) : 0;
+            if (isCreate || mAlertDate != alertDate) {
+                diff.put(ALERTED_DATE, alertDate);
+            }
+            mAlertDate = alertDate;
+
+            int bgColorId = note.has(BG_COLOR_ID) ? note.getInt(BG_COLOR_ID) : defaultBgId;
+            if (isCreate || mBgColorId != bgColorId) {
+                diff.put(BG_COLOR_ID, bgColorId);
+            }
+            mBgColorId = bgColorId;
+
+            long createDate = note.has(CREATED_DATE) ? note.getLong(CREATED_DATE)
+                    : System.currentTimeMillis();
+            if (isCreate || mCreatedDate != createDate) {
+                diff.put(CREATED_DATE, createDate);
+            }
+            mCreatedDate = createDate;
+
+            int hasAttachment = note.has(HAS_ATTACHMENT) ? note.getInt(HAS_ATTACHMENT) : 0;
+            if (isCreate || mHasAttachment != hasAttachment) {
+                diff.put(HAS_ATTACHMENT, hasAttachment);
+            }
+            mHasAttachment = hasAttachment;
+
+            long modifiedDate = note.has(MODIFIED_DATE) ? note.getLong(MODIFIED_DATE)
+                    : System.currentTimeMillis();
+            if (isCreate || mModifiedDate != modifiedDate) {
+                diff.put(MODIFIED_DATE, modifiedDate);
+            }
+            mModifiedDate = modifiedDate;
+
+            long parentId = note.has(PARENT_ID) ? note.getLong(PARENT_ID) : 0;
+            if (isCreate || mParentId != parentId) {
+                diff.put(PARENT_ID, parentId);
+            }
+            mParentId = parentId;
+        }
+
+        // 文件夹只能更新摘要和类型
+        String snippet = note.has(SNIPPET) ? note.getString(SNIPPET) : "";
+        if (isCreate || !mSnippet.equals(snippet)) {
+            diff.put(SNIPPET, snippet);
+        }
+        mSnippet = snippet;
+
+        if (isCreate || mType != noteType) {
+            diff.put(TYPE, noteType);
+        }
+        mType = noteType;
+
+        if (noteType == TYPE_NOTE) {
+            int widgetId = note.has(WIDGET_ID) ? note.getInt(WIDGET_ID) : INVALID_WIDGET_ID;
+            if (isCreate || mWidgetId != widgetId) {
+                diff.put(WIDGET_ID, widgetId);
+            }
+            mWidgetId = widgetId;
+
+            int widgetType = note.has(WIDGET_TYPE) ? note.getInt(WIDGET_TYPE)
+                    : INVALID_WIDGET_TYPE;
+            if (isCreate || mWidgetType != widgetType) {
+                diff.put(WIDGET_TYPE, widgetType);
+            }
+            mWidgetType = widgetType;
+
+            long originParent = note.has(ORIGIN_PARENT_ID) ? note.getLong(ORIGIN_PARENT_ID) : 0;
+            if (isCreate || mOriginParent != originParent) {
+                diff.put(ORIGIN_PARENT_ID, originParent);
+            }
+            mOriginParent = originParent;
+        }
+        return true;
+    }
+
+    /**
+     * 把记录转换为 JSON 中的笔记。
+     *
+     * @return JSON 中的笔记，类型未知时返回 null
+     * @throws JSONException 写入 JSON 失败
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject note = new JSONObject();
+        if (mType == TYPE_NOTE) {
+            note.put(ID, mId);
+            note.put(ALERTED_DATE, mAlertDate);
+            note.put(BG_COLOR_ID, mBgColorId);
+            note.put(CREATED_DATE, mCreatedDate);
+            note.put(HAS_ATTACHMENT, mHasAttachment);
+            note.put(MODIFIED_DATE, mModifiedDate);
+            note.put(PARENT_ID, mParentId);
+            note.put(SNIPPET, mSnippet);
+            note.put(TYPE, mType);
+            note.put(WIDGET_ID, mWidgetId);
+            note.put(WIDGET_TYPE, mWidgetType);
+            note.put(ORIGIN_PARENT_ID, mOriginParent);
+            return note;
+        } else if (mType == TYPE_FOLDER || mType == TYPE_SYSTEM) {
+            note.put(ID, mId);
+            note.put(TYPE, mType);
+            note.put(SNIPPET, mSnippet);
+            return note;
+        }
+        return null;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public void setId(long id) {
+        mId = id;
+    }
+
+    public long getAlertDate() {
+        return mAlertDate;
+    }
+
+    public void setAlertDate(long alertDate) {
+        mAlertDate = alertDate;
+    }
+
+    public int getBgColorId() {
+        return mBgColorId;
+    }
+
+    public void setBgColorId(int bgColorId) {
+        mBgColorId = bgColorId;
+    }
+
+    public long getCreatedDate() {
+        return mCreatedDate;
+    }
+
+    public void setCreatedDate(long createdDate) {
+        mCreatedDate = createdDate;
+    }
+
+    public int getHasAttachment() {
+        return mHasAttachment;
+    }
+
+    public void setHasAttachment(int hasAttachment) {
+        mHasAttachment = hasAttachment;
+    }
+
+    public long getModifiedDate() {
+        return mModifiedDate;
+    }
+
+    public void setModifiedDate(long modifiedDate) {
+        mModifiedDate = modifiedDate;
+    }
+
+    public long getParentId() {
+        return mParentId;
+    }
+
+    public void setParentId(long parentId) {
+        mParentId = parentId;
+    }
+
+    public String getSnippet() {
+        return mSnippet;
+    }
+
+    public void setSnippet(String snippet) {
+        mSnippet = snippet;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public void setType(int type) {
+        mType = type;
+    }
+
+    public int getWidgetId() {
+        return mWidgetId;
+    }
+
+    public void setWidgetId(int widgetId) {
+        mWidgetId = widgetId;
+    }
+
+    public int getWidgetType() {
+        return mWidgetType;
+    }
+
+    public void setWidgetType(int widgetType) {
+        mWidgetType = widgetType;
+    }
+
+    public long getOriginParent() {
+        return mOriginParent;
+    }
+
+    public void setOriginParent(long originParent) {
+        mOriginParent = originParent;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 进程内的性能计数：内容提供者的读写、列表项绑定、同步、导出和后台执行器排队等待等热点路径的
+ * 次数、累计值和最大值。
+ * <p>
+ * 耗时以微秒计，其他计数（如请求字节数）以各自的单位计。结果通过 {@link #toJson} 以 JSON 输出，
+ * 由内容提供者的 get_perf_stats 调用导出，便于在不同版本之间比较。只依赖 Java 标准库。
+ */
+public final class PerfStats {
+    public static final String PROVIDER_QUERY = "provider.query";
+    public static final String PROVIDER_INSERT = "provider.insert";
+    public static final String PROVIDER_UPDATE = "provider.update";
+    public static final String PROVIDER_DELETE = "provider.delete";
+    public static final String LIST_FILL = "list.fill";
+    public static final String LIST_BIND = "list.bind";
+    public static final String SYNC_INIT_LIST = "sync.init_list";
+    public static final String SYNC_CONTENT = "sync.content";
+    public static final String SYNC_REQUEST = "sync.request";
+    public static final String SYNC_REQUEST_BYTES = "sync.request_bytes";
+    public static final String SYNC_RESPONSE_CHARS = "sync.response_chars";
+    public static final String EXPORT_TEXT = "export.text";
+    public static final String EXECUTOR_WAIT_INTERACTIVE = "executor.wait.interactive";
+    public static final String EXECUTOR_WAIT_WIDGET = "executor.wait.widget";
+    public static final String EXECUTOR_WAIT_BACKGROUND = "executor.wait.background";
+
+    private static final Map<String, Entry> sEntries = new TreeMap<String, Entry>();
+
+    private static class Entry {
+        long mCount;
+        long mTotal;
+        long mMax;
+    }
+
+    private PerfStats() {
+    }
+
+    /**
+     * 开始计时。
+     *
+     * @return 传给 {@link #record} 的起始时间
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一次从 start 开始的耗时。
+     *
+     * @param name 计数名称
+     * @param start {@link #start} 的返回值
+     */
+    public static void record(String name, long start) {
+        add(name, (System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * 记录一次取值。
+     *
+     * @param name 计数名称
+     * @param value 取值
+     */
+    public static synchronized void add(String name, long value) {
+        Entry entry = sEntries.get(name);
+        if (entry == null) {
+            entry = new Entry();
+            sEntries.put(name, entry);
+        }
+        entry.mCount++;
+        entry.mTotal += value;
+        if (value > entry.mMax) {
+            entry.mMax = value;
+        }
+    }
+
+    /**
+     * 清空所有计数。
+     */
+    public static synchronized void reset() {
+        sEntries.clear();
+    }
+
+    /**
+     * 以 JSON 输出所有计数，键按名称排序，
+     * 形如 {"list.bind":{"count":3,"total":120,"max":80}}。
+     */
+    public static synchronized String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, Entry> e : sEntries.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            Entry entry = e.getValue();
+            sb.append('"').append(e.getKey()).append("\":{\"count\":").append(entry.mCount)
+                    .append(",\"total\":").append(entry.mTotal)
+                    .append(",\"max\":").append(entry.mMax).append('}');
+        }
+        return sb.append('}').toString();
+    }
+}
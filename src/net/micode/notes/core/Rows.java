@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+/**
+ * 查询结果的最小接口，方法与 android.database.Cursor 的同名方法相同，列的下标从 0 开始。
+ * <p>
+ * 核心包中逐行处理查询结果的代码只通过该接口读取，应用中由游标实现，
+ * 在普通 JVM 上可以由其他数据库的查询结果实现。
+ */
+public interface Rows {
+    // 列的存储类型，与 Cursor.FIELD_TYPE_* 相同
+    int FIELD_TYPE_NULL = 0;
+    int FIELD_TYPE_INTEGER = 1;
+    int FIELD_TYPE_FLOAT = 2;
+    int FIELD_TYPE_STRING = 3;
+    int FIELD_TYPE_BLOB = 4;
+
+    int getCount();
+
+    int getPosition();
+
+    boolean moveToPosition(int position);
+
+    boolean moveToNext();
+
+    boolean isNull(int column);
+
+    int getType(int column);
+
+    int getInt(int column);
+
+    long getLong(int column);
+
+    double getDouble(int column);
+
+    String getString(int column);
+
+    byte[] getBlob(int column);
+}
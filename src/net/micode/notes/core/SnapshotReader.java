@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 逐条读取 {@link SnapshotWriter} 写出的快照文件。
+ * <p>
+ * 构造时读取文件头，之后由 {@link #next()} 得到下一条记录的标记，再按记录类型读取其内容；
+ * 读到 {@link SnapshotWriter#RECORD_END} 后由 {@link #checkCrc()} 核对校验值。
+ * 各列按存储类型读出为 null、Long、Double、String 或 byte[]。
+ */
+public class SnapshotReader implements Closeable {
+    private final GZIPInputStream mGzip;
+    private final CRC32 mCrc = new CRC32();
+    private final DataInputStream mIn;
+
+    private final byte mType;
+    private final int mSequence;
+    private final int mBaseSequence;
+    private final long mCreatedTime;
+
+    /**
+     * 读取文件头。
+     *
+     * @param in 输入，由 {@link #close()} 关闭
+     * @throws IOException 文件头的魔数或格式版本不符
+     */
+    public SnapshotReader(InputStream in) throws IOException {
+        mGzip = new GZIPInputStream(new BufferedInputStream(in, SnapshotWriter.BUFFER_SIZE),
+                SnapshotWriter.BUFFER_SIZE);
+        mIn = new DataInputStream(new CheckedInputStream(mGzip, mCrc));
+        if (mIn.readInt() != SnapshotWriter.MAGIC
+                || mIn.readInt() != SnapshotWriter.FORMAT_VERSION) {
+            mGzip.close();
+            throw new IOException("wrong snapshot header");
+        }
+        mType = mIn.readByte();
+        mSequence = mIn.readInt();
+        mBaseSequence = mIn.readInt();
+        mCreatedTime = mIn.readLong();
+    }
+
+    public byte getType() {
+        return mType;
+    }
+
+    public int getSequence() {
+        return mSequence;
+    }
+
+    public int getBaseSequence() {
+        return mBaseSequence;
+    }
+
+    public long getCreatedTime() {
+        return mCreatedTime;
+    }
+
+    /**
+     * 读取下一条记录的标记。
+     *
+     * @return SnapshotWriter 中的 RECORD_*，未知的标记原样返回
+     */
+    public byte next() throws IOException {
+        return mIn.readByte();
+    }
+
+    /**
+     * 读取一条笔记、数据行或清单条目记录的各列。
+     *
+     * @param values 读出的列，长度为记录的列数
+     */
+    public void readRow(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readColumn();
+        }
+    }
+
+    /**
+     * 读取笔记记录末尾的标志：后面是否带有该笔记的数据和清单条目。
+     */
+    public boolean readWithData() throws IOException {
+        return mIn.readBoolean();
+    }
+
+    /**
+     * 读取笔记 ID 记录。
+     */
+    public long[] readNoteIds() throws IOException {
+        int count = mIn.readInt();
+        if (count < 0) {
+            throw new IOException("Wrong count " + count);
+        }
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = mIn.readLong();
+        }
+        return ids;
+    }
+
+    /**
+     * 读到结束标记后核对校验值。
+     */
+    public boolean checkCrc() throws IOException {
+        // 校验值在校验流之外，直接从解压流读取
+        return new DataInputStream(mGzip).readLong() == mCrc.getValue();
+    }
+
+    public void close() throws IOException {
+        mGzip.close();
+    }
+
+    private Object readColumn() throws IOException {
+        int type = mIn.readByte();
+        switch (type) {
+            case Rows.FIELD_TYPE_NULL:
+                return null;
+            case Rows.FIELD_TYPE_INTEGER:
+                return mIn.readLong();
+            case Rows.FIELD_TYPE_FLOAT:
+                return mIn.readDouble();
+            case Rows.FIELD_TYPE_STRING:
+                return new String(readBytes(), "UTF-8");
+            case Rows.FIELD_TYPE_BLOB:
+                return readBytes();
+            default:
+                throw new IOException("Unknown column type " + type);
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        int length = mIn.readInt();
+        if (length < 0) {
+            throw new IOException("Wrong length " + length);
+        }
+        byte[] bytes = new byte[length];
+        mIn.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 写出二进制快照文件。
+ * <p>
+ * 文件经过 gzip 压缩，内容为文件头、若干记录和结束标记，之后是整个内容的 CRC32 校验值。
+ * 每条记录以记录标记开始，之后按查询结果的列顺序写入各列，每列前面写一个存储类型字节。
+ * 读取见 {@link SnapshotReader}。存放在文件中的大正文由子类读取。
+ */
+public class SnapshotWriter implements Closeable {
+    // 文件头魔数 "MNBS"
+    public static final int MAGIC = 0x4D4E4253;
+    public static final int FORMAT_VERSION = 1;
+
+    public static final byte TYPE_FULL = 0;
+    public static final byte TYPE_INCREMENTAL = 1;
+
+    // 记录标记
+    public static final byte RECORD_END = 0;
+    public static final byte RECORD_NOTE = 1;
+    public static final byte RECORD_DATA = 2;
+    public static final byte RECORD_CHECKLIST = 3;
+    public static final byte RECORD_NOTE_IDS = 4;
+
+    // 数据行记录中各列的下标
+    public static final int DATA_COLUMN_ID = 0;
+    public static final int DATA_COLUMN_CONTENT = 5;
+    public static final int DATA_COLUMN_BODY_LENGTH = 7;
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final GZIPOutputStream mGzip;
+    private final CRC32 mCrc = new CRC32();
+    private final DataOutputStream mOut;
+
+    /**
+     * 写入文件头。
+     *
+     * @param out 输出，由 {@link #close()} 关闭
+     * @param type {@link #TYPE_FULL} 或 {@link #TYPE_INCREMENTAL}
+     * @param sequence 快照序号
+     * @param baseSequence 增量快照所基于的快照序号，全量快照为 0
+     * @param createdTime 创建时间
+     */
+    public SnapshotWriter(OutputStream out, byte type, int sequence, int baseSequence,
+            long createdTime) throws IOException {
+        mGzip = new GZIPOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+        mOut = new DataOutputStream(new CheckedOutputStream(mGzip, mCrc));
+        mOut.writeInt(MAGIC);
+        mOut.writeInt(FORMAT_VERSION);
+        mOut.writeByte(type);
+        mOut.writeInt(sequence);
+        mOut.writeInt(baseSequence);
+        mOut.writeLong(createdTime);
+    }
+
+    /**
+     * 读取存放在文件中的大正文，默认使用数据行中的内容。
+     *
+     * @param dataId 数据行 ID
+     * @param content 数据行中的内容
+     */
+    protected String readBody(long dataId, String content) {
+        return content;
+    }
+
+    /**
+     * 写入当前行的笔记记录。
+     *
+     * @param columns 列数
+     * @param withData 记录后面是否带有该笔记的数据和清单条目
+     */
+    public void writeNote(Rows rows, int columns, boolean withData) throws IOException {
+        mOut.writeByte(RECORD_NOTE);
+        for (int i = 0; i < columns; i++) {
+            writeColumn(rows, i);
+        }
+        mOut.writeBoolean(withData);
+    }
+
+    /**
+     * 写入当前行的数据行记录，大正文写入完整内容，恢复时由内容提供者重新写入文件。
+     *
+     * @param columns 列数，列的顺序见 DATA_COLUMN_*
+     */
+    public void writeData(Rows rows, int columns) throws IOException {
+        mOut.writeByte(RECORD_DATA);
+        for (int i = 0; i < columns; i++) {
+            if (i == DATA_COLUMN_CONTENT && rows.getInt(DATA_COLUMN_BODY_LENGTH) > 0) {
+                mOut.writeByte(Rows.FIELD_TYPE_STRING);
+                writeBytes(readBody(rows.getLong(DATA_COLUMN_ID),
+                        rows.getString(DATA_COLUMN_CONTENT)).getBytes("UTF-8"));
+            } else {
+                writeColumn(rows, i);
+            }
+        }
+    }
+
+    /**
+     * 写入当前行的清单条目记录。
+     *
+     * @param columns 列数
+     */
+    public void writeCheckList(Rows rows, int columns) throws IOException {
+        mOut.writeByte(RECORD_CHECKLIST);
+        for (int i = 0; i < columns; i++) {
+            writeColumn(rows, i);
+        }
+    }
+
+    /**
+     * 写入当前全部笔记的 ID，恢复增量快照时据此删除已经不存在的笔记。
+     */
+    public void writeNoteIds(Collection<Long> ids) throws IOException {
+        mOut.writeByte(RECORD_NOTE_IDS);
+        mOut.writeInt(ids.size());
+        for (Long id : ids) {
+            mOut.writeLong(id);
+        }
+    }
+
+    /**
+     * 写入结束标记和校验值，完成压缩。
+     */
+    public void finish() throws IOException {
+        mOut.writeByte(RECORD_END);
+        mOut.flush();
+        // 校验值本身不参与计算
+        new DataOutputStream(mGzip).writeLong(mCrc.getValue());
+        mGzip.finish();
+    }
+
+    public void close() throws IOException {
+        mGzip.close();
+    }
+
+    private void writeColumn(Rows rows, int column) throws IOException {
+        int type = rows.getType(column);
+        mOut.writeByte(type);
+        switch (type) {
+            case Rows.FIELD_TYPE_INTEGER:
+                mOut.writeLong(rows.getLong(column));
+                break;
+            case Rows.FIELD_TYPE_FLOAT:
+                mOut.writeDouble(rows.getDouble(column));
+                break;
+            case Rows.FIELD_TYPE_STRING:
+                writeBytes(rows.getString(column).getBytes("UTF-8"));
+                break;
+            case Rows.FIELD_TYPE_BLOB:
+                writeBytes(rows.getBlob(column));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        mOut.writeInt(bytes.length);
+        mOut.write(bytes);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 同步动作的判定，根据本地笔记的同步状态和远端节点的状态决定一个节点需要执行的动作。
+ * <p>
+ * 只依赖 Java 标准库和 org.json，本地状态通过 {@link LocalState} 提供，不需要游标或数据库，
+ * 可以在普通 JVM 上测试和测量。
+ */
+public final class SyncAction {
+    public static final int NONE = 0;            // 无同步动作
+    public static final int ADD_REMOTE = 1;      // 需要远程添加
+    public static final int ADD_LOCAL = 2;       // 需要本地添加
+    public static final int DEL_REMOTE = 3;      // 需要远程删除
+    public static final int DEL_LOCAL = 4;       // 需要本地删除
+    public static final int UPDATE_REMOTE = 5;   // 需要远程更新
+    public static final int UPDATE_LOCAL = 6;    // 需要本地更新
+    public static final int UPDATE_CONFLICT = 7; // 双方都有更新
+    public static final int ERROR = 8;           // 同步错误
+
+    /**
+     * 本地笔记与同步相关的状态。
+     */
+    public interface LocalState {
+        long getId();
+
+        boolean isLocalModified();
+
+        // 上次同步时远端节点的修改时间
+        long getSyncId();
+
+        String getGtaskId();
+    }
+
+    private SyncAction() {
+    }
+
+    /**
+     * 判定笔记对应的任务的同步动作。
+     *
+     * @param local 本地笔记
+     * @param hasMeta 远端是否有该任务的笔记元数据
+     * @param metaNoteId 元数据中记录的笔记 ID，没有时为 null
+     * @param gid 远端任务的 ID
+     * @param lastModified 远端任务的修改时间
+     * @return 同步动作
+     */
+    public static int forNote(LocalState local, boolean hasMeta, Long metaNoteId, String gid,
+            long lastModified) {
+        if (!hasMeta) {
+            // 元数据被删除，以本地为准重新上传
+            return UPDATE_REMOTE;
+        }
+        if (metaNoteId == null || local.getId() != metaNoteId) {
+            // 元数据中没有笔记 ID 或与本地不一致，以远端为准
+            return UPDATE_LOCAL;
+        }
+        if (!local.isLocalModified()) {
+            return local.getSyncId() == lastModified ? NONE : UPDATE_LOCAL;
+        }
+        if (!isSameNode(local, gid)) {
+            return ERROR;
+        }
+        return local.getSyncId() == lastModified ? UPDATE_REMOTE : UPDATE_CONFLICT;
+    }
+
+    /**
+     * 判定笔记对应的任务的同步动作，笔记 ID 从任务的元数据中读取。
+     *
+     * @param local 本地笔记
+     * @param metaInfo 远端任务的元数据，没有时为 null
+     * @param gid 远端任务的 ID
+     * @param lastModified 远端任务的修改时间
+     * @return 同步动作
+     * @throws JSONException 元数据格式错误
+     */
+    public static int forNote(LocalState local, JSONObject metaInfo, String gid,
+            long lastModified) throws JSONException {
+        // 元数据中记录的笔记信息，没有时说明元数据已被删除
+        JSONObject noteInfo = null;
+        if (metaInfo != null && metaInfo.has(NoteMeta.HEAD_NOTE)) {
+            noteInfo = metaInfo.getJSONObject(NoteMeta.HEAD_NOTE);
+        }
+        Long metaNoteId = noteInfo != null && noteInfo.has(NoteRecord.ID)
+                ? noteInfo.getLong(NoteRecord.ID) : null;
+        return forNote(local, noteInfo != null, metaNoteId, gid, lastModified);
+    }
+
+    /**
+     * 判定文件夹对应的任务列表的同步动作。文件夹冲突时直接使用本地的修改。
+     *
+     * @param local 本地文件夹
+     * @param gid 远端任务列表的 ID
+     * @param lastModified 远端任务列表的修改时间
+     * @return 同步动作
+     */
+    public static int forFolder(LocalState local, String gid, long lastModified) {
+        if (!local.isLocalModified()) {
+            return local.getSyncId() == lastModified ? NONE : UPDATE_LOCAL;
+        }
+        if (!isSameNode(local, gid)) {
+            return ERROR;
+        }
+        return UPDATE_REMOTE;
+    }
+
+    private static boolean isSameNode(LocalState local, String gid) {
+        return local.getGtaskId() != null && local.getGtaskId().equals(gid);
+    }
+}
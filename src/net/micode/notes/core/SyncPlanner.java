@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.core;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次同步中笔记部分的规划：把本地的笔记按 GID 与远端节点配对，判定每篇笔记的同步动作，
+ * 剩下没有配对的远端节点需要在本地添加。动作的执行交给 {@link Handler}。
+ * <p>
+ * 本地笔记的查询结果通过 {@link Rows} 读取，列按下面的 COLUMN_* 排列，
+ * 与 SqlNote.PROJECTION_NOTE 相同。
+ *
+ * @param <N> 远端节点
+ * @param <E> 执行同步动作时抛出的异常
+ */
+public class SyncPlanner<N, E extends Exception> {
+    // 笔记查询结果中各列的下标，与 SqlNote 的 *_COLUMN 相同
+    public static final int COLUMN_ID = 0;
+    public static final int COLUMN_SYNC_ID = 12;
+    public static final int COLUMN_LOCAL_MODIFIED = 13;
+    public static final int COLUMN_GTASK_ID = 15;
+
+    // 回收站中笔记的查询条件，参数为系统类型和回收站 ID
+    public static final String TRASH_SELECTION = "(" + NoteRecord.TYPE + "<>? AND "
+            + NoteRecord.PARENT_ID + "=?)";
+
+    // 其余笔记的查询条件和排序，参数为笔记类型和回收站 ID
+    public static final String NOTE_SELECTION = "(" + NoteRecord.TYPE + "=? AND "
+            + NoteRecord.PARENT_ID + "<>?)";
+    public static final String NOTE_SORT_ORDER = NoteRecord.TYPE + " DESC";
+
+    /**
+     * 判定和执行同步动作。
+     */
+    public interface Handler<N, E extends Exception> {
+        /**
+         * 判定与远端节点配对的笔记的同步动作。
+         *
+         * @param node 远端节点
+         * @param local 笔记的同步状态，停在该笔记所在的行
+         * @return {@link SyncAction} 中的动作
+         */
+        int getSyncAction(N node, LocalRow local) throws E;
+
+        /**
+         * 执行同步动作。
+         *
+         * @param action {@link SyncAction} 中的动作
+         * @param node 远端节点，没有配对的节点时为 null
+         * @param local 笔记的同步状态，停在该笔记所在的行；在本地添加时为 null
+         */
+        void sync(int action, N node, LocalRow local) throws E;
+    }
+
+    /**
+     * 以查询结果的当前行作为笔记的同步状态。
+     */
+    public static class LocalRow implements SyncAction.LocalState {
+        private final Rows mRows;
+
+        public LocalRow(Rows rows) {
+            mRows = rows;
+        }
+
+        public Rows getRows() {
+            return mRows;
+        }
+
+        public long getId() {
+            return mRows.getLong(COLUMN_ID);
+        }
+
+        public boolean isLocalModified() {
+            return mRows.getInt(COLUMN_LOCAL_MODIFIED) != 0;
+        }
+
+        public long getSyncId() {
+            return mRows.getLong(COLUMN_SYNC_ID);
+        }
+
+        public String getGtaskId() {
+            return mRows.getString(COLUMN_GTASK_ID);
+        }
+    }
+
+    // 尚未配对的远端节点，以 GID 为键，配对后移除
+    private final Map<String, N> mRemote;
+
+    private final Handler<N, E> mHandler;
+
+    /**
+     * @param remote 远端节点，以 GID 为键，规划过程中配对的节点会被移除
+     * @param handler 判定和执行同步动作
+     */
+    public SyncPlanner(Map<String, N> remote, Handler<N, E> handler) {
+        mRemote = remote;
+        mHandler = handler;
+    }
+
+    /**
+     * 处理回收站中的笔记：有远端节点的需要远程删除，全部笔记在同步结束后从本地删除。
+     *
+     * @param rows 回收站中的笔记
+     * @param localDeleted 收集需要从本地删除的笔记 ID
+     */
+    public void syncTrash(Rows rows, Set<Long> localDeleted) throws E {
+        LocalRow local = new LocalRow(rows);
+        while (rows.moveToNext()) {
+            N node = mRemote.remove(rows.getString(COLUMN_GTASK_ID));
+            if (node != null) {
+                mHandler.sync(SyncAction.DEL_REMOTE, node, local);
+            }
+            localDeleted.add(rows.getLong(COLUMN_ID));
+        }
+    }
+
+    /**
+     * 处理不在回收站中的笔记：有远端节点的按双方的状态判定动作，没有 GID 的需要远程添加，
+     * 有 GID 但远端已没有节点的需要从本地删除。
+     *
+     * @param rows 不在回收站中的笔记
+     * @param gidToNid 收集配对的 GID 到笔记 ID 的映射
+     * @param nidToGid 收集配对的笔记 ID 到 GID 的映射
+     */
+    public void syncNotes(Rows rows, Map<String, Long> gidToNid, Map<Long, String> nidToGid)
+            throws E {
+        LocalRow local = new LocalRow(rows);
+        while (rows.moveToNext()) {
+            String gid = rows.getString(COLUMN_GTASK_ID);
+            N node = mRemote.remove(gid);
+            int action;
+            if (node != null) {
+                long id = rows.getLong(COLUMN_ID);
+                gidToNid.put(gid, id);
+                nidToGid.put(id, gid);
+                action = mHandler.getSyncAction(node, local);
+            } else if (gid.trim().length() == 0) {
+                action = SyncAction.ADD_REMOTE;
+            } else {
+                action = SyncAction.DEL_LOCAL;
+            }
+            mHandler.sync(action, node, local);
+        }
+    }
+
+    /**
+     * 剩下没有配对的远端节点需要在本地添加。
+     */
+    public void syncRemaining() throws E {
+        Iterator<N> iter = mRemote.values().iterator();
+        while (iter.hasNext()) {
+            mHandler.sync(SyncAction.ADD_LOCAL, iter.next(), null);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 把按输出顺序排好的文件夹、笔记和数据行写成用户可读的文本。
+ * <p>
+ * 查询结果的列按下面的 COLUMN_* 排列：文件夹行在其笔记之前，同一篇笔记的数据行相邻，
+ * 根文件夹中的笔记在最后。根文件夹的笔记之前写入一个名称为空的文件夹行，
+ * 导入时据此把后面的笔记放回根文件夹，见 {@link TextImportReader}。
+ * 日期的格式化、通话记录文件夹的名称和存放在文件中的大正文由子类提供。
+ */
+public abstract class TextExportWriter {
+    // 查询结果中各列的下标
+    public static final int COLUMN_NOTE_ID = 0;
+    public static final int COLUMN_NOTE_TYPE = 1;
+    public static final int COLUMN_MODIFIED_DATE = 2;
+    public static final int COLUMN_SNIPPET = 3;
+    public static final int COLUMN_CONTENT = 4;
+    public static final int COLUMN_MIME_TYPE = 5;
+    // 通话记录为通话日期，文本为模式
+    public static final int COLUMN_DATA1 = 6;
+    // 通话记录的电话号码
+    public static final int COLUMN_DATA3 = 7;
+    // 清单条目渲染成的带勾选标记的文本
+    public static final int COLUMN_CHECK_LIST = 8;
+    public static final int COLUMN_DATA_ID = 9;
+    public static final int COLUMN_BODY_LENGTH = 10;
+    public static final int COLUMN_PARENT_ID = 11;
+
+    // 数据的 MIME 类型，与 Notes.TextNote 和 Notes.CallNote 的 CONTENT_ITEM_TYPE 相同
+    public static final String MIME_TEXT_NOTE = "vnd.android.cursor.item/text_note";
+    public static final String MIME_CALL_NOTE = "vnd.android.cursor.item/call_note";
+    // 文本的清单模式，与 Notes.TextNote.MODE_CHECK_LIST 相同
+    public static final int MODE_CHECK_LIST = 1;
+    // 根文件夹 ID，与 Notes.ID_ROOT_FOLDER 相同
+    public static final long ID_ROOT_FOLDER = 0;
+
+    // 格式数组中各格式的下标，与 R.array.format_for_exported_note 相同
+    public static final int FORMAT_FOLDER_NAME = 0;
+    public static final int FORMAT_NOTE_DATE = 1;
+    public static final int FORMAT_NOTE_CONTENT = 2;
+
+    // 笔记之间的分隔符
+    public static final String NOTE_SEPARATOR = new String(new char[] {
+            Character.LINE_SEPARATOR, Character.LETTER_NUMBER
+    });
+
+    // 每处理多少行报告一次进度
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /**
+     * 导出进度监听器。
+     */
+    public interface Listener {
+        /**
+         * 报告导出进度。
+         *
+         * @param current 已处理的行数
+         * @param total 总行数
+         */
+        void onProgress(int current, int total);
+
+        /**
+         * 是否取消导出，取消后已写入的文件会被删除。
+         *
+         * @return 需要取消时返回 true
+         */
+        boolean isCancelled();
+    }
+
+    // 格式按 %s 拆分后的前缀和后缀，避免每行调用 String.format
+    private final String[] mFormatPrefix;
+    private final String[] mFormatSuffix;
+
+    /**
+     * @param formats 文件夹名称、笔记日期和笔记内容的格式，各含一个 %s
+     */
+    protected TextExportWriter(String[] formats) {
+        mFormatPrefix = new String[formats.length];
+        mFormatSuffix = new String[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            int index = formats[i].indexOf("%s");
+            mFormatPrefix[i] = index < 0 ? formats[i] : formats[i].substring(0, index);
+            mFormatSuffix[i] = index < 0 ? "" : formats[i].substring(index + 2);
+        }
+    }
+
+    /**
+     * 格式化笔记的修改日期和通话日期。
+     */
+    protected abstract CharSequence formatDate(long millis);
+
+    /**
+     * 文件夹的名称，默认为摘要。
+     *
+     * @param folderId 文件夹 ID
+     * @param snippet 文件夹行的摘要
+     */
+    protected String getFolderName(long folderId, String snippet) {
+        return snippet;
+    }
+
+    /**
+     * 读取存放在文件中的大正文，默认使用数据行中的内容。
+     *
+     * @param dataId 数据行 ID
+     * @param content 数据行中的内容
+     */
+    protected String readBody(long dataId, String content) {
+        return content;
+    }
+
+    /**
+     * 逐行写出查询结果。
+     *
+     * @param rows 查询结果，从第一行之前开始读取
+     * @param writer 输出
+     * @param listener 进度监听器，可以为 null
+     * @return 被取消时返回 false
+     */
+    public boolean write(Rows rows, Writer writer, Listener listener) throws IOException {
+        int total = listener != null ? rows.getCount() : 0;
+        long lastId = 0;
+        boolean inNote = false;
+        // 已写入名称不为空的文件夹行，之后的根文件夹笔记需要先写入空名称的文件夹行
+        boolean inFolder = false;
+        while (rows.moveToNext()) {
+            int position = rows.getPosition();
+            if (listener != null && position % PROGRESS_INTERVAL == 0) {
+                if (listener.isCancelled()) {
+                    return false;
+                }
+                listener.onProgress(position, total);
+            }
+
+            long id = rows.getLong(COLUMN_NOTE_ID);
+            boolean isNote = rows.getInt(COLUMN_NOTE_TYPE) == NoteRecord.TYPE_NOTE;
+            if (position == 0 || id != lastId) {
+                // 进入新的文件夹或笔记，先结束上一篇笔记
+                if (inNote) {
+                    writer.write(NOTE_SEPARATOR);
+                }
+                lastId = id;
+                inNote = isNote;
+                if (isNote) {
+                    if (inFolder && rows.getLong(COLUMN_PARENT_ID) == ID_ROOT_FOLDER) {
+                        writeLine(writer, FORMAT_FOLDER_NAME, "");
+                        inFolder = false;
+                    }
+                    // 笔记的最后修改日期
+                    writeLine(writer, FORMAT_NOTE_DATE,
+                            formatDate(rows.getLong(COLUMN_MODIFIED_DATE)));
+                } else {
+                    // 文件夹名称，名称为空时同样写入，其笔记导入到根文件夹而不是上一个文件夹
+                    String name = getFolderName(id, rows.getString(COLUMN_SNIPPET));
+                    writeLine(writer, FORMAT_FOLDER_NAME, name == null ? "" : name);
+                    inFolder = !isEmpty(name);
+                }
+            }
+            if (isNote) {
+                writeData(rows, writer);
+            }
+        }
+        if (inNote) {
+            writer.write(NOTE_SEPARATOR);
+        }
+        if (listener != null) {
+            listener.onProgress(total, total);
+        }
+        return true;
+    }
+
+    /**
+     * 写入笔记的一个数据行。
+     */
+    private void writeData(Rows rows, Writer writer) throws IOException {
+        String mimeType = rows.getString(COLUMN_MIME_TYPE);
+        if (MIME_CALL_NOTE.equals(mimeType)) {
+            // 电话号码、通话日期和通话附件位置
+            String phoneNumber = rows.getString(COLUMN_DATA3);
+            String location = rows.getString(COLUMN_CONTENT);
+            if (!isEmpty(phoneNumber)) {
+                writeLine(writer, FORMAT_NOTE_CONTENT, phoneNumber);
+            }
+            writeLine(writer, FORMAT_NOTE_CONTENT, formatDate(rows.getLong(COLUMN_DATA1)));
+            if (!isEmpty(location)) {
+                writeLine(writer, FORMAT_NOTE_CONTENT, location);
+            }
+        } else if (MIME_TEXT_NOTE.equals(mimeType)) {
+            String content;
+            if (rows.getInt(COLUMN_DATA1) == MODE_CHECK_LIST) {
+                // 清单条目单独存储，查询时已渲染为带勾选标记的文本
+                content = rows.getString(COLUMN_CHECK_LIST);
+            } else {
+                content = rows.getString(COLUMN_CONTENT);
+                if (rows.getInt(COLUMN_BODY_LENGTH) > 0) {
+                    content = readBody(rows.getLong(COLUMN_DATA_ID), content);
+                }
+            }
+            if (!isEmpty(content)) {
+                writeLine(writer, FORMAT_NOTE_CONTENT, content);
+            }
+        }
+    }
+
+    private void writeLine(Writer writer, int formatId, CharSequence value) throws IOException {
+        writer.write(mFormatPrefix[formatId]);
+        writer.append(value);
+        writer.write(mFormatSuffix[formatId]);
+        writer.write('\n');
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.length() == 0;
+    }
+}
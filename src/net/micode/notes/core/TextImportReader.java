@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.micode.notes.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 逐项读取 {@link TextExportWriter} 写出的文本：文件夹行给出后续笔记所在文件夹的名称，
+ * 名称为空表示根文件夹；每篇笔记以日期行开始、以分隔行结束，日期不含年份，不读取。
+ * <p>
+ * 调用 {@link #next()} 得到下一项的类型，再由 {@link #getText()} 取得文件夹名称或笔记内容。
+ */
+public class TextImportReader {
+    // 项的类型
+    public static final int END = 0;
+    public static final int FOLDER = 1;
+    public static final int NOTE = 2;
+
+    // 笔记之间的分隔行，按 '\n' 拆分后只剩下 '\r'
+    private static final String NOTE_SEPARATOR_LINE = "\r";
+
+    private final Reader mReader;
+    private final String mFolderPrefix;
+    private final String mDatePrefix;
+    private final String mContentPrefix;
+    private final StringBuilder mLine = new StringBuilder();
+
+    // 正在读取的笔记内容，不在笔记中时为 null
+    private StringBuilder mContent;
+    private String mText;
+
+    /**
+     * @param reader 输入，调用方负责缓冲和关闭
+     * @param formats 导出时使用的格式，与 TextExportWriter 的构造参数相同
+     */
+    public TextImportReader(Reader reader, String[] formats) {
+        mReader = reader;
+        mFolderPrefix = prefix(formats[TextExportWriter.FORMAT_FOLDER_NAME]);
+        mDatePrefix = prefix(formats[TextExportWriter.FORMAT_NOTE_DATE]);
+        mContentPrefix = prefix(formats[TextExportWriter.FORMAT_NOTE_CONTENT]);
+    }
+
+    /**
+     * 读取下一项。文件在笔记中间结束时，已读到的内容作为最后一篇笔记。
+     *
+     * @return {@link #FOLDER}、{@link #NOTE}，读完时为 {@link #END}
+     */
+    public int next() throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            if (mContent == null) {
+                // 日期的前缀以文件夹的前缀开头，需要先判断
+                if (line.startsWith(mDatePrefix)) {
+                    mContent = new StringBuilder();
+                } else if (line.startsWith(mFolderPrefix)) {
+                    mText = line.substring(mFolderPrefix.length()).trim();
+                    return FOLDER;
+                }
+            } else if (NOTE_SEPARATOR_LINE.equals(line)) {
+                return endNote();
+            } else if (line.startsWith(mContentPrefix)) {
+                if (mContent.length() > 0) {
+                    mContent.append('\n');
+                }
+                mContent.append(line, mContentPrefix.length(), line.length());
+            } else {
+                // 多行内容的后续行没有前缀
+                mContent.append('\n').append(line);
+            }
+        }
+        if (mContent != null) {
+            return endNote();
+        }
+        mText = null;
+        return END;
+    }
+
+    /**
+     * 当前项的文本：文件夹的名称，根文件夹为空字符串；或笔记的内容。
+     */
+    public String getText() {
+        return mText;
+    }
+
+    private int endNote() {
+        mText = mContent.toString();
+        mContent = null;
+        return NOTE;
+    }
+
+    /**
+     * 按 '\n' 读取一行，保留行中的 '\r'，用于识别笔记的分隔行。
+     */
+    private String readLine() throws IOException {
+        mLine.setLength(0);
+        int c;
+        while ((c = mReader.read()) != -1) {
+            if (c == '\n') {
+                return mLine.toString();
+            }
+            mLine.append((char) c);
+        }
+        return mLine.length() > 0 ? mLine.toString() : null;
+    }
+
+    private static String prefix(String format) {
+        int index = format.indexOf("%s");
+        return index < 0 ? format : format.substring(0, index);
+    }
+}
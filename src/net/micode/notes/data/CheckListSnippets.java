@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import net.micode.notes.data.Notes.CheckListColumns;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+import java.util.HashSet;
+
+/**
+ * 清单笔记摘要 {@link NoteColumns#SNIPPET} 的维护。
+ * 摘要由条目按 {@link CheckListColumns#POSITION} 顺序以换行连接而成，不带勾选标记。
+ * 一次事务中条目发生变化的笔记先记录在这里，提交前每个笔记只重建一次摘要，
+ * 批量写入大量条目时不会每写一行就重新拼接整个清单。只重建提交时仍处于清单模式的笔记，
+ * 切换回普通模式的笔记保留文本数据触发器写入的摘要。
+ */
+class CheckListSnippets {
+    // 由条目重建摘要的表达式，外层表的行即为笔记
+    private static final String SNIPPET_EXPR = "(SELECT IFNULL(group_concat("
+            + CheckListColumns.CONTENT + ", '\n'), '') FROM (SELECT " + CheckListColumns.CONTENT
+            + " FROM " + TABLE.CHECKLIST + " WHERE " + CheckListColumns.NOTE_ID + "="
+            + TABLE.NOTE + "." + NoteColumns.ID + " ORDER BY " + CheckListColumns.POSITION + "))";
+
+    // 处于清单模式的笔记
+    private static final String CHECK_LIST_NOTES = "SELECT " + DataColumns.NOTE_ID + " FROM "
+            + TABLE.DATA + " WHERE " + DataColumns.MIME_TYPE + "='" + DataConstants.NOTE + "' AND "
+            + TextNote.MODE + "=" + TextNote.MODE_CHECK_LIST;
+
+    private final HashSet<Long> mNoteIds;
+
+    CheckListSnippets() {
+        mNoteIds = new HashSet<Long>();
+    }
+
+    /**
+     * 记录条目发生变化的笔记。
+     *
+     * @param noteId 笔记 ID
+     */
+    void add(long noteId) {
+        if (noteId > 0) {
+            mNoteIds.add(noteId);
+        }
+    }
+
+    /**
+     * 合并另一组需要重建摘要的笔记。
+     *
+     * @param other 另一组笔记
+     */
+    void addAll(CheckListSnippets other) {
+        mNoteIds.addAll(other.mNoteIds);
+    }
+
+    /**
+     * 在修改前查出将受影响的条目所属的笔记。
+     *
+     * @param db 数据库
+     * @param selection 清单条目表的条件
+     * @param selectionArgs 条件参数
+     */
+    void addBySelection(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor c = db.query(true, TABLE.CHECKLIST, new String[] { CheckListColumns.NOTE_ID },
+                selection, selectionArgs, null, null, null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                add(c.getLong(0));
+            }
+            c.close();
+        }
+    }
+
+    boolean isEmpty() {
+        return mNoteIds.isEmpty();
+    }
+
+    /**
+     * 重建记录的笔记的摘要并清空，每个笔记执行一条 UPDATE。调用方负责事务。
+     *
+     * @param db 数据库
+     */
+    void apply(SQLiteDatabase db) {
+        if (mNoteIds.isEmpty()) {
+            return;
+        }
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE.NOTE + " SET "
+                + NoteColumns.SNIPPET + "=" + SNIPPET_EXPR + " WHERE " + NoteColumns.ID + "=? AND "
+                + NoteColumns.ID + " IN (" + CHECK_LIST_NOTES + " AND " + DataColumns.NOTE_ID
+                + "=?)");
+        try {
+            for (long noteId : mNoteIds) {
+                update.bindLong(1, noteId);
+                update.bindLong(2, noteId);
+                update.execute();
+            }
+        } finally {
+            update.close();
+        }
+        mNoteIds.clear();
+    }
+
+    /**
+     * 重建所有清单笔记的摘要。调用方负责事务。
+     *
+     * @param db 数据库
+     */
+    static void rebuildAll(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.SNIPPET + "=" + SNIPPET_EXPR
+                + " WHERE " + NoteColumns.ID + " IN (" + CHECK_LIST_NOTES + ")");
+    }
+}
@@ -57,6 +57,21 @@ public class Contact {
             + " FROM phone_lookup"
             + " WHERE min_match = '+')";
 
+    /**
+     * 计算电话号码的最小匹配键，即规范化后号码末尾 7 位数字的倒序，
+     * 与联系人数据库中 min_match 的规则相同。匹配键相同的号码再用 PHONE_NUMBERS_EQUAL 精确比较。
+     *
+     * @param phoneNumber 电话号码
+     * @return 最小匹配键，号码为空时返回空字符串
+     */
+    public static String getPhoneKey(String phoneNumber) {
+        if (phoneNumber == null || phoneNumber.length() == 0) {
+            return "";
+        }
+        String key = PhoneNumberUtils.toCallerIDMinMatch(phoneNumber);
+        return key == null ? "" : key;
+    }
+
     /**
      * 根据给定的电话号码获取联系人姓名。
      * 如果联系人姓名已经存在于缓存中，则直接返回。
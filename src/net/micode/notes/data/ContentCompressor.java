@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 冷数据内容的压缩存储。
+ * <p>
+ * 长时间未修改的笔记，其文本数据行的 {@link DataColumns#CONTENT} 在后台被压缩为 BLOB，
+ * 列的存储类型即为是否压缩的标记。内容提供者返回的游标经 {@link #wrap} 包装后透明解压，
+ * 调用方读到的仍是文本；笔记再次被编辑时写入的是普通文本，等下次变冷后再压缩。
+ * 笔记的摘要保持为文本，列表和搜索不受影响。
+ */
+class ContentCompressor {
+    private static final String TAG = "ContentCompressor";
+
+    // 少于该字符数的内容不压缩
+    static final int THRESHOLD_CHARS = 4 * 1024;
+    // 压缩后至少节省的比例，否则保留文本
+    private static final float MIN_SAVING = 0.1f;
+    // 每个事务压缩的行数
+    private static final int BATCH_ROWS = 100;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // 可以压缩的冷数据行，模式为清单或正文存放在文件中的行除外，在包内可见供基准测试使用
+    static final String COLD_SELECTION = DataColumns.MIME_TYPE + "='"
+            + DataConstants.NOTE + "' AND typeof(" + DataColumns.CONTENT + ")='text' AND length("
+            + DataColumns.CONTENT + ")>=" + THRESHOLD_CHARS + " AND IFNULL(" + TextNote.MODE
+            + ",0)<>" + TextNote.MODE_CHECK_LIST + " AND IFNULL(" + TextNote.BODY_LENGTH
+            + ",0)=0 AND " + DataColumns.NOTE_ID + " IN (SELECT " + NoteColumns.ID + " FROM "
+            + TABLE.NOTE + " WHERE " + NoteColumns.MODIFIED_DATE + "<?) AND "
+            + DataColumns.ID + ">?";
+
+    private ContentCompressor() {
+    }
+
+    /**
+     * 压缩文本。
+     *
+     * @param content 文本
+     * @return 压缩后的数据，压缩效果不明显时返回 null
+     */
+    static byte[] compress(String content) {
+        byte[] input = content.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            int limit = (int) (input.length * (1 - MIN_SAVING));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(limit);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() > limit) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压文本。
+     *
+     * @param data 压缩后的数据
+     * @return 文本，数据损坏时返回空字符串
+     */
+    static String decompress(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    Log.e(TAG, "compressed content is truncated");
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "compressed content is destroyed " + e.toString());
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 压缩修改时间早于指定时间的笔记的文本内容，每批行在一个事务中写入。
+     * 压缩不改变笔记的修改时间和版本号。
+     *
+     * @param db 数据库
+     * @param before 笔记修改时间早于该时间时视为冷数据
+     * @param maxRows 最多检查的行数
+     * @return 压缩的行数
+     */
+    static int compressCold(SQLiteDatabase db, long before, int maxRows) {
+        int compressed = 0;
+        int checked = 0;
+        long lastId = 0;
+        String[] projection = new String[] { DataColumns.ID, DataColumns.CONTENT };
+        ContentValues values = new ContentValues();
+        while (checked < maxRows) {
+            Cursor c = db.query(TABLE.DATA, projection, COLD_SELECTION, new String[] {
+                    String.valueOf(before), String.valueOf(lastId)
+            }, null, null, DataColumns.ID, String.valueOf(Math.min(BATCH_ROWS,
+                    maxRows - checked)));
+            if (c == null) {
+                break;
+            }
+            int rows = 0;
+            db.beginTransaction();
+            try {
+                while (c.moveToNext()) {
+                    rows++;
+                    lastId = c.getLong(0);
+                    byte[] data = compress(c.getString(1));
+                    if (data == null) {
+                        continue;
+                    }
+                    values.clear();
+                    values.put(DataColumns.CONTENT, data);
+                    compressed += db.update(TABLE.DATA, values, DataColumns.ID + "=" + lastId,
+                            null);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                c.close();
+            }
+            checked += rows;
+            if (rows < BATCH_ROWS) {
+                break;
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * 包装包含 {@link DataColumns#CONTENT} 列的游标，读取时解压。
+     *
+     * @param cursor 游标
+     * @return 包装后的游标，不包含内容列时返回原游标
+     */
+    static Cursor wrap(Cursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        int column = cursor.getColumnIndex(DataColumns.CONTENT);
+        return column < 0 ? cursor : new DecompressingCursor(cursor, column);
+    }
+
+    /**
+     * 内容列为 BLOB 时返回解压后的文本，当前行的结果会被缓存。
+     */
+    private static class DecompressingCursor extends CursorWrapper {
+        private final int mColumn;
+        private int mCachedPosition = -1;
+        private String mCachedContent;
+
+        DecompressingCursor(Cursor cursor, int column) {
+            super(cursor);
+            mColumn = column;
+        }
+
+        private boolean isCompressed(int columnIndex) {
+            return columnIndex == mColumn
+                    && super.getType(columnIndex) == Cursor.FIELD_TYPE_BLOB;
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            return isCompressed(columnIndex) ? Cursor.FIELD_TYPE_STRING
+                    : super.getType(columnIndex);
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            if (!isCompressed(columnIndex)) {
+                return super.getString(columnIndex);
+            }
+            int position = getPosition();
+            if (position != mCachedPosition) {
+                mCachedContent = decompress(super.getBlob(columnIndex));
+                mCachedPosition = position;
+            }
+            return mCachedContent;
+        }
+
+        @Override
+        @Deprecated
+        public boolean requery() {
+            mCachedPosition = -1;
+            return super.requery();
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            return isCompressed(columnIndex) ? getString(columnIndex).getBytes(UTF_8)
+                    : super.getBlob(columnIndex);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.database.Cursor;
+
+import net.micode.notes.core.Rows;
+
+/**
+ * 以游标实现 {@link Rows}，供核心包逐行读取查询结果。不持有游标的所有权，由调用方关闭。
+ */
+public class CursorRows implements Rows {
+    private final Cursor mCursor;
+
+    public CursorRows(Cursor cursor) {
+        mCursor = cursor;
+    }
+
+    public int getCount() {
+        return mCursor.getCount();
+    }
+
+    public int getPosition() {
+        return mCursor.getPosition();
+    }
+
+    public boolean moveToPosition(int position) {
+        return mCursor.moveToPosition(position);
+    }
+
+    public boolean moveToNext() {
+        return mCursor.moveToNext();
+    }
+
+    public boolean isNull(int column) {
+        return mCursor.isNull(column);
+    }
+
+    public int getType(int column) {
+        return mCursor.getType(column);
+    }
+
+    public int getInt(int column) {
+        return mCursor.getInt(column);
+    }
+
+    public long getLong(int column) {
+        return mCursor.getLong(column);
+    }
+
+    public double getDouble(int column) {
+        return mCursor.getDouble(column);
+    }
+
+    public String getString(int column) {
+        return mCursor.getString(column);
+    }
+
+    public byte[] getBlob(int column) {
+        return mCursor.getBlob(column);
+    }
+}
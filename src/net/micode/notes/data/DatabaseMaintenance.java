@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+/**
+ * 数据库维护：清理回收站中过期的笔记、增量回收空闲页、更新统计信息以及必要时重建索引。
+ * 各步骤的耗时和维护前后的数据库大小记录在返回的 Bundle 中，键名见 {@link Notes}。
+ * 维护期间不能处于事务中，{@code VACUUM} 和 {@code incremental_vacuum} 不允许在事务中执行。
+ */
+class DatabaseMaintenance {
+    private static final String TAG = "DatabaseMaintenance";
+
+    // 每个事务删除的笔记数
+    private static final int PURGE_BATCH = 200;
+    // 每次维护最多删除的笔记数
+    private static final int MAX_PURGE = 5000;
+    // 每次增量回收的最多页数
+    private static final int MAX_VACUUM_PAGES = 2048;
+    // 空闲页占比超过该值时认为索引已碎片化
+    private static final float FRAGMENTED_FREE_RATIO = 0.25f;
+    // 一次删除超过该行数时重建索引
+    private static final int REINDEX_PURGED_ROWS = 1000;
+
+    // auto_vacuum 的取值，见 SQLite 文档
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private DatabaseMaintenance() {
+    }
+
+    /**
+     * 执行一次维护。
+     *
+     * @param db 数据库
+     * @param purgeBefore 移入回收站的时间 {@link NoteColumns#TRASH_DATE} 早于该时间的笔记会被删除
+     * @param keepSynced 为 true 时保留已同步过的笔记，由同步删除远端后再删除
+     * @param changes 记录被删除的笔记
+     * @param bodies 记录随笔记删除的大正文，由调用方在维护结束后删除文件
+     * @return 维护结果
+     */
+    static Bundle run(SQLiteDatabase db, long purgeBefore, boolean keepSynced,
+            NoteChangeSet changes, DroppedBodies bodies) {
+        Bundle result = new Bundle();
+        long start = SystemClock.elapsedRealtime();
+        long pageSize = longForPragma(db, "page_size");
+        long pageCount = longForPragma(db, "page_count");
+        long freePages = longForPragma(db, "freelist_count");
+        result.putLong(Notes.EXTRA_DB_SIZE_BEFORE, pageSize * pageCount);
+
+        long time = SystemClock.elapsedRealtime();
+        int purged = purgeTrash(db, purgeBefore, keepSynced, changes, bodies);
+        result.putInt(Notes.EXTRA_PURGED_NOTES, purged);
+        result.putLong(Notes.EXTRA_PURGE_DURATION, SystemClock.elapsedRealtime() - time);
+
+        time = SystemClock.elapsedRealtime();
+        boolean fragmented = pageCount > 0
+                && (float) freePages / pageCount >= FRAGMENTED_FREE_RATIO;
+        if (fragmented || purged >= REINDEX_PURGED_ROWS) {
+            db.execSQL("REINDEX");
+            result.putBoolean(Notes.EXTRA_REINDEXED, true);
+        }
+        result.putLong(Notes.EXTRA_REINDEX_DURATION, SystemClock.elapsedRealtime() - time);
+
+        time = SystemClock.elapsedRealtime();
+        vacuum(db);
+        result.putLong(Notes.EXTRA_VACUUM_DURATION, SystemClock.elapsedRealtime() - time);
+
+        time = SystemClock.elapsedRealtime();
+        db.execSQL("ANALYZE");
+        result.putLong(Notes.EXTRA_ANALYZE_DURATION, SystemClock.elapsedRealtime() - time);
+
+        result.putLong(Notes.EXTRA_DB_SIZE_AFTER, longForPragma(db, "page_size")
+                * longForPragma(db, "page_count"));
+        result.putLong(Notes.EXTRA_MAINTENANCE_DURATION, SystemClock.elapsedRealtime() - start);
+        return result;
+    }
+
+    /**
+     * 分批删除回收站中过期的笔记和文件夹，每批在一个事务中删除并更新文件夹数量。
+     *
+     * @return 删除的行数
+     */
+    private static int purgeTrash(SQLiteDatabase db, long before, boolean keepSynced,
+            NoteChangeSet changes, DroppedBodies bodies) {
+        String selection = NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER + " AND "
+                + NoteColumns.ID + ">0 AND " + NoteColumns.TRASH_DATE + "<?";
+        if (keepSynced) {
+            selection += " AND IFNULL(" + NoteColumns.GTASK_ID + ",'')=''";
+        }
+        String[] args = new String[] { String.valueOf(before) };
+
+        int purged = 0;
+        while (purged < MAX_PURGE) {
+            StringBuilder ids = new StringBuilder();
+            Cursor c = db.query(TABLE.NOTE, new String[] { NoteColumns.ID }, selection, args,
+                    null, null, null, String.valueOf(PURGE_BATCH));
+            if (c == null) {
+                break;
+            }
+            while (c.moveToNext()) {
+                long id = c.getLong(0);
+                if (ids.length() > 0) {
+                    ids.append(',');
+                }
+                ids.append(id);
+                changes.add(id, NoteChangeSet.KIND_DELETE);
+            }
+            c.close();
+            if (ids.length() == 0) {
+                break;
+            }
+
+            String where = NoteColumns.ID + " IN (" + ids + ")";
+            int deleted;
+            db.beginTransaction();
+            try {
+                FolderCounts counts = new FolderCounts();
+                counts.addByParent(db, where, null, -1);
+                bodies.addByNoteSelection(db, where, null);
+                deleted = db.delete(TABLE.NOTE, where, null);
+                counts.apply(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            purged += deleted;
+            if (deleted < PURGE_BATCH) {
+                break;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * 增量回收空闲页。数据库尚未开启增量回收时，开启后执行一次完整的 VACUUM。
+     */
+    private static void vacuum(SQLiteDatabase db) {
+        if (longForPragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            Log.i(TAG, "switch to incremental auto vacuum");
+            db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+            db.execSQL("VACUUM");
+            return;
+        }
+        if (longForPragma(db, "freelist_count") == 0) {
+            return;
+        }
+        // 每一步回收一页，需要把结果读完才会全部执行
+        Cursor c = db.rawQuery("PRAGMA incremental_vacuum(" + MAX_VACUUM_PAGES + ")", null);
+        if (c != null) {
+            c.getCount();
+            c.close();
+        }
+    }
+
+    private static long longForPragma(SQLiteDatabase db, String pragma) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + pragma, null);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.DataConstants;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+import java.util.HashSet;
+
+/**
+ * 一次事务中不再需要的大正文文件 {@link NoteBodyStore}。
+ * 数据行被删除或改写为普通内容前，先在事务中查出其中存有大正文的行；事务提交后只删除这些行的文件，
+ * 不扫描整个目录，其他尚未提交的事务刚写入的文件不会被误删。
+ */
+class DroppedBodies {
+    // 存有大正文的文本数据行
+    private static final String LARGE_BODY = DataColumns.MIME_TYPE + "='" + DataConstants.NOTE
+            + "' AND " + TextNote.BODY_LENGTH + ">0";
+
+    private final HashSet<Long> mDataIds;
+
+    DroppedBodies() {
+        mDataIds = new HashSet<Long>();
+    }
+
+    /**
+     * 记录大正文不再需要的数据行。
+     *
+     * @param dataId 数据行 ID
+     */
+    void add(long dataId) {
+        mDataIds.add(dataId);
+    }
+
+    /**
+     * 合并另一组数据行。
+     *
+     * @param other 另一组数据行
+     */
+    void addAll(DroppedBodies other) {
+        mDataIds.addAll(other.mDataIds);
+    }
+
+    /**
+     * 在删除或改写数据行前查出其中存有大正文的行。
+     *
+     * @param db 数据库
+     * @param selection 数据表的条件
+     * @param selectionArgs 条件参数
+     */
+    void addByDataSelection(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        String where = selection == null || selection.length() == 0 ? LARGE_BODY
+                : "(" + selection + ") AND " + LARGE_BODY;
+        addByQuery(db, where, selectionArgs);
+    }
+
+    /**
+     * 在删除笔记前查出随之由触发器删除的数据行中存有大正文的行，包括被删除文件夹中笔记的数据行。
+     *
+     * @param db 数据库
+     * @param selection 笔记表的条件
+     * @param selectionArgs 条件参数
+     */
+    void addByNoteSelection(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        String notes = "SELECT " + NoteColumns.ID + " FROM " + TABLE.NOTE + " WHERE " + selection;
+        String[] args = null;
+        if (selectionArgs != null) {
+            // 条件在语句中出现两次
+            args = new String[selectionArgs.length * 2];
+            System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+            System.arraycopy(selectionArgs, 0, args, selectionArgs.length, selectionArgs.length);
+        }
+        addByQuery(db, LARGE_BODY + " AND " + DataColumns.NOTE_ID + " IN (" + notes + " OR "
+                + NoteColumns.PARENT_ID + " IN (" + notes + "))", args);
+    }
+
+    private void addByQuery(SQLiteDatabase db, String where, String[] args) {
+        Cursor c = db.query(TABLE.DATA, new String[] { DataColumns.ID }, where, args,
+                null, null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                mDataIds.add(c.getLong(0));
+            }
+            c.close();
+        }
+    }
+
+    boolean isEmpty() {
+        return mDataIds.isEmpty();
+    }
+
+    /**
+     * 在记录的事务提交后删除文件并清空。删除在一个新的写事务中进行，此时没有其他未提交的写入；
+     * 数据行 ID 已被新提交的大正文行重新使用时保留文件。
+     *
+     * @param context 上下文
+     * @param db 数据库
+     */
+    void delete(Context context, SQLiteDatabase db) {
+        if (mDataIds.isEmpty()) {
+            return;
+        }
+        db.beginTransaction();
+        SQLiteStatement query = db.compileStatement("SELECT COUNT(*) FROM " + TABLE.DATA
+                + " WHERE " + DataColumns.ID + "=? AND " + LARGE_BODY);
+        try {
+            for (long dataId : mDataIds) {
+                query.bindLong(1, dataId);
+                if (query.simpleQueryForLong() == 0) {
+                    NoteBodyStore.delete(context, dataId);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            query.close();
+            db.endTransaction();
+        }
+        mDataIds.clear();
+    }
+}
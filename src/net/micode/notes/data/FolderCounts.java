@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import net.micode.notes.core.FolderDeltas;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+/**
+ * 文件夹笔记数量 {@link NoteColumns#NOTES_COUNT} 的维护。
+ * 一次事务中对各文件夹数量的增减先由 {@link FolderDeltas} 累加，提交前每个文件夹只执行一条 UPDATE。
+ * 数量只统计 ID 大于 0 的子项，即用户的笔记和文件夹，不包含系统文件夹。
+ */
+class FolderCounts extends FolderDeltas {
+    // 重新计算笔记数量的表达式，外层表的行即为文件夹
+    private static final String COUNT_EXPR = "(SELECT COUNT(*) FROM " + TABLE.NOTE + " AS child"
+            + " WHERE child." + NoteColumns.PARENT_ID + "=" + TABLE.NOTE + "." + NoteColumns.ID
+            + " AND child." + NoteColumns.ID + ">0)";
+
+    // 可以包含子项的行
+    private static final String CONTAINER_SELECTION = NoteColumns.TYPE + "<>" + Notes.TYPE_NOTE;
+
+    // 写入一个文件夹的数量变化，参数为变化量和文件夹 ID，在包内可见供基准测试使用
+    static final String UPDATE_COUNT_SQL = "UPDATE " + TABLE.NOTE + " SET "
+            + NoteColumns.NOTES_COUNT + "=MAX(0," + NoteColumns.NOTES_COUNT + "+?) WHERE "
+            + NoteColumns.ID + "=?";
+
+    /**
+     * 在修改前按父文件夹统计将受影响的行数，并累加到各自的父文件夹上。
+     *
+     * @param db 数据库
+     * @param selection 笔记表的条件
+     * @param selectionArgs 条件参数
+     * @param sign 每行的数量变化，移出或删除为 -1
+     * @return 受影响的总行数
+     */
+    int addByParent(SQLiteDatabase db, String selection, String[] selectionArgs, int sign) {
+        String where = NoteColumns.ID + ">0";
+        if (!TextUtils.isEmpty(selection)) {
+            where += " AND (" + selection + ")";
+        }
+        return addGrouped(db, where, selectionArgs, sign);
+    }
+
+    /**
+     * 文件夹被移到回收站时，触发器会把其中的笔记一并移入回收站，这里预先记录这部分变化。
+     *
+     * @param db 数据库
+     * @param selection 将被移到回收站的行的条件
+     * @param selectionArgs 条件参数
+     */
+    void addTrashCascade(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        String folders = "SELECT " + NoteColumns.ID + " FROM " + TABLE.NOTE
+                + " WHERE " + NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER
+                + " AND " + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER;
+        if (!TextUtils.isEmpty(selection)) {
+            folders += " AND (" + selection + ")";
+        }
+        int moved = addGrouped(db, NoteColumns.ID + ">0 AND " + NoteColumns.PARENT_ID
+                + " IN (" + folders + ")", selectionArgs, -1);
+        add(Notes.ID_TRASH_FOLER, moved);
+    }
+
+    private int addGrouped(SQLiteDatabase db, String where, String[] selectionArgs, int sign) {
+        int total = 0;
+        Cursor c = db.query(TABLE.NOTE, new String[] {
+                NoteColumns.PARENT_ID, "COUNT(*)"
+        }, where, selectionArgs, NoteColumns.PARENT_ID, null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                add(c.getLong(0), sign * c.getInt(1));
+                total += c.getInt(1);
+            }
+            c.close();
+        }
+        return total;
+    }
+
+    /**
+     * 把累加的变化写入数据库并清空，每个文件夹执行一条 UPDATE。调用方负责事务。
+     *
+     * @param db 数据库
+     */
+    void apply(final SQLiteDatabase db) {
+        apply(new FolderDeltas.Writer<RuntimeException>() {
+            public void write(long folderId, int delta) {
+                db.execSQL(UPDATE_COUNT_SQL, new Object[] { delta, folderId });
+            }
+        });
+    }
+
+    /**
+     * 按子项重新计算指定文件夹的数量。
+     *
+     * @param db 数据库
+     * @param folderIds 文件夹 ID
+     */
+    static void recompute(SQLiteDatabase db, long... folderIds) {
+        if (folderIds.length == 0) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (long id : folderIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(id);
+        }
+        db.execSQL("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.NOTES_COUNT + "=" + COUNT_EXPR
+                + " WHERE " + NoteColumns.ID + " IN (" + ids + ")");
+    }
+
+    /**
+     * 检查所有文件夹的数量是否与实际子项一致。
+     *
+     * @param db 数据库
+     * @return 数量不一致的文件夹个数
+     */
+    static int check(SQLiteDatabase db) {
+        int mismatched = 0;
+        Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + TABLE.NOTE + " WHERE "
+                + CONTAINER_SELECTION + " AND " + NoteColumns.NOTES_COUNT + "<>" + COUNT_EXPR, null);
+        if (c != null) {
+            if (c.moveToFirst()) {
+                mismatched = c.getInt(0);
+            }
+            c.close();
+        }
+        return mismatched;
+    }
+
+    /**
+     * 从头重新计算所有文件夹的数量。
+     *
+     * @param db 数据库
+     * @return 重建前数量不一致的文件夹个数
+     */
+    static int rebuild(SQLiteDatabase db) {
+        int mismatched;
+        db.beginTransaction();
+        try {
+            mismatched = check(db);
+            if (mismatched > 0) {
+                db.execSQL("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.NOTES_COUNT + "="
+                        + COUNT_EXPR + " WHERE " + CONTAINER_SELECTION + " AND "
+                        + NoteColumns.NOTES_COUNT + "<>" + COUNT_EXPR);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return mismatched;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.util.Log;
+
+import net.micode.notes.data.Notes.NoteColumns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 进程内共享的用户文件夹树快照，供笔记列表、移动对话框和文件夹名称检查使用。
+ * <p>
+ * 快照创建后不再修改，可以在任意线程中读取。内容提供者发出插入、更新或删除笔记的通知前
+ * 递增全局版本号，{@link #get} 发现快照的版本号落后时重新读取文件夹，否则直接返回快照，
+ * 不访问数据库。重新读取只查询文件夹行，走 (type, snippet) 索引。
+ */
+public class FolderTree {
+    private static final String TAG = "FolderTree";
+
+    private static final String[] PROJECTION = new String[] {
+        NoteColumns.ID,
+        NoteColumns.PARENT_ID,
+        NoteColumns.SNIPPET,
+        NoteColumns.NOTES_COUNT,
+        NoteColumns.MODIFIED_DATE
+    };
+
+    private static final int ID_COLUMN            = 0;
+    private static final int PARENT_ID_COLUMN     = 1;
+    private static final int SNIPPET_COLUMN       = 2;
+    private static final int NOTES_COUNT_COLUMN   = 3;
+    private static final int MODIFIED_DATE_COLUMN = 4;
+
+    // 文件夹数据的版本号，文件夹可能发生变化时递增
+    private static long sVersion;
+    // 最近一次读取的快照
+    private static FolderTree sCurrent;
+
+    /**
+     * 文件夹。
+     */
+    public static final class Folder {
+        public final long id;
+        public final long parentId;
+        public final String name;
+        public final int notesCount;
+        public final long modifiedDate;
+
+        Folder(long id, long parentId, String name, int notesCount, long modifiedDate) {
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.notesCount = notesCount;
+            this.modifiedDate = modifiedDate;
+        }
+
+        /**
+         * 是否在回收站中。
+         */
+        public boolean isTrashed() {
+            return parentId == Notes.ID_TRASH_FOLER;
+        }
+    }
+
+    private final long mVersion;
+    private final HashMap<Long, Folder> mFolders;
+    private final HashMap<Long, List<Folder>> mChildren;
+    // 不在回收站中的文件夹，按修改时间倒序
+    private final List<Folder> mVisibleFolders;
+    private final HashSet<String> mVisibleNames;
+
+    private FolderTree(long version, ArrayList<Folder> folders) {
+        mVersion = version;
+        mFolders = new HashMap<Long, Folder>();
+        mChildren = new HashMap<Long, List<Folder>>();
+        mVisibleNames = new HashSet<String>();
+        ArrayList<Folder> visible = new ArrayList<Folder>();
+        for (Folder folder : folders) {
+            mFolders.put(folder.id, folder);
+            List<Folder> children = mChildren.get(folder.parentId);
+            if (children == null) {
+                children = new ArrayList<Folder>();
+                mChildren.put(folder.parentId, children);
+            }
+            children.add(folder);
+            if (!folder.isTrashed()) {
+                visible.add(folder);
+                mVisibleNames.add(folder.name);
+            }
+        }
+        for (Long parentId : mChildren.keySet()) {
+            mChildren.put(parentId, Collections.unmodifiableList(mChildren.get(parentId)));
+        }
+        mVisibleFolders = Collections.unmodifiableList(visible);
+    }
+
+    /**
+     * 笔记发生插入、更新或删除时由内容提供者调用，使当前快照过期。
+     * 只修改笔记内容的变化不影响文件夹。
+     *
+     * @param changes 笔记的变化
+     */
+    static void invalidate(NoteChangeSet changes) {
+        if (changes.isEmpty() || changes.isDataOnly()) {
+            return;
+        }
+        synchronized (FolderTree.class) {
+            sVersion++;
+        }
+    }
+
+    /**
+     * 取回最新的文件夹树，快照过期时重新读取。
+     *
+     * @param resolver 内容解析器
+     * @return 文件夹树，读取失败时为空树
+     */
+    public static FolderTree get(ContentResolver resolver) {
+        long version;
+        synchronized (FolderTree.class) {
+            if (sCurrent != null && sCurrent.mVersion == sVersion) {
+                return sCurrent;
+            }
+            version = sVersion;
+        }
+
+        // 先记下版本号再读取，读取期间的变化会让这份快照立即过期
+        ArrayList<Folder> folders = new ArrayList<Folder>();
+        Cursor c = resolver.query(Notes.CONTENT_NOTE_URI, PROJECTION,
+                NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER, null,
+                NoteColumns.MODIFIED_DATE + " DESC");
+        if (c == null) {
+            Log.e(TAG, "query folders failed");
+            return new FolderTree(-1, folders);
+        }
+        try {
+            while (c.moveToNext()) {
+                folders.add(new Folder(c.getLong(ID_COLUMN), c.getLong(PARENT_ID_COLUMN),
+                        c.getString(SNIPPET_COLUMN), c.getInt(NOTES_COUNT_COLUMN),
+                        c.getLong(MODIFIED_DATE_COLUMN)));
+            }
+        } finally {
+            c.close();
+        }
+
+        FolderTree tree = new FolderTree(version, folders);
+        synchronized (FolderTree.class) {
+            if (sCurrent == null || sCurrent.mVersion < version) {
+                sCurrent = tree;
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 快照的版本号。
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * 快照是否仍是最新的。
+     */
+    public boolean isCurrent() {
+        synchronized (FolderTree.class) {
+            return mVersion == sVersion;
+        }
+    }
+
+    /**
+     * 根据 ID 取文件夹。
+     *
+     * @param folderId 文件夹 ID
+     * @return 文件夹，不存在时返回 null
+     */
+    public Folder getFolder(long folderId) {
+        return mFolders.get(folderId);
+    }
+
+    /**
+     * 取直接位于指定文件夹下的子文件夹，按修改时间倒序。
+     *
+     * @param parentId 父文件夹 ID
+     * @return 子文件夹，不可修改
+     */
+    public List<Folder> getChildren(long parentId) {
+        List<Folder> children = mChildren.get(parentId);
+        return children == null ? Collections.<Folder>emptyList() : children;
+    }
+
+    /**
+     * 取不在回收站中的全部用户文件夹，按修改时间倒序。
+     *
+     * @return 文件夹，不可修改
+     */
+    public List<Folder> getVisibleFolders() {
+        return mVisibleFolders;
+    }
+
+    /**
+     * 不在回收站中的用户文件夹数量。
+     */
+    public int getUserFolderCount() {
+        return mVisibleFolders.size();
+    }
+
+    /**
+     * 不在回收站中的文件夹是否已使用该名称。
+     *
+     * @param name 文件夹名称
+     * @return 已使用时返回 true
+     */
+    public boolean containsVisibleName(String name) {
+        return mVisibleNames.contains(name);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.TextNote;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 大正文的文件存储。
+ * <p>
+ * 文本数据行的内容超过 {@link #THRESHOLD_CHARS} 时，完整内容写入应用私有目录下以数据行 ID
+ * 命名的文件，数据行的 {@link DataColumns#CONTENT} 只保留开头的 {@link #PREVIEW_CHARS} 个字符，
+ * {@link TextNote#BODY_LENGTH} 记录完整内容的字符数。摘要、搜索和列表只使用开头部分，
+ * 打开笔记、同步和备份时通过 {@link #getContent} 读取完整内容。
+ * <p>
+ * 文件由内容提供者在写入数据行时维护，数据行删除或变为普通内容后，对应文件在事务提交后删除。
+ */
+public class NoteBodyStore {
+    private static final String TAG = "NoteBodyStore";
+
+    // 超过该字符数的内容存放在文件中
+    public static final int THRESHOLD_CHARS = 128 * 1024;
+    // 数据行中保留的开头部分的字符数
+    public static final int PREVIEW_CHARS = 1024;
+
+    private static final String DIR_NAME = "note_bodies";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private NoteBodyStore() {
+    }
+
+    /**
+     * 内容是否需要存放在文件中。
+     *
+     * @param content 内容
+     * @return 超过阈值时返回 true
+     */
+    public static boolean isLarge(String content) {
+        return content != null && content.length() > THRESHOLD_CHARS;
+    }
+
+    /**
+     * 取内容的开头部分，不拆开代理对。
+     *
+     * @param content 完整内容
+     * @return 开头部分
+     */
+    public static String preview(String content) {
+        if (content.length() <= PREVIEW_CHARS) {
+            return content;
+        }
+        int end = PREVIEW_CHARS;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end);
+    }
+
+    private static File getDir(Context context) {
+        return new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    private static File getFile(Context context, long dataId) {
+        return new File(getDir(context), String.valueOf(dataId));
+    }
+
+    /**
+     * 把写入数据行的值中的大内容换成开头部分并记录长度，普通内容则清除长度。
+     * 不修改传入的值。
+     *
+     * @param values 写入数据行的值
+     * @return 换过内容的值，内容不需要处理时返回原来的值
+     */
+    static ContentValues toRowValues(ContentValues values) {
+        if (!values.containsKey(DataColumns.CONTENT)) {
+            return values;
+        }
+        String content = values.getAsString(DataColumns.CONTENT);
+        ContentValues row = new ContentValues(values);
+        if (isLarge(content)) {
+            row.put(DataColumns.CONTENT, preview(content));
+            row.put(TextNote.BODY_LENGTH, content.length());
+        } else {
+            row.put(TextNote.BODY_LENGTH, 0);
+        }
+        return row;
+    }
+
+    /**
+     * 为数据行写入完整内容，先写入临时文件再替换。
+     *
+     * @param context 上下文
+     * @param dataId 数据行 ID
+     * @param content 完整内容
+     * @return 是否成功
+     */
+    static boolean write(Context context, long dataId, String content) {
+        File dir = getDir(context);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "create body directory failed");
+            return false;
+        }
+        File file = getFile(context, dataId);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), UTF_8);
+            writer.write(content);
+            writer.close();
+            writer = null;
+            if (temp.renameTo(file)) {
+                return true;
+            }
+            Log.e(TAG, "rename body file failed " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "write body failed " + e.toString());
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+        }
+        temp.delete();
+        return false;
+    }
+
+    /**
+     * 通过内存映射读取数据行的完整内容。
+     *
+     * @param context 上下文
+     * @param dataId 数据行 ID
+     * @param fallback 文件不存在或读取失败时返回的内容，通常为数据行中的开头部分
+     * @return 完整内容
+     */
+    public static String read(Context context, long dataId, String fallback) {
+        File file = getFile(context, dataId);
+        if (!file.exists()) {
+            Log.w(TAG, "body file missing for data " + dataId);
+            return fallback;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return UTF_8.decode(buffer).toString();
+        } catch (IOException e) {
+            Log.e(TAG, "read body failed " + e.toString());
+            return fallback;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * 从游标中读取数据行的内容，内容存放在文件中时读取文件。
+     *
+     * @param context 上下文
+     * @param cursor 游标
+     * @param idColumn 数据行 ID 列的索引
+     * @param contentColumn 内容列的索引
+     * @param lengthColumn {@link TextNote#BODY_LENGTH} 列的索引
+     * @return 完整内容
+     */
+    public static String getContent(Context context, Cursor cursor, int idColumn,
+            int contentColumn, int lengthColumn) {
+        String content = cursor.getString(contentColumn);
+        if (cursor.getInt(lengthColumn) <= 0) {
+            return content;
+        }
+        return read(context, cursor.getLong(idColumn), content);
+    }
+
+    /**
+     * 删除数据行的大正文文件，见 {@link DroppedBodies}。
+     *
+     * @param context 上下文
+     * @param dataId 数据行 ID
+     */
+    static void delete(Context context, long dataId) {
+        File file = getFile(context, dataId);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "delete body file failed " + file);
+        }
+    }
+}
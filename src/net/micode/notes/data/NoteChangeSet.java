@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次事务中笔记变化的集合，包含受影响的笔记 ID 和变化类型。
+ * {@link NotesProvider} 在事务结束后把它编码为 {@link Notes#CONTENT_NOTE_URI} 的查询参数发出一次通知，
+ * 观察者可以通过 {@link #fromUri(Uri)} 解析，只处理自己关心的笔记。
+ */
+public class NoteChangeSet {
+    // 插入了笔记或文件夹
+    public static final int KIND_INSERT = 1;
+    // 更新了笔记或文件夹本身的列
+    public static final int KIND_UPDATE = 2;
+    // 删除了笔记或文件夹
+    public static final int KIND_DELETE = 4;
+    // 笔记的数据或清单条目发生变化，只影响该笔记自身的内容和摘要
+    public static final int KIND_DATA = 8;
+
+    private static final int KIND_ALL = KIND_INSERT | KIND_UPDATE | KIND_DELETE | KIND_DATA;
+
+    // 通知 URI 中的参数名
+    private static final String PARAM_IDS = "ids";
+    private static final String PARAM_KINDS = "kinds";
+
+    // 超过该数量时不再列出笔记 ID，视为所有笔记都可能变化
+    private static final int MAX_IDS = 200;
+
+    private final HashSet<Long> mIds;
+    private int mKinds;
+    private boolean mAll;
+
+    public NoteChangeSet() {
+        mIds = new HashSet<Long>();
+        mKinds = 0;
+        mAll = false;
+    }
+
+    /**
+     * 记录某个笔记的变化。
+     *
+     * @param noteId 笔记 ID
+     * @param kind 变化类型
+     */
+    public void add(long noteId, int kind) {
+        mKinds |= kind;
+        if (!mAll) {
+            mIds.add(noteId);
+            if (mIds.size() > MAX_IDS) {
+                addAll(kind);
+            }
+        }
+    }
+
+    /**
+     * 记录无法确定具体笔记的变化。
+     *
+     * @param kind 变化类型
+     */
+    public void addAll(int kind) {
+        mKinds |= kind;
+        mAll = true;
+        mIds.clear();
+    }
+
+    /**
+     * 合并另一组变化。
+     *
+     * @param other 另一组变化
+     */
+    public void addChanges(NoteChangeSet other) {
+        if (other.mAll) {
+            addAll(other.mKinds);
+        } else {
+            for (Long id : other.mIds) {
+                add(id, other.mKinds);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return mKinds == 0;
+    }
+
+    /**
+     * 是否可能影响所有笔记，此时 {@link #getIds()} 为空。
+     */
+    public boolean affectsAll() {
+        return mAll;
+    }
+
+    public int getKinds() {
+        return mKinds;
+    }
+
+    /**
+     * 是否只有笔记内容发生变化，没有插入、删除或移动笔记。
+     */
+    public boolean isDataOnly() {
+        return mKinds == KIND_DATA;
+    }
+
+    public boolean contains(long noteId) {
+        return mAll || mIds.contains(noteId);
+    }
+
+    public Set<Long> getIds() {
+        return Collections.unmodifiableSet(mIds);
+    }
+
+    /**
+     * 编码为通知 URI。
+     *
+     * @return 带有笔记 ID 和变化类型参数的 {@link Notes#CONTENT_NOTE_URI}
+     */
+    public Uri toUri() {
+        Uri.Builder builder = Notes.CONTENT_NOTE_URI.buildUpon();
+        if (!mAll) {
+            builder.appendQueryParameter(PARAM_IDS, TextUtils.join(",", mIds));
+        }
+        builder.appendQueryParameter(PARAM_KINDS, String.valueOf(mKinds));
+        return builder.build();
+    }
+
+    /**
+     * 从通知 URI 解析变化，不带参数的旧式 URI 视为所有笔记都可能发生任何变化。
+     *
+     * @param uri 通知 URI，可以为 null
+     * @return 解析得到的变化
+     */
+    public static NoteChangeSet fromUri(Uri uri) {
+        NoteChangeSet changes = new NoteChangeSet();
+        if (uri == null) {
+            changes.addAll(KIND_ALL);
+            return changes;
+        }
+
+        int kinds = KIND_ALL;
+        String kindsParam = uri.getQueryParameter(PARAM_KINDS);
+        if (!TextUtils.isEmpty(kindsParam)) {
+            try {
+                kinds = Integer.parseInt(kindsParam);
+            } catch (NumberFormatException e) {
+                kinds = KIND_ALL;
+            }
+        }
+
+        try {
+            String idsParam = uri.getQueryParameter(PARAM_IDS);
+            List<String> segments = uri.getPathSegments();
+            if (idsParam != null) {
+                changes.mKinds = kinds;
+                for (String id : TextUtils.split(idsParam, ",")) {
+                    changes.mIds.add(Long.parseLong(id));
+                }
+            } else if (segments.size() == 2) {
+                changes.add(Long.parseLong(segments.get(1)), kinds);
+            } else {
+                changes.addAll(kinds);
+            }
+        } catch (NumberFormatException e) {
+            changes.addAll(kinds);
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 笔记是否存在、类型以及是否在回收站中的缓存，供批量的存在性和可见性检查使用。
+ * <p>
+ * 未命中的笔记用一次查询取回，只读取 ID、类型和父文件夹三列。
+ * 内容提供者发出插入、更新或删除笔记的通知时失效对应的条目，只修改笔记内容不影响缓存。
+ * 查询期间如有失效，查询结果只返回给调用方，不写入缓存，避免缓存提交前的旧状态。
+ */
+class NoteStateCache {
+    // 缓存的最多条目数，超过时清空
+    private static final int MAX_ENTRIES = 1000;
+    // 每次查询的最多 ID 数
+    private static final int MAX_IN_SELECTION = 500;
+
+    // 状态编码：类型左移一位，最低位为是否在回收站中；不存在的笔记为 NOTE_STATE_MISSING
+    private final HashMap<Long, Integer> mStates = new HashMap<Long, Integer>();
+    private int mGeneration;
+
+    /**
+     * 根据笔记的变化失效缓存。
+     *
+     * @param changes 笔记的变化
+     */
+    synchronized void invalidate(NoteChangeSet changes) {
+        if (changes.isEmpty() || changes.isDataOnly()) {
+            return;
+        }
+        mGeneration++;
+        if (changes.affectsAll()) {
+            mStates.clear();
+            return;
+        }
+        for (Long id : changes.getIds()) {
+            mStates.remove(id);
+        }
+    }
+
+    /**
+     * 取回一组笔记的状态。
+     *
+     * @param db 数据库
+     * @param ids 笔记 ID
+     * @return 包含 {@link Notes#EXTRA_NOTE_TYPES} 和 {@link Notes#EXTRA_NOTE_TRASHED} 的结果，
+     *         与 ID 一一对应
+     */
+    Bundle getStates(SQLiteDatabase db, long[] ids) {
+        int[] states = new int[ids.length];
+        ArrayList<Integer> misses = new ArrayList<Integer>();
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+            for (int i = 0; i < ids.length; i++) {
+                Integer state = mStates.get(ids[i]);
+                if (state == null) {
+                    misses.add(i);
+                } else {
+                    states[i] = state;
+                }
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            HashMap<Long, Integer> found = query(db, ids, misses);
+            synchronized (this) {
+                boolean cacheable = generation == mGeneration;
+                if (cacheable && mStates.size() + misses.size() > MAX_ENTRIES) {
+                    mStates.clear();
+                }
+                for (int i : misses) {
+                    Integer state = found.get(ids[i]);
+                    states[i] = state == null ? Notes.NOTE_STATE_MISSING : state;
+                    if (cacheable) {
+                        mStates.put(ids[i], states[i]);
+                    }
+                }
+            }
+        }
+
+        int[] types = new int[ids.length];
+        boolean[] trashed = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            if (states[i] == Notes.NOTE_STATE_MISSING) {
+                types[i] = Notes.NOTE_STATE_MISSING;
+            } else {
+                types[i] = states[i] >> 1;
+                trashed[i] = (states[i] & 1) != 0;
+            }
+        }
+        Bundle result = new Bundle();
+        result.putIntArray(Notes.EXTRA_NOTE_TYPES, types);
+        result.putBooleanArray(Notes.EXTRA_NOTE_TRASHED, trashed);
+        return result;
+    }
+
+    private static HashMap<Long, Integer> query(SQLiteDatabase db, long[] ids,
+            ArrayList<Integer> indexes) {
+        HashMap<Long, Integer> found = new HashMap<Long, Integer>();
+        String[] projection = new String[] {
+                NoteColumns.ID, NoteColumns.TYPE, NoteColumns.PARENT_ID
+        };
+        for (int start = 0; start < indexes.size(); start += MAX_IN_SELECTION) {
+            StringBuilder sb = new StringBuilder();
+            int end = Math.min(start + MAX_IN_SELECTION, indexes.size());
+            for (int i = start; i < end; i++) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(ids[indexes.get(i)]);
+            }
+            Cursor c = db.query(TABLE.NOTE, projection, NoteColumns.ID + " IN (" + sb + ")",
+                    null, null, null, null);
+            if (c == null) {
+                continue;
+            }
+            while (c.moveToNext()) {
+                int trashed = c.getLong(2) == Notes.ID_TRASH_FOLER ? 1 : 0;
+                found.put(c.getLong(0), (c.getInt(1) << 1) | trashed);
+            }
+            c.close();
+        }
+        return found;
+    }
+}
@@ -95,6 +95,122 @@ public class Notes {
      */
     public static final Uri CONTENT_DATA_URI = Uri.parse("content://" + AUTHORITY + "/data");
 
+    /**
+     * 用于查询清单条目的 Uri。
+     * 清单模式的文本笔记按条目存储，每个条目对应一行。
+     */
+    public static final Uri CONTENT_CHECKLIST_URI = Uri.parse("content://" + AUTHORITY + "/checklist");
+
+    /**
+     * 用于一次查询笔记及其数据的 Uri，末尾可追加笔记 ID 只查询单个笔记。
+     * 结果为笔记表与数据表的左连接，每个数据行对应一行，列名重复时需要带上表名。
+     */
+    public static final Uri CONTENT_NOTE_DATA_URI = Uri.parse("content://" + AUTHORITY + "/note_data");
+
+    /**
+     * 查询参数：最多返回的行数，用于 {@link #CONTENT_NOTE_URI} 的查询。
+     */
+    public static final String PARAM_LIMIT = "limit";
+
+    /**
+     * 内容提供者 {@code call} 方法名：删除文件夹及其中的全部笔记，参数为文件夹 ID。
+     * 返回的 Bundle 中包含受影响小部件的 {@link #EXTRA_WIDGET_IDS} 和 {@link #EXTRA_WIDGET_TYPES}。
+     */
+    public static final String METHOD_DELETE_FOLDER = "delete_folder";
+
+    /**
+     * 内容提供者 {@code call} 方法名：把文件夹及其中的全部笔记移到回收站，参数和返回值同
+     * {@link #METHOD_DELETE_FOLDER}。
+     */
+    public static final String METHOD_TRASH_FOLDER = "trash_folder";
+
+    /**
+     * 内容提供者 {@code call} 方法名：检查文件夹的笔记数量是否与实际子项一致，不做修改。
+     * 返回的 Bundle 中 {@link #EXTRA_MISMATCHED_FOLDERS} 为数量不一致的文件夹个数。
+     */
+    public static final String METHOD_CHECK_FOLDER_COUNTS = "check_folder_counts";
+
+    /**
+     * 内容提供者 {@code call} 方法名：从头重新计算所有文件夹的笔记数量，返回值同
+     * {@link #METHOD_CHECK_FOLDER_COUNTS}，为重建前不一致的个数。
+     */
+    public static final String METHOD_REBUILD_FOLDER_COUNTS = "rebuild_folder_counts";
+
+    /**
+     * 内容提供者 {@code call} 方法名：压缩长时间未修改的笔记的文本内容，读取时透明解压。
+     * 参数为修改时间的上限，早于该时间的笔记视为冷数据；返回的 Bundle 中
+     * {@link #EXTRA_COMPRESSED_ROWS} 为压缩的数据行数。
+     */
+    public static final String METHOD_COMPRESS_COLD_CONTENT = "compress_cold_content";
+
+    // 检查或重建文件夹数量时返回的不一致文件夹个数的键名
+    public static final String EXTRA_MISMATCHED_FOLDERS = "mismatched_folders";
+    // 压缩冷数据时返回的压缩行数的键名
+    public static final String EXTRA_COMPRESSED_ROWS = "compressed_rows";
+
+    /**
+     * 内容提供者 {@code call} 方法名：执行数据库维护，删除回收站中过期的笔记，增量回收空闲页，
+     * 更新统计信息并在碎片较多时重建索引。参数为移入回收站时间的上限，
+     * {@link #EXTRA_KEEP_SYNCED} 为 true 时保留已同步过的笔记。
+     * 返回的 Bundle 包含维护前后的数据库大小、删除的笔记数以及各步骤的耗时。
+     */
+    public static final String METHOD_RUN_MAINTENANCE = "run_maintenance";
+
+    // 维护时是否保留已同步过的回收站笔记的键名
+    public static final String EXTRA_KEEP_SYNCED = "keep_synced";
+    // 维护前数据库大小（字节）的键名
+    public static final String EXTRA_DB_SIZE_BEFORE = "db_size_before";
+    // 维护后数据库大小（字节）的键名
+    public static final String EXTRA_DB_SIZE_AFTER = "db_size_after";
+    // 维护时删除的回收站笔记数的键名
+    public static final String EXTRA_PURGED_NOTES = "purged_notes";
+    // 维护时是否重建了索引的键名
+    public static final String EXTRA_REINDEXED = "reindexed";
+    // 维护总耗时（毫秒）的键名
+    public static final String EXTRA_MAINTENANCE_DURATION = "maintenance_duration";
+    // 清理回收站耗时（毫秒）的键名
+    public static final String EXTRA_PURGE_DURATION = "purge_duration";
+    // 重建索引耗时（毫秒）的键名
+    public static final String EXTRA_REINDEX_DURATION = "reindex_duration";
+    // 回收空闲页耗时（毫秒）的键名
+    public static final String EXTRA_VACUUM_DURATION = "vacuum_duration";
+    // 更新统计信息耗时（毫秒）的键名
+    public static final String EXTRA_ANALYZE_DURATION = "analyze_duration";
+    /**
+     * 内容提供者 {@code call} 方法名：批量取回笔记是否存在、类型以及是否在回收站中，
+     * {@link #EXTRA_NOTE_IDS} 为笔记 ID 数组。返回的 Bundle 中 {@link #EXTRA_NOTE_TYPES}
+     * 和 {@link #EXTRA_NOTE_TRASHED} 与 ID 一一对应，不存在的笔记类型为 {@link #NOTE_STATE_MISSING}。
+     * 结果由内容提供者缓存，笔记变化时失效。
+     */
+    public static final String METHOD_GET_NOTE_STATES = "get_note_states";
+
+    // 批量检查时笔记 ID 数组（long[]）的键名
+    public static final String EXTRA_NOTE_IDS = "note_ids";
+    // 批量检查返回的笔记类型数组（int[]）的键名
+    public static final String EXTRA_NOTE_TYPES = "note_types";
+    // 批量检查返回的是否在回收站中数组（boolean[]）的键名
+    public static final String EXTRA_NOTE_TRASHED = "note_trashed";
+    // 批量检查时不存在的笔记的类型
+    public static final int NOTE_STATE_MISSING = -1;
+
+    /**
+     * 内容提供者 call 方法：读取进程内的性能计数，参数为 {@link #ARG_RESET} 时读取后清空。
+     * 返回的 Bundle 中 {@link #EXTRA_PERF_STATS} 为 JSON 文本，格式见 PerfStats。
+     * 可以用 {@code adb shell content call --uri content://micode_notes --method get_perf_stats}
+     * 在不同版本上采集并比较。
+     */
+    public static final String METHOD_GET_PERF_STATS = "get_perf_stats";
+
+    // 读取性能计数后清空
+    public static final String ARG_RESET = "reset";
+    // 性能计数 JSON 的键名
+    public static final String EXTRA_PERF_STATS = "perf_stats";
+
+    // 文件夹操作返回的受影响小部件 ID 数组的键名
+    public static final String EXTRA_WIDGET_IDS = "widget_ids";
+    // 文件夹操作返回的受影响小部件类型数组的键名，与 ID 数组一一对应
+    public static final String EXTRA_WIDGET_TYPES = "widget_types";
+
     /**
      * NoteColumns 接口定义了笔记表的列名常量，
      * 包含笔记和文件夹的各种属性列名。
@@ -201,6 +317,12 @@ public class Notes {
          * <P> 类型 : INTEGER (long) </P>
          */
         public static final String VERSION = "version";
+
+        /**
+         * 移入回收站的时间，回收站中超过保留期的笔记按它清理，不在回收站中时没有意义
+         * <P> 类型 : INTEGER (long) </P>
+         */
+        public static final String TRASH_DATE = "trash_date";
     }
 
     /**
@@ -275,6 +397,47 @@ public class Notes {
         public static final String DATA5 = "data5";
     }
 
+    /**
+     * CheckListColumns 接口定义了清单条目表的列名常量。
+     */
+    public interface CheckListColumns {
+        /**
+         * 行的唯一 ID
+         * <P> 类型: INTEGER (long) </P>
+         */
+        public static final String ID = "_id";
+
+        /**
+         * 条目所属笔记的 ID
+         * <P> 类型: INTEGER (long) </P>
+         */
+        public static final String NOTE_ID = "note_id";
+
+        /**
+         * 条目所属文本数据行的 ID
+         * <P> 类型: INTEGER (long) </P>
+         */
+        public static final String DATA_ID = "data_id";
+
+        /**
+         * 条目在清单中的位置
+         * <P> 类型: INTEGER </P>
+         */
+        public static final String POSITION = "position";
+
+        /**
+         * 条目是否已勾选
+         * <P> 类型: INTEGER 1: 已勾选 0: 未勾选 </P>
+         */
+        public static final String CHECKED = "checked";
+
+        /**
+         * 条目的文本内容，不包含勾选标记
+         * <P> 类型: TEXT </P>
+         */
+        public static final String CONTENT = "content";
+    }
+
     /**
      * TextNote 类是一个静态常量类，实现了 DataColumns 接口，
      * 定义了文本笔记相关的常量，包括模式、内容类型和 Uri。
@@ -283,12 +446,20 @@ public class Notes {
         /**
          * 指示文本是否处于复选列表模式的模式
          * <P> 类型: Integer 1: 复选列表模式 0: 正常模式 </P>
+         * 复选列表模式下 {@link #CONTENT} 为空，条目存储在 {@link Notes#CONTENT_CHECKLIST_URI} 中
          */
         public static final String MODE = DATA1;
 
         // 复选列表模式的常量值
         public static final int MODE_CHECK_LIST = 1;
 
+        /**
+         * 完整内容的字符数，内容存放在文件中时大于 0，此时 {@link #CONTENT} 只保留开头部分
+         * <P> 类型: INTEGER </P>
+         * 见 {@link NoteBodyStore}
+         */
+        public static final String BODY_LENGTH = DATA2;
+
         // 文本笔记集合的内容类型
         public static final String CONTENT_TYPE = "vnd.android.cursor.dir/text_note";
 
@@ -316,6 +487,13 @@ public class Notes {
          */
         public static final String PHONE_NUMBER = DATA3;
 
+        /**
+         * 电话号码的最小匹配键，由内容提供者根据 {@link #PHONE_NUMBER} 写入，与
+         * {@link #CALL_DATE} 一起建有索引，见 {@link Contact#getPhoneKey}
+         * <P> 类型: TEXT </P>
+         */
+        public static final String PHONE_KEY = DATA4;
+
         // 通话记录笔记集合的内容类型
         public static final String CONTENT_TYPE = "vnd.android.cursor.dir/call_note";
 
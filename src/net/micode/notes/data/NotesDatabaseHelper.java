@@ -18,25 +18,32 @@ package net.micode.notes.data;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import net.micode.notes.data.Notes.CallNote;
+import net.micode.notes.data.Notes.CheckListColumns;
 import net.micode.notes.data.Notes.DataColumns;
 import net.micode.notes.data.Notes.DataConstants;
 import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.model.CheckList;
 
 
 public class NotesDatabaseHelper extends SQLiteOpenHelper {
     // 数据库名称
     private static final String DB_NAME = "note.db";
     // 数据库版本号
-    private static final int DB_VERSION = 4;
+    private static final int DB_VERSION = 13;
 
     // 数据库表名定义
     public interface TABLE {
         public static final String NOTE = "note";  // 笔记表
         public static final String DATA = "data";  // 数据表
+        public static final String CHECKLIST = "checklist";  // 清单条目表
     }
 
     // 日志标签
@@ -45,8 +52,14 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
     // 单例实例
     private static NotesDatabaseHelper mInstance;
 
+    // 建表、索引和触发器的语句在包内可见，基准测试在普通 JVM 上用同样的语句建库
+
+    // 笔记与数据的左连接，用于一次查出笔记及其全部数据行
+    static final String NOTE_DATA_JOIN_TABLE = TABLE.NOTE + " LEFT JOIN " + TABLE.DATA
+        + " ON (" + TABLE.DATA + "." + DataColumns.NOTE_ID + "=" + TABLE.NOTE + "." + NoteColumns.ID + ")";
+
     // 创建笔记表的SQL语句
-    private static final String CREATE_NOTE_TABLE_SQL =
+    static final String CREATE_NOTE_TABLE_SQL =
         "CREATE TABLE " + TABLE.NOTE + "(" +
             NoteColumns.ID + " INTEGER PRIMARY KEY," +  // 主键ID
             NoteColumns.PARENT_ID + " INTEGER NOT NULL DEFAULT 0," +  // 父文件夹ID
@@ -64,11 +77,12 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
             NoteColumns.LOCAL_MODIFIED + " INTEGER NOT NULL DEFAULT 0," +  // 本地修改标记
             NoteColumns.ORIGIN_PARENT_ID + " INTEGER NOT NULL DEFAULT 0," +  // 原始父文件夹ID
             NoteColumns.GTASK_ID + " TEXT NOT NULL DEFAULT ''," +  // Google Task ID
-            NoteColumns.VERSION + " INTEGER NOT NULL DEFAULT 0" +  // 版本号
+            NoteColumns.VERSION + " INTEGER NOT NULL DEFAULT 0," +  // 版本号
+            NoteColumns.TRASH_DATE + " INTEGER NOT NULL DEFAULT 0" +  // 移入回收站的时间
         ")";
 
     // 创建数据表的SQL语句
-    private static final String CREATE_DATA_TABLE_SQL =
+    static final String CREATE_DATA_TABLE_SQL =
         "CREATE TABLE " + TABLE.DATA + "(" +
             DataColumns.ID + " INTEGER PRIMARY KEY," +  // 主键ID
             DataColumns.MIME_TYPE + " TEXT NOT NULL," +  // MIME类型
@@ -83,67 +97,53 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
             DataColumns.DATA5 + " TEXT NOT NULL DEFAULT ''" +  // 扩展字段5
         ")";
 
-    private static final String CREATE_DATA_NOTE_ID_INDEX_SQL =
-        "CREATE INDEX IF NOT EXISTS note_id_index ON " +
-        TABLE.DATA + "(" + DataColumns.NOTE_ID + ");";
+    // 创建清单条目表的SQL语句
+    static final String CREATE_CHECKLIST_TABLE_SQL =
+        "CREATE TABLE " + TABLE.CHECKLIST + "(" +
+            CheckListColumns.ID + " INTEGER PRIMARY KEY," +  // 主键ID
+            CheckListColumns.NOTE_ID + " INTEGER NOT NULL DEFAULT 0," +  // 关联的笔记ID
+            CheckListColumns.DATA_ID + " INTEGER NOT NULL DEFAULT 0," +  // 关联的文本数据ID
+            CheckListColumns.POSITION + " INTEGER NOT NULL DEFAULT 0," +  // 条目位置
+            CheckListColumns.CHECKED + " INTEGER NOT NULL DEFAULT 0," +  // 是否已勾选
+            CheckListColumns.CONTENT + " TEXT NOT NULL DEFAULT ''" +  // 条目内容
+        ")";
 
-    /**
-     * Increase folder's note count when move note to the folder
-     */
-    private static final String NOTE_INCREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER =
-        "CREATE TRIGGER increase_folder_count_on_update "+
-        " AFTER UPDATE OF " + NoteColumns.PARENT_ID + " ON " + TABLE.NOTE +
-        " BEGIN " +
-        "  UPDATE " + TABLE.NOTE +
-        "   SET " + NoteColumns.NOTES_COUNT + "=" + NoteColumns.NOTES_COUNT + " + 1" +
-        "  WHERE " + NoteColumns.ID + "=new." + NoteColumns.PARENT_ID + ";" +
-        " END";
+    static final String CREATE_CHECKLIST_NOTE_ID_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS checklist_note_id_index ON " +
+        TABLE.CHECKLIST + "(" + CheckListColumns.NOTE_ID + "," + CheckListColumns.POSITION + ");";
 
-    /**
-     * Decrease folder's note count when move note from folder
-     */
-    private static final String NOTE_DECREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER =
-        "CREATE TRIGGER decrease_folder_count_on_update " +
-        " AFTER UPDATE OF " + NoteColumns.PARENT_ID + " ON " + TABLE.NOTE +
-        " BEGIN " +
-        "  UPDATE " + TABLE.NOTE +
-        "   SET " + NoteColumns.NOTES_COUNT + "=" + NoteColumns.NOTES_COUNT + "-1" +
-        "  WHERE " + NoteColumns.ID + "=old." + NoteColumns.PARENT_ID +
-        "  AND " + NoteColumns.NOTES_COUNT + ">0" + ";" +
-        " END";
+    static final String CREATE_NOTE_ALERTED_DATE_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS note_alerted_date_index ON " +
+        TABLE.NOTE + "(" + NoteColumns.ALERTED_DATE + ");";
 
-    /**
-     * Increase folder's note count when insert new note to the folder
-     */
-    private static final String NOTE_INCREASE_FOLDER_COUNT_ON_INSERT_TRIGGER =
-        "CREATE TRIGGER increase_folder_count_on_insert " +
-        " AFTER INSERT ON " + TABLE.NOTE +
-        " BEGIN " +
-        "  UPDATE " + TABLE.NOTE +
-        "   SET " + NoteColumns.NOTES_COUNT + "=" + NoteColumns.NOTES_COUNT + " + 1" +
-        "  WHERE " + NoteColumns.ID + "=new." + NoteColumns.PARENT_ID + ";" +
-        " END";
+    static final String CREATE_NOTE_PARENT_ID_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS note_parent_id_index ON " +
+        TABLE.NOTE + "(" + NoteColumns.PARENT_ID + ");";
 
-    /**
-     * Decrease folder's note count when delete note from the folder
-     */
-    private static final String NOTE_DECREASE_FOLDER_COUNT_ON_DELETE_TRIGGER =
-        "CREATE TRIGGER decrease_folder_count_on_delete " +
-        " AFTER DELETE ON " + TABLE.NOTE +
-        " BEGIN " +
-        "  UPDATE " + TABLE.NOTE +
-        "   SET " + NoteColumns.NOTES_COUNT + "=" + NoteColumns.NOTES_COUNT + "-1" +
-        "  WHERE " + NoteColumns.ID + "=old." + NoteColumns.PARENT_ID +
-        "  AND " + NoteColumns.NOTES_COUNT + ">0;" +
-        " END";
+    static final String CREATE_NOTE_TYPE_SNIPPET_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS note_type_snippet_index ON " +
+        TABLE.NOTE + "(" + NoteColumns.TYPE + "," + NoteColumns.SNIPPET + ");";
+
+    static final String CREATE_CHECKLIST_DATA_ID_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS checklist_data_id_index ON " +
+        TABLE.CHECKLIST + "(" + CheckListColumns.DATA_ID + ");";
+
+    static final String CREATE_DATA_NOTE_ID_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS note_id_index ON " +
+        TABLE.DATA + "(" + DataColumns.NOTE_ID + ");";
+
+    static final String CREATE_CALL_NOTE_PHONE_KEY_INDEX_SQL =
+        "CREATE INDEX IF NOT EXISTS call_note_phone_key_index ON " +
+        TABLE.DATA + "(" + CallNote.PHONE_KEY + "," + CallNote.CALL_DATE + ");";
 
     /**
      * Update note's content when insert data with type {@link DataConstants#NOTE}
      */
-    private static final String DATA_UPDATE_NOTE_CONTENT_ON_INSERT_TRIGGER =
+    static final String DATA_UPDATE_NOTE_CONTENT_ON_INSERT_TRIGGER =
         "CREATE TRIGGER update_note_content_on_insert " +
         " AFTER INSERT ON " + TABLE.DATA +
         " WHEN new." + DataColumns.MIME_TYPE + "='" + DataConstants.NOTE + "'" +
+        "  AND IFNULL(new." + TextNote.MODE + ",0)<>" + TextNote.MODE_CHECK_LIST +
         " BEGIN" +
         "  UPDATE " + TABLE.NOTE +
         "   SET " + NoteColumns.SNIPPET + "=new." + DataColumns.CONTENT +
@@ -151,12 +151,15 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         " END";
 
     /**
-     * Update note's content when data with {@link DataConstants#NOTE} type has changed
+     * Update note's content when data with {@link DataConstants#NOTE} type has changed,
+     * compressing the content in place leaves the snippet untouched
      */
-    private static final String DATA_UPDATE_NOTE_CONTENT_ON_UPDATE_TRIGGER =
+    static final String DATA_UPDATE_NOTE_CONTENT_ON_UPDATE_TRIGGER =
         "CREATE TRIGGER update_note_content_on_update " +
         " AFTER UPDATE ON " + TABLE.DATA +
         " WHEN old." + DataColumns.MIME_TYPE + "='" + DataConstants.NOTE + "'" +
+        "  AND IFNULL(new." + TextNote.MODE + ",0)<>" + TextNote.MODE_CHECK_LIST +
+        "  AND typeof(new." + DataColumns.CONTENT + ")<>'blob'" +
         " BEGIN" +
         "  UPDATE " + TABLE.NOTE +
         "   SET " + NoteColumns.SNIPPET + "=new." + DataColumns.CONTENT +
@@ -166,7 +169,7 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
     /**
      * Update note's content when data with {@link DataConstants#NOTE} type has deleted
      */
-    private static final String DATA_UPDATE_NOTE_CONTENT_ON_DELETE_TRIGGER =
+    static final String DATA_UPDATE_NOTE_CONTENT_ON_DELETE_TRIGGER =
         "CREATE TRIGGER update_note_content_on_delete " +
         " AFTER delete ON " + TABLE.DATA +
         " WHEN old." + DataColumns.MIME_TYPE + "='" + DataConstants.NOTE + "'" +
@@ -176,10 +179,21 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         "  WHERE " + NoteColumns.ID + "=old." + DataColumns.NOTE_ID + ";" +
         " END";
 
+    /**
+     * Delete check list items belong to data which has been deleted
+     */
+    static final String DATA_DELETE_CHECKLIST_ON_DELETE_TRIGGER =
+        "CREATE TRIGGER delete_checklist_on_delete " +
+        " AFTER DELETE ON " + TABLE.DATA +
+        " BEGIN" +
+        "  DELETE FROM " + TABLE.CHECKLIST +
+        "   WHERE " + CheckListColumns.DATA_ID + "=old." + DataColumns.ID + ";" +
+        " END";
+
     /**
      * Delete datas belong to note which has been deleted
      */
-    private static final String NOTE_DELETE_DATA_ON_DELETE_TRIGGER =
+    static final String NOTE_DELETE_DATA_ON_DELETE_TRIGGER =
         "CREATE TRIGGER delete_data_on_delete " +
         " AFTER DELETE ON " + TABLE.NOTE +
         " BEGIN" +
@@ -188,29 +202,50 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         " END";
 
     /**
-     * Delete notes belong to folder which has been deleted
+     * Delete notes belong to folder which has been deleted, only folders can have children so
+     * deleting a note never looks for them
      */
-    private static final String FOLDER_DELETE_NOTES_ON_DELETE_TRIGGER =
+    static final String FOLDER_DELETE_NOTES_ON_DELETE_TRIGGER =
         "CREATE TRIGGER folder_delete_notes_on_delete " +
         " AFTER DELETE ON " + TABLE.NOTE +
+        " WHEN old." + NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER +
         " BEGIN" +
         "  DELETE FROM " + TABLE.NOTE +
         "   WHERE " + NoteColumns.PARENT_ID + "=old." + NoteColumns.ID + ";" +
         " END";
 
     /**
-     * Move notes belong to folder which has been moved to trash folder
+     * Move notes belong to folder which has been moved to trash folder, fires only when a
+     * folder's parent changes to trash instead of on every update of a trashed row
      */
-    private static final String FOLDER_MOVE_NOTES_ON_TRASH_TRIGGER =
+    static final String FOLDER_MOVE_NOTES_ON_TRASH_TRIGGER =
         "CREATE TRIGGER folder_move_notes_on_trash " +
-        " AFTER UPDATE ON " + TABLE.NOTE +
+        " AFTER UPDATE OF " + NoteColumns.PARENT_ID + " ON " + TABLE.NOTE +
         " WHEN new." + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER +
+        "  AND old." + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER +
+        "  AND old." + NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER +
         " BEGIN" +
         "  UPDATE " + TABLE.NOTE +
         "   SET " + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER +
         "  WHERE " + NoteColumns.PARENT_ID + "=old." + NoteColumns.ID + ";" +
         " END";
 
+    /**
+     * Stamp the time a row is moved to trash folder into its trash date, the modified date
+     * shown to the user is left alone, trash older than the retention period is purged by
+     * maintenance
+     */
+    static final String NOTE_STAMP_TRASH_DATE_TRIGGER =
+        "CREATE TRIGGER note_stamp_trash_date " +
+        " AFTER UPDATE OF " + NoteColumns.PARENT_ID + " ON " + TABLE.NOTE +
+        " WHEN new." + NoteColumns.PARENT_ID + "=" + Notes.ID_TRASH_FOLER +
+        "  AND old." + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER +
+        " BEGIN" +
+        "  UPDATE " + TABLE.NOTE +
+        "   SET " + NoteColumns.TRASH_DATE + "=strftime('%s','now') * 1000" +
+        "  WHERE " + NoteColumns.ID + "=new." + NoteColumns.ID + ";" +
+        " END";
+
     public NotesDatabaseHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
     }
@@ -218,6 +253,9 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
     public void createNoteTable(SQLiteDatabase db) {
         db.execSQL(CREATE_NOTE_TABLE_SQL);
         reCreateNoteTableTriggers(db);
+        db.execSQL(CREATE_NOTE_ALERTED_DATE_INDEX_SQL);
+        db.execSQL(CREATE_NOTE_PARENT_ID_INDEX_SQL);
+        db.execSQL(CREATE_NOTE_TYPE_SNIPPET_INDEX_SQL);
         createSystemFolder(db);
         Log.d(TAG, "note table has been created");
     }
@@ -230,14 +268,13 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("DROP TRIGGER IF EXISTS increase_folder_count_on_insert");
         db.execSQL("DROP TRIGGER IF EXISTS folder_delete_notes_on_delete");
         db.execSQL("DROP TRIGGER IF EXISTS folder_move_notes_on_trash");
+        db.execSQL("DROP TRIGGER IF EXISTS note_stamp_trash_date");
 
-        db.execSQL(NOTE_INCREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER);
-        db.execSQL(NOTE_DECREASE_FOLDER_COUNT_ON_UPDATE_TRIGGER);
-        db.execSQL(NOTE_DECREASE_FOLDER_COUNT_ON_DELETE_TRIGGER);
+        // folder counts are maintained in batches by the provider, see FolderCounts
         db.execSQL(NOTE_DELETE_DATA_ON_DELETE_TRIGGER);
-        db.execSQL(NOTE_INCREASE_FOLDER_COUNT_ON_INSERT_TRIGGER);
         db.execSQL(FOLDER_DELETE_NOTES_ON_DELETE_TRIGGER);
         db.execSQL(FOLDER_MOVE_NOTES_ON_TRASH_TRIGGER);
+        db.execSQL(NOTE_STAMP_TRASH_DATE_TRIGGER);
     }
 
     // 创建系统文件夹
@@ -272,6 +309,7 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_DATA_TABLE_SQL);
         reCreateDataTableTriggers(db);
         db.execSQL(CREATE_DATA_NOTE_ID_INDEX_SQL);
+        db.execSQL(CREATE_CALL_NOTE_PHONE_KEY_INDEX_SQL);
         Log.d(TAG, "data table has been created");
     }
 
@@ -285,6 +323,24 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(DATA_UPDATE_NOTE_CONTENT_ON_DELETE_TRIGGER);
     }
 
+    public void createCheckListTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_CHECKLIST_TABLE_SQL);
+        reCreateCheckListTableTriggers(db);
+        db.execSQL(CREATE_CHECKLIST_NOTE_ID_INDEX_SQL);
+        db.execSQL(CREATE_CHECKLIST_DATA_ID_INDEX_SQL);
+        Log.d(TAG, "checklist table has been created");
+    }
+
+    private void reCreateCheckListTableTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS checklist_update_snippet_on_insert");
+        db.execSQL("DROP TRIGGER IF EXISTS checklist_update_snippet_on_update");
+        db.execSQL("DROP TRIGGER IF EXISTS checklist_update_snippet_on_delete");
+        db.execSQL("DROP TRIGGER IF EXISTS delete_checklist_on_delete");
+
+        // check list snippets are rebuilt once per note by the provider, see CheckListSnippets
+        db.execSQL(DATA_DELETE_CHECKLIST_ON_DELETE_TRIGGER);
+    }
+
     static synchronized NotesDatabaseHelper getInstance(Context context) {
         if (mInstance == null) {
             mInstance = new NotesDatabaseHelper(context);
@@ -296,6 +352,16 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         createNoteTable(db);
         createDataTable(db);
+        createCheckListTable(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // WAL lets list, widget and background readers run alongside a writer
+        if (!db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
@@ -320,6 +386,51 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
             oldVersion++;
         }
 
+        if (oldVersion == 4) {
+            upgradeToV5(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 5) {
+            upgradeToV6(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 6) {
+            upgradeToV7(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 7) {
+            upgradeToV8(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 8) {
+            upgradeToV9(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 9) {
+            upgradeToV10(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 10) {
+            upgradeToV11(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 11) {
+            upgradeToV12(db);
+            oldVersion++;
+        }
+
+        if (oldVersion == 12) {
+            upgradeToV13(db);
+            oldVersion++;
+        }
+
         if (reCreateTriggers) {
             reCreateNoteTableTriggers(db);
             reCreateDataTableTriggers(db);
@@ -357,4 +468,108 @@ public class NotesDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("ALTER TABLE " + TABLE.NOTE + " ADD COLUMN " + NoteColumns.VERSION
                 + " INTEGER NOT NULL DEFAULT 0");
     }
+
+    private void upgradeToV5(SQLiteDatabase db) {
+        createCheckListTable(db);
+        // the text data triggers skip rows in check list mode from now on
+        reCreateDataTableTriggers(db);
+
+        // split the '√'/'□' prefixed lines of existing check lists into items
+        Cursor c = db.query(TABLE.DATA, new String[] {
+                DataColumns.ID, DataColumns.NOTE_ID, DataColumns.CONTENT
+        }, DataColumns.MIME_TYPE + "=? AND " + TextNote.MODE + "=" + TextNote.MODE_CHECK_LIST,
+                new String[] { DataConstants.NOTE }, null, null, null);
+        if (c != null) {
+            ContentValues values = new ContentValues();
+            while (c.moveToNext()) {
+                CheckList list = CheckList.fromText(c.getString(2));
+                for (int i = 0; i < list.size(); i++) {
+                    values.clear();
+                    values.put(CheckListColumns.NOTE_ID, c.getLong(1));
+                    values.put(CheckListColumns.DATA_ID, c.getLong(0));
+                    values.put(CheckListColumns.POSITION, i);
+                    values.put(CheckListColumns.CHECKED, list.isChecked(i) ? 1 : 0);
+                    values.put(CheckListColumns.CONTENT, list.getText(i));
+                    db.insert(TABLE.CHECKLIST, null, values);
+                }
+            }
+            c.close();
+        }
+        db.execSQL("UPDATE " + TABLE.DATA + " SET " + DataColumns.CONTENT + "=''"
+                + " WHERE " + DataColumns.MIME_TYPE + "='" + DataConstants.NOTE + "'"
+                + " AND " + TextNote.MODE + "=" + TextNote.MODE_CHECK_LIST);
+    }
+
+    private void upgradeToV6(SQLiteDatabase db) {
+        // lets the alarm scheduler find the next upcoming alert without a full scan
+        db.execSQL(CREATE_NOTE_ALERTED_DATE_INDEX_SQL);
+    }
+
+    private void upgradeToV7(SQLiteDatabase db) {
+        // folder cascades look children up by parent, and data deletes look items up by data
+        db.execSQL(CREATE_NOTE_PARENT_ID_INDEX_SQL);
+        db.execSQL(CREATE_CHECKLIST_DATA_ID_INDEX_SQL);
+        // the folder triggers no longer fire for plain notes
+        reCreateNoteTableTriggers(db);
+    }
+
+    private void upgradeToV8(SQLiteDatabase db) {
+        // drops the per-row folder count triggers
+        reCreateNoteTableTriggers(db);
+        // counts no longer include the system folders and are rebuilt once here
+        FolderCounts.rebuild(db);
+    }
+
+    private void upgradeToV9(SQLiteDatabase db) {
+        // cold content may be compressed in place without touching the snippet
+        reCreateDataTableTriggers(db);
+    }
+
+    private void upgradeToV10(SQLiteDatabase db) {
+        // the trash time gets its own column, the modified date is left alone
+        db.execSQL("ALTER TABLE " + TABLE.NOTE + " ADD COLUMN " + NoteColumns.TRASH_DATE
+                + " INTEGER NOT NULL DEFAULT 0");
+        // moving to trash now stamps the trash date
+        reCreateNoteTableTriggers(db);
+        // rows already in trash get a full retention period from now on
+        db.execSQL("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.TRASH_DATE
+                + "=strftime('%s','now') * 1000 WHERE " + NoteColumns.PARENT_ID + "="
+                + Notes.ID_TRASH_FOLER);
+    }
+
+    private void upgradeToV11(SQLiteDatabase db) {
+        // call notes are looked up by an indexed min-match key instead of scanning with
+        // PHONE_NUMBERS_EQUAL, back fill the key of the existing call notes
+        db.execSQL(CREATE_CALL_NOTE_PHONE_KEY_INDEX_SQL);
+        Cursor c = db.query(TABLE.DATA, new String[] { DataColumns.ID, CallNote.PHONE_NUMBER },
+                DataColumns.MIME_TYPE + "=?", new String[] { CallNote.CONTENT_ITEM_TYPE },
+                null, null, null);
+        if (c == null) {
+            return;
+        }
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE.DATA + " SET "
+                + CallNote.PHONE_KEY + "=? WHERE " + DataColumns.ID + "=?");
+        try {
+            while (c.moveToNext()) {
+                update.bindString(1, Contact.getPhoneKey(c.getString(1)));
+                update.bindLong(2, c.getLong(0));
+                update.execute();
+            }
+        } finally {
+            update.close();
+            c.close();
+        }
+    }
+
+    private void upgradeToV12(SQLiteDatabase db) {
+        // folder name checks, folder lists and the folder count seek (type, snippet)
+        db.execSQL(CREATE_NOTE_TYPE_SNIPPET_INDEX_SQL);
+    }
+
+    private void upgradeToV13(SQLiteDatabase db) {
+        // drops the per-row check list snippet triggers
+        reCreateCheckListTableTriggers(db);
+        // rebuild the snippets once, this also covers check lists just migrated by upgradeToV5
+        CheckListSnippets.rebuildAll(db);
+    }
 }
@@ -19,8 +19,14 @@ package net.micode.notes.data;
 
 // 导入搜索管理器相关类
 import android.app.SearchManager;
+// 导入小部件管理器类，用于判断无效的小部件 ID
+import android.appwidget.AppWidgetManager;
 // 导入内容提供者基类
 import android.content.ContentProvider;
+// 导入批量操作相关类
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.OperationApplicationException;
 // 导入用于操作内容 URI 的工具类
 import android.content.ContentUris;
 // 导入用于存储键值对的内容值类
@@ -35,17 +41,29 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 // 导入 URI 类
 import android.net.Uri;
+// 导入用于返回调用结果的 Bundle 类
+import android.os.Bundle;
 // 导入文本工具类
 import android.text.TextUtils;
 // 导入日志工具类
 import android.util.Log;
 
+import java.util.ArrayList;
+
 // 导入资源类
 import net.micode.notes.R;
+// 导入性能计数
+import net.micode.notes.core.PerfStats;
+// 导入通话记录笔记定义类
+import net.micode.notes.data.Notes.CallNote;
+// 导入清单条目列定义类
+import net.micode.notes.data.Notes.CheckListColumns;
 // 导入笔记数据列定义类
 import net.micode.notes.data.Notes.DataColumns;
 // 导入笔记列定义类
 import net.micode.notes.data.Notes.NoteColumns;
+// 导入文本笔记定义类
+import net.micode.notes.data.Notes.TextNote;
 // 导入笔记数据库帮助类中的表定义
 import net.micode.notes.data.NotesDatabaseHelper.TABLE;
 
@@ -57,8 +75,19 @@ public class NotesProvider extends ContentProvider {
     private static final UriMatcher mMatcher;
     // 笔记数据库帮助类实例
     private NotesDatabaseHelper mHelper;
+    // 笔记是否存在及是否可见的缓存，随笔记变化的通知失效
+    private final NoteStateCache mStateCache = new NoteStateCache();
     // 日志标签
     private static final String TAG = "NotesProvider";
+    // 当前线程批量操作中尚未发出的变化通知
+    private final ThreadLocal<NoteChangeSet> mBatchChanges = new ThreadLocal<NoteChangeSet>();
+    // 当前线程批量操作中尚未写入的文件夹数量变化
+    private final ThreadLocal<FolderCounts> mBatchCounts = new ThreadLocal<FolderCounts>();
+    // 当前线程批量操作中尚未重建摘要的清单笔记
+    private final ThreadLocal<CheckListSnippets> mBatchSnippets =
+            new ThreadLocal<CheckListSnippets>();
+    // 当前线程批量操作中等待事务提交后删除的大正文文件
+    private final ThreadLocal<DroppedBodies> mBatchBodies = new ThreadLocal<DroppedBodies>();
 
     // 定义不同 URI 匹配的常量
     private static final int URI_NOTE            = 1;
@@ -67,6 +96,13 @@ public class NotesProvider extends ContentProvider {
     private static final int URI_DATA_ITEM       = 4;
     private static final int URI_SEARCH          = 5;
     private static final int URI_SEARCH_SUGGEST  = 6;
+    private static final int URI_CHECKLIST       = 7;
+    private static final int URI_CHECKLIST_ITEM  = 8;
+    private static final int URI_NOTE_DATA       = 9;
+    private static final int URI_NOTE_DATA_ITEM  = 10;
+
+    // 每次压缩冷数据最多检查的数据行数
+    private static final int MAX_COMPRESS_ROWS = 2000;
 
     // 静态代码块，初始化 URI 匹配器
     static {
@@ -77,6 +113,12 @@ public class NotesProvider extends ContentProvider {
         // 添加数据 URI 匹配规则
         mMatcher.addURI(Notes.AUTHORITY, "data", URI_DATA);
         mMatcher.addURI(Notes.AUTHORITY, "data/#", URI_DATA_ITEM);
+        // 添加清单条目 URI 匹配规则
+        mMatcher.addURI(Notes.AUTHORITY, "checklist", URI_CHECKLIST);
+        mMatcher.addURI(Notes.AUTHORITY, "checklist/#", URI_CHECKLIST_ITEM);
+        // 添加笔记及其数据联合查询 URI 匹配规则
+        mMatcher.addURI(Notes.AUTHORITY, "note_data", URI_NOTE_DATA);
+        mMatcher.addURI(Notes.AUTHORITY, "note_data/#", URI_NOTE_DATA_ITEM);
         // 添加搜索 URI 匹配规则
         mMatcher.addURI(Notes.AUTHORITY, "search", URI_SEARCH);
         mMatcher.addURI(Notes.AUTHORITY, SearchManager.SUGGEST_URI_PATH_QUERY, URI_SEARCH_SUGGEST);
@@ -126,6 +168,8 @@ public class NotesProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
             String sortOrder) {
+        // 只计入语句的准备，游标的数据在调用方首次读取时才填充，见 PerfStats.LIST_FILL
+        long start = PerfStats.start();
         Cursor c = null;
         // 获取可读的数据库实例
         SQLiteDatabase db = mHelper.getReadableDatabase();
@@ -133,8 +177,9 @@ public class NotesProvider extends ContentProvider {
         // 根据 URI 匹配结果执行不同的查询操作
         switch (mMatcher.match(uri)) {
             case URI_NOTE:
+                // 行数不是数字时由 SQLiteQueryBuilder 抛出 IllegalArgumentException
                 c = db.query(TABLE.NOTE, projection, selection, selectionArgs, null, null,
-                        sortOrder);
+                        sortOrder, uri.getQueryParameter(Notes.PARAM_LIMIT));
                 break;
             case URI_NOTE_ITEM:
                 id = uri.getPathSegments().get(1);
@@ -142,14 +187,33 @@ public class NotesProvider extends ContentProvider {
                         + parseSelection(selection), selectionArgs, null, null, sortOrder);
                 break;
             case URI_DATA:
-                c = db.query(TABLE.DATA, projection, selection, selectionArgs, null, null,
-                        sortOrder);
+                c = ContentCompressor.wrap(db.query(TABLE.DATA, projection, selection,
+                        selectionArgs, null, null, sortOrder));
                 break;
             case URI_DATA_ITEM:
                 id = uri.getPathSegments().get(1);
-                c = db.query(TABLE.DATA, projection, DataColumns.ID + "=" + id
+                c = ContentCompressor.wrap(db.query(TABLE.DATA, projection, DataColumns.ID + "="
+                        + id + parseSelection(selection), selectionArgs, null, null, sortOrder));
+                break;
+            case URI_CHECKLIST:
+                c = db.query(TABLE.CHECKLIST, projection, selection, selectionArgs, null, null,
+                        sortOrder);
+                break;
+            case URI_CHECKLIST_ITEM:
+                id = uri.getPathSegments().get(1);
+                c = db.query(TABLE.CHECKLIST, projection, CheckListColumns.ID + "=" + id
                         + parseSelection(selection), selectionArgs, null, null, sortOrder);
                 break;
+            case URI_NOTE_DATA:
+                c = ContentCompressor.wrap(db.query(NotesDatabaseHelper.NOTE_DATA_JOIN_TABLE,
+                        projection, selection, selectionArgs, null, null, sortOrder));
+                break;
+            case URI_NOTE_DATA_ITEM:
+                id = uri.getPathSegments().get(1);
+                c = ContentCompressor.wrap(db.query(NotesDatabaseHelper.NOTE_DATA_JOIN_TABLE,
+                        projection, TABLE.NOTE + "." + NoteColumns.ID + "=" + id
+                        + parseSelection(selection), selectionArgs, null, null, sortOrder));
+                break;
             case URI_SEARCH:
             case URI_SEARCH_SUGGEST:
                 if (sortOrder != null || projection != null) {
@@ -185,6 +249,7 @@ public class NotesProvider extends ContentProvider {
             // 设置游标监听 URI 变化
             c.setNotificationUri(getContext().getContentResolver(), uri);
         }
+        PerfStats.record(PerfStats.PROVIDER_QUERY, start);
         return c;
     }
 
@@ -196,37 +261,67 @@ public class NotesProvider extends ContentProvider {
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long start = PerfStats.start();
         // 获取可写的数据库实例
         SQLiteDatabase db = mHelper.getWritableDatabase();
-        long dataId = 0, noteId = 0, insertedId = 0;
-        // 根据 URI 匹配结果执行不同的插入操作
-        switch (mMatcher.match(uri)) {
-            case URI_NOTE:
-                insertedId = noteId = db.insert(TABLE.NOTE, null, values);
-                break;
-            case URI_DATA:
-                if (values.containsKey(DataColumns.NOTE_ID)) {
-                    noteId = values.getAsLong(DataColumns.NOTE_ID);
-                } else {
-                    Log.d(TAG, "Wrong data format without note id:" + values.toString());
-                }
-                insertedId = dataId = db.insert(TABLE.DATA, null, values);
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown URI " + uri);
-        }
-        // 通知笔记 URI 数据变化
-        if (noteId > 0) {
-            getContext().getContentResolver().notifyChange(
-                    ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId), null);
+        long noteId = 0, insertedId = 0;
+        int kind = NoteChangeSet.KIND_DATA;
+        FolderCounts counts = new FolderCounts();
+        CheckListSnippets snippets = new CheckListSnippets();
+        DroppedBodies bodies = new DroppedBodies();
+        db.beginTransaction();
+        try {
+            // 根据 URI 匹配结果执行不同的插入操作
+            switch (mMatcher.match(uri)) {
+                case URI_NOTE:
+                    insertedId = noteId = db.insert(TABLE.NOTE, null, values);
+                    kind = NoteChangeSet.KIND_INSERT;
+                    if (insertedId > 0) {
+                        Long parentId = values.getAsLong(NoteColumns.PARENT_ID);
+                        counts.add(parentId == null ? Notes.ID_ROOT_FOLDER : parentId, 1);
+                    }
+                    break;
+                case URI_DATA:
+                    if (values.containsKey(DataColumns.NOTE_ID)) {
+                        noteId = values.getAsLong(DataColumns.NOTE_ID);
+                    } else {
+                        Log.d(TAG, "Wrong data format without note id:" + values.toString());
+                    }
+                    insertedId = db.insert(TABLE.DATA, null,
+                            NoteBodyStore.toRowValues(withPhoneKey(values)));
+                    if (insertedId > 0) {
+                        storeLargeBodies(db, values, new long[] { insertedId }, bodies);
+                    }
+                    break;
+                case URI_CHECKLIST:
+                    if (values.containsKey(CheckListColumns.NOTE_ID)) {
+                        noteId = values.getAsLong(CheckListColumns.NOTE_ID);
+                    } else {
+                        Log.d(TAG, "Wrong check list format without note id:" + values.toString());
+                    }
+                    insertedId = db.insert(TABLE.CHECKLIST, null, values);
+                    if (insertedId > 0) {
+                        snippets.add(noteId);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown URI " + uri);
+            }
+            applyFolderCounts(db, counts);
+            applyCheckListSnippets(db, snippets);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-
-        // 通知数据 URI 数据变化
-        if (dataId > 0) {
-            getContext().getContentResolver().notifyChange(
-                    ContentUris.withAppendedId(Notes.CONTENT_DATA_URI, dataId), null);
+        deleteDroppedBodies(db, bodies);
+        // 记录笔记的变化
+        if (noteId > 0 && insertedId > 0) {
+            NoteChangeSet changes = new NoteChangeSet();
+            changes.add(noteId, kind);
+            notifyNoteChanges(changes);
         }
 
+        PerfStats.record(PerfStats.PROVIDER_INSERT, start);
         return ContentUris.withAppendedId(uri, insertedId);
     }
 
@@ -239,50 +334,84 @@ public class NotesProvider extends ContentProvider {
      */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = PerfStats.start();
         int count = 0;
         String id = null;
         // 获取可写的数据库实例
         SQLiteDatabase db = mHelper.getWritableDatabase();
-        boolean deleteData = false;
-        // 根据 URI 匹配结果执行不同的删除操作
-        switch (mMatcher.match(uri)) {
-            case URI_NOTE:
-                selection = "(" + selection + ") AND " + NoteColumns.ID + ">0 ";
-                count = db.delete(TABLE.NOTE, selection, selectionArgs);
-                break;
-            case URI_NOTE_ITEM:
-                id = uri.getPathSegments().get(1);
-                /**
-                 * ID 小于 0 的是系统文件夹，不允许删除
-                 */
-                long noteId = Long.valueOf(id);
-                if (noteId <= 0) {
+        NoteChangeSet changes = new NoteChangeSet();
+        FolderCounts counts = new FolderCounts();
+        CheckListSnippets snippets = new CheckListSnippets();
+        DroppedBodies bodies = new DroppedBodies();
+        db.beginTransaction();
+        try {
+            // 根据 URI 匹配结果执行不同的删除操作
+            switch (mMatcher.match(uri)) {
+                case URI_NOTE:
+                    selection = "(" + selection + ") AND " + NoteColumns.ID + ">0 ";
+                    collectNoteIds(changes, TABLE.NOTE, NoteColumns.ID, selection, selectionArgs,
+                            NoteChangeSet.KIND_DELETE);
+                    counts.addByParent(db, selection, selectionArgs, -1);
+                    bodies.addByNoteSelection(db, selection, selectionArgs);
+                    count = db.delete(TABLE.NOTE, selection, selectionArgs);
                     break;
-                }
-                count = db.delete(TABLE.NOTE,
-                        NoteColumns.ID + "=" + id + parseSelection(selection), selectionArgs);
-                break;
-            case URI_DATA:
-                count = db.delete(TABLE.DATA, selection, selectionArgs);
-                deleteData = true;
-                break;
-            case URI_DATA_ITEM:
-                id = uri.getPathSegments().get(1);
-                count = db.delete(TABLE.DATA,
-                        DataColumns.ID + "=" + id + parseSelection(selection), selectionArgs);
-                deleteData = true;
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown URI " + uri);
+                case URI_NOTE_ITEM:
+                    id = uri.getPathSegments().get(1);
+                    /**
+                     * ID 小于 0 的是系统文件夹，不允许删除
+                     */
+                    long noteId = Long.valueOf(id);
+                    if (noteId <= 0) {
+                        break;
+                    }
+                    changes.add(noteId, NoteChangeSet.KIND_DELETE);
+                    selection = NoteColumns.ID + "=" + id + parseSelection(selection);
+                    counts.addByParent(db, selection, selectionArgs, -1);
+                    bodies.addByNoteSelection(db, selection, selectionArgs);
+                    count = db.delete(TABLE.NOTE, selection, selectionArgs);
+                    break;
+                case URI_DATA:
+                    collectNoteIds(changes, TABLE.DATA, DataColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    bodies.addByDataSelection(db, selection, selectionArgs);
+                    count = db.delete(TABLE.DATA, selection, selectionArgs);
+                    break;
+                case URI_DATA_ITEM:
+                    id = uri.getPathSegments().get(1);
+                    selection = DataColumns.ID + "=" + id + parseSelection(selection);
+                    collectNoteIds(changes, TABLE.DATA, DataColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    bodies.addByDataSelection(db, selection, selectionArgs);
+                    count = db.delete(TABLE.DATA, selection, selectionArgs);
+                    break;
+                case URI_CHECKLIST:
+                    collectNoteIds(changes, TABLE.CHECKLIST, CheckListColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    collectCheckListNotes(db, snippets, changes, selection, selectionArgs);
+                    count = db.delete(TABLE.CHECKLIST, selection, selectionArgs);
+                    break;
+                case URI_CHECKLIST_ITEM:
+                    id = uri.getPathSegments().get(1);
+                    selection = CheckListColumns.ID + "=" + id + parseSelection(selection);
+                    collectNoteIds(changes, TABLE.CHECKLIST, CheckListColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    collectCheckListNotes(db, snippets, changes, selection, selectionArgs);
+                    count = db.delete(TABLE.CHECKLIST, selection, selectionArgs);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown URI " + uri);
+            }
+            applyFolderCounts(db, counts);
+            applyCheckListSnippets(db, snippets);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        deleteDroppedBodies(db, bodies);
         if (count > 0) {
-            if (deleteData) {
-                // 通知笔记 URI 数据变化
-                getContext().getContentResolver().notifyChange(Notes.CONTENT_NOTE_URI, null);
-            }
-            // 通知当前 URI 数据变化
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyNoteChanges(changes);
         }
+        PerfStats.record(PerfStats.PROVIDER_DELETE, start);
         return count;
     }
 
@@ -296,48 +425,596 @@ public class NotesProvider extends ContentProvider {
      */
     @Override
     public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        long start = PerfStats.start();
         int count = 0;
         String id = null;
         // 获取可写的数据库实例
         SQLiteDatabase db = mHelper.getWritableDatabase();
-        boolean updateData = false;
-        // 根据 URI 匹配结果执行不同的更新操作
-        switch (mMatcher.match(uri)) {
-            case URI_NOTE:
-                increaseNoteVersion(-1, selection, selectionArgs);
-                count = db.update(TABLE.NOTE, values, selection, selectionArgs);
-                break;
-            case URI_NOTE_ITEM:
-                id = uri.getPathSegments().get(1);
-                increaseNoteVersion(Long.valueOf(id), selection, selectionArgs);
-                count = db.update(TABLE.NOTE, values, NoteColumns.ID + "=" + id
-                        + parseSelection(selection), selectionArgs);
-                break;
-            case URI_DATA:
-                count = db.update(TABLE.DATA, values, selection, selectionArgs);
-                updateData = true;
-                break;
-            case URI_DATA_ITEM:
-                id = uri.getPathSegments().get(1);
-                count = db.update(TABLE.DATA, values, DataColumns.ID + "=" + id
-                        + parseSelection(selection), selectionArgs);
-                updateData = true;
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown URI " + uri);
+        NoteChangeSet changes = new NoteChangeSet();
+        FolderCounts counts = new FolderCounts();
+        CheckListSnippets snippets = new CheckListSnippets();
+        DroppedBodies bodies = new DroppedBodies();
+        db.beginTransaction();
+        try {
+            // 根据 URI 匹配结果执行不同的更新操作
+            switch (mMatcher.match(uri)) {
+                case URI_NOTE:
+                    collectNoteIds(changes, TABLE.NOTE, NoteColumns.ID, selection, selectionArgs,
+                            NoteChangeSet.KIND_UPDATE);
+                    collectParentMoves(db, counts, values, selection, selectionArgs);
+                    increaseNoteVersion(-1, selection, selectionArgs);
+                    count = db.update(TABLE.NOTE, values, selection, selectionArgs);
+                    break;
+                case URI_NOTE_ITEM:
+                    id = uri.getPathSegments().get(1);
+                    changes.add(Long.valueOf(id), NoteChangeSet.KIND_UPDATE);
+                    collectParentMoves(db, counts, values, NoteColumns.ID + "=" + id
+                            + parseSelection(selection), selectionArgs);
+                    increaseNoteVersion(Long.valueOf(id), selection, selectionArgs);
+                    count = db.update(TABLE.NOTE, values, NoteColumns.ID + "=" + id
+                            + parseSelection(selection), selectionArgs);
+                    break;
+                case URI_DATA:
+                    collectNoteIds(changes, TABLE.DATA, DataColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    count = updateData(db, values, selection, selectionArgs, bodies);
+                    break;
+                case URI_DATA_ITEM:
+                    id = uri.getPathSegments().get(1);
+                    selection = DataColumns.ID + "=" + id + parseSelection(selection);
+                    collectNoteIds(changes, TABLE.DATA, DataColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    count = updateData(db, values, selection, selectionArgs, bodies);
+                    break;
+                case URI_CHECKLIST:
+                    collectNoteIds(changes, TABLE.CHECKLIST, CheckListColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    collectCheckListEdits(db, snippets, changes, values, selection, selectionArgs);
+                    count = db.update(TABLE.CHECKLIST, values, selection, selectionArgs);
+                    break;
+                case URI_CHECKLIST_ITEM:
+                    id = uri.getPathSegments().get(1);
+                    selection = CheckListColumns.ID + "=" + id + parseSelection(selection);
+                    collectNoteIds(changes, TABLE.CHECKLIST, CheckListColumns.NOTE_ID, selection,
+                            selectionArgs, NoteChangeSet.KIND_DATA);
+                    collectCheckListEdits(db, snippets, changes, values, selection, selectionArgs);
+                    count = db.update(TABLE.CHECKLIST, values, selection, selectionArgs);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown URI " + uri);
+            }
+            applyFolderCounts(db, counts);
+            applyCheckListSnippets(db, snippets);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        deleteDroppedBodies(db, bodies);
 
         if (count > 0) {
-            if (updateData) {
-                // 通知笔记 URI 数据变化
-                getContext().getContentResolver().notifyChange(Notes.CONTENT_NOTE_URI, null);
+            notifyNoteChanges(changes);
+        }
+        PerfStats.record(PerfStats.PROVIDER_UPDATE, start);
+        return count;
+    }
+
+    /**
+     * 批量执行操作，所有操作在同一个事务中完成，期间的变化合并为一次通知
+     * @param operations 操作列表
+     * @return 每个操作的执行结果
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        boolean outermost = beginChangeBatch();
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            commitBatchTotals(outermost, db);
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            endChangeBatch(outermost, successful);
+        }
+    }
+
+    /**
+     * 批量插入数据，所有插入在同一个事务中完成，期间的变化合并为一次通知
+     * @param uri 插入数据的 URI
+     * @param values 要插入的数据
+     * @return 插入的行数
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        boolean outermost = beginChangeBatch();
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            int count = super.bulkInsert(uri, values);
+            commitBatchTotals(outermost, db);
+            db.setTransactionSuccessful();
+            successful = true;
+            return count;
+        } finally {
+            db.endTransaction();
+            endChangeBatch(outermost, successful);
+        }
+    }
+
+    /**
+     * 执行内容提供者的自定义方法，支持删除文件夹、把文件夹移到回收站、检查和重建文件夹的笔记数量、
+     * 压缩冷数据以及数据库维护
+     * @param method 方法名，见 {@link Notes#METHOD_DELETE_FOLDER} 等常量
+     * @param arg 文件夹操作时为文件夹 ID，压缩冷数据和维护时为时间的上限
+     * @param extras 维护时的选项，其他方法未使用
+     * @return 包含受影响小部件、数量不一致的文件夹个数、压缩行数或维护记录的结果
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (Notes.METHOD_GET_PERF_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putString(Notes.EXTRA_PERF_STATS, PerfStats.toJson());
+            if (Notes.ARG_RESET.equals(arg)) {
+                PerfStats.reset();
+            }
+            return result;
+        }
+
+        if (Notes.METHOD_GET_NOTE_STATES.equals(method)) {
+            long[] ids = extras == null ? null : extras.getLongArray(Notes.EXTRA_NOTE_IDS);
+            if (ids == null) {
+                throw new IllegalArgumentException("Missing note ids");
+            }
+            return mStateCache.getStates(mHelper.getReadableDatabase(), ids);
+        }
+
+        if (Notes.METHOD_COMPRESS_COLD_CONTENT.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(Notes.EXTRA_COMPRESSED_ROWS, ContentCompressor.compressCold(
+                    mHelper.getWritableDatabase(), parseDate(arg), MAX_COMPRESS_ROWS));
+            return result;
+        }
+
+        if (Notes.METHOD_RUN_MAINTENANCE.equals(method)) {
+            boolean keepSynced = extras != null && extras.getBoolean(Notes.EXTRA_KEEP_SYNCED);
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            NoteChangeSet changes = new NoteChangeSet();
+            DroppedBodies bodies = new DroppedBodies();
+            Bundle result = DatabaseMaintenance.run(db, parseDate(arg), keepSynced, changes,
+                    bodies);
+            deleteDroppedBodies(db, bodies);
+            notifyNoteChanges(changes);
+            return result;
+        }
+
+        if (Notes.METHOD_CHECK_FOLDER_COUNTS.equals(method)
+                || Notes.METHOD_REBUILD_FOLDER_COUNTS.equals(method)) {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            int mismatched;
+            if (Notes.METHOD_REBUILD_FOLDER_COUNTS.equals(method)) {
+                mismatched = FolderCounts.rebuild(db);
+                if (mismatched > 0) {
+                    NoteChangeSet changes = new NoteChangeSet();
+                    changes.addAll(NoteChangeSet.KIND_UPDATE);
+                    notifyNoteChanges(changes);
+                }
+            } else {
+                mismatched = FolderCounts.check(db);
+            }
+            Bundle result = new Bundle();
+            result.putInt(Notes.EXTRA_MISMATCHED_FOLDERS, mismatched);
+            return result;
+        }
+
+        boolean toTrash;
+        if (Notes.METHOD_DELETE_FOLDER.equals(method)) {
+            toTrash = false;
+        } else if (Notes.METHOD_TRASH_FOLDER.equals(method)) {
+            toTrash = true;
+        } else {
+            return super.call(method, arg, extras);
+        }
+
+        long folderId;
+        try {
+            folderId = Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong folder id " + arg);
+        }
+        if (folderId <= 0) {
+            throw new IllegalArgumentException("Can not remove system folder " + folderId);
+        }
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        NoteChangeSet changes = new NoteChangeSet();
+        DroppedBodies bodies = new DroppedBodies();
+        ArrayList<Integer> widgetIds = new ArrayList<Integer>();
+        ArrayList<Integer> widgetTypes = new ArrayList<Integer>();
+        db.beginTransaction();
+        try {
+            removeFolder(db, folderId, toTrash, changes, bodies, widgetIds, widgetTypes);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        deleteDroppedBodies(db, bodies);
+        notifyNoteChanges(changes);
+
+        Bundle result = new Bundle();
+        int[] ids = new int[widgetIds.size()];
+        int[] types = new int[widgetTypes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = widgetIds.get(i);
+            types[i] = widgetTypes.get(i);
+        }
+        result.putIntArray(Notes.EXTRA_WIDGET_IDS, ids);
+        result.putIntArray(Notes.EXTRA_WIDGET_TYPES, types);
+        return result;
+    }
+
+    /**
+     * 用整体语句删除文件夹或把文件夹移到回收站。先一次性处理文件夹中的笔记，再处理文件夹本身，
+     * 文件夹的触发器因此不会再逐行查找子笔记；最后一次性重新计算相关文件夹的笔记数量
+     * @param db 数据库，调用方负责事务
+     * @param folderId 文件夹 ID
+     * @param toTrash 是否移到回收站，否则直接删除
+     * @param changes 记录变化的集合
+     * @param bodies 收集直接删除时随数据行删除的大正文
+     * @param widgetIds 收集文件夹中笔记的小部件 ID
+     * @param widgetTypes 收集文件夹中笔记的小部件类型
+     */
+    private void removeFolder(SQLiteDatabase db, long folderId, boolean toTrash,
+            NoteChangeSet changes, DroppedBodies bodies, ArrayList<Integer> widgetIds,
+            ArrayList<Integer> widgetTypes) {
+        String[] args = new String[] { String.valueOf(folderId) };
+        int kind = toTrash ? NoteChangeSet.KIND_UPDATE : NoteChangeSet.KIND_DELETE;
+
+        // 一次查出文件夹中的笔记及其小部件
+        Cursor c = db.query(TABLE.NOTE, new String[] {
+                NoteColumns.ID, NoteColumns.WIDGET_ID, NoteColumns.WIDGET_TYPE
+        }, NoteColumns.PARENT_ID + "=?", args, null, null, null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                changes.add(c.getLong(0), kind);
+                int widgetId = c.getInt(1);
+                int widgetType = c.getInt(2);
+                if (widgetId != AppWidgetManager.INVALID_APPWIDGET_ID
+                        && widgetType != Notes.TYPE_WIDGET_INVALIDE) {
+                    widgetIds.add(widgetId);
+                    widgetTypes.add(widgetType);
+                }
+            }
+            c.close();
+        }
+        changes.add(folderId, kind);
+
+        if (toTrash) {
+            db.execSQL("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.PARENT_ID + "="
+                    + Notes.ID_TRASH_FOLER + "," + NoteColumns.VERSION + "=" + NoteColumns.VERSION
+                    + "+1 WHERE " + NoteColumns.PARENT_ID + "=?", args);
+            db.execSQL("UPDATE " + TABLE.NOTE + " SET " + NoteColumns.PARENT_ID + "="
+                    + Notes.ID_TRASH_FOLER + "," + NoteColumns.ORIGIN_PARENT_ID + "="
+                    + NoteColumns.PARENT_ID + "," + NoteColumns.LOCAL_MODIFIED + "=1,"
+                    + NoteColumns.VERSION + "=" + NoteColumns.VERSION + "+1 WHERE "
+                    + NoteColumns.ID + "=?", args);
+        } else {
+            bodies.addByNoteSelection(db, NoteColumns.ID + "=?", args);
+            db.execSQL("DELETE FROM " + TABLE.NOTE + " WHERE " + NoteColumns.PARENT_ID + "=?",
+                    args);
+            db.execSQL("DELETE FROM " + TABLE.NOTE + " WHERE " + NoteColumns.ID + "=?", args);
+        }
+
+        // 重新计算一次受影响文件夹的笔记数量
+        FolderCounts.recompute(db, Notes.ID_ROOT_FOLDER, Notes.ID_TRASH_FOLER, folderId);
+    }
+
+    /**
+     * 解析自定义方法中作为参数的时间
+     * @param arg 毫秒时间
+     * @return 时间
+     */
+    private static long parseDate(String arg) {
+        try {
+            return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong date " + arg);
+        }
+    }
+
+    /**
+     * 写入通话记录的电话号码时一并写入号码的最小匹配键。不修改传入的值。
+     * 只有通话记录使用 {@link CallNote#PHONE_NUMBER} 列，未指定类型的更新也按通话记录处理
+     * @param values 写入数据行的值
+     * @return 加上匹配键的值，不涉及电话号码时返回原来的值
+     */
+    private static ContentValues withPhoneKey(ContentValues values) {
+        if (!values.containsKey(CallNote.PHONE_NUMBER)) {
+            return values;
+        }
+        String mimeType = values.getAsString(DataColumns.MIME_TYPE);
+        if (mimeType != null && !CallNote.CONTENT_ITEM_TYPE.equals(mimeType)) {
+            return values;
+        }
+        ContentValues row = new ContentValues(values);
+        row.put(CallNote.PHONE_KEY, Contact.getPhoneKey(values.getAsString(CallNote.PHONE_NUMBER)));
+        return row;
+    }
+
+    /**
+     * 更新数据行，大内容写入文件，数据行中只保留开头部分
+     * @param db 数据库
+     * @param values 要更新的数据
+     * @param selection 更新条件
+     * @param selectionArgs 更新条件参数
+     * @param bodies 收集改写为普通内容后不再需要的大正文
+     * @return 更新的行数
+     */
+    private int updateData(SQLiteDatabase db, ContentValues values, String selection,
+            String[] selectionArgs, DroppedBodies bodies) {
+        long[] largeIds = null;
+        if (NoteBodyStore.isLarge(values.getAsString(DataColumns.CONTENT))) {
+            // 更新前查出受影响的行，条件可能引用被更新的列
+            Cursor c = db.query(TABLE.DATA, new String[] { DataColumns.ID }, selection,
+                    selectionArgs, null, null, null);
+            if (c != null) {
+                largeIds = new long[c.getCount()];
+                while (c.moveToNext()) {
+                    largeIds[c.getPosition()] = c.getLong(0);
+                }
+                c.close();
             }
-            // 通知当前 URI 数据变化
-            getContext().getContentResolver().notifyChange(uri, null);
+        } else if (values.containsKey(DataColumns.CONTENT)) {
+            // 改写为普通内容的行原有的大正文不再需要
+            bodies.addByDataSelection(db, selection, selectionArgs);
+        }
+        int count = db.update(TABLE.DATA, NoteBodyStore.toRowValues(withPhoneKey(values)),
+                selection, selectionArgs);
+        if (largeIds != null) {
+            storeLargeBodies(db, values, largeIds, bodies);
         }
         return count;
     }
 
+    /**
+     * 把大内容写入各数据行的文件，写入失败的行退回到在数据行中保存完整内容
+     * @param db 数据库
+     * @param values 写入数据行的原始值
+     * @param dataIds 数据行 ID
+     * @param bodies 收集写入失败的行原有的大正文
+     */
+    private void storeLargeBodies(SQLiteDatabase db, ContentValues values, long[] dataIds,
+            DroppedBodies bodies) {
+        String content = values.getAsString(DataColumns.CONTENT);
+        if (!NoteBodyStore.isLarge(content)) {
+            return;
+        }
+        for (long dataId : dataIds) {
+            if (!NoteBodyStore.write(getContext(), dataId, content)) {
+                ContentValues full = new ContentValues();
+                full.put(DataColumns.CONTENT, content);
+                full.put(TextNote.BODY_LENGTH, 0);
+                db.update(TABLE.DATA, full, DataColumns.ID + "=" + dataId, null);
+                bodies.add(dataId);
+            }
+        }
+    }
+
+    /**
+     * 开始合并当前线程的变化通知
+     * @return 是否为最外层的批量操作
+     */
+    private boolean beginChangeBatch() {
+        if (mBatchChanges.get() != null) {
+            return false;
+        }
+        mBatchChanges.set(new NoteChangeSet());
+        mBatchCounts.set(new FolderCounts());
+        mBatchSnippets.set(new CheckListSnippets());
+        mBatchBodies.set(new DroppedBodies());
+        return true;
+    }
+
+    /**
+     * 最外层的批量操作在提交事务前写入累加的文件夹数量变化并重建清单摘要，
+     * 每个文件夹和笔记只更新一次
+     * @param outermost 是否为最外层的批量操作
+     * @param db 数据库
+     */
+    private void commitBatchTotals(boolean outermost, SQLiteDatabase db) {
+        if (outermost) {
+            mBatchCounts.get().apply(db);
+            mBatchSnippets.get().apply(db);
+        }
+    }
+
+    /**
+     * 记录文件夹数量的变化，批量操作中先累加，否则立即写入
+     * @param db 数据库
+     * @param counts 文件夹数量的变化
+     */
+    private void applyFolderCounts(SQLiteDatabase db, FolderCounts counts) {
+        FolderCounts batch = mBatchCounts.get();
+        if (batch != null) {
+            batch.addAll(counts);
+        } else {
+            counts.apply(db);
+        }
+    }
+
+    /**
+     * 记录需要重建摘要的清单笔记，批量操作中先累加，否则立即重建
+     * @param db 数据库
+     * @param snippets 需要重建摘要的笔记
+     */
+    private void applyCheckListSnippets(SQLiteDatabase db, CheckListSnippets snippets) {
+        CheckListSnippets batch = mBatchSnippets.get();
+        if (batch != null) {
+            batch.addAll(snippets);
+        } else {
+            snippets.apply(db);
+        }
+    }
+
+    /**
+     * 删除不再需要的大正文文件，在事务结束后调用。批量操作中先累加，到最外层的事务提交后再删除
+     * @param db 数据库
+     * @param bodies 不再需要的大正文
+     */
+    private void deleteDroppedBodies(SQLiteDatabase db, DroppedBodies bodies) {
+        DroppedBodies batch = mBatchBodies.get();
+        if (batch != null) {
+            batch.addAll(bodies);
+        } else {
+            bodies.delete(getContext(), db);
+        }
+    }
+
+    /**
+     * 在删除清单条目前记录所属的笔记，已查出的笔记 ID 直接使用，无法列出时再按条件查询
+     * @param db 数据库
+     * @param snippets 需要重建摘要的笔记
+     * @param changes 已收集的笔记变化
+     * @param selection 清单条目表的条件
+     * @param selectionArgs 条件参数
+     */
+    private void collectCheckListNotes(SQLiteDatabase db, CheckListSnippets snippets,
+            NoteChangeSet changes, String selection, String[] selectionArgs) {
+        if (changes.affectsAll()) {
+            snippets.addBySelection(db, selection, selectionArgs);
+            return;
+        }
+        for (Long noteId : changes.getIds()) {
+            snippets.add(noteId);
+        }
+    }
+
+    /**
+     * 清单条目的内容、顺序或所属笔记变化时记录需要重建摘要的笔记，只修改勾选状态不影响摘要
+     * @param db 数据库
+     * @param snippets 需要重建摘要的笔记
+     * @param changes 已收集的笔记变化
+     * @param values 要更新的数据
+     * @param selection 清单条目表的条件
+     * @param selectionArgs 条件参数
+     */
+    private void collectCheckListEdits(SQLiteDatabase db, CheckListSnippets snippets,
+            NoteChangeSet changes, ContentValues values, String selection, String[] selectionArgs) {
+        if (!values.containsKey(CheckListColumns.CONTENT)
+                && !values.containsKey(CheckListColumns.POSITION)
+                && !values.containsKey(CheckListColumns.NOTE_ID)) {
+            return;
+        }
+        collectCheckListNotes(db, snippets, changes, selection, selectionArgs);
+        Long noteId = values.getAsLong(CheckListColumns.NOTE_ID);
+        if (noteId != null) {
+            snippets.add(noteId);
+        }
+    }
+
+    /**
+     * 更新了父文件夹时，在修改前记录移出和移入的数量
+     * @param db 数据库
+     * @param counts 记录数量变化的集合
+     * @param values 要更新的数据
+     * @param selection 更新条件
+     * @param selectionArgs 更新条件参数
+     */
+    private void collectParentMoves(SQLiteDatabase db, FolderCounts counts, ContentValues values,
+            String selection, String[] selectionArgs) {
+        Long parentId = values.getAsLong(NoteColumns.PARENT_ID);
+        if (parentId == null) {
+            return;
+        }
+        if (parentId == Notes.ID_TRASH_FOLER) {
+            counts.addTrashCascade(db, selection, selectionArgs);
+        }
+        counts.add(parentId, counts.addByParent(db, selection, selectionArgs, -1));
+    }
+
+    /**
+     * 结束合并，最外层的批量操作成功时删除不再需要的大正文文件并发出一次合并后的通知
+     * @param outermost 是否为最外层的批量操作
+     * @param successful 事务是否成功
+     */
+    private void endChangeBatch(boolean outermost, boolean successful) {
+        if (!outermost) {
+            return;
+        }
+        NoteChangeSet changes = mBatchChanges.get();
+        DroppedBodies bodies = mBatchBodies.get();
+        mBatchChanges.remove();
+        mBatchCounts.remove();
+        mBatchSnippets.remove();
+        mBatchBodies.remove();
+        if (successful) {
+            bodies.delete(getContext(), mHelper.getWritableDatabase());
+            deliverNoteChanges(changes);
+        }
+    }
+
+    /**
+     * 记录笔记的变化，批量操作中先合并，否则立即通知
+     * @param changes 笔记的变化
+     */
+    private void notifyNoteChanges(NoteChangeSet changes) {
+        NoteChangeSet batch = mBatchChanges.get();
+        if (batch != null) {
+            batch.addChanges(changes);
+        } else {
+            deliverNoteChanges(changes);
+        }
+    }
+
+    /**
+     * 发出一次带有笔记 ID 和变化类型的通知
+     * @param changes 笔记的变化
+     */
+    private void deliverNoteChanges(NoteChangeSet changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        mStateCache.invalidate(changes);
+        FolderTree.invalidate(changes);
+        getContext().getContentResolver().notifyChange(changes.toUri(), null);
+        if ((changes.getKinds() & NoteChangeSet.KIND_DATA) != 0) {
+            // 数据表的查询同样需要收到通知
+            getContext().getContentResolver().notifyChange(Notes.CONTENT_DATA_URI, null);
+        }
+    }
+
+    /**
+     * 在修改前查出受影响的笔记 ID，没有条件时视为所有笔记都受影响
+     * @param changes 记录变化的集合
+     * @param table 表名
+     * @param noteIdColumn 表中笔记 ID 列
+     * @param selection 条件
+     * @param selectionArgs 条件参数
+     * @param kind 变化类型
+     */
+    private void collectNoteIds(NoteChangeSet changes, String table, String noteIdColumn,
+            String selection, String[] selectionArgs, int kind) {
+        if (TextUtils.isEmpty(selection)) {
+            changes.addAll(kind);
+            return;
+        }
+        Cursor c = mHelper.getReadableDatabase().query(true, table, new String[] {
+                noteIdColumn
+        }, selection, selectionArgs, null, null, null, null);
+        if (c == null) {
+            changes.addAll(kind);
+            return;
+        }
+        while (c.moveToNext()) {
+            changes.add(c.getLong(0), kind);
+        }
+        c.close();
+    }
+
     /**
      * 解析查询条件，添加额外的 AND 条件
      * @param selection 原始查询条件
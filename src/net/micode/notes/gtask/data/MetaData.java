@@ -22,6 +22,8 @@ import android.database.Cursor;
 // 导入 Android 日志工具类，用于记录日志信息
 import android.util.Log;
 
+// 导入元数据的编码
+import net.micode.notes.core.NoteMeta;
 // 导入自定义的 GTask 字符串工具类，包含相关常量和字符串处理方法
 import net.micode.notes.tool.GTaskStringUtils;
 
@@ -33,33 +35,55 @@ import org.json.JSONObject;
 /**
  * MetaData 类继承自 Task 类，用于处理任务相关的元数据。
  * 它包含了设置元数据、获取关联 GID 等功能，并且重写了一些父类方法以适应元数据处理的需求。
+ * <p>
+ * 元数据从第 {@link #META_VERSION} 版起采用紧凑编码，见 {@link NoteMeta}。
  */
 public class MetaData extends Task {
     // 定义日志标签，使用类名作为标签，方便在日志中定位和区分不同类的日志信息
     private final static String TAG = MetaData.class.getSimpleName();
 
+    // 元数据的编码版本
+    public final static int META_VERSION = NoteMeta.VERSION;
+
     // 关联的 GID（全局唯一标识符），用于标识与该元数据相关的任务
     private String mRelatedGid = null;
 
+    // 从远程读取时解析出的元数据，供对应的任务直接使用，避免重复解析
+    private JSONObject mContent = null;
+
     /**
      * 设置元数据信息。
-     * 将关联的 GID 放入元数据 JSON 对象中，并设置笔记的内容和名称。
+     * 将元数据 JSON 对象压缩后连同关联的 GID 设置为笔记的内容，并设置笔记名称。
      * 
      * @param gid 关联的 GID
-     * @param metaInfo 包含元数据信息的 JSON 对象
+     * @param metaInfo 包含元数据信息的 JSON 对象，会被修改
+     * @return 元数据与之前的内容不同、需要上传时返回 true
      */
-    public void setMeta(String gid, JSONObject metaInfo) {
+    public boolean setMeta(String gid, JSONObject metaInfo) {
         try {
-            // 尝试将关联的 GID 放入元数据 JSON 对象中
-            metaInfo.put(GTaskStringUtils.META_HEAD_GTASK_ID, gid);
+            // 去掉可以从任务本身或默认值还原的字段，并放入关联的 GID 和编码版本
+            NoteMeta.pack(gid, metaInfo);
         } catch (JSONException e) {
             // 若发生 JSON 异常，记录错误日志
             Log.e(TAG, "failed to put related gid");
         }
-        // 将元数据 JSON 对象转换为字符串并设置为笔记的内容
-        setNotes(metaInfo.toString());
+        // 将元数据 JSON 对象转换为字符串，与已上传的内容比较
+        String notes = metaInfo.toString();
+        boolean changed = !notes.equals(getNotes());
+        // 将字符串设置为笔记的内容
+        setNotes(notes);
         // 设置笔记的名称为元数据笔记名称
         setName(GTaskStringUtils.META_NOTE_NAME);
+        return changed;
+    }
+
+    /**
+     * 获取从远程读取时解析出的元数据。
+     *
+     * @return 元数据 JSON 对象，没有或解析失败时为 null
+     */
+    public JSONObject getContent() {
+        return mContent;
     }
 
     /**
@@ -96,9 +120,9 @@ public class MetaData extends Task {
         if (getNotes() != null) {
             try {
                 // 去除笔记内容的首尾空格并转换为 JSON 对象
-                JSONObject metaInfo = new JSONObject(getNotes().trim());
+                mContent = NoteMeta.parse(getNotes());
                 // 从 JSON 对象中获取关联的 GID
-                mRelatedGid = metaInfo.getString(GTaskStringUtils.META_HEAD_GTASK_ID);
+                mRelatedGid = mContent.getString(NoteMeta.HEAD_GTASK_ID);
             } catch (JSONException e) {
                 // 若发生 JSON 异常，记录警告日志并将关联的 GID 置为 null
                 Log.w(TAG, "failed to get related gid");
@@ -17,20 +17,26 @@
 package net.micode.notes.gtask.data;
 
 import android.database.Cursor;
+import android.util.JsonWriter;
+
+import net.micode.notes.core.SyncAction;
+
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 // 同步任务节点抽象基类
 public abstract class Node {
     // 同步动作常量定义
-    public static final int SYNC_ACTION_NONE = 0;          // 无同步动作
-    public static final int SYNC_ACTION_ADD_REMOTE = 1;    // 需要远程添加的同步动作
-    public static final int SYNC_ACTION_ADD_LOCAL = 2;     // 需要本地添加的同步动作
-    public static final int SYNC_ACTION_DEL_REMOTE = 3;    // 需要远程删除的同步动作
-    public static final int SYNC_ACTION_DEL_LOCAL = 4;     // 需要本地删除的同步动作
-    public static final int SYNC_ACTION_UPDATE_REMOTE = 5; // 需要远程更新的同步动作
-    public static final int SYNC_ACTION_UPDATE_LOCAL = 6;  // 需要本地更新的同步动作
-    public static final int SYNC_ACTION_UPDATE_CONFLICT = 7; // 存在更新冲突的同步动作
-    public static final int SYNC_ACTION_ERROR = 8;         // 同步错误状态
+    public static final int SYNC_ACTION_NONE = SyncAction.NONE;                   // 无同步动作
+    public static final int SYNC_ACTION_ADD_REMOTE = SyncAction.ADD_REMOTE;       // 需要远程添加的同步动作
+    public static final int SYNC_ACTION_ADD_LOCAL = SyncAction.ADD_LOCAL;         // 需要本地添加的同步动作
+    public static final int SYNC_ACTION_DEL_REMOTE = SyncAction.DEL_REMOTE;       // 需要远程删除的同步动作
+    public static final int SYNC_ACTION_DEL_LOCAL = SyncAction.DEL_LOCAL;         // 需要本地删除的同步动作
+    public static final int SYNC_ACTION_UPDATE_REMOTE = SyncAction.UPDATE_REMOTE; // 需要远程更新的同步动作
+    public static final int SYNC_ACTION_UPDATE_LOCAL = SyncAction.UPDATE_LOCAL;   // 需要本地更新的同步动作
+    public static final int SYNC_ACTION_UPDATE_CONFLICT = SyncAction.UPDATE_CONFLICT; // 存在更新冲突的同步动作
+    public static final int SYNC_ACTION_ERROR = SyncAction.ERROR;                 // 同步错误状态
 
     // 节点属性
     private String mGid;       // 节点全局唯一标识
@@ -47,8 +53,8 @@ public abstract class Node {
     }
 
     // 抽象方法定义
-    public abstract JSONObject getCreateAction(int actionId); // 生成创建动作的JSON对象
-    public abstract JSONObject getUpdateAction(int actionId); // 生成更新动作的JSON对象
+    public abstract void writeCreateAction(JsonWriter writer, int actionId) throws IOException; // 写出创建动作
+    public abstract void writeUpdateAction(JsonWriter writer, int actionId) throws IOException; // 写出更新动作
     public abstract void setContentByRemoteJSON(JSONObject js); // 从远程JSON设置节点内容
     public abstract void setContentByLocalJSON(JSONObject js);  // 从本地JSON设置节点内容
     public abstract JSONObject getLocalJSONFromContent();       // 生成本地存储用的JSON对象
@@ -86,4 +92,14 @@ public abstract class Node {
     public boolean getDeleted() {
         return this.mDeleted;
     }
+
+    /**
+     * 写出字符串字段，值为 null 时不写，与 JSONObject.put 的行为一致。
+     */
+    protected static void writeString(JsonWriter writer, String name, String value)
+            throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
 }
@@ -18,6 +18,8 @@
 package net.micode.notes.gtask.data;
 
 // 导入 Android 系统相关类，用于处理内容解析、URI 操作、数据库游标等
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -27,18 +29,24 @@ import android.net.Uri;
 import android.util.Log;
 
 // 导入自定义的笔记数据相关类
+import net.micode.notes.data.NoteBodyStore;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.DataColumns;
 import net.micode.notes.data.Notes.DataConstants;
 import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
 import net.micode.notes.data.NotesDatabaseHelper.TABLE;
 // 导入自定义的异常类
 import net.micode.notes.gtask.exception.ActionFailureException;
+// 导入清单条目模型类
+import net.micode.notes.model.CheckList;
 
 // 导入 JSON 处理相关类
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+
 /**
  * SqlData 类用于处理与笔记数据相关的数据库操作，
  * 包括从数据库加载数据、将数据保存到数据库、设置和获取数据内容等功能。
@@ -52,7 +60,7 @@ public class SqlData {
     // 定义查询数据时需要投影的列，即需要从数据库中查询的列
     public static final String[] PROJECTION_DATA = new String[] {
             DataColumns.ID, DataColumns.MIME_TYPE, DataColumns.CONTENT, DataColumns.DATA1,
-            DataColumns.DATA3
+            DataColumns.DATA3, TextNote.BODY_LENGTH
     };
 
     // 定义投影列在查询结果游标中的索引
@@ -61,7 +69,10 @@ public class SqlData {
     public static final int DATA_CONTENT_COLUMN = 2;
     public static final int DATA_CONTENT_DATA_1_COLUMN = 3;
     public static final int DATA_CONTENT_DATA_3_COLUMN = 4;
+    public static final int DATA_BODY_LENGTH_COLUMN = 5;
 
+    // 上下文对象，用于读取存放在文件中的大正文
+    private Context mContext;
     // 内容解析器，用于与 ContentProvider 进行交互，实现对数据库的操作
     private ContentResolver mContentResolver;
     // 标识数据是否为新创建的
@@ -78,6 +89,8 @@ public class SqlData {
     private String mDataContentData3;
     // 用于存储数据差异的 ContentValues 对象，用于更新数据库
     private ContentValues mDiffDataValues;
+    // 与笔记一起创建时，插入数据行的操作在批量操作中的位置
+    private int mInsertIndex;
 
     /**
      * 构造函数，用于创建一个新的 SqlData 对象。
@@ -85,6 +98,7 @@ public class SqlData {
      * @param context 上下文对象，用于获取 ContentResolver
      */
     public SqlData(Context context) {
+        mContext = context;
         // 获取上下文的 ContentResolver
         mContentResolver = context.getContentResolver();
         // 标记数据为新创建
@@ -110,6 +124,7 @@ public class SqlData {
      * @param c       数据库游标，包含要加载的数据
      */
     public SqlData(Context context, Cursor c) {
+        mContext = context;
         // 获取上下文的 ContentResolver
         mContentResolver = context.getContentResolver();
         // 标记数据不是新创建的
@@ -130,12 +145,27 @@ public class SqlData {
         mDataId = c.getLong(DATA_ID_COLUMN);
         // 从游标中获取 MIME 类型
         mDataMimeType = c.getString(DATA_MIME_TYPE_COLUMN);
-        // 从游标中获取数据内容
-        mDataContent = c.getString(DATA_CONTENT_COLUMN);
+        // 从游标中获取数据内容，大正文从文件中读取
+        mDataContent = NoteBodyStore.getContent(mContext, c, DATA_ID_COLUMN,
+                DATA_CONTENT_COLUMN, DATA_BODY_LENGTH_COLUMN);
         // 从游标中获取 DATA1 字段值
         mDataContentData1 = c.getLong(DATA_CONTENT_DATA_1_COLUMN);
         // 从游标中获取 DATA3 字段值
         mDataContentData3 = c.getString(DATA_CONTENT_DATA_3_COLUMN);
+        // 清单模式的内容单独存储，同步时仍以带勾选标记的文本表示
+        if (isCheckList()) {
+            mDataContent = CheckList.loadData(mContentResolver, mDataId).toText();
+        }
+    }
+
+    /**
+     * 判断数据是否为清单模式的文本数据。
+     *
+     * @return 如果是清单模式返回 true，否则返回 false
+     */
+    private boolean isCheckList() {
+        return DataConstants.NOTE.equals(mDataMimeType)
+                && mDataContentData1 == TextNote.MODE_CHECK_LIST;
     }
 
     /**
@@ -228,6 +258,19 @@ public class SqlData {
      * @param version        版本号
      */
     public void commit(long noteId, boolean validateVersion, long version) {
+        // 清单模式下内容以条目形式存储，数据行中的内容保持为空
+        boolean checkList = isCheckList();
+        boolean modeChanged = mDiffDataValues.containsKey(DataColumns.DATA1);
+        boolean rebuildCheckList = checkList
+                && (mDiffDataValues.containsKey(DataColumns.CONTENT) || modeChanged);
+        if (rebuildCheckList) {
+            mDiffDataValues.put(DataColumns.CONTENT, "");
+        } else if (!checkList && modeChanged && !mIsCreate) {
+            // 从清单模式切换回普通模式，先删除条目再由数据更新写回摘要
+            CheckList.replaceItems(mContentResolver, noteId, mDataId, null);
+        }
+        boolean committed = true;
+
         // 如果数据是新创建的
         if (mIsCreate) {
             // 如果数据 ID 为无效 ID 且差异数据中包含 ID 字段，则移除该字段
@@ -268,15 +311,67 @@ public class SqlData {
                 // 如果更新操作未生效，记录警告日志
                 if (result == 0) {
                     Log.w(TAG, "there is no update. maybe user updates note when syncing");
+                    committed = false;
                 }
             }
         }
+        // 用同步得到的文本重建清单条目
+        if (rebuildCheckList && committed) {
+            CheckList.replaceItems(mContentResolver, noteId, mDataId, mDataContent);
+        }
         // 清空差异数据
         mDiffDataValues.clear();
         // 标记数据不再是新创建的
         mIsCreate = false;
     }
 
+    /**
+     * 新笔记在同一批操作中创建时，追加插入数据行及其清单条目的操作，笔记 ID 取自插入笔记的操作结果。
+     * 已存在的数据不追加任何操作，返回 false，需在笔记创建后调用 {@link #commit(long, boolean, long)}。
+     *
+     * @param operationList 操作列表
+     * @param noteRef       插入笔记的操作在列表中的位置
+     * @return 是否追加了插入操作
+     */
+    boolean appendCreateOperations(ArrayList<ContentProviderOperation> operationList,
+            int noteRef) {
+        if (!mIsCreate) {
+            return false;
+        }
+        if (mDataId == INVALID_ID && mDiffDataValues.containsKey(DataColumns.ID)) {
+            mDiffDataValues.remove(DataColumns.ID);
+        }
+        // 清单模式下内容以条目形式存储，数据行中的内容保持为空
+        boolean checkList = isCheckList();
+        if (checkList) {
+            mDiffDataValues.put(DataColumns.CONTENT, "");
+        }
+        mInsertIndex = operationList.size();
+        operationList.add(ContentProviderOperation.newInsert(Notes.CONTENT_DATA_URI)
+                .withValues(mDiffDataValues)
+                .withValueBackReference(DataColumns.NOTE_ID, noteRef).build());
+        if (checkList) {
+            CheckList.appendInsertOperations(mDataContent, noteRef, mInsertIndex, operationList);
+        }
+        return true;
+    }
+
+    /**
+     * 批量操作执行后，从结果中取得新数据行的 ID。
+     *
+     * @param results 批量操作的结果
+     */
+    void onCreateApplied(ContentProviderResult[] results) {
+        try {
+            mDataId = Long.valueOf(results[mInsertIndex].uri.getPathSegments().get(1));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Get data id error :" + e.toString());
+            throw new ActionFailureException("create note failed");
+        }
+        mDiffDataValues.clear();
+        mIsCreate = false;
+    }
+
     /**
      * 获取数据的 ID。
      *
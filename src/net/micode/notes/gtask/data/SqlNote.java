@@ -17,18 +17,21 @@
 // 包声明，指定该类所属的包
 package net.micode.notes.gtask.data;
 
-// 导入 AppWidgetManager 类，用于管理应用小部件
-import android.appwidget.AppWidgetManager;
+// 导入批量操作相关类，用于在一个事务中创建笔记及其数据
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 // 导入 ContentResolver 类，用于与内容提供者进行交互
 import android.content.ContentResolver;
 // 导入 ContentValues 类，用于存储键值对，通常用于数据库操作
 import android.content.ContentValues;
 // 导入 Context 类，提供对应用程序环境的访问
 import android.content.Context;
+// 导入批量操作失败时抛出的异常类
+import android.content.OperationApplicationException;
 // 导入 Cursor 类，用于遍历数据库查询结果
 import android.database.Cursor;
-// 导入 Uri 类，用于表示统一资源标识符
-import android.net.Uri;
+// 导入跨进程调用失败时抛出的异常类
+import android.os.RemoteException;
 // 导入 Log 类，用于记录日志信息
 import android.util.Log;
 
@@ -38,6 +41,10 @@ import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.DataColumns;
 // 导入 Notes 类中的 NoteColumns 内部类，包含笔记列的常量
 import net.micode.notes.data.Notes.NoteColumns;
+// 导入笔记行的 JSON 映射
+import net.micode.notes.core.NoteRecord;
+// 导入同步动作的判定，其中定义了本地同步状态的接口
+import net.micode.notes.core.SyncAction;
 // 导入 ActionFailureException 类，用于处理操作失败的异常
 import net.micode.notes.gtask.exception.ActionFailureException;
 // 导入 GTaskStringUtils 类，可能包含与 Google 任务相关的字符串处理工具
@@ -53,6 +60,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * SqlNote 类用于管理和操作笔记数据，包括从数据库加载笔记、设置笔记内容以及获取笔记内容等功能。
@@ -61,7 +70,7 @@ public class SqlNote {
     // 日志标签，用于标识该类的日志信息
     private static final String TAG = SqlNote.class.getSimpleName();
     // 无效 ID 的常量值
-    private static final int INVALID_ID = -99999;
+    private static final long INVALID_ID = NoteRecord.INVALID_ID;
     // 查询笔记时使用的投影列数组
     public static final String[] PROJECTION_NOTE = new String[] {
             NoteColumns.ID, NoteColumns.ALERTED_DATE, NoteColumns.BG_COLOR_ID,
@@ -112,30 +121,8 @@ public class SqlNote {
     private ContentResolver mContentResolver;
     // 标记该笔记是否为新创建的
     private boolean mIsCreate;
-    // 笔记的 ID
-    private long mId;
-    // 笔记的提醒日期
-    private long mAlertDate;
-    // 笔记的背景颜色 ID
-    private int mBgColorId;
-    // 笔记的创建日期
-    private long mCreatedDate;
-    // 笔记是否有附件
-    private int mHasAttachment;
-    // 笔记的修改日期
-    private long mModifiedDate;
-    // 笔记的父 ID
-    private long mParentId;
-    // 笔记的摘要
-    private String mSnippet;
-    // 笔记的类型
-    private int mType;
-    // 笔记小部件的 ID
-    private int mWidgetId;
-    // 笔记小部件的类型
-    private int mWidgetType;
-    // 笔记的原始父 ID
-    private long mOriginParent;
+    // 笔记行中参与同步的字段
+    private NoteRecord mNote;
     // 笔记的版本
     private long mVersion;
     // 存储笔记差异值的 ContentValues 对象
@@ -152,18 +139,7 @@ public class SqlNote {
         mContext = context;
         mContentResolver = context.getContentResolver();
         mIsCreate = true;
-        mId = INVALID_ID;
-        mAlertDate = 0;
-        mBgColorId = ResourceParser.getDefaultBgId(context);
-        mCreatedDate = System.currentTimeMillis();
-        mHasAttachment = 0;
-        mModifiedDate = System.currentTimeMillis();
-        mParentId = 0;
-        mSnippet = "";
-        mType = Notes.TYPE_NOTE;
-        mWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
-        mWidgetType = Notes.TYPE_WIDGET_INVALIDE;
-        mOriginParent = 0;
+        mNote = new NoteRecord(ResourceParser.getDefaultBgId(context));
         mVersion = 0;
         mDiffNoteValues = new ContentValues();
         mDataList = new ArrayList<SqlData>();
@@ -179,9 +155,10 @@ public class SqlNote {
         mContext = context;
         mContentResolver = context.getContentResolver();
         mIsCreate = false;
+        mNote = new NoteRecord(ResourceParser.getDefaultBgId(context));
         loadFromCursor(c);
         mDataList = new ArrayList<SqlData>();
-        if (mType == Notes.TYPE_NOTE)
+        if (mNote.getType() == Notes.TYPE_NOTE)
             loadDataContent();
         mDiffNoteValues = new ContentValues();
     }
@@ -196,9 +173,10 @@ public class SqlNote {
         mContext = context;
         mContentResolver = context.getContentResolver();
         mIsCreate = false;
+        mNote = new NoteRecord(ResourceParser.getDefaultBgId(context));
         loadFromCursor(id);
         mDataList = new ArrayList<SqlData>();
-        if (mType == Notes.TYPE_NOTE)
+        if (mNote.getType() == Notes.TYPE_NOTE)
             loadDataContent();
         mDiffNoteValues = new ContentValues();
     }
@@ -233,17 +211,17 @@ public class SqlNote {
      * @param c 包含笔记数据的 Cursor 对象
      */
     private void loadFromCursor(Cursor c) {
-        mId = c.getLong(ID_COLUMN);
-        mAlertDate = c.getLong(ALERTED_DATE_COLUMN);
-        mBgColorId = c.getInt(BG_COLOR_ID_COLUMN);
-        mCreatedDate = c.getLong(CREATED_DATE_COLUMN);
-        mHasAttachment = c.getInt(HAS_ATTACHMENT_COLUMN);
-        mModifiedDate = c.getLong(MODIFIED_DATE_COLUMN);
-        mParentId = c.getLong(PARENT_ID_COLUMN);
-        mSnippet = c.getString(SNIPPET_COLUMN);
-        mType = c.getInt(TYPE_COLUMN);
-        mWidgetId = c.getInt(WIDGET_ID_COLUMN);
-        mWidgetType = c.getInt(WIDGET_TYPE_COLUMN);
+        mNote.setId(c.getLong(ID_COLUMN));
+        mNote.setAlertDate(c.getLong(ALERTED_DATE_COLUMN));
+        mNote.setBgColorId(c.getInt(BG_COLOR_ID_COLUMN));
+        mNote.setCreatedDate(c.getLong(CREATED_DATE_COLUMN));
+        mNote.setHasAttachment(c.getInt(HAS_ATTACHMENT_COLUMN));
+        mNote.setModifiedDate(c.getLong(MODIFIED_DATE_COLUMN));
+        mNote.setParentId(c.getLong(PARENT_ID_COLUMN));
+        mNote.setSnippet(c.getString(SNIPPET_COLUMN));
+        mNote.setType(c.getInt(TYPE_COLUMN));
+        mNote.setWidgetId(c.getInt(WIDGET_ID_COLUMN));
+        mNote.setWidgetType(c.getInt(WIDGET_TYPE_COLUMN));
         mVersion = c.getLong(VERSION_COLUMN);
     }
 
@@ -256,7 +234,7 @@ public class SqlNote {
         try {
             c = mContentResolver.query(Notes.CONTENT_DATA_URI, SqlData.PROJECTION_DATA,
                     "(note_id=?)", new String[] {
-                        String.valueOf(mId)
+                        String.valueOf(mNote.getId())
                     }, null);
             if (c != null) {
                 if (c.getCount() == 0) {
@@ -285,108 +263,17 @@ public class SqlNote {
     public boolean setContent(JSONObject js) {
         try {
             JSONObject note = js.getJSONObject(GTaskStringUtils.META_HEAD_NOTE);
-            if (note.getInt(NoteColumns.TYPE) == Notes.TYPE_SYSTEM) {
-                Log.w(TAG, "cannot set system folder");
-            } else if (note.getInt(NoteColumns.TYPE) == Notes.TYPE_FOLDER) {
-                // 对于文件夹，只能更新摘要和类型
-                String snippet = note.has(NoteColumns.SNIPPET) ? note
-                        .getString(NoteColumns.SNIPPET) : "";
-                if (mIsCreate || !mSnippet.equals(snippet)) {
-                    mDiffNoteValues.put(NoteColumns.SNIPPET, snippet);
-                }
-                mSnippet = snippet;
-
-                int type = note.has(NoteColumns.TYPE) ? note.getInt(NoteColumns.TYPE)
-                        : Notes.TYPE_NOTE;
-                if (mIsCreate || mType != type) {
-                    mDiffNoteValues.put(NoteColumns.TYPE, type);
-                }
-                mType = type;
-            } else if (note.getInt(NoteColumns.TYPE) == Notes.TYPE_NOTE) {
-                JSONArray dataArray = js.getJSONArray(GTaskStringUtils.META_HEAD_DATA);
-                long id = note.has(NoteColumns.ID) ? note.getLong(NoteColumns.ID) : INVALID_ID;
-                if (mIsCreate || mId != id) {
-                    mDiffNoteValues.put(NoteColumns.ID, id);
-                }
-                mId = id;
-
-                long alertDate = note.has(NoteColumns.ALERTED_DATE) ? note
-                        .getLong(NoteColumns.ALERTED_DATE) : 0;
-                if (mIsCreate || mAlertDate != alertDate) {
-                    mDiffNoteValues.put(NoteColumns.ALERTED_DATE, alertDate);
-                }
-                mAlertDate = alertDate;
-
-                int bgColorId = note.has(NoteColumns.BG_COLOR_ID) ? note
-                        .getInt(NoteColumns.BG_COLOR_ID) : ResourceParser.getDefaultBgId(mContext);
-                if (mIsCreate || mBgColorId != bgColorId) {
-                    mDiffNoteValues.put(NoteColumns.BG_COLOR_ID, bgColorId);
-                }
-                mBgColorId = bgColorId;
-
-                long createDate = note.has(NoteColumns.CREATED_DATE) ? note
-                        .getLong(NoteColumns.CREATED_DATE) : System.currentTimeMillis();
-                if (mIsCreate || mCreatedDate != createDate) {
-                    mDiffNoteValues.put(NoteColumns.CREATED_DATE, createDate);
-                }
-                mCreatedDate = createDate;
-
-                int hasAttachment = note.has(NoteColumns.HAS_ATTACHMENT) ? note
-                        .getInt(NoteColumns.HAS_ATTACHMENT) : 0;
-                if (mIsCreate || mHasAttachment != hasAttachment) {
-                    mDiffNoteValues.put(NoteColumns.HAS_ATTACHMENT, hasAttachment);
-                }
-                mHasAttachment = hasAttachment;
-
-                long modifiedDate = note.has(NoteColumns.MODIFIED_DATE) ? note
-                        .getLong(NoteColumns.MODIFIED_DATE) : System.currentTimeMillis();
-                if (mIsCreate || mModifiedDate != modifiedDate) {
-                    mDiffNoteValues.put(NoteColumns.MODIFIED_DATE, modifiedDate);
-                }
-                mModifiedDate = modifiedDate;
-
-                long parentId = note.has(NoteColumns.PARENT_ID) ? note
-                        .getLong(NoteColumns.PARENT_ID) : 0;
-                if (mIsCreate || mParentId != parentId) {
-                    mDiffNoteValues.put(NoteColumns.PARENT_ID, parentId);
-                }
-                mParentId = parentId;
-
-                String snippet = note.has(NoteColumns.SNIPPET) ? note
-                        .getString(NoteColumns.SNIPPET) : "";
-                if (mIsCreate || !mSnippet.equals(snippet)) {
-                    mDiffNoteValues.put(NoteColumns.SNIPPET, snippet);
-                }
-                mSnippet = snippet;
-
-                int type = note.has(NoteColumns.TYPE) ? note.getInt(NoteColumns.TYPE)
-                        : Notes.TYPE_NOTE;
-                if (mIsCreate || mType != type) {
-                    mDiffNoteValues.put(NoteColumns.TYPE, type);
-                }
-                mType = type;
-
-                int widgetId = note.has(NoteColumns.WIDGET_ID) ? note.getInt(NoteColumns.WIDGET_ID)
-                        : AppWidgetManager.INVALID_APPWIDGET_ID;
-                if (mIsCreate || mWidgetId != widgetId) {
-                    mDiffNoteValues.put(NoteColumns.WIDGET_ID, widgetId);
-                }
-                mWidgetId = widgetId;
-
-                int widgetType = note.has(NoteColumns.WIDGET_TYPE) ? note
-                        .getInt(NoteColumns.WIDGET_TYPE) : Notes.TYPE_WIDGET_INVALIDE;
-                if (mIsCreate || mWidgetType != widgetType) {
-                    mDiffNoteValues.put(NoteColumns.WIDGET_TYPE, widgetType);
-                }
-                mWidgetType = widgetType;
-
-                long originParent = note.has(NoteColumns.ORIGIN_PARENT_ID) ? note
-                        .getLong(NoteColumns.ORIGIN_PARENT_ID) : 0;
-                if (mIsCreate || mOriginParent != originParent) {
-                    mDiffNoteValues.put(NoteColumns.ORIGIN_PARENT_ID, originParent);
-                }
-                mOriginParent = originParent;
+            int type = note.getInt(NoteColumns.TYPE);
+            // 笔记的数据在更新字段前取出，缺少数据时不做任何修改
+            JSONArray dataArray = type == Notes.TYPE_NOTE ? js
+                    .getJSONArray(GTaskStringUtils.META_HEAD_DATA) : null;
+            HashMap<String, Object> diff = new HashMap<String, Object>();
+            if (!mNote.applyJson(note, mIsCreate, ResourceParser.getDefaultBgId(mContext), diff)) {
+                Log.w(TAG, "cannot set note of type " + type);
+            }
+            putDiff(diff);
 
+            if (dataArray != null) {
                 for (int i = 0; i < dataArray.length(); i++) {
                     JSONObject data = dataArray.getJSONObject(i);
                     SqlData sqlData = null;
@@ -429,22 +316,11 @@ public class SqlNote {
                 return null;
             }
 
-            JSONObject note = new JSONObject();
-            if (mType == Notes.TYPE_NOTE) {
-                note.put(NoteColumns.ID, mId);
-                note.put(NoteColumns.ALERTED_DATE, mAlertDate);
-                note.put(NoteColumns.BG_COLOR_ID, mBgColorId);
-                note.put(NoteColumns.CREATED_DATE, mCreatedDate);
-                note.put(NoteColumns.HAS_ATTACHMENT, mHasAttachment);
-                note.put(NoteColumns.MODIFIED_DATE, mModifiedDate);
-                note.put(NoteColumns.PARENT_ID, mParentId);
-                note.put(NoteColumns.SNIPPET, mSnippet);
-                note.put(NoteColumns.TYPE, mType);
-                note.put(NoteColumns.WIDGET_ID, mWidgetId);
-                note.put(NoteColumns.WIDGET_TYPE, mWidgetType);
-                note.put(NoteColumns.ORIGIN_PARENT_ID, mOriginParent);
+            JSONObject note = mNote.toJson();
+            if (note != null) {
                 js.put(GTaskStringUtils.META_HEAD_NOTE, note);
-
+            }
+            if (mNote.getType() == Notes.TYPE_NOTE) {
                 JSONArray dataArray = new JSONArray();
                 for (SqlData sqlData : mDataList) {
                     JSONObject data = sqlData.getContent();
@@ -453,11 +329,6 @@ public class SqlNote {
                     }
                 }
                 js.put(GTaskStringUtils.META_HEAD_DATA, dataArray);
-            } else if (mType == Notes.TYPE_FOLDER || mType == Notes.TYPE_SYSTEM) {
-                note.put(NoteColumns.ID, mId);
-                note.put(NoteColumns.TYPE, mType);
-                note.put(NoteColumns.SNIPPET, mSnippet);
-                js.put(GTaskStringUtils.META_HEAD_NOTE, note);
             }
 
             return js;
@@ -468,13 +339,29 @@ public class SqlNote {
         return null;
     }
 
+    /**
+     * 把变化的字段加入待写入的值，字段值为 Integer、Long 或 String。
+     */
+    private void putDiff(Map<String, Object> diff) {
+        for (Map.Entry<String, Object> entry : diff.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Integer) {
+                mDiffNoteValues.put(entry.getKey(), (Integer) value);
+            } else if (value instanceof Long) {
+                mDiffNoteValues.put(entry.getKey(), (Long) value);
+            } else {
+                mDiffNoteValues.put(entry.getKey(), (String) value);
+            }
+        }
+    }
+
     /**
      * 设置笔记的父 ID。
      *
      * @param id 父 ID
      */
     public void setParentId(long id) {
-        mParentId = id;
+        mNote.setParentId(id);
         mDiffNoteValues.put(NoteColumns.PARENT_ID, id);
     }
 
@@ -496,45 +383,71 @@ public class SqlNote {
     }
 
     public long getId() {
-        return mId;
+        return mNote.getId();
     }
 
     public long getParentId() {
-        return mParentId;
+        return mNote.getParentId();
     }
 
     public String getSnippet() {
-        return mSnippet;
+        return mNote.getSnippet();
     }
 
     public boolean isNoteType() {
-        return mType == Notes.TYPE_NOTE;
+        return mNote.getType() == Notes.TYPE_NOTE;
     }
 
     public void commit(boolean validateVersion) {
         if (mIsCreate) {
-            if (mId == INVALID_ID && mDiffNoteValues.containsKey(NoteColumns.ID)) {
+            if (mNote.getId() == INVALID_ID && mDiffNoteValues.containsKey(NoteColumns.ID)) {
                 mDiffNoteValues.remove(NoteColumns.ID);
             }
 
-            Uri uri = mContentResolver.insert(Notes.CONTENT_NOTE_URI, mDiffNoteValues);
+            // 笔记和数据在一个事务中创建，数据行通过反向引用取得笔记 ID
+            ArrayList<ContentProviderOperation> operationList = new ArrayList<ContentProviderOperation>();
+            operationList.add(ContentProviderOperation.newInsert(Notes.CONTENT_NOTE_URI)
+                    .withValues(mDiffNoteValues).build());
+            ArrayList<SqlData> created = new ArrayList<SqlData>();
+            if (mNote.getType() == Notes.TYPE_NOTE) {
+                for (SqlData sqlData : mDataList) {
+                    if (sqlData.appendCreateOperations(operationList, 0)) {
+                        created.add(sqlData);
+                    }
+                }
+            }
+
+            ContentProviderResult[] results;
             try {
-                mId = Long.valueOf(uri.getPathSegments().get(1));
+                results = mContentResolver.applyBatch(Notes.AUTHORITY, operationList);
+                mNote.setId(Long.valueOf(results[0].uri.getPathSegments().get(1)));
+            } catch (RemoteException e) {
+                Log.e(TAG, e.toString());
+                throw new ActionFailureException("create note failed");
+            } catch (OperationApplicationException e) {
+                Log.e(TAG, e.toString());
+                throw new ActionFailureException("create note failed");
             } catch (NumberFormatException e) {
                 Log.e(TAG, "Get note id error :" + e.toString());
                 throw new ActionFailureException("create note failed");
             }
-            if (mId == 0) {
+            if (mNote.getId() == 0) {
                 throw new IllegalStateException("Create thread id failed");
             }
 
-            if (mType == Notes.TYPE_NOTE) {
+            for (SqlData sqlData : created) {
+                sqlData.onCreateApplied(results);
+            }
+            if (mNote.getType() == Notes.TYPE_NOTE) {
                 for (SqlData sqlData : mDataList) {
-                    sqlData.commit(mId, false, -1);
+                    if (!created.contains(sqlData)) {
+                        sqlData.commit(mNote.getId(), false, -1);
+                    }
                 }
             }
         } else {
-            if (mId <= 0 && mId != Notes.ID_ROOT_FOLDER && mId != Notes.ID_CALL_RECORD_FOLDER) {
+            long id = mNote.getId();
+            if (id <= 0 && id != Notes.ID_ROOT_FOLDER && id != Notes.ID_CALL_RECORD_FOLDER) {
                 Log.e(TAG, "No such note");
                 throw new IllegalStateException("Try to update note with invalid id");
             }
@@ -544,13 +457,13 @@ public class SqlNote {
                 if (!validateVersion) {
                     result = mContentResolver.update(Notes.CONTENT_NOTE_URI, mDiffNoteValues, "("
                             + NoteColumns.ID + "=?)", new String[] {
-                        String.valueOf(mId)
+                        String.valueOf(mNote.getId())
                     });
                 } else {
                     result = mContentResolver.update(Notes.CONTENT_NOTE_URI, mDiffNoteValues, "("
                             + NoteColumns.ID + "=?) AND (" + NoteColumns.VERSION + "<=?)",
                             new String[] {
-                                    String.valueOf(mId), String.valueOf(mVersion)
+                                    String.valueOf(mNote.getId()), String.valueOf(mVersion)
                             });
                 }
                 if (result == 0) {
@@ -558,19 +471,46 @@ public class SqlNote {
                 }
             }
 
-            if (mType == Notes.TYPE_NOTE) {
+            if (mNote.getType() == Notes.TYPE_NOTE) {
                 for (SqlData sqlData : mDataList) {
-                    sqlData.commit(mId, validateVersion, mVersion);
+                    sqlData.commit(mNote.getId(), validateVersion, mVersion);
                 }
             }
         }
 
         // refresh local info
-        loadFromCursor(mId);
-        if (mType == Notes.TYPE_NOTE)
+        loadFromCursor(mNote.getId());
+        if (mNote.getType() == Notes.TYPE_NOTE)
             loadDataContent();
 
         mDiffNoteValues.clear();
         mIsCreate = false;
     }
+
+    /**
+     * 以查询笔记的游标当前行作为同步状态，游标需使用 {@link #PROJECTION_NOTE}。
+     */
+    static class CursorState implements SyncAction.LocalState {
+        private final Cursor mCursor;
+
+        CursorState(Cursor c) {
+            mCursor = c;
+        }
+
+        public long getId() {
+            return mCursor.getLong(ID_COLUMN);
+        }
+
+        public boolean isLocalModified() {
+            return mCursor.getInt(LOCAL_MODIFIED_COLUMN) != 0;
+        }
+
+        public long getSyncId() {
+            return mCursor.getLong(SYNC_ID_COLUMN);
+        }
+
+        public String getGtaskId() {
+            return mCursor.getString(GTASK_ID_COLUMN);
+        }
+    }
 }
@@ -21,6 +21,8 @@ package net.micode.notes.gtask.data;
 import android.database.Cursor;
 // 导入 Android 文本工具类，用于文本处理
 import android.text.TextUtils;
+// 导入 Android JSON 写入工具类，用于流式写出动作
+import android.util.JsonWriter;
 // 导入 Android 日志工具类，用于记录日志信息
 import android.util.Log;
 
@@ -29,6 +31,9 @@ import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.DataColumns;
 import net.micode.notes.data.Notes.DataConstants;
 import net.micode.notes.data.Notes.NoteColumns;
+// 导入子任务列表和同步动作的判定
+import net.micode.notes.core.ChildList;
+import net.micode.notes.core.SyncAction;
 // 导入任务操作失败异常类
 import net.micode.notes.gtask.exception.ActionFailureException;
 // 导入任务字符串工具类
@@ -39,11 +44,13 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 /**
  * Task 类表示一个任务，继承自 Node 类。
  * 该类负责处理任务的创建、更新、内容设置以及同步操作。
  */
-public class Task extends Node {
+public class Task extends Node implements ChildList.Child<TaskList, Task> {
     // 定义日志标签，使用类名作为标签
     private static final String TAG = Task.class.getSimpleName();
 
@@ -76,107 +83,63 @@ public class Task extends Node {
     }
 
     /**
-     * 生成创建任务的 JSON 对象。
+     * 写出创建任务的动作。
      *
+     * @param writer 写入请求体的 JsonWriter
      * @param actionId 操作 ID
-     * @return 包含创建任务信息的 JSON 对象
      */
-    public JSONObject getCreateAction(int actionId) {
-        // 创建一个新的 JSON 对象
-        JSONObject js = new JSONObject();
-
-        try {
-            // 设置操作类型为创建任务
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
-                    GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE);
-            // 设置操作 ID
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, actionId);
-            // 设置任务在任务列表中的索引
-            js.put(GTaskStringUtils.GTASK_JSON_INDEX, mParent.getChildTaskIndex(this));
-
-            // 创建一个新的 JSON 对象，用于存储实体信息
-            JSONObject entity = new JSONObject();
-            // 设置任务名称
-            entity.put(GTaskStringUtils.GTASK_JSON_NAME, getName());
-            // 设置任务创建者 ID
-            entity.put(GTaskStringUtils.GTASK_JSON_CREATOR_ID, "null");
-            // 设置实体类型为任务
-            entity.put(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE,
-                    GTaskStringUtils.GTASK_JSON_TYPE_TASK);
-            // 如果任务有备注信息，则添加到实体信息中
-            if (getNotes() != null) {
-                entity.put(GTaskStringUtils.GTASK_JSON_NOTES, getNotes());
-            }
-            // 将实体信息添加到主 JSON 对象中
-            js.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, entity);
-
-            // 设置任务所属的父任务列表 ID
-            js.put(GTaskStringUtils.GTASK_JSON_PARENT_ID, mParent.getGid());
-            // 设置目标父任务列表类型为组
-            js.put(GTaskStringUtils.GTASK_JSON_DEST_PARENT_TYPE,
-                    GTaskStringUtils.GTASK_JSON_TYPE_GROUP);
-            // 设置任务列表 ID
-            js.put(GTaskStringUtils.GTASK_JSON_LIST_ID, mParent.getGid());
-
-            // 如果有前一个兄弟任务，则添加其 ID
-            if (mPriorSibling != null) {
-                js.put(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID, mPriorSibling.getGid());
-            }
-
-        } catch (JSONException e) {
-            // 记录错误日志
-            Log.e(TAG, e.toString());
-            // 打印异常堆栈信息
-            e.printStackTrace();
-            // 抛出操作失败异常
-            throw new ActionFailureException("fail to generate task-create jsonobject");
+    public void writeCreateAction(JsonWriter writer, int actionId) throws IOException {
+        writer.beginObject();
+        // 操作类型、操作 ID 以及任务在任务列表中的索引
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE);
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(actionId);
+        writer.name(GTaskStringUtils.GTASK_JSON_INDEX).value(mParent.getChildTaskIndex(this));
+
+        // 实体信息：名称、创建者、实体类型和备注
+        writer.name(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        writer.beginObject();
+        writeString(writer, GTaskStringUtils.GTASK_JSON_NAME, getName());
+        writer.name(GTaskStringUtils.GTASK_JSON_CREATOR_ID).value("null");
+        writer.name(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_TYPE_TASK);
+        writeString(writer, GTaskStringUtils.GTASK_JSON_NOTES, getNotes());
+        writer.endObject();
+
+        // 所属的任务列表，以及前一个兄弟任务
+        writeString(writer, GTaskStringUtils.GTASK_JSON_PARENT_ID, mParent.getGid());
+        writer.name(GTaskStringUtils.GTASK_JSON_DEST_PARENT_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_TYPE_GROUP);
+        writeString(writer, GTaskStringUtils.GTASK_JSON_LIST_ID, mParent.getGid());
+        if (mPriorSibling != null) {
+            writeString(writer, GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID,
+                    mPriorSibling.getGid());
         }
-
-        return js;
+        writer.endObject();
     }
 
     /**
-     * 生成更新任务的 JSON 对象。
+     * 写出更新任务的动作。
      *
+     * @param writer 写入请求体的 JsonWriter
      * @param actionId 操作 ID
-     * @return 包含更新任务信息的 JSON 对象
      */
-    public JSONObject getUpdateAction(int actionId) {
-        // 创建一个新的 JSON 对象
-        JSONObject js = new JSONObject();
-
-        try {
-            // 设置操作类型为更新任务
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
-                    GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
-            // 设置操作 ID
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, actionId);
-            // 设置任务 ID
-            js.put(GTaskStringUtils.GTASK_JSON_ID, getGid());
-
-            // 创建一个新的 JSON 对象，用于存储实体信息
-            JSONObject entity = new JSONObject();
-            // 设置任务名称
-            entity.put(GTaskStringUtils.GTASK_JSON_NAME, getName());
-            // 如果任务有备注信息，则添加到实体信息中
-            if (getNotes() != null) {
-                entity.put(GTaskStringUtils.GTASK_JSON_NOTES, getNotes());
-            }
-            // 设置任务是否删除的标志
-            entity.put(GTaskStringUtils.GTASK_JSON_DELETED, getDeleted());
-            // 将实体信息添加到主 JSON 对象中
-            js.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, entity);
-
-        } catch (JSONException e) {
-            // 记录错误日志
-            Log.e(TAG, e.toString());
-            // 打印异常堆栈信息
-            e.printStackTrace();
-            // 抛出操作失败异常
-            throw new ActionFailureException("fail to generate task-update jsonobject");
-        }
-
-        return js;
+    public void writeUpdateAction(JsonWriter writer, int actionId) throws IOException {
+        writer.beginObject();
+        // 操作类型、操作 ID 以及任务 ID
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(actionId);
+        writeString(writer, GTaskStringUtils.GTASK_JSON_ID, getGid());
+
+        // 实体信息：名称、备注和删除标志
+        writer.name(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        writer.beginObject();
+        writeString(writer, GTaskStringUtils.GTASK_JSON_NAME, getName());
+        writeString(writer, GTaskStringUtils.GTASK_JSON_NOTES, getNotes());
+        writer.name(GTaskStringUtils.GTASK_JSON_DELETED).value(getDeleted());
+        writer.endObject();
+        writer.endObject();
     }
 
     /**
@@ -322,6 +285,10 @@ public class Task extends Node {
                     }
                 }
 
+                // 紧凑编码的元数据省略了与正文相同的摘要
+                if (!note.has(NoteColumns.SNIPPET)) {
+                    note.put(NoteColumns.SNIPPET, getName());
+                }
                 // 设置笔记类型为任务类型
                 note.put(NoteColumns.TYPE, Notes.TYPE_NOTE);
                 return mMetaInfo;
@@ -341,7 +308,10 @@ public class Task extends Node {
      * @param metaData 包含元信息的对象
      */
     public void setMetaInfo(MetaData metaData) {
-        if (metaData != null && metaData.getNotes() != null) {
+        if (metaData != null && metaData.getContent() != null) {
+            // 直接使用元数据读取时已解析的 JSON 对象
+            mMetaInfo = metaData.getContent();
+        } else if (metaData != null && metaData.getNotes() != null) {
             try {
                 // 将元信息转换为 JSON 对象
                 mMetaInfo = new JSONObject(metaData.getNotes());
@@ -362,57 +332,13 @@ public class Task extends Node {
      */
     public int getSyncAction(Cursor c) {
         try {
-            // 初始化笔记信息的 JSON 对象
-            JSONObject noteInfo = null;
-            if (mMetaInfo != null && mMetaInfo.has(GTaskStringUtils.META_HEAD_NOTE)) {
-                // 如果元信息包含笔记信息，则获取笔记信息的 JSON 对象
-                noteInfo = mMetaInfo.getJSONObject(GTaskStringUtils.META_HEAD_NOTE);
-            }
-
-            if (noteInfo == null) {
-                // 如果笔记信息为空，说明笔记元信息已被删除
-                Log.w(TAG, "it seems that note meta has been deleted");
-                return SYNC_ACTION_UPDATE_REMOTE;
-            }
-
-            if (!noteInfo.has(NoteColumns.ID)) {
-                // 如果笔记信息不包含笔记 ID，说明远程笔记 ID 已被删除
-                Log.w(TAG, "remote note id seems to be deleted");
-                return SYNC_ACTION_UPDATE_LOCAL;
-            }
-
-            // 验证笔记 ID
-            if (c.getLong(SqlNote.ID_COLUMN) != noteInfo.getLong(NoteColumns.ID)) {
-                // 如果笔记 ID 不匹配，说明需要更新本地笔记
-                Log.w(TAG, "note id doesn't match");
-                return SYNC_ACTION_UPDATE_LOCAL;
-            }
-
-            if (c.getInt(SqlNote.LOCAL_MODIFIED_COLUMN) == 0) {
-                // 如果本地没有更新
-                if (c.getLong(SqlNote.SYNC_ID_COLUMN) == getLastModified()) {
-                    // 如果本地和远程都没有更新
-                    return SYNC_ACTION_NONE;
-                } else {
-                    // 如果远程有更新，需要将远程更新应用到本地
-                    return SYNC_ACTION_UPDATE_LOCAL;
-                }
-            } else {
-                // 如果本地有更新
-                // 验证 GTask ID
-                if (!c.getString(SqlNote.GTASK_ID_COLUMN).equals(getGid())) {
-                    // 如果 GTask ID 不匹配，说明同步出错
-                    Log.e(TAG, "gtask id doesn't match");
-                    return SYNC_ACTION_ERROR;
-                }
-                if (c.getLong(SqlNote.SYNC_ID_COLUMN) == getLastModified()) {
-                    // 如果本地有修改，远程没有修改，需要将本地修改更新到远程
-                    return SYNC_ACTION_UPDATE_REMOTE;
-                } else {
-                    // 如果本地和远程都有修改，说明发生了冲突
-                    return SYNC_ACTION_UPDATE_CONFLICT;
-                }
+            int action = SyncAction.forNote(new SqlNote.CursorState(c), mMetaInfo, getGid(),
+                    getLastModified());
+            if (action == SYNC_ACTION_ERROR) {
+                // GTask ID 不匹配，说明同步出错
+                Log.e(TAG, "gtask id doesn't match");
             }
+            return action;
         } catch (Exception e) {
             // 记录错误日志
             Log.e(TAG, e.toString());
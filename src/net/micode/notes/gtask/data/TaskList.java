@@ -19,6 +19,8 @@ package net.micode.notes.gtask.data;
 
 // 导入 android.database.Cursor 类，用于处理数据库查询结果
 import android.database.Cursor;
+// 导入 android.util.JsonWriter 类，用于流式写出动作
+import android.util.JsonWriter;
 // 导入 android.util.Log 类，用于日志记录
 import android.util.Log;
 
@@ -26,6 +28,10 @@ import android.util.Log;
 import net.micode.notes.data.Notes;
 // 导入 net.micode.notes.data.Notes.NoteColumns 类，包含笔记列的常量
 import net.micode.notes.data.Notes.NoteColumns;
+// 导入 net.micode.notes.core.ChildList 类，用于管理有序的子任务
+import net.micode.notes.core.ChildList;
+// 导入 net.micode.notes.core.SyncAction 类，用于判定同步动作
+import net.micode.notes.core.SyncAction;
 // 导入 net.micode.notes.gtask.exception.ActionFailureException 类，用于处理操作失败异常
 import net.micode.notes.gtask.exception.ActionFailureException;
 // 导入 net.micode.notes.tool.GTaskStringUtils 类，包含 Google 任务相关的字符串常量
@@ -36,6 +42,8 @@ import org.json.JSONException;
 // 导入 org.json.JSONObject 类，用于处理 JSON 对象
 import org.json.JSONObject;
 
+// 导入 java.io.IOException 类，用于处理写出动作时的异常
+import java.io.IOException;
 // 导入 java.util.ArrayList 类，用于创建动态数组
 import java.util.ArrayList;
 
@@ -51,7 +59,7 @@ public class TaskList extends Node {
     private int mIndex;
 
     // 存储该任务列表下的子任务
-    private ArrayList<Task> mChildren;
+    private ChildList<TaskList, Task> mChildren;
 
     /**
      * 构造函数，初始化 TaskList 对象。
@@ -61,98 +69,57 @@ public class TaskList extends Node {
         // 调用父类的构造函数
         super();
         // 初始化子任务列表
-        mChildren = new ArrayList<Task>();
+        mChildren = new ChildList<TaskList, Task>(this);
         // 初始化索引为 1
         mIndex = 1;
     }
 
     /**
-     * 生成创建任务列表的 JSON 操作对象。
+     * 写出创建任务列表的动作。
      *
+     * @param writer 写入请求体的 JsonWriter
      * @param actionId 操作的唯一标识符
-     * @return 包含创建任务列表操作信息的 JSONObject
-     * @throws ActionFailureException 如果生成 JSON 对象时出现异常
      */
-    public JSONObject getCreateAction(int actionId) {
-        // 创建一个新的 JSONObject 用于存储操作信息
-        JSONObject js = new JSONObject();
-    
-        try {
-            // 设置操作类型为创建任务列表
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
-                    GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE);
-    
-            // 设置操作的唯一标识符
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, actionId);
-    
-            // 设置任务列表的索引
-            js.put(GTaskStringUtils.GTASK_JSON_INDEX, mIndex);
-    
-            // 创建一个新的 JSONObject 用于存储实体信息
-            JSONObject entity = new JSONObject();
-            // 设置任务列表的名称
-            entity.put(GTaskStringUtils.GTASK_JSON_NAME, getName());
-            // 设置创建者 ID 为 null
-            entity.put(GTaskStringUtils.GTASK_JSON_CREATOR_ID, "null");
-            // 设置实体类型为组
-            entity.put(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE,
-                    GTaskStringUtils.GTASK_JSON_TYPE_GROUP);
-            // 将实体信息添加到操作信息中
-            js.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, entity);
-    
-        } catch (JSONException e) {
-            // 记录错误日志
-            Log.e(TAG, e.toString());
-            // 打印异常堆栈信息
-            e.printStackTrace();
-            // 抛出操作失败异常
-            throw new ActionFailureException("fail to generate tasklist-create jsonobject");
-        }
-    
-        return js;
+    public void writeCreateAction(JsonWriter writer, int actionId) throws IOException {
+        writer.beginObject();
+        // 操作类型、操作 ID 以及任务列表的索引
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_CREATE);
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(actionId);
+        writer.name(GTaskStringUtils.GTASK_JSON_INDEX).value(mIndex);
+
+        // 实体信息：名称、创建者和实体类型
+        writer.name(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        writer.beginObject();
+        writeString(writer, GTaskStringUtils.GTASK_JSON_NAME, getName());
+        writer.name(GTaskStringUtils.GTASK_JSON_CREATOR_ID).value("null");
+        writer.name(GTaskStringUtils.GTASK_JSON_ENTITY_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_TYPE_GROUP);
+        writer.endObject();
+        writer.endObject();
     }
 
     /**
-     * 生成更新任务列表的 JSON 操作对象。
+     * 写出更新任务列表的动作。
      *
+     * @param writer 写入请求体的 JsonWriter
      * @param actionId 操作的唯一标识符
-     * @return 包含更新任务列表操作信息的 JSONObject
-     * @throws ActionFailureException 如果生成 JSON 对象时出现异常
      */
-    public JSONObject getUpdateAction(int actionId) {
-        // 创建一个新的 JSONObject 用于存储操作信息
-        JSONObject js = new JSONObject();
-    
-        try {
-            // 设置操作类型为更新任务列表
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
-                    GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
-    
-            // 设置操作的唯一标识符
-            js.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, actionId);
-    
-            // 设置任务列表的全局 ID
-            js.put(GTaskStringUtils.GTASK_JSON_ID, getGid());
-    
-            // 创建一个新的 JSONObject 用于存储实体信息
-            JSONObject entity = new JSONObject();
-            // 设置任务列表的名称
-            entity.put(GTaskStringUtils.GTASK_JSON_NAME, getName());
-            // 设置任务列表是否已删除
-            entity.put(GTaskStringUtils.GTASK_JSON_DELETED, getDeleted());
-            // 将实体信息添加到操作信息中
-            js.put(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA, entity);
-    
-        } catch (JSONException e) {
-            // 记录错误日志
-            Log.e(TAG, e.toString());
-            // 打印异常堆栈信息
-            e.printStackTrace();
-            // 抛出操作失败异常
-            throw new ActionFailureException("fail to generate tasklist-update jsonobject");
-        }
-    
-        return js;
+    public void writeUpdateAction(JsonWriter writer, int actionId) throws IOException {
+        writer.beginObject();
+        // 操作类型、操作 ID 以及任务列表的全局 ID
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_UPDATE);
+        writer.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(actionId);
+        writeString(writer, GTaskStringUtils.GTASK_JSON_ID, getGid());
+
+        // 实体信息：名称和删除标志
+        writer.name(GTaskStringUtils.GTASK_JSON_ENTITY_DELTA);
+        writer.beginObject();
+        writeString(writer, GTaskStringUtils.GTASK_JSON_NAME, getName());
+        writer.name(GTaskStringUtils.GTASK_JSON_DELETED).value(getDeleted());
+        writer.endObject();
+        writer.endObject();
     }
 
     /**
@@ -291,31 +258,14 @@ public class TaskList extends Node {
      */
     public int getSyncAction(Cursor c) {
         try {
-            // 检查本地是否有修改
-            if (c.getInt(SqlNote.LOCAL_MODIFIED_COLUMN) == 0) {
-                // 本地无更新
-                if (c.getLong(SqlNote.SYNC_ID_COLUMN) == getLastModified()) {
-                    // 双方都无更新
-                    return SYNC_ACTION_NONE;
-                } else {
-                    // 应用远程更新到本地
-                    return SYNC_ACTION_UPDATE_LOCAL;
-                }
-            } else {
-                // 验证 GTask ID
-                if (!c.getString(SqlNote.GTASK_ID_COLUMN).equals(getGid())) {
-                    // 记录错误日志
-                    Log.e(TAG, "gtask id doesn't match");
-                    return SYNC_ACTION_ERROR;
-                }
-                if (c.getLong(SqlNote.SYNC_ID_COLUMN) == getLastModified()) {
-                    // 仅本地有修改
-                    return SYNC_ACTION_UPDATE_REMOTE;
-                } else {
-                    // 对于文件夹冲突，直接应用本地修改
-                    return SYNC_ACTION_UPDATE_REMOTE;
-                }
+            // 文件夹冲突时直接应用本地修改
+            int action = SyncAction.forFolder(new SqlNote.CursorState(c), getGid(),
+                    getLastModified());
+            if (action == SYNC_ACTION_ERROR) {
+                // GTask ID 不匹配
+                Log.e(TAG, "gtask id doesn't match");
             }
+            return action;
         } catch (Exception e) {
             // 记录错误日志
             Log.e(TAG, e.toString());
@@ -342,20 +292,7 @@ public class TaskList extends Node {
      * @return 如果添加成功返回 true，否则返回 false
      */
     public boolean addChildTask(Task task) {
-        boolean ret = false;
-        // 检查任务是否为空且任务列表中不包含该任务
-        if (task != null && !mChildren.contains(task)) {
-            // 尝试将任务添加到任务列表中
-            ret = mChildren.add(task);
-            if (ret) {
-                // 设置任务的前一个兄弟任务
-                task.setPriorSibling(mChildren.isEmpty() ? null : mChildren
-                        .get(mChildren.size() - 1));
-                // 设置任务的父任务列表
-                task.setParent(this);
-            }
-        }
-        return ret;
+        return mChildren.add(task);
     }
 
     /**
@@ -363,37 +300,14 @@ public class TaskList extends Node {
      *
      * @param task 要添加的子任务
      * @param index 要添加的位置索引
-     * @return 如果添加成功返回 true，否则返回 false
+     * @return 如果索引有效返回 true，否则返回 false
      */
     public boolean addChildTask(Task task, int index) {
-        // 检查索引是否有效
-        if (index < 0 || index > mChildren.size()) {
+        if (!mChildren.add(task, index)) {
             // 记录错误日志
             Log.e(TAG, "add child task: invalid index");
             return false;
         }
-    
-        // 获取任务在任务列表中的位置
-        int pos = mChildren.indexOf(task);
-        // 检查任务是否为空且任务列表中不包含该任务
-        if (task != null && pos == -1) {
-            // 在指定位置添加任务
-            mChildren.add(index, task);
-    
-            // 更新任务列表
-            Task preTask = null;
-            Task afterTask = null;
-            if (index != 0)
-                preTask = mChildren.get(index - 1);
-            if (index != mChildren.size() - 1)
-                afterTask = mChildren.get(index + 1);
-    
-            // 设置任务的前一个兄弟任务
-            task.setPriorSibling(preTask);
-            if (afterTask != null)
-                afterTask.setPriorSibling(task);
-        }
-    
         return true;
     }
 
@@ -404,26 +318,7 @@ public class TaskList extends Node {
      * @return 如果移除成功返回 true，否则返回 false
      */
     public boolean removeChildTask(Task task) {
-        boolean ret = false;
-        // 获取任务在任务列表中的索引
-        int index = mChildren.indexOf(task);
-        if (index != -1) {
-            // 尝试从任务列表中移除任务
-            ret = mChildren.remove(task);
-    
-            if (ret) {
-                // 重置任务的前一个兄弟任务和父任务列表
-                task.setPriorSibling(null);
-                task.setParent(null);
-    
-                // 更新任务列表
-                if (index != mChildren.size()) {
-                    mChildren.get(index).setPriorSibling(
-                            index == 0 ? null : mChildren.get(index - 1));
-                }
-            }
-        }
-        return ret;
+        return mChildren.remove(task);
     }
 
     /**
@@ -434,25 +329,12 @@ public class TaskList extends Node {
      * @return 如果移动成功返回 true，否则返回 false
      */
     public boolean moveChildTask(Task task, int index) {
-        // 检查索引是否有效
-        if (index < 0 || index >= mChildren.size()) {
-            // 记录错误日志
-            Log.e(TAG, "move child task: invalid index");
-            return false;
-        }
-    
-        // 获取任务在任务列表中的位置
-        int pos = mChildren.indexOf(task);
-        if (pos == -1) {
+        if (!mChildren.move(task, index)) {
             // 记录错误日志
-            Log.e(TAG, "move child task: the task should in the list");
+            Log.e(TAG, "move child task: invalid index or the task is not in the list");
             return false;
         }
-    
-        if (pos == index)
-            return true;
-        // 先移除任务，再将任务添加到指定位置
-        return (removeChildTask(task) && addChildTask(task, index));
+        return true;
     }
 
     /**
@@ -462,15 +344,7 @@ public class TaskList extends Node {
      * @return 如果找到则返回子任务，否则返回 null
      */
     public Task findChildTaskByGid(String gid) {
-        // 遍历子任务列表
-        for (int i = 0; i < mChildren.size(); i++) {
-            // 获取当前子任务
-            Task t = mChildren.get(i);
-            if (t.getGid().equals(gid)) {
-                return t;
-            }
-        }
-        return null;
+        return mChildren.findByGid(gid);
     }
 
     /**
@@ -490,13 +364,12 @@ public class TaskList extends Node {
      * @return 如果索引有效则返回子任务，否则返回 null
      */
     public Task getChildTaskByIndex(int index) {
-        // 检查索引是否有效
-        if (index < 0 || index >= mChildren.size()) {
+        Task task = mChildren.get(index);
+        if (task == null) {
             // 记录错误日志
             Log.e(TAG, "getTaskByIndex: invalid index");
-            return null;
         }
-        return mChildren.get(index);
+        return task;
     }
 
     /**
@@ -506,12 +379,7 @@ public class TaskList extends Node {
      * @return 如果找到则返回子任务，否则返回 null
      */
     public Task getChilTaskByGid(String gid) {
-        // 遍历子任务列表
-        for (Task task : mChildren) {
-            if (task.getGid().equals(gid))
-                return task;
-        }
-        return null;
+        return mChildren.findByGid(gid);
     }
 
     /**
@@ -520,7 +388,7 @@ public class TaskList extends Node {
      * @return 包含所有子任务的 ArrayList
      */
     public ArrayList<Task> getChildTaskList() {
-        return this.mChildren;
+        return mChildren.asList();
     }
 
     /**
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.gtask.remote;
+
+import android.util.JsonWriter;
+
+import net.micode.notes.core.FormEncodingStream;
+import net.micode.notes.tool.GTaskStringUtils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * 提交给 Google 任务服务的 POST 请求体，即表单字段
+ * {@code r={"action_list":[...],"client_version":...}}。
+ * <p>
+ * 动作通过 {@link #addAction} 返回的 JsonWriter 直接写入缓冲区，写入的同时完成 UTF-8 编码和表单编码，
+ * 不再先构造 JSONObject 树、转成字符串后再整体编码。缓冲区在请求之间复用，
+ * 发送时由请求实体直接写出，不再复制。
+ */
+class ActionRequest {
+    // 缓冲区的初始大小
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    // 请求结束后保留的最大缓冲区，超过时释放，避免个别很长的笔记一直占用内存
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final String CONTENT_TYPE = "application/x-www-form-urlencoded;charset=utf-8";
+
+    private final Buffer mBody;
+    private final Writer mWriter;
+    private JsonWriter mJson;
+    private int mActionCount;
+
+    ActionRequest() {
+        mBody = new Buffer();
+        // JsonWriter 逐个字符写出，OutputStreamWriter 每次写入都会分配数组，先缓冲成块
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FormEncodingStream(mBody),
+                Charset.forName("UTF-8")));
+    }
+
+    /**
+     * 是否还没有写入动作。
+     */
+    boolean isEmpty() {
+        return mActionCount == 0;
+    }
+
+    /**
+     * 已写入的动作数。
+     */
+    int getActionCount() {
+        return mActionCount;
+    }
+
+    /**
+     * 开始写入一个动作，调用方需用返回的 JsonWriter 写出一个完整的 JSON 对象。
+     *
+     * @return 写入 action_list 的 JsonWriter
+     */
+    JsonWriter addAction() throws IOException {
+        if (mJson == null) {
+            mBody.write('r');
+            mBody.write('=');
+            mJson = new JsonWriter(mWriter);
+            mJson.beginObject();
+            mJson.name(GTaskStringUtils.GTASK_JSON_ACTION_LIST);
+            mJson.beginArray();
+        }
+        mActionCount++;
+        return mJson;
+    }
+
+    /**
+     * 结束请求体并生成请求实体。实体引用内部缓冲区，在 {@link #reset} 之前有效。
+     *
+     * @param clientVersion 客户端版本号
+     * @return 请求实体
+     */
+    HttpEntity finish(long clientVersion) throws IOException {
+        if (mJson == null) {
+            throw new IllegalStateException("no action in request");
+        }
+        mJson.endArray();
+        mJson.name(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION).value(clientVersion);
+        mJson.endObject();
+        mJson.flush();
+        mJson = null;
+
+        BodyEntity entity = new BodyEntity();
+        entity.setContentType(CONTENT_TYPE);
+        return entity;
+    }
+
+    /**
+     * 丢弃已写入的内容，准备下一个请求。
+     */
+    void reset() {
+        try {
+            // 丢弃编码器中残留的字符
+            mWriter.flush();
+        } catch (IOException e) {
+            // 写入内存缓冲区，不会发生
+        }
+        mJson = null;
+        mActionCount = 0;
+        mBody.recycle();
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(INITIAL_CAPACITY);
+        }
+
+        void recycle() {
+            reset();
+            if (buf.length > MAX_RETAINED_CAPACITY) {
+                buf = new byte[INITIAL_CAPACITY];
+            }
+        }
+
+        InputStream openStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * 直接写出缓冲区内容的请求实体，可重复发送。
+     */
+    private class BodyEntity extends AbstractHttpEntity {
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public long getContentLength() {
+            return mBody.size();
+        }
+
+        public InputStream getContent() {
+            return mBody.openStream();
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            mBody.writeTo(out);
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -27,9 +27,14 @@ import android.app.Activity;
 import android.os.Bundle;
 // 导入 Android 文本工具类
 import android.text.TextUtils;
+// 导入 Android JSON 写入工具类
+import android.util.JsonWriter;
 // 导入 Android 日志工具类
 import android.util.Log;
 
+// 导入响应的读取和性能计数
+import net.micode.notes.core.GTaskResponse;
+import net.micode.notes.core.PerfStats;
 // 导入自定义的 Google 任务数据相关类
 import net.micode.notes.gtask.data.Node;
 import net.micode.notes.gtask.data.Task;
@@ -46,13 +51,11 @@ import net.micode.notes.ui.NotesPreferenceActivity;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -62,16 +65,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-// 导入 Java 输入输出和压缩相关类
-import java.io.BufferedReader;
+// 导入 Java 输入输出相关类
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 /**
  * GTaskClient 类用于与 Google 任务服务进行交互，包括登录、创建任务和任务列表等操作。
@@ -80,16 +76,18 @@ import java.util.zip.InflaterInputStream;
 public class GTaskClient {
     // 日志标签，用于在日志中标识该类的输出
     private static final String TAG = GTaskClient.class.getSimpleName();
-    // Google 任务的基础 URL
+    // Google 任务的默认基础 URL
     private static final String GTASK_URL = "https://mail.google.com/tasks/";
-    // 用于获取 Google 任务数据的 URL
-    private static final String GTASK_GET_URL = "https://mail.google.com/tasks/ig";
-    // 用于向 Google 任务服务发送 POST 请求的 URL
-    private static final String GTASK_POST_URL = "https://mail.google.com/tasks/r/ig";
+    // 基础 URL 下获取任务数据的路径
+    private static final String GTASK_GET_PATH = "ig";
+    // 基础 URL 下发送 POST 请求的路径
+    private static final String GTASK_POST_PATH = "r/ig";
     // GTaskClient 的单例实例
     private static GTaskClient mInstance = null;
     // Apache HTTP 客户端对象，用于发送 HTTP 请求
     private DefaultHttpClient mHttpClient;
+    // 当前使用的基础 URL
+    private String mBaseUrl;
     // 当前使用的 GET 请求 URL
     private String mGetUrl;
     // 当前使用的 POST 请求 URL
@@ -104,22 +102,26 @@ public class GTaskClient {
     private int mActionId;
     // 当前使用的 Google 账户
     private Account mAccount;
-    // 更新操作的 JSON 数组
-    private JSONArray mUpdateArray;
+    // 累积的更新操作，批量提交
+    private ActionRequest mUpdateRequest;
+    // 创建、移动、删除等单独提交的请求
+    private ActionRequest mRequest;
 
     /**
      * 私有构造函数，确保只能通过 getInstance 方法获取实例
      */
     private GTaskClient() {
         mHttpClient = null;
-        mGetUrl = GTASK_GET_URL;
-        mPostUrl = GTASK_POST_URL;
+        mBaseUrl = GTASK_URL;
+        mGetUrl = GTASK_URL + GTASK_GET_PATH;
+        mPostUrl = GTASK_URL + GTASK_POST_PATH;
         mClientVersion = -1;
         mLoggedin = false;
         mLastLoginTime = 0;
         mActionId = 1;
         mAccount = null;
-        mUpdateArray = null;
+        mUpdateRequest = new ActionRequest();
+        mRequest = new ActionRequest();
     }
 
     /**
@@ -134,6 +136,31 @@ public class GTaskClient {
         return mInstance;
     }
 
+    /**
+     * 设置任务服务的基础 URL，用于把同步指向测试环境中兼容的服务端。
+     * 修改后需要重新登录。
+     *
+     * @param baseUrl 基础 URL，以 "/" 结尾；为 null 时恢复为 Google 任务服务
+     */
+    public synchronized void setBaseUrl(String baseUrl) {
+        if (baseUrl == null) {
+            baseUrl = GTASK_URL;
+        } else if (!baseUrl.endsWith("/")) {
+            throw new IllegalArgumentException("Base url should end with '/': " + baseUrl);
+        }
+        if (!baseUrl.equals(mBaseUrl)) {
+            mBaseUrl = baseUrl;
+            mLoggedin = false;
+        }
+    }
+
+    /**
+     * 当前使用的基础 URL。
+     */
+    public synchronized String getBaseUrl() {
+        return mBaseUrl;
+    }
+
     /**
      * 登录 Google 任务服务
      *
@@ -170,22 +197,22 @@ public class GTaskClient {
         // 如果是自定义域名账户，使用自定义 URL 登录
         if (!(mAccount.name.toLowerCase().endsWith("gmail.com") || mAccount.name.toLowerCase()
                 .endsWith("googlemail.com"))) {
-            StringBuilder url = new StringBuilder(GTASK_URL).append("a/");
+            StringBuilder url = new StringBuilder(mBaseUrl).append("a/");
             int index = mAccount.name.indexOf('@') + 1;
             String suffix = mAccount.name.substring(index);
             url.append(suffix + "/");
-            mGetUrl = url.toString() + "ig";
-            mPostUrl = url.toString() + "r/ig";
+            mGetUrl = url.toString() + GTASK_GET_PATH;
+            mPostUrl = url.toString() + GTASK_POST_PATH;
 
             if (tryToLoginGtask(activity, authToken)) {
                 mLoggedin = true;
             }
         }
 
-        // 如果自定义域名登录失败，尝试使用 Google 官方 URL 登录
+        // 如果自定义域名登录失败，尝试使用基础 URL 登录
         if (!mLoggedin) {
-            mGetUrl = GTASK_GET_URL;
-            mPostUrl = GTASK_POST_URL;
+            mGetUrl = mBaseUrl + GTASK_GET_PATH;
+            mPostUrl = mBaseUrl + GTASK_POST_PATH;
             if (!tryToLoginGtask(activity, authToken)) {
                 return false;
             }
@@ -307,16 +334,7 @@ public class GTaskClient {
 
             // 获取客户端版本号
             String resString = getResponseContent(response.getEntity());
-            String jsBegin = "_setup(";
-            String jsEnd = ")}</script>";
-            int begin = resString.indexOf(jsBegin);
-            int end = resString.lastIndexOf(jsEnd);
-            String jsString = null;
-            if (begin != -1 && end != -1 && begin < end) {
-                jsString = resString.substring(begin + jsBegin.length(), end);
-            }
-            JSONObject js = new JSONObject(jsString);
-            mClientVersion = js.getLong("v");
+            mClientVersion = GTaskResponse.parseSetup(resString).getLong("v");
         } catch (JSONException e) {
             Log.e(TAG, e.toString());
             e.printStackTrace();
@@ -364,55 +382,34 @@ public class GTaskClient {
             contentEncoding = entity.getContentEncoding().getValue();
             Log.d(TAG, "encoding: " + contentEncoding);
         }
-
-        InputStream input = entity.getContent();
-        if (contentEncoding != null && contentEncoding.equalsIgnoreCase("gzip")) {
-            input = new GZIPInputStream(entity.getContent());
-        } else if (contentEncoding != null && contentEncoding.equalsIgnoreCase("deflate")) {
-            Inflater inflater = new Inflater(true);
-            input = new InflaterInputStream(entity.getContent(), inflater);
-        }
-
-        try {
-            InputStreamReader isr = new InputStreamReader(input);
-            BufferedReader br = new BufferedReader(isr);
-            StringBuilder sb = new StringBuilder();
-
-            while (true) {
-                String buff = br.readLine();
-                if (buff == null) {
-                    return sb.toString();
-                }
-                sb = sb.append(buff);
-            }
-        } finally {
-            input.close();
-        }
+        return GTaskResponse.read(entity.getContent(), contentEncoding);
     }
 
     /**
-     * 发送 POST 请求
+     * 发送 POST 请求，无论成功与否，请求体都会被清空
      *
-     * @param js 请求的 JSON 对象
+     * @param request 已写入动作的请求
      * @return 响应的 JSON 对象
      * @throws NetworkFailureException 网络失败异常
      */
-    private JSONObject postRequest(JSONObject js) throws NetworkFailureException {
+    private JSONObject postRequest(ActionRequest request) throws NetworkFailureException {
         if (!mLoggedin) {
             Log.e(TAG, "please login first");
+            request.reset();
             throw new ActionFailureException("not logged in");
         }
 
         HttpPost httpPost = createHttpPost();
+        long start = PerfStats.start();
         try {
-            LinkedList<BasicNameValuePair> list = new LinkedList<BasicNameValuePair>();
-            list.add(new BasicNameValuePair("r", js.toString()));
-            UrlEncodedFormEntity entity = new UrlEncodedFormEntity(list, "UTF-8");
+            HttpEntity entity = request.finish(mClientVersion);
             httpPost.setEntity(entity);
+            PerfStats.add(PerfStats.SYNC_REQUEST_BYTES, entity.getContentLength());
 
             // 执行 POST 请求
             HttpResponse response = mHttpClient.execute(httpPost);
             String jsString = getResponseContent(response.getEntity());
+            PerfStats.record(PerfStats.SYNC_REQUEST, start);
             return new JSONObject(jsString);
 
         } catch (ClientProtocolException e) {
@@ -431,9 +428,22 @@ public class GTaskClient {
             Log.e(TAG, e.toString());
             e.printStackTrace();
             throw new ActionFailureException("error occurs when posting request");
+        } finally {
+            request.reset();
         }
     }
 
+    /**
+     * 写入动作失败时清空请求并抛出操作失败异常
+     */
+    private ActionFailureException writeFailed(ActionRequest request, String message,
+            Exception e) {
+        Log.e(TAG, e.toString());
+        e.printStackTrace();
+        request.reset();
+        return new ActionFailureException(message);
+    }
+
     /**
      * 创建新任务
      *
@@ -443,18 +453,15 @@ public class GTaskClient {
     public void createTask(Task task) throws NetworkFailureException {
         commitUpdate();
         try {
-            JSONObject jsPost = new JSONObject();
-            JSONArray actionList = new JSONArray();
-
-            // 添加创建任务的操作到操作列表
-            actionList.put(task.getCreateAction(getActionId()));
-            jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, actionList);
-
-            // 添加客户端版本号
-            jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
+            // 写入创建任务的操作
+            task.writeCreateAction(mRequest.addAction(), getActionId());
+        } catch (IOException e) {
+            throw writeFailed(mRequest, "create task: writing action failed", e);
+        }
 
+        try {
             // 发送 POST 请求
-            JSONObject jsResponse = postRequest(jsPost);
+            JSONObject jsResponse = postRequest(mRequest);
             JSONObject jsResult = (JSONObject) jsResponse.getJSONArray(
                     GTaskStringUtils.GTASK_JSON_RESULTS).get(0);
             task.setGid(jsResult.getString(GTaskStringUtils.GTASK_JSON_NEW_ID));
@@ -475,18 +482,15 @@ public class GTaskClient {
     public void createTaskList(TaskList tasklist) throws NetworkFailureException {
         commitUpdate();
         try {
-            JSONObject jsPost = new JSONObject();
-            JSONArray actionList = new JSONArray();
-
-            // 添加创建任务列表的操作到操作列表
-            actionList.put(tasklist.getCreateAction(getActionId()));
-            jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, actionList);
-
-            // 添加客户端版本号
-            jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
+            // 写入创建任务列表的操作
+            tasklist.writeCreateAction(mRequest.addAction(), getActionId());
+        } catch (IOException e) {
+            throw writeFailed(mRequest, "create tasklist: writing action failed", e);
+        }
 
+        try {
             // 发送 POST 请求
-            JSONObject jsResponse = postRequest(jsPost);
+            JSONObject jsResponse = postRequest(mRequest);
             JSONObject jsResult = (JSONObject) jsResponse.getJSONArray(
                     GTaskStringUtils.GTASK_JSON_RESULTS).get(0);
             tasklist.setGid(jsResult.getString(GTaskStringUtils.GTASK_JSON_NEW_ID));
@@ -504,23 +508,8 @@ public class GTaskClient {
      * @throws NetworkFailureException 网络失败异常
      */
     public void commitUpdate() throws NetworkFailureException {
-        if (mUpdateArray != null) {
-            try {
-                JSONObject jsPost = new JSONObject();
-
-                // action_list
-                jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, mUpdateArray);
-
-                // client_version
-                jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
-
-                postRequest(jsPost);
-                mUpdateArray = null;
-            } catch (JSONException e) {
-                Log.e(TAG, e.toString());
-                e.printStackTrace();
-                throw new ActionFailureException("commit update: handing jsonobject failed");
-            }
+        if (!mUpdateRequest.isEmpty()) {
+            postRequest(mUpdateRequest);
         }
     }
 
@@ -528,13 +517,15 @@ public class GTaskClient {
         if (node != null) {
             // too many update items may result in an error
             // set max to 10 items
-            if (mUpdateArray != null && mUpdateArray.length() > 10) {
+            if (mUpdateRequest.getActionCount() > 10) {
                 commitUpdate();
             }
 
-            if (mUpdateArray == null)
-                mUpdateArray = new JSONArray();
-            mUpdateArray.put(node.getUpdateAction(getActionId()));
+            try {
+                node.writeUpdateAction(mUpdateRequest.addAction(), getActionId());
+            } catch (IOException e) {
+                throw writeFailed(mUpdateRequest, "add update node: writing action failed", e);
+            }
         }
     }
 
@@ -551,54 +542,34 @@ public class GTaskClient {
         // 提交之前的更新操作
         commitUpdate();
         try {
-            // 创建一个新的 JSON 对象，用于构建 POST 请求的内容
-            JSONObject jsPost = new JSONObject();
-            // 创建一个 JSON 数组，用于存储操作列表
-            JSONArray actionList = new JSONArray();
-            // 创建一个 JSON 对象，用于存储单个操作
-            JSONObject action = new JSONObject();
-
-            // 开始构建操作的 JSON 对象
+            JsonWriter action = mRequest.addAction();
+            action.beginObject();
             // 设置操作类型为移动任务
-            action.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
-                    GTaskStringUtils.GTASK_JSON_ACTION_TYPE_MOVE);
+            action.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                    .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_MOVE);
             // 设置操作 ID
-            action.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, getActionId());
+            action.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(getActionId());
             // 设置要移动的任务的 ID
-            action.put(GTaskStringUtils.GTASK_JSON_ID, task.getGid());
-            // 如果任务在同一个任务列表中移动，并且不是该列表中的第一个任务，则设置前置兄弟任务的 ID
+            action.name(GTaskStringUtils.GTASK_JSON_ID).value(task.getGid());
+            // 仅当在任务列表内移动且不是第一个任务时才设置前置兄弟任务的 ID
             if (preParent == curParent && task.getPriorSibling() != null) {
-                // 仅当在任务列表内移动且不是第一个任务时才设置前置兄弟任务的 ID
-                action.put(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID, task.getPriorSibling());
+                action.name(GTaskStringUtils.GTASK_JSON_PRIOR_SIBLING_ID)
+                        .value(task.getPriorSibling().getGid());
             }
-            // 设置源任务列表的 ID
-            action.put(GTaskStringUtils.GTASK_JSON_SOURCE_LIST, preParent.getGid());
-            // 设置目标父任务列表的 ID
-            action.put(GTaskStringUtils.GTASK_JSON_DEST_PARENT, curParent.getGid());
-            // 如果任务是在不同的任务列表之间移动，则设置目标任务列表的 ID
+            // 设置源任务列表和目标父任务列表的 ID
+            action.name(GTaskStringUtils.GTASK_JSON_SOURCE_LIST).value(preParent.getGid());
+            action.name(GTaskStringUtils.GTASK_JSON_DEST_PARENT).value(curParent.getGid());
+            // 仅当在不同任务列表之间移动时才设置目标任务列表的 ID
             if (preParent != curParent) {
-                // 仅当在不同任务列表之间移动时才设置目标任务列表的 ID
-                action.put(GTaskStringUtils.GTASK_JSON_DEST_LIST, curParent.getGid());
+                action.name(GTaskStringUtils.GTASK_JSON_DEST_LIST).value(curParent.getGid());
             }
-            // 将操作添加到操作列表中
-            actionList.put(action);
-            // 将操作列表添加到 POST 请求的 JSON 对象中
-            jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, actionList);
-
-            // 设置客户端版本号
-            jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
-
-            // 发送 POST 请求
-            postRequest(jsPost);
-
-        } catch (JSONException e) {
-            // 记录 JSON 处理异常
-            Log.e(TAG, e.toString());
-            // 打印异常堆栈信息
-            e.printStackTrace();
-            // 抛出操作失败异常
-            throw new ActionFailureException("move task: handing jsonobject failed");
+            action.endObject();
+        } catch (IOException e) {
+            throw writeFailed(mRequest, "move task: writing action failed", e);
         }
+
+        // 发送 POST 请求
+        postRequest(mRequest);
     }
 
 
@@ -612,35 +583,15 @@ public class GTaskClient {
         // 提交之前的更新操作
         commitUpdate();
         try {
-            // 创建一个新的 JSON 对象，用于构建 POST 请求的内容
-            JSONObject jsPost = new JSONObject();
-            // 创建一个 JSON 数组，用于存储操作列表
-            JSONArray actionList = new JSONArray();
-
-            // action_list
-            // 将节点标记为已删除
+            // 将节点标记为已删除，写入节点的更新操作
             node.setDeleted(true);
-            // 获取节点的更新操作，并添加到操作列表中
-            actionList.put(node.getUpdateAction(getActionId()));
-            // 将操作列表添加到 POST 请求的 JSON 对象中
-            jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, actionList);
-
-            // client_version
-            // 设置客户端版本号
-            jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
-
-            // 发送 POST 请求
-            postRequest(jsPost);
-            // 清空更新操作数组
-            mUpdateArray = null;
-        } catch (JSONException e) {
-            // 记录 JSON 处理异常
-            Log.e(TAG, e.toString());
-            // 打印异常堆栈信息
-            e.printStackTrace();
-            // 抛出操作失败异常
-            throw new ActionFailureException("delete node: handing jsonobject failed");
+            node.writeUpdateAction(mRequest.addAction(), getActionId());
+        } catch (IOException e) {
+            throw writeFailed(mRequest, "delete node: writing action failed", e);
         }
+
+        // 发送 POST 请求
+        postRequest(mRequest);
     }
 
 
@@ -662,29 +613,16 @@ public class GTaskClient {
             HttpGet httpGet = new HttpGet(mGetUrl);
             // 初始化 HttpResponse 对象
             HttpResponse response = null;
+            long start = PerfStats.start();
             // 执行 HttpGet 请求并获取响应
             response = mHttpClient.execute(httpGet);
 
             // 获取任务列表
             // 从响应实体中获取响应内容
             String resString = getResponseContent(response.getEntity());
-            // 定义 JSON 字符串的起始标记
-            String jsBegin = "_setup(";
-            // 定义 JSON 字符串的结束标记
-            String jsEnd = ")}</script>";
-            // 查找 JSON 字符串的起始位置
-            int begin = resString.indexOf(jsBegin);
-            // 查找 JSON 字符串的结束位置
-            int end = resString.lastIndexOf(jsEnd);
-            // 初始化 JSON 字符串变量
-            String jsString = null;
-            // 如果找到了起始和结束位置，并且起始位置在结束位置之前
-            if (begin != -1 && end != -1 && begin < end) {
-                // 提取 JSON 字符串
-                jsString = resString.substring(begin + jsBegin.length(), end);
-            }
-            // 将 JSON 字符串解析为 JSONObject
-            JSONObject js = new JSONObject(jsString);
+            PerfStats.record(PerfStats.SYNC_REQUEST, start);
+            // 取出页面中的 JSON 对象
+            JSONObject js = GTaskResponse.parseSetup(resString);
             // 从 JSONObject 中获取包含任务列表的 JSON 数组并返回
             return js.getJSONObject("t").getJSONArray(GTaskStringUtils.GTASK_JSON_LISTS);
         } catch (ClientProtocolException e) {
@@ -722,34 +660,25 @@ public class GTaskClient {
         // 提交之前的更新操作，确保之前的操作已经完成
         commitUpdate();
         try {
-            // 创建一个新的 JSON 对象，用于构建 POST 请求的内容
-            JSONObject jsPost = new JSONObject();
-            // 创建一个 JSON 数组，用于存储操作列表
-            JSONArray actionList = new JSONArray();
-            // 创建一个 JSON 对象，用于存储单个操作
-            JSONObject action = new JSONObject();
-
-            // action_list
+            JsonWriter action = mRequest.addAction();
+            action.beginObject();
             // 设置操作类型为获取所有任务
-            action.put(GTaskStringUtils.GTASK_JSON_ACTION_TYPE,
-                    GTaskStringUtils.GTASK_JSON_ACTION_TYPE_GETALL);
+            action.name(GTaskStringUtils.GTASK_JSON_ACTION_TYPE)
+                    .value(GTaskStringUtils.GTASK_JSON_ACTION_TYPE_GETALL);
             // 设置操作 ID
-            action.put(GTaskStringUtils.GTASK_JSON_ACTION_ID, getActionId());
+            action.name(GTaskStringUtils.GTASK_JSON_ACTION_ID).value(getActionId());
             // 设置要获取任务的任务列表的 ID
-            action.put(GTaskStringUtils.GTASK_JSON_LIST_ID, listGid);
-            // 设置是否获取已删除的任务，这里设置为 false 表示不获取
-            action.put(GTaskStringUtils.GTASK_JSON_GET_DELETED, false);
-            // 将操作添加到操作列表中
-            actionList.put(action);
-            // 将操作列表添加到 POST 请求的 JSON 对象中
-            jsPost.put(GTaskStringUtils.GTASK_JSON_ACTION_LIST, actionList);
-
-            // client_version
-            // 设置客户端版本号
-            jsPost.put(GTaskStringUtils.GTASK_JSON_CLIENT_VERSION, mClientVersion);
+            action.name(GTaskStringUtils.GTASK_JSON_LIST_ID).value(listGid);
+            // 不获取已删除的任务
+            action.name(GTaskStringUtils.GTASK_JSON_GET_DELETED).value(false);
+            action.endObject();
+        } catch (IOException e) {
+            throw writeFailed(mRequest, "get task list: writing action failed", e);
+        }
 
+        try {
             // 发送 POST 请求
-            JSONObject jsResponse = postRequest(jsPost);
+            JSONObject jsResponse = postRequest(mRequest);
             // 从响应中提取包含任务的 JSON 数组并返回
             return jsResponse.getJSONArray(GTaskStringUtils.GTASK_JSON_TASKS);
         } catch (JSONException e) {
@@ -767,6 +696,6 @@ public class GTaskClient {
     }
 
     public void resetUpdateArray() {
-        mUpdateArray = null;
+        mUpdateRequest.reset();
     }
 }
@@ -25,6 +25,9 @@ import android.database.Cursor;
 import android.util.Log;
 
 import net.micode.notes.R;
+import net.micode.notes.core.PerfStats;
+import net.micode.notes.core.SyncPlanner;
+import net.micode.notes.data.CursorRows;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.DataColumns;
 import net.micode.notes.data.Notes.NoteColumns;
@@ -37,6 +40,8 @@ import net.micode.notes.gtask.exception.ActionFailureException;
 import net.micode.notes.gtask.exception.NetworkFailureException;
 import net.micode.notes.tool.DataUtils;
 import net.micode.notes.tool.GTaskStringUtils;
+import net.micode.notes.ui.AlarmScheduler;
+import net.micode.notes.ui.NotesPreferenceActivity;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -197,6 +202,8 @@ public class GTaskManager {
             GTaskClient client = GTaskClient.getInstance();
             // 重置更新数组
             client.resetUpdateArray();
+            // 使用设置中的同步服务器，地址改变时需要重新登录
+            client.setBaseUrl(NotesPreferenceActivity.getSyncServerUrl(mContext));
 
             // 登录Google任务服务
             if (!mCancelled) {
@@ -209,12 +216,16 @@ public class GTaskManager {
             // 从Google获取任务列表
             asyncTask.publishProgess(mContext.getString(R.string.sync_progress_init_list));
             // 初始化Google任务列表
+            long start = PerfStats.start();
             initGTaskList();
+            PerfStats.record(PerfStats.SYNC_INIT_LIST, start);
 
             // 执行内容同步工作
             asyncTask.publishProgess(mContext.getString(R.string.sync_progress_syncing));
             // 同步内容
+            start = PerfStats.start();
             syncContent();
+            PerfStats.record(PerfStats.SYNC_CONTENT, start);
         } catch (NetworkFailureException e) {
             // 记录网络错误日志
             Log.e(TAG, e.toString());
@@ -247,6 +258,8 @@ public class GTaskManager {
             mNidToGid.clear();
             // 设置同步状态为未进行
             mSyncing = false;
+            // 同步可能修改或删除了带提醒的笔记，中途失败时也是如此，重新注册最近一个提醒
+            AlarmScheduler.scheduleNext(mContext, System.currentTimeMillis());
         }
 
         // 根据取消标志返回同步结果的状态码
@@ -382,14 +395,8 @@ public class GTaskManager {
      * @throws NetworkFailureException 如果网络连接失败
      */
     private void syncContent() throws NetworkFailureException {
-        // 同步类型
-        int syncType;
         // 游标，用于查询数据库
         Cursor c = null;
-        // Google任务的ID
-        String gid;
-        // 任务节点
-        Node node;
 
         // 清空本地已删除笔记ID的哈希集
         mLocalDeleteIdMap.clear();
@@ -403,28 +410,13 @@ public class GTaskManager {
         try {
             // 查询本地已删除的笔记
             c = mContentResolver.query(Notes.CONTENT_NOTE_URI, SqlNote.PROJECTION_NOTE,
-                    "(type<>? AND parent_id=?)", new String[] {
+                    SyncPlanner.TRASH_SELECTION, new String[] {
                             String.valueOf(Notes.TYPE_SYSTEM), String.valueOf(Notes.ID_TRASH_FOLER)
                     }, null);
             // 如果查询结果不为空
             if (c != null) {
-                // 遍历查询结果
-                while (c.moveToNext()) {
-                    // 获取Google任务的ID
-                    gid = c.getString(SqlNote.GTASK_ID_COLUMN);
-                    // 从任务哈希映射中获取任务节点
-                    node = mGTaskHashMap.get(gid);
-                    // 如果任务节点存在
-                    if (node != null) {
-                        // 从任务哈希映射中移除任务节点
-                        mGTaskHashMap.remove(gid);
-                        // 执行内容同步操作，删除远程任务
-                        doContentSync(Node.SYNC_ACTION_DEL_REMOTE, node, c);
-                    }
-
-                    // 将本地笔记的ID添加到本地已删除笔记ID的哈希集中
-                    mLocalDeleteIdMap.add(c.getLong(SqlNote.ID_COLUMN));
-                }
+                // 有远程任务的笔记需要远程删除，全部笔记在同步结束后从本地删除
+                newPlanner(c).syncTrash(new CursorRows(c), mLocalDeleteIdMap);
             } else {
                 // 记录查询失败日志
                 Log.w(TAG, "failed to query trash folder");
@@ -444,40 +436,13 @@ public class GTaskManager {
         try {
             // 查询数据库中存在的笔记
             c = mContentResolver.query(Notes.CONTENT_NOTE_URI, SqlNote.PROJECTION_NOTE,
-                    "(type=? AND parent_id<>?)", new String[] {
+                    SyncPlanner.NOTE_SELECTION, new String[] {
                             String.valueOf(Notes.TYPE_NOTE), String.valueOf(Notes.ID_TRASH_FOLER)
-                    }, NoteColumns.TYPE + " DESC");
+                    }, SyncPlanner.NOTE_SORT_ORDER);
             // 如果查询结果不为空
             if (c != null) {
-                // 遍历查询结果
-                while (c.moveToNext()) {
-                    // 获取Google任务的ID
-                    gid = c.getString(SqlNote.GTASK_ID_COLUMN);
-                    // 从任务哈希映射中获取任务节点
-                    node = mGTaskHashMap.get(gid);
-                    // 如果任务节点存在
-                    if (node != null) {
-                        // 从任务哈希映射中移除任务节点
-                        mGTaskHashMap.remove(gid);
-                        // 将Google任务ID到本地笔记ID的映射添加到哈希映射中
-                        mGidToNid.put(gid, c.getLong(SqlNote.ID_COLUMN));
-                        // 将本地笔记ID到Google任务ID的映射添加到哈希映射中
-                        mNidToGid.put(c.getLong(SqlNote.ID_COLUMN), gid);
-                        // 获取同步类型
-                        syncType = node.getSyncAction(c);
-                    } else {
-                        // 如果Google任务ID为空
-                        if (c.getString(SqlNote.GTASK_ID_COLUMN).trim().length() == 0) {
-                            // 本地添加任务
-                            syncType = Node.SYNC_ACTION_ADD_REMOTE;
-                        } else {
-                            // 远程删除任务
-                            syncType = Node.SYNC_ACTION_DEL_LOCAL;
-                        }
-                    }
-                    // 执行内容同步操作
-                    doContentSync(syncType, node, c);
-                }
+                // 按任务ID与远程任务配对并执行各笔记的同步动作
+                newPlanner(c).syncNotes(new CursorRows(c), mGidToNid, mNidToGid);
             } else {
                 // 记录查询失败日志
                 Log.w(TAG, "failed to query existing note in database");
@@ -491,16 +456,8 @@ public class GTaskManager {
             }
         }
 
-        // 遍历剩余的任务节点
-        Iterator<Map.Entry<String, Node>> iter = mGTaskHashMap.entrySet().iterator();
-        while (iter.hasNext()) {
-            // 获取当前任务节点的映射项
-            Map.Entry<String, Node> entry = iter.next();
-            // 获取任务节点
-            node = entry.getValue();
-            // 执行内容同步操作，添加本地任务
-            doContentSync(Node.SYNC_ACTION_ADD_LOCAL, node, null);
-        }
+        // 剩余的任务节点需要在本地添加
+        newPlanner(null).syncRemaining();
 
         // mCancelled可以由另一个线程设置，所以需要逐个检查
         // 清空本地已删除笔记表
@@ -521,6 +478,25 @@ public class GTaskManager {
 
     }
 
+    /**
+     * 创建笔记同步的规划，同步动作在查询结果的当前行上执行
+     * @param c 笔记的查询结果，在本地添加时为 null
+     * @return 与远程任务配对的规划
+     */
+    private SyncPlanner<Node, NetworkFailureException> newPlanner(final Cursor c) {
+        return new SyncPlanner<Node, NetworkFailureException>(mGTaskHashMap,
+                new SyncPlanner.Handler<Node, NetworkFailureException>() {
+                    public int getSyncAction(Node node, SyncPlanner.LocalRow local) {
+                        return node.getSyncAction(c);
+                    }
+
+                    public void sync(int action, Node node, SyncPlanner.LocalRow local)
+                            throws NetworkFailureException {
+                        doContentSync(action, node, local != null ? c : null);
+                    }
+                });
+    }
+
     /**
      * 同步文件夹
      * @throws NetworkFailureException 如果网络连接失败
@@ -829,19 +805,25 @@ public class GTaskManager {
                 if (js.has(GTaskStringUtils.META_HEAD_DATA)) {
                     // 获取数据头部的JSON数组
                     JSONArray dataArray = js.getJSONArray(GTaskStringUtils.META_HEAD_DATA);
-                    // 遍历数据头部的JSON数组
+                    // 收集所有数据的ID，一次查询哪些已存在
+                    HashSet<Long> dataIds = new HashSet<Long>();
                     for (int i = 0; i < dataArray.length(); i++) {
-                        // 获取当前数据的JSON对象
                         JSONObject data = dataArray.getJSONObject(i);
-                        // 如果数据包含ID
                         if (data.has(DataColumns.ID)) {
-                            // 获取数据的ID
-                            long dataId = data.getLong(DataColumns.ID);
-                            // 如果该ID在数据库中已存在
-                            if (DataUtils.existInDataDatabase(mContentResolver, dataId)) {
-                                // 该数据ID不可用，需要创建一个新的ID
-                                data.remove(DataColumns.ID);
-                            }
+                            dataIds.add(data.getLong(DataColumns.ID));
+                        }
+                    }
+                    HashSet<Long> existing = DataUtils.filterExistingData(mContentResolver,
+                            dataIds);
+                    // 遍历数据头部的JSON数组
+                    for (int i = 0; i < dataArray.length() && !existing.isEmpty(); i++) {
+                        // 获取当前数据的JSON对象
+                        JSONObject data = dataArray.getJSONObject(i);
+                        // 如果该数据ID在数据库中已存在
+                        if (data.has(DataColumns.ID)
+                                && existing.contains(data.getLong(DataColumns.ID))) {
+                            // 该数据ID不可用，需要创建一个新的ID
+                            data.remove(DataColumns.ID);
                         }
                     }
 
@@ -1107,10 +1089,11 @@ public class GTaskManager {
             MetaData metaData = mMetaHashMap.get(gid);
             // 如果元数据存在
             if (metaData != null) {
-                // 设置元数据的内容
-                metaData.setMeta(gid, sqlNote.getContent());
-                // 将元数据添加到更新列表中
-                GTaskClient.getInstance().addUpdateNode(metaData);
+                // 设置元数据的内容，与已上传的内容相同时不再上传
+                if (metaData.setMeta(gid, sqlNote.getContent())) {
+                    // 将元数据添加到更新列表中
+                    GTaskClient.getInstance().addUpdateNode(metaData);
+                }
             } else {
                 // 创建一个新的元数据对象
                 metaData = new MetaData();
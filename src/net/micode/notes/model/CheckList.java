@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * 该包下的类主要负责笔记数据的模型相关操作，包含笔记的创建、修改、同步等功能。
+ */
+package net.micode.notes.model;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.util.Log;
+
+import net.micode.notes.core.CheckListText;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.CheckListColumns;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+
+import java.util.ArrayList;
+
+/**
+ * CheckList 类表示清单模式笔记的条目集合，每个条目对应 {@link Notes#CONTENT_CHECKLIST_URI} 中的一行。
+ * 勾选或修改某个条目时只会更新对应的行，不再重写整篇笔记。
+ */
+public class CheckList {
+    // 已勾选标记，仅用于与旧的纯文本格式互相转换
+    public static final String TAG_CHECKED = CheckListText.TAG_CHECKED;
+    // 未勾选标记，仅用于与旧的纯文本格式互相转换
+    public static final String TAG_UNCHECKED = CheckListText.TAG_UNCHECKED;
+
+    // 日志标签
+    private static final String TAG = "CheckList";
+
+    // 条目查询投影
+    public static final String[] PROJECTION = new String[] {
+            CheckListColumns.ID,
+            CheckListColumns.POSITION,
+            CheckListColumns.CHECKED,
+            CheckListColumns.CONTENT
+    };
+
+    // 条目 ID 列索引
+    private static final int ID_COLUMN = 0;
+    // 条目位置列索引
+    private static final int POSITION_COLUMN = 1;
+    // 条目勾选状态列索引
+    private static final int CHECKED_COLUMN = 2;
+    // 条目内容列索引
+    private static final int CONTENT_COLUMN = 3;
+
+    // 待提交操作的类型
+    private static final int OP_INSERT = 0;
+    private static final int OP_UPDATE = 1;
+    private static final int OP_DELETE = 2;
+
+    /**
+     * 单个清单条目
+     */
+    private static class Item {
+        // 条目 ID，0 表示尚未写入数据库
+        long mId;
+        // 数据库中记录的位置，-1 表示尚未写入数据库
+        int mPosition;
+        // 是否已勾选
+        boolean mChecked;
+        // 条目文本
+        String mText;
+        // 文本是否被修改
+        boolean mTextModified;
+        // 勾选状态是否被修改
+        boolean mCheckedModified;
+
+        Item(long id, int position, boolean checked, String text) {
+            mId = id;
+            mPosition = position;
+            mChecked = checked;
+            mText = text == null ? "" : text;
+        }
+    }
+
+    // 当前的条目，顺序即显示顺序，可能包含尚未保存的空条目
+    private ArrayList<Item> mItems;
+    // 已从清单中移除、需要从数据库删除的条目 ID
+    private ArrayList<Long> mRemovedIds;
+    // 上一次生成的操作所对应的条目和类型
+    private ArrayList<Item> mPendingItems;
+    private ArrayList<Integer> mPendingTypes;
+    private ArrayList<Integer> mPendingPositions;
+    // 上一次生成的操作在操作列表中的起始位置
+    private int mPendingStart;
+
+    public CheckList() {
+        mItems = new ArrayList<Item>();
+        mRemovedIds = new ArrayList<Long>();
+        mPendingItems = new ArrayList<Item>();
+        mPendingTypes = new ArrayList<Integer>();
+        mPendingPositions = new ArrayList<Integer>();
+    }
+
+    /**
+     * 将以 {@link #TAG_CHECKED}/{@link #TAG_UNCHECKED} 开头的多行文本解析为清单，空行会被忽略。
+     *
+     * @param text 旧格式的清单文本
+     * @return 解析得到的清单，其中所有条目都尚未写入数据库
+     */
+    public static CheckList fromText(String text) {
+        CheckList list = new CheckList();
+        list.appendText(text);
+        return list;
+    }
+
+    /**
+     * 加载笔记的所有清单条目。
+     *
+     * @param resolver 内容解析器
+     * @param noteId 笔记 ID
+     * @return 按位置排序的清单
+     */
+    public static CheckList load(ContentResolver resolver, long noteId) {
+        return query(resolver, CheckListColumns.NOTE_ID, noteId);
+    }
+
+    /**
+     * 加载某个文本数据行的所有清单条目。
+     *
+     * @param resolver 内容解析器
+     * @param dataId 文本数据 ID
+     * @return 按位置排序的清单
+     */
+    public static CheckList loadData(ContentResolver resolver, long dataId) {
+        return query(resolver, CheckListColumns.DATA_ID, dataId);
+    }
+
+    /**
+     * 在笔记表的查询中渲染清单文本的子查询，结果与 {@link #toText()} 相同，没有条目时为 NULL。
+     * 外层查询中笔记 ID 列的完整名称为 note._id，可直接放入投影。
+     */
+    public static final String NOTE_TEXT_SQL = "(SELECT group_concat((CASE WHEN "
+            + CheckListColumns.CHECKED + " THEN '" + TAG_CHECKED + " ' ELSE '" + TAG_UNCHECKED
+            + " ' END) || " + CheckListColumns.CONTENT + " || x'0A', '') FROM (SELECT "
+            + CheckListColumns.CHECKED + "," + CheckListColumns.CONTENT + " FROM "
+            + TABLE.CHECKLIST + " WHERE " + CheckListColumns.NOTE_ID + "=" + TABLE.NOTE + "."
+            + NoteColumns.ID + " AND " + CheckListColumns.CONTENT + "<>'' ORDER BY "
+            + CheckListColumns.POSITION + "))";
+
+    /**
+     * 复制已写入数据库的条目，用于缓存笔记快照，复制结果不带任何修改标记。
+     *
+     * @return 新的清单对象
+     */
+    CheckList copySaved() {
+        CheckList list = new CheckList();
+        for (Item item : mItems) {
+            if (item.mId > 0) {
+                list.mItems.add(new Item(item.mId, item.mPosition, item.mChecked, item.mText));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 估算清单文本占用的字符数。
+     *
+     * @return 所有条目文本长度之和
+     */
+    int textLength() {
+        int length = 0;
+        for (Item item : mItems) {
+            length += item.mText.length();
+        }
+        return length;
+    }
+
+    private static CheckList query(ContentResolver resolver, String column, long id) {
+        CheckList list = new CheckList();
+        Cursor cursor = resolver.query(Notes.CONTENT_CHECKLIST_URI, PROJECTION, column + "=?",
+                new String[] {
+                    String.valueOf(id)
+                }, CheckListColumns.POSITION);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                list.mItems.add(new Item(cursor.getLong(ID_COLUMN),
+                        cursor.getInt(POSITION_COLUMN), cursor.getInt(CHECKED_COLUMN) > 0,
+                        cursor.getString(CONTENT_COLUMN)));
+            }
+            cursor.close();
+        } else {
+            Log.e(TAG, "Query check list failed with " + column + ":" + id);
+        }
+        return list;
+    }
+
+    /**
+     * 用旧格式文本整体替换某个文本数据行的清单条目，用于同步等只持有完整文本的场景。
+     *
+     * @param resolver 内容解析器
+     * @param noteId 笔记 ID
+     * @param dataId 文本数据 ID
+     * @param text 旧格式的清单文本，为空时仅删除条目
+     */
+    public static void replaceItems(ContentResolver resolver, long noteId, long dataId,
+            String text) {
+        resolver.delete(Notes.CONTENT_CHECKLIST_URI, CheckListColumns.DATA_ID + "=?",
+                new String[] {
+                    String.valueOf(dataId)
+                });
+        CheckList list = fromText(text);
+        if (list.size() == 0) {
+            return;
+        }
+        ContentValues[] values = new ContentValues[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            values[i] = list.getValues(list.mItems.get(i), noteId, dataId, i);
+        }
+        resolver.bulkInsert(Notes.CONTENT_CHECKLIST_URI, values);
+    }
+
+    /**
+     * 把旧格式文本中的条目追加为插入操作，笔记和文本数据与条目在同一批操作中插入。
+     *
+     * @param text 旧格式的清单文本
+     * @param noteRef 插入笔记的操作在列表中的位置
+     * @param dataRef 插入文本数据的操作在列表中的位置
+     * @param operationList 操作列表
+     */
+    public static void appendInsertOperations(String text, int noteRef, int dataRef,
+            ArrayList<ContentProviderOperation> operationList) {
+        CheckList list = fromText(text);
+        for (int i = 0; i < list.size(); i++) {
+            operationList.add(newInsert(list.getValues(list.mItems.get(i), 0, 0, i), noteRef,
+                    dataRef));
+        }
+    }
+
+    /**
+     * 清空清单后用旧格式文本重新填充，原有条目会在下次提交时被删除。
+     *
+     * @param text 旧格式的清单文本
+     */
+    public void resetFromText(String text) {
+        clear();
+        appendText(text);
+    }
+
+    private void appendText(String text) {
+        CheckListText.parse(text, new CheckListText.ItemHandler() {
+            public void onItem(boolean checked, String text) {
+                mItems.add(new Item(0, -1, checked, text));
+            }
+        });
+    }
+
+    public int size() {
+        return mItems.size();
+    }
+
+    public boolean isChecked(int index) {
+        return mItems.get(index).mChecked;
+    }
+
+    public String getText(int index) {
+        return mItems.get(index).mText;
+    }
+
+    /**
+     * 设置条目的勾选状态，只有状态真正改变时才会标记修改。
+     */
+    public void setChecked(int index, boolean checked) {
+        Item item = mItems.get(index);
+        if (item.mChecked != checked) {
+            item.mChecked = checked;
+            item.mCheckedModified = true;
+        }
+    }
+
+    /**
+     * 设置条目的文本，只有文本真正改变时才会标记修改。
+     */
+    public void setText(int index, String text) {
+        Item item = mItems.get(index);
+        if (!TextUtils.equals(item.mText, text)) {
+            item.mText = text == null ? "" : text;
+            item.mTextModified = true;
+        }
+    }
+
+    /**
+     * 在指定位置插入一个新条目。
+     */
+    public void addItem(int index, boolean checked, String text) {
+        mItems.add(index, new Item(0, -1, checked, text));
+    }
+
+    /**
+     * 移除指定位置的条目。
+     */
+    public void removeItem(int index) {
+        Item item = mItems.remove(index);
+        if (item.mId > 0) {
+            mRemovedIds.add(item.mId);
+        }
+    }
+
+    /**
+     * 移除所有文本为空的条目。
+     */
+    public void removeEmptyItems() {
+        for (int i = mItems.size() - 1; i >= 0; i--) {
+            if (TextUtils.isEmpty(mItems.get(i).mText)) {
+                removeItem(i);
+            }
+        }
+    }
+
+    /**
+     * 移除所有条目。
+     */
+    public void clear() {
+        for (int i = mItems.size() - 1; i >= 0; i--) {
+            removeItem(i);
+        }
+    }
+
+    /**
+     * 判断清单是否有需要写入数据库的修改。
+     */
+    public boolean isModified() {
+        if (mRemovedIds.size() > 0) {
+            return true;
+        }
+        int position = 0;
+        for (Item item : mItems) {
+            if (TextUtils.isEmpty(item.mText)) {
+                if (item.mId > 0) {
+                    return true;
+                }
+                continue;
+            }
+            if (item.mId == 0 || item.mTextModified || item.mCheckedModified
+                    || item.mPosition != position) {
+                return true;
+            }
+            position++;
+        }
+        return false;
+    }
+
+    /**
+     * 判断清单中是否有已勾选的非空条目。
+     */
+    public boolean hasChecked() {
+        for (Item item : mItems) {
+            if (item.mChecked && !TextUtils.isEmpty(item.mText)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断清单中是否没有任何非空条目。
+     */
+    public boolean isEmpty() {
+        for (Item item : mItems) {
+            if (!TextUtils.isEmpty(item.mText)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 以旧格式输出清单，每个非空条目一行并带有勾选标记，用于同步、导出和分享。
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (Item item : mItems) {
+            if (!TextUtils.isEmpty(item.mText)) {
+                CheckListText.appendItem(sb, item.mChecked, item.mText);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 输出不带勾选标记的清单文本，每个非空条目一行。
+     */
+    public String toPlainText() {
+        StringBuilder sb = new StringBuilder();
+        for (Item item : mItems) {
+            if (!TextUtils.isEmpty(item.mText)) {
+                sb.append(item.mText).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 将清单的修改追加为内容提供者操作，只为新增、修改和删除的条目生成操作。
+     * 操作执行后需调用 {@link #onOperationsApplied(ContentProviderResult[])}。
+     *
+     * @param noteId 笔记 ID
+     * @param dataId 文本数据 ID
+     * @param operationList 操作列表
+     */
+    void appendOperations(long noteId, long dataId,
+            ArrayList<ContentProviderOperation> operationList) {
+        appendOperations(noteId, dataId, -1, -1, operationList);
+    }
+
+    /**
+     * 与 {@link #appendOperations(long, long, ArrayList)} 相同，用于笔记和文本数据与条目在同一批操作中
+     * 插入的情况，新条目的笔记 ID 和文本数据 ID 取自前面操作的结果。
+     *
+     * @param noteRef 插入笔记的操作在列表中的位置
+     * @param dataRef 插入文本数据的操作在列表中的位置
+     * @param operationList 操作列表
+     */
+    void appendOperations(int noteRef, int dataRef,
+            ArrayList<ContentProviderOperation> operationList) {
+        appendOperations(0, 0, noteRef, dataRef, operationList);
+    }
+
+    private void appendOperations(long noteId, long dataId, int noteRef, int dataRef,
+            ArrayList<ContentProviderOperation> operationList) {
+        mPendingItems.clear();
+        mPendingTypes.clear();
+        mPendingPositions.clear();
+        mPendingStart = operationList.size();
+
+        for (long id : mRemovedIds) {
+            operationList.add(ContentProviderOperation.newDelete(
+                    ContentUris.withAppendedId(Notes.CONTENT_CHECKLIST_URI, id)).build());
+            addPending(null, OP_DELETE, -1);
+        }
+
+        int position = 0;
+        for (Item item : mItems) {
+            if (TextUtils.isEmpty(item.mText)) {
+                // 空条目不保存，已保存过的需要删除
+                if (item.mId > 0) {
+                    operationList.add(ContentProviderOperation.newDelete(
+                            ContentUris.withAppendedId(Notes.CONTENT_CHECKLIST_URI, item.mId))
+                            .build());
+                    addPending(item, OP_DELETE, -1);
+                }
+                continue;
+            }
+            if (item.mId == 0) {
+                operationList.add(newInsert(getValues(item, noteId, dataId, position), noteRef,
+                        dataRef));
+                addPending(item, OP_INSERT, position);
+            } else if (item.mTextModified || item.mCheckedModified || item.mPosition != position) {
+                // 只写入真正改变的列，仅勾选时不会触发摘要更新
+                ContentValues values = new ContentValues();
+                if (item.mTextModified) {
+                    values.put(CheckListColumns.CONTENT, item.mText);
+                }
+                if (item.mCheckedModified) {
+                    values.put(CheckListColumns.CHECKED, item.mChecked ? 1 : 0);
+                }
+                if (item.mPosition != position) {
+                    values.put(CheckListColumns.POSITION, position);
+                }
+                operationList.add(ContentProviderOperation.newUpdate(
+                        ContentUris.withAppendedId(Notes.CONTENT_CHECKLIST_URI, item.mId))
+                        .withValues(values).build());
+                addPending(item, OP_UPDATE, position);
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 根据操作结果更新条目状态，新增条目会记录数据库分配的 ID。
+     *
+     * @param results 操作列表的执行结果
+     */
+    void onOperationsApplied(ContentProviderResult[] results) {
+        for (int i = 0; i < mPendingItems.size(); i++) {
+            Item item = mPendingItems.get(i);
+            if (item == null) {
+                continue;
+            }
+            int type = mPendingTypes.get(i);
+            if (type == OP_INSERT) {
+                ContentProviderResult result = results[mPendingStart + i];
+                try {
+                    item.mId = Long.valueOf(result.uri.getPathSegments().get(1));
+                } catch (NumberFormatException e) {
+                    Log.e(TAG, "Insert check list item fails " + e.toString());
+                    continue;
+                }
+            } else if (type == OP_DELETE) {
+                item.mId = 0;
+            }
+            item.mPosition = mPendingPositions.get(i);
+            item.mTextModified = false;
+            item.mCheckedModified = false;
+        }
+        mRemovedIds.clear();
+        mPendingItems.clear();
+        mPendingTypes.clear();
+        mPendingPositions.clear();
+    }
+
+    private static ContentProviderOperation newInsert(ContentValues values, int noteRef,
+            int dataRef) {
+        ContentProviderOperation.Builder builder = ContentProviderOperation
+                .newInsert(Notes.CONTENT_CHECKLIST_URI).withValues(values);
+        if (noteRef >= 0) {
+            builder.withValueBackReference(CheckListColumns.NOTE_ID, noteRef);
+        }
+        if (dataRef >= 0) {
+            builder.withValueBackReference(CheckListColumns.DATA_ID, dataRef);
+        }
+        return builder.build();
+    }
+
+    private void addPending(Item item, int type, int position) {
+        mPendingItems.add(item);
+        mPendingTypes.add(type);
+        mPendingPositions.add(position);
+    }
+
+    private ContentValues getValues(Item item, long noteId, long dataId, int position) {
+        ContentValues values = new ContentValues();
+        values.put(CheckListColumns.NOTE_ID, noteId);
+        values.put(CheckListColumns.DATA_ID, dataId);
+        values.put(CheckListColumns.POSITION, position);
+        values.put(CheckListColumns.CHECKED, item.mChecked ? 1 : 0);
+        values.put(CheckListColumns.CONTENT, item.mText);
+        return values;
+    }
+}
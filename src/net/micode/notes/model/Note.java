@@ -56,13 +56,7 @@ public class Note {
      */
     public static synchronized long getNewNoteId(Context context, long folderId) {
         // Create a new note in the database
-        ContentValues values = new ContentValues();
-        long createdTime = System.currentTimeMillis();
-        values.put(NoteColumns.CREATED_DATE, createdTime);
-        values.put(NoteColumns.MODIFIED_DATE, createdTime);
-        values.put(NoteColumns.TYPE, Notes.TYPE_NOTE);
-        values.put(NoteColumns.LOCAL_MODIFIED, 1);
-        values.put(NoteColumns.PARENT_ID, folderId);
+        ContentValues values = getNewNoteValues(folderId);
         // 向数据库插入新笔记并获取返回的 URI
         Uri uri = context.getContentResolver().insert(Notes.CONTENT_NOTE_URI, values);
 
@@ -80,6 +74,23 @@ public class Note {
         return noteId;
     }
 
+    /**
+     * 新笔记的初始列值。
+     *
+     * @param folderId 笔记所属文件夹的 ID
+     * @return 新笔记的列值
+     */
+    private static ContentValues getNewNoteValues(long folderId) {
+        ContentValues values = new ContentValues();
+        long createdTime = System.currentTimeMillis();
+        values.put(NoteColumns.CREATED_DATE, createdTime);
+        values.put(NoteColumns.MODIFIED_DATE, createdTime);
+        values.put(NoteColumns.TYPE, Notes.TYPE_NOTE);
+        values.put(NoteColumns.LOCAL_MODIFIED, 1);
+        values.put(NoteColumns.PARENT_ID, folderId);
+        return values;
+    }
+
     /**
      * 构造函数，初始化笔记差异值和笔记数据对象。
      */
@@ -128,6 +139,15 @@ public class Note {
         return mNoteData.mTextDataId;
     }
 
+    /**
+     * 设置清单模式下的条目集合，条目的修改会随笔记一起同步。
+     *
+     * @param checkList 清单条目集合
+     */
+    public void setCheckList(CheckList checkList) {
+        mNoteData.mCheckList = checkList;
+    }
+
     /**
      * 设置笔记的通话数据 ID。
      * 
@@ -137,6 +157,15 @@ public class Note {
         mNoteData.setCallDataId(id);
     }
 
+    /**
+     * 获取笔记的通话数据 ID。
+     *
+     * @return 通话数据 ID
+     */
+    public long getCallDataId() {
+        return mNoteData.mCallDataId;
+    }
+
     /**
      * 设置笔记的通话数据的某个属性值。
      * 
@@ -172,6 +201,12 @@ public class Note {
             return true;
         }
 
+        // 清单条目的修改同样需要标记笔记为本地修改
+        if (mNoteData.isCheckListModified()) {
+            mNoteDiffValues.put(NoteColumns.LOCAL_MODIFIED, 1);
+            mNoteDiffValues.put(NoteColumns.MODIFIED_DATE, System.currentTimeMillis());
+        }
+
         /**
          * In theory, once data changed, the note should be updated on {@link NoteColumns#LOCAL_MODIFIED} and
          * {@link NoteColumns#MODIFIED_DATE}. For data safety, though update note fails, we also update the
@@ -195,6 +230,58 @@ public class Note {
         return true;
     }
 
+    /**
+     * 在一个事务中创建笔记及其全部数据，数据行和清单条目通过反向引用取得新笔记的 ID。
+     * 与先调用 {@link #getNewNoteId(Context, long)} 再调用 {@link #syncNote(Context, long)} 相比，
+     * 只需一次批量操作，也只会发出一次变化通知。
+     *
+     * @param context 上下文对象
+     * @param folderId 笔记所属文件夹的 ID
+     * @return 新笔记的 ID，失败时返回 0
+     */
+    public long createNote(Context context, long folderId) {
+        ArrayList<ContentProviderOperation> operationList = new ArrayList<ContentProviderOperation>();
+        ContentValues values = getNewNoteValues(folderId);
+        values.putAll(mNoteDiffValues);
+        operationList.add(ContentProviderOperation.newInsert(Notes.CONTENT_NOTE_URI)
+                .withValues(values).build());
+        mNoteData.appendNewDataOperations(operationList, 0);
+
+        long noteId = 0;
+        try {
+            ContentProviderResult[] results = context.getContentResolver().applyBatch(
+                    Notes.AUTHORITY, operationList);
+            noteId = Long.valueOf(results[0].uri.getPathSegments().get(1));
+            mNoteData.onNewDataApplied(results);
+        } catch (RemoteException e) {
+            Log.e(TAG, String.format("%s: %s", e.toString(), e.getMessage()));
+            return 0;
+        } catch (OperationApplicationException e) {
+            Log.e(TAG, String.format("%s: %s", e.toString(), e.getMessage()));
+            return 0;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Get note id error :" + e.toString());
+            return 0;
+        }
+        mNoteDiffValues.clear();
+        return noteId;
+    }
+
+    /**
+     * 从插入操作的结果中解析新行的 ID。
+     *
+     * @param result 插入操作的结果
+     * @return 新行的 ID，解析失败时返回 0
+     */
+    private static long parseInsertedId(ContentProviderResult result) {
+        try {
+            return Long.valueOf(result.uri.getPathSegments().get(1));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Get inserted id error :" + e.toString());
+            return 0;
+        }
+    }
+
     /**
      * 内部类，用于管理笔记的数据信息，包括文本数据和通话数据。
      */
@@ -207,6 +294,11 @@ public class Note {
         private long mCallDataId;
         // 存储通话数据的 ContentValues 对象
         private ContentValues mCallDataValues;
+        // 清单模式下的条目集合，可能为 null
+        private CheckList mCheckList;
+        // 新笔记的批量操作中插入文本数据和通话数据的位置，没有时为 -1
+        private int mTextInsertIndex;
+        private int mCallInsertIndex;
         // 日志标签
         private static final String TAG = "NoteData";
 
@@ -218,6 +310,8 @@ public class Note {
             mCallDataValues = new ContentValues();
             mTextDataId = 0;
             mCallDataId = 0;
+            mTextInsertIndex = -1;
+            mCallInsertIndex = -1;
         }
 
         /**
@@ -226,7 +320,17 @@ public class Note {
          * @return 如果有本地修改返回 true，否则返回 false
          */
         boolean isLocalModified() {
-            return mTextDataValues.size() > 0 || mCallDataValues.size() > 0;
+            return mTextDataValues.size() > 0 || mCallDataValues.size() > 0
+                    || isCheckListModified();
+        }
+
+        /**
+         * 判断清单条目是否有本地修改。
+         *
+         * @return 如果有本地修改返回 true，否则返回 false
+         */
+        boolean isCheckListModified() {
+            return mCheckList != null && mCheckList.isModified();
         }
 
         /**
@@ -277,6 +381,67 @@ public class Note {
             mNoteDiffValues.put(NoteColumns.MODIFIED_DATE, System.currentTimeMillis());
         }
 
+        /**
+         * 为新笔记追加插入文本数据、清单条目和通话数据的操作，笔记 ID 取自插入笔记的操作结果。
+         * 操作执行后需调用 {@link #onNewDataApplied(ContentProviderResult[])}。
+         *
+         * @param operationList 操作列表
+         * @param noteRef 插入笔记的操作在列表中的位置
+         */
+        void appendNewDataOperations(ArrayList<ContentProviderOperation> operationList,
+                int noteRef) {
+            mTextInsertIndex = -1;
+            mCallInsertIndex = -1;
+
+            if (mTextDataValues.size() > 0) {
+                mTextDataValues.put(DataColumns.MIME_TYPE, TextNote.CONTENT_ITEM_TYPE);
+                mTextInsertIndex = operationList.size();
+                operationList.add(ContentProviderOperation.newInsert(Notes.CONTENT_DATA_URI)
+                        .withValues(mTextDataValues)
+                        .withValueBackReference(DataColumns.NOTE_ID, noteRef).build());
+                if (isCheckListModified()) {
+                    mCheckList.appendOperations(noteRef, mTextInsertIndex, operationList);
+                }
+            } else if (isCheckListModified()) {
+                Log.e(TAG, "Check list without text data for new note");
+            }
+
+            if (mCallDataValues.size() > 0) {
+                mCallDataValues.put(DataColumns.MIME_TYPE, CallNote.CONTENT_ITEM_TYPE);
+                mCallInsertIndex = operationList.size();
+                operationList.add(ContentProviderOperation.newInsert(Notes.CONTENT_DATA_URI)
+                        .withValues(mCallDataValues)
+                        .withValueBackReference(DataColumns.NOTE_ID, noteRef).build());
+            }
+        }
+
+        /**
+         * 新笔记的批量操作执行后，记录新数据行的 ID 并清空已写入的修改。
+         *
+         * @param results 批量操作的结果
+         */
+        void onNewDataApplied(ContentProviderResult[] results) {
+            if (mTextInsertIndex >= 0) {
+                long id = parseInsertedId(results[mTextInsertIndex]);
+                if (id > 0) {
+                    setTextDataId(id);
+                }
+                mTextDataValues.clear();
+                if (isCheckListModified()) {
+                    mCheckList.onOperationsApplied(results);
+                }
+            }
+            if (mCallInsertIndex >= 0) {
+                long id = parseInsertedId(results[mCallInsertIndex]);
+                if (id > 0) {
+                    setCallDataId(id);
+                }
+                mCallDataValues.clear();
+            }
+            mTextInsertIndex = -1;
+            mCallInsertIndex = -1;
+        }
+
         /**
          * 将笔记数据同步到 ContentResolver 中。
          * 
@@ -294,6 +459,7 @@ public class Note {
 
             ArrayList<ContentProviderOperation> operationList = new ArrayList<ContentProviderOperation>();
             ContentProviderOperation.Builder builder = null;
+            ContentProviderOperation textDataUpdate = null;
 
             if(mTextDataValues.size() > 0) {
                 mTextDataValues.put(DataColumns.NOTE_ID, noteId);
@@ -314,11 +480,28 @@ public class Note {
                     builder = ContentProviderOperation.newUpdate(ContentUris.withAppendedId(
                             Notes.CONTENT_DATA_URI, mTextDataId));
                     builder.withValues(mTextDataValues);
-                    operationList.add(builder.build());
+                    textDataUpdate = builder.build();
                 }
                 mTextDataValues.clear();
             }
 
+            /**
+             * 清单条目的操作排在文本数据更新之前。清单摘要在批量操作提交前重建，
+             * 切换回普通模式的笔记不再重建，保留文本数据更新通过触发器写入的摘要
+             */
+            boolean checkListModified = isCheckListModified();
+            if (checkListModified) {
+                if (mTextDataId > 0) {
+                    mCheckList.appendOperations(noteId, mTextDataId, operationList);
+                } else {
+                    Log.e(TAG, "Check list without text data, noteId" + noteId);
+                    checkListModified = false;
+                }
+            }
+            if (textDataUpdate != null) {
+                operationList.add(textDataUpdate);
+            }
+
             if(mCallDataValues.size() > 0) {
                 mCallDataValues.put(DataColumns.NOTE_ID, noteId);
                 if (mCallDataId == 0) {
@@ -348,6 +531,9 @@ public class Note {
                     // 批量执行操作
                     ContentProviderResult[] results = context.getContentResolver().applyBatch(
                             Notes.AUTHORITY, operationList);
+                    if (checkListModified && results != null) {
+                        mCheckList.onOperationsApplied(results);
+                    }
                     return (results == null || results.length == 0 || results[0] == null) ? null
                             : ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId);
                 } catch (RemoteException e) {
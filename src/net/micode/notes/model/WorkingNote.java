@@ -26,12 +26,14 @@ import android.database.Cursor;
 import android.text.TextUtils;
 import android.util.Log;
 
+import net.micode.notes.data.NoteBodyStore;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.CallNote;
 import net.micode.notes.data.Notes.DataColumns;
 import net.micode.notes.data.Notes.DataConstants;
 import net.micode.notes.data.Notes.NoteColumns;
 import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
 import net.micode.notes.tool.ResourceParser.NoteBgResources;
 
 /**
@@ -46,6 +48,8 @@ public class WorkingNote {
     private String mContent;
     // 笔记模式
     private int mMode;
+    // 清单模式下的条目集合
+    private CheckList mCheckList;
     // 提醒日期
     private long mAlertDate;
     // 修改日期
@@ -67,35 +71,28 @@ public class WorkingNote {
     // 笔记设置改变监听器
     private NoteSettingChangedListener mNoteSettingStatusListener;
 
-    // 数据查询投影
-    public static final String[] DATA_PROJECTION = new String[] {
-            DataColumns.ID,
-            DataColumns.CONTENT,
-            DataColumns.MIME_TYPE,
-            DataColumns.DATA1,
-            DataColumns.DATA2,
-            DataColumns.DATA3,
-            DataColumns.DATA4,
+    // 笔记及其数据的联合查询投影，笔记表与数据表重名的列需要带上表名
+    public static final String[] NOTE_DATA_PROJECTION = new String[] {
+            TABLE.NOTE + "." + NoteColumns.PARENT_ID,
+            TABLE.NOTE + "." + NoteColumns.ALERTED_DATE,
+            TABLE.NOTE + "." + NoteColumns.BG_COLOR_ID,
+            TABLE.NOTE + "." + NoteColumns.WIDGET_ID,
+            TABLE.NOTE + "." + NoteColumns.WIDGET_TYPE,
+            TABLE.NOTE + "." + NoteColumns.MODIFIED_DATE,
+            TABLE.NOTE + "." + NoteColumns.VERSION,
+            TABLE.DATA + "." + DataColumns.ID,
+            TABLE.DATA + "." + DataColumns.CONTENT,
+            TABLE.DATA + "." + DataColumns.MIME_TYPE,
+            TABLE.DATA + "." + DataColumns.DATA1,
+            TABLE.DATA + "." + TextNote.BODY_LENGTH,
     };
 
-    // 笔记查询投影
-    public static final String[] NOTE_PROJECTION = new String[] {
-            NoteColumns.PARENT_ID,
-            NoteColumns.ALERTED_DATE,
-            NoteColumns.BG_COLOR_ID,
-            NoteColumns.WIDGET_ID,
-            NoteColumns.WIDGET_TYPE,
+    // 保存后刷新快照所需的笔记查询投影
+    private static final String[] SAVED_NOTE_PROJECTION = new String[] {
+            NoteColumns.VERSION,
             NoteColumns.MODIFIED_DATE
     };
 
-    // 数据 ID 列索引
-    private static final int DATA_ID_COLUMN = 0;
-    // 数据内容列索引
-    private static final int DATA_CONTENT_COLUMN = 1;
-    // 数据 MIME 类型列索引
-    private static final int DATA_MIME_TYPE_COLUMN = 2;
-    // 数据模式列索引
-    private static final int DATA_MODE_COLUMN = 3;
     // 笔记父 ID 列索引
     private static final int NOTE_PARENT_ID_COLUMN = 0;
     // 笔记提醒日期列索引
@@ -108,6 +105,18 @@ public class WorkingNote {
     private static final int NOTE_WIDGET_TYPE_COLUMN = 4;
     // 笔记修改日期列索引
     private static final int NOTE_MODIFIED_DATE_COLUMN = 5;
+    // 笔记版本号列索引
+    private static final int NOTE_VERSION_COLUMN = 6;
+    // 数据 ID 列索引
+    private static final int DATA_ID_COLUMN = 7;
+    // 数据内容列索引
+    private static final int DATA_CONTENT_COLUMN = 8;
+    // 数据 MIME 类型列索引
+    private static final int DATA_MIME_TYPE_COLUMN = 9;
+    // 数据模式列索引
+    private static final int DATA_MODE_COLUMN = 10;
+    // 大正文长度列索引
+    private static final int DATA_BODY_LENGTH_COLUMN = 11;
 
     /**
      * 构造函数，用于创建新笔记。
@@ -121,6 +130,8 @@ public class WorkingNote {
         mModifiedDate = System.currentTimeMillis();
         mFolderId = folderId;
         mNote = new Note();
+        mCheckList = new CheckList();
+        mNote.setCheckList(mCheckList);
         mNoteId = 0;
         mIsDeleted = false;
         mMode = 0;
@@ -140,72 +151,129 @@ public class WorkingNote {
         mFolderId = folderId;
         mIsDeleted = false;
         mNote = new Note();
+        mCheckList = new CheckList();
         loadNote();
     }
 
     /**
-     * 加载笔记信息。
+     * 构造函数，用于从缓存的快照恢复笔记。
+     *
+     * @param context 上下文对象
+     * @param snapshot 笔记快照
+     */
+    private WorkingNote(Context context, WorkingNoteCache.Snapshot snapshot) {
+        mContext = context;
+        mNoteId = snapshot.mNoteId;
+        mFolderId = snapshot.mFolderId;
+        mIsDeleted = false;
+        mBgColorId = snapshot.mBgColorId;
+        mWidgetId = snapshot.mWidgetId;
+        mWidgetType = snapshot.mWidgetType;
+        mAlertDate = snapshot.mAlertDate;
+        mModifiedDate = snapshot.mModifiedDate;
+        mContent = snapshot.mContent;
+        mMode = snapshot.mMode;
+        mNote = new Note();
+        mNote.setTextDataId(snapshot.mTextDataId);
+        mNote.setCallDataId(snapshot.mCallDataId);
+        mCheckList = snapshot.mCheckList.copySaved();
+        mNote.setCheckList(mCheckList);
+    }
+
+    /**
+     * 通过一次联合查询加载笔记信息及其数据，并放入缓存。
      */
     private void loadNote() {
-        // 查询笔记信息
         Cursor cursor = mContext.getContentResolver().query(
-                ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, mNoteId), NOTE_PROJECTION, null,
-                null, null);
+                ContentUris.withAppendedId(Notes.CONTENT_NOTE_DATA_URI, mNoteId),
+                NOTE_DATA_PROJECTION, null, null, null);
 
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                // 从游标中获取笔记信息
-                mFolderId = cursor.getLong(NOTE_PARENT_ID_COLUMN);
-                mBgColorId = cursor.getInt(NOTE_BG_COLOR_ID_COLUMN);
-                mWidgetId = cursor.getInt(NOTE_WIDGET_ID_COLUMN);
-                mWidgetType = cursor.getInt(NOTE_WIDGET_TYPE_COLUMN);
-                mAlertDate = cursor.getLong(NOTE_ALERTED_DATE_COLUMN);
-                mModifiedDate = cursor.getLong(NOTE_MODIFIED_DATE_COLUMN);
-            }
-            cursor.close();
-        } else {
+        if (cursor == null) {
             // 记录错误日志并抛出异常
             Log.e(TAG, "No note with id:" + mNoteId);
             throw new IllegalArgumentException("Unable to find note with id " + mNoteId);
         }
-        // 加载笔记数据
-        loadNoteData();
+
+        long version = -1;
+        if (cursor.moveToFirst()) {
+            // 笔记信息在每一行中都相同，只需从第一行读取
+            mFolderId = cursor.getLong(NOTE_PARENT_ID_COLUMN);
+            mBgColorId = cursor.getInt(NOTE_BG_COLOR_ID_COLUMN);
+            mWidgetId = cursor.getInt(NOTE_WIDGET_ID_COLUMN);
+            mWidgetType = cursor.getInt(NOTE_WIDGET_TYPE_COLUMN);
+            mAlertDate = cursor.getLong(NOTE_ALERTED_DATE_COLUMN);
+            mModifiedDate = cursor.getLong(NOTE_MODIFIED_DATE_COLUMN);
+            version = cursor.getLong(NOTE_VERSION_COLUMN);
+            do {
+                // 获取数据类型，没有数据行时为空
+                String type = cursor.getString(DATA_MIME_TYPE_COLUMN);
+                if (DataConstants.NOTE.equals(type)) {
+                    // 处理普通笔记数据
+                    // 大正文存放在文件中，数据行中只有开头部分
+                    mContent = NoteBodyStore.getContent(mContext, cursor, DATA_ID_COLUMN,
+                            DATA_CONTENT_COLUMN, DATA_BODY_LENGTH_COLUMN);
+                    mMode = cursor.getInt(DATA_MODE_COLUMN);
+                    mNote.setTextDataId(cursor.getLong(DATA_ID_COLUMN));
+                } else if (DataConstants.CALL_NOTE.equals(type)) {
+                    // 处理通话笔记数据
+                    mNote.setCallDataId(cursor.getLong(DATA_ID_COLUMN));
+                } else if (type != null) {
+                    // 记录错误日志
+                    Log.d(TAG, "Wrong note type with type:" + type);
+                }
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+
+        // 清单模式的条目单独存储
+        if (mMode == TextNote.MODE_CHECK_LIST) {
+            mCheckList = CheckList.load(mContext.getContentResolver(), mNoteId);
+        }
+        mNote.setCheckList(mCheckList);
+
+        if (version >= 0) {
+            cacheSnapshot(version);
+        }
     }
 
     /**
-     * 加载笔记数据。
+     * 将当前已保存的状态作为快照放入缓存。
+     *
+     * @param version 笔记在数据库中的版本号
      */
-    private void loadNoteData() {
-        // 查询笔记数据
-        Cursor cursor = mContext.getContentResolver().query(Notes.CONTENT_DATA_URI, DATA_PROJECTION,
-                DataColumns.NOTE_ID + "=?", new String[] {
-                    String.valueOf(mNoteId)
-                }, null);
+    private void cacheSnapshot(long version) {
+        WorkingNoteCache.getInstance(mContext).put(new WorkingNoteCache.Snapshot(mNoteId,
+                mFolderId, mAlertDate, mModifiedDate, version, mBgColorId, mWidgetId,
+                mWidgetType, mContent, mMode, mNote.getTextDataId(), mNote.getCallDataId(),
+                mCheckList));
+    }
 
+    /**
+     * 保存成功后刷新缓存中的快照，保存未完全成功时直接丢弃快照。
+     */
+    private void refreshSnapshot() {
+        WorkingNoteCache cache = WorkingNoteCache.getInstance(mContext);
+        if (mNote.isLocalModified()) {
+            cache.remove(mNoteId);
+            return;
+        }
+
+        long version = -1;
+        Cursor cursor = mContext.getContentResolver().query(
+                ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, mNoteId),
+                SAVED_NOTE_PROJECTION, null, null, null);
         if (cursor != null) {
             if (cursor.moveToFirst()) {
-                do {
-                    // 获取数据类型
-                    String type = cursor.getString(DATA_MIME_TYPE_COLUMN);
-                    if (DataConstants.NOTE.equals(type)) {
-                        // 处理普通笔记数据
-                        mContent = cursor.getString(DATA_CONTENT_COLUMN);
-                        mMode = cursor.getInt(DATA_MODE_COLUMN);
-                        mNote.setTextDataId(cursor.getLong(DATA_ID_COLUMN));
-                    } else if (DataConstants.CALL_NOTE.equals(type)) {
-                        // 处理通话笔记数据
-                        mNote.setCallDataId(cursor.getLong(DATA_ID_COLUMN));
-                    } else {
-                        // 记录错误日志
-                        Log.d(TAG, "Wrong note type with type:" + type);
-                    }
-                } while (cursor.moveToNext());
+                version = cursor.getLong(0);
+                mModifiedDate = cursor.getLong(1);
             }
             cursor.close();
+        }
+
+        if (version >= 0) {
+            cacheSnapshot(version);
         } else {
-            // 记录错误日志并抛出异常
-            Log.e(TAG, "No data with id:" + mNoteId);
-            throw new IllegalArgumentException("Unable to find note's data with id " + mNoteId);
+            cache.remove(mNoteId);
         }
     }
 
@@ -236,6 +304,11 @@ public class WorkingNote {
      * @return 加载的笔记对象
      */
     public static WorkingNote load(Context context, long id) {
+        // 最近打开过且未被修改的笔记直接从缓存恢复
+        WorkingNoteCache.Snapshot snapshot = WorkingNoteCache.getInstance(context).get(id);
+        if (snapshot != null) {
+            return new WorkingNote(context, snapshot);
+        }
         return new WorkingNote(context, id, 0);
     }
 
@@ -247,15 +320,17 @@ public class WorkingNote {
     public synchronized boolean saveNote() {
         if (isWorthSaving()) {
             if (!existInDatabase()) {
-                if ((mNoteId = Note.getNewNoteId(mContext, mFolderId)) == 0) {
+                // 新笔记连同数据在一个事务中创建
+                if ((mNoteId = mNote.createNote(mContext, mFolderId)) == 0) {
                     // 记录错误日志并返回 false
                     Log.e(TAG, "Create new note fail with id:" + mNoteId);
                     return false;
                 }
+            } else {
+                // 同步笔记
+                mNote.syncNote(mContext, mNoteId);
             }
-
-            // 同步笔记
-            mNote.syncNote(mContext, mNoteId);
+            refreshSnapshot();
 
             /**
              * 更新小部件内容，如果存在该笔记的小部件
@@ -287,7 +362,7 @@ public class WorkingNote {
      * @return 值得保存返回 true，否则返回 false
      */
     private boolean isWorthSaving() {
-        if (mIsDeleted || (!existInDatabase() && TextUtils.isEmpty(mContent))
+        if (mIsDeleted || (!existInDatabase() && isContentEmpty())
                 || (existInDatabase() && !mNote.isLocalModified())) {
             return false;
         } else {
@@ -295,6 +370,18 @@ public class WorkingNote {
         }
     }
 
+    /**
+     * 判断笔记内容是否为空，清单模式下检查是否有非空条目。
+     *
+     * @return 内容为空返回 true，否则返回 false
+     */
+    private boolean isContentEmpty() {
+        if (mMode == TextNote.MODE_CHECK_LIST) {
+            return mCheckList.isEmpty();
+        }
+        return TextUtils.isEmpty(mContent);
+    }
+
     /**
      * 设置笔记设置改变监听器。
      * 
@@ -358,12 +445,24 @@ public class WorkingNote {
      */
     public void setCheckListMode(int mode) {
         if (mMode != mode) {
-            if (mNoteSettingStatusListener != null) {
-                // 调用监听器的方法更新清单模式
-                mNoteSettingStatusListener.onCheckListModeChanged(mMode, mode);
+            int oldMode = mMode;
+            if (mode == TextNote.MODE_CHECK_LIST) {
+                // 将正文按行拆分为清单条目，正文本身置空
+                mCheckList.resetFromText(mContent);
+                mContent = "";
+            } else {
+                // 将清单条目合并为正文，没有已勾选条目时不保留勾选标记
+                mContent = mCheckList.hasChecked() ? mCheckList.toText()
+                        : mCheckList.toPlainText();
+                mCheckList.clear();
             }
+            mNote.setTextData(DataColumns.CONTENT, mContent);
             mMode = mode;
             mNote.setTextData(TextNote.MODE, String.valueOf(mMode));
+            if (mNoteSettingStatusListener != null) {
+                // 调用监听器的方法更新清单模式
+                mNoteSettingStatusListener.onCheckListModeChanged(oldMode, mode);
+            }
         }
     }
 
@@ -425,14 +524,26 @@ public class WorkingNote {
     }
 
     /**
-     * 获取笔记内容。
+     * 获取笔记内容，清单模式下返回带勾选标记的文本。
      * 
      * @return 笔记内容
      */
     public String getContent() {
+        if (mMode == TextNote.MODE_CHECK_LIST) {
+            return mCheckList.toText();
+        }
         return mContent;
     }
 
+    /**
+     * 获取清单模式下的条目集合，对条目的修改会在保存笔记时逐条写入。
+     *
+     * @return 清单条目集合
+     */
+    public CheckList getCheckList() {
+        return mCheckList;
+    }
+
     /**
      * 获取提醒日期。
      * 
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.model;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import net.micode.notes.data.NoteChangeSet;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.NoteColumns;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 最近打开的笔记快照缓存，按笔记 ID 索引并按最近使用顺序淘汰，总大小按文本字符数限制。
+ * 快照在收到内容提供者的变化通知后被标记为过期，再次使用前需要核对数据库中的版本号。
+ */
+public class WorkingNoteCache {
+    // 缓存的文本总字符数上限
+    private static final int MAX_CACHE_CHARS = 256 * 1024;
+    // 单个快照的固定开销估算值
+    private static final int SNAPSHOT_OVERHEAD = 64;
+
+    private static final String[] VERSION_PROJECTION = new String[] {
+        NoteColumns.VERSION
+    };
+
+    private static WorkingNoteCache sInstance;
+
+    private final Context mContext;
+    // 访问顺序的 LinkedHashMap，迭代时最久未使用的快照在前
+    private final LinkedHashMap<Long, Snapshot> mSnapshots;
+    private int mSize;
+
+    /**
+     * 笔记的不可变快照，清单条目在取出时会再复制一份。
+     */
+    static class Snapshot {
+        final long mNoteId;
+        final long mFolderId;
+        final long mAlertDate;
+        final long mModifiedDate;
+        final long mVersion;
+        final int mBgColorId;
+        final int mWidgetId;
+        final int mWidgetType;
+        final String mContent;
+        final int mMode;
+        final long mTextDataId;
+        final long mCallDataId;
+        final CheckList mCheckList;
+        final int mSize;
+        // 收到变化通知后置为 true，下次取出前需要核对版本号
+        boolean mStale;
+
+        Snapshot(long noteId, long folderId, long alertDate, long modifiedDate, long version,
+                int bgColorId, int widgetId, int widgetType, String content, int mode,
+                long textDataId, long callDataId, CheckList checkList) {
+            mNoteId = noteId;
+            mFolderId = folderId;
+            mAlertDate = alertDate;
+            mModifiedDate = modifiedDate;
+            mVersion = version;
+            mBgColorId = bgColorId;
+            mWidgetId = widgetId;
+            mWidgetType = widgetType;
+            mContent = content;
+            mMode = mode;
+            mTextDataId = textDataId;
+            mCallDataId = callDataId;
+            mCheckList = checkList.copySaved();
+            mSize = SNAPSHOT_OVERHEAD + (content == null ? 0 : content.length())
+                    + mCheckList.textLength();
+        }
+    }
+
+    private WorkingNoteCache(Context context) {
+        mContext = context;
+        mSnapshots = new LinkedHashMap<Long, Snapshot>(16, 0.75f, true);
+        mSize = 0;
+        mContext.getContentResolver().registerContentObserver(Notes.CONTENT_NOTE_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        onChange(selfChange, null);
+                    }
+
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        markStale(uri);
+                    }
+                });
+    }
+
+    public static synchronized WorkingNoteCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WorkingNoteCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * 取出笔记的快照。过期的快照会先核对版本号，版本不一致或笔记已不存在时丢弃。
+     *
+     * @param noteId 笔记 ID
+     * @return 有效的快照，没有时返回 null
+     */
+    synchronized Snapshot get(long noteId) {
+        Snapshot snapshot = mSnapshots.get(noteId);
+        if (snapshot == null || !snapshot.mStale) {
+            return snapshot;
+        }
+
+        if (snapshot.mVersion >= 0 && snapshot.mVersion == queryVersion(noteId)) {
+            snapshot.mStale = false;
+            return snapshot;
+        }
+        remove(noteId);
+        return null;
+    }
+
+    /**
+     * 放入笔记的快照，超出大小上限时淘汰最久未使用的快照。
+     *
+     * @param snapshot 快照
+     */
+    synchronized void put(Snapshot snapshot) {
+        remove(snapshot.mNoteId);
+        if (snapshot.mSize > MAX_CACHE_CHARS) {
+            return;
+        }
+        mSnapshots.put(snapshot.mNoteId, snapshot);
+        mSize += snapshot.mSize;
+
+        Iterator<Snapshot> iter = mSnapshots.values().iterator();
+        while (mSize > MAX_CACHE_CHARS && iter.hasNext()) {
+            mSize -= iter.next().mSize;
+            iter.remove();
+        }
+    }
+
+    /**
+     * 移除笔记的快照。
+     *
+     * @param noteId 笔记 ID
+     */
+    synchronized void remove(long noteId) {
+        Snapshot snapshot = mSnapshots.remove(noteId);
+        if (snapshot != null) {
+            mSize -= snapshot.mSize;
+        }
+    }
+
+    /**
+     * 查询笔记当前的版本号。
+     *
+     * @param noteId 笔记 ID
+     * @return 版本号，笔记不存在时返回 -1
+     */
+    long queryVersion(long noteId) {
+        long version = -1;
+        Cursor cursor = mContext.getContentResolver().query(
+                ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId), VERSION_PROJECTION,
+                null, null, null);
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                version = cursor.getLong(0);
+            }
+            cursor.close();
+        }
+        return version;
+    }
+
+    /**
+     * 根据变化通知中的笔记 ID 标记快照过期，无法确定笔记时标记全部快照。
+     */
+    private synchronized void markStale(Uri uri) {
+        NoteChangeSet changes = NoteChangeSet.fromUri(uri);
+        for (Snapshot snapshot : mSnapshots.values()) {
+            if (changes.contains(snapshot.mNoteId)) {
+                snapshot.mStale = true;
+            }
+        }
+    }
+}
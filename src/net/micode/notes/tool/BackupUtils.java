@@ -19,21 +19,22 @@ package net.micode.notes.tool;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.Environment;
-import android.text.TextUtils;
 import android.text.format.DateFormat;
 import android.util.Log;
 
 import net.micode.notes.R;
+import net.micode.notes.core.PerfStats;
+import net.micode.notes.core.TextExportWriter;
+import net.micode.notes.data.CursorRows;
+import net.micode.notes.data.NoteBodyStore;
 import net.micode.notes.data.Notes;
-import net.micode.notes.data.Notes.DataColumns;
-import net.micode.notes.data.Notes.DataConstants;
-import net.micode.notes.data.Notes.NoteColumns;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
 
 /**
  * 该类用于处理笔记的备份操作，将笔记数据导出为文本文件。
@@ -69,16 +70,26 @@ public class BackupUtils {
     public static final int STATE_SYSTEM_ERROR                 = 3;
     // 备份或恢复成功
     public static final int STATE_SUCCESS                      = 4;
+    // 备份或恢复被取消
+    public static final int STATE_CANCELLED                    = 5;
+
+    /**
+     * 导出、备份和恢复的进度监听器。
+     */
+    public interface ExportListener extends TextExportWriter.Listener {
+    }
 
     private TextExport mTextExport;
+    private SnapshotBackup mSnapshotBackup;
 
     /**
-     * 构造函数，初始化 TextExport 对象。
+     * 构造函数，初始化 TextExport 和 SnapshotBackup 对象。
      *
      * @param context 上下文对象
      */
     private BackupUtils(Context context) {
         mTextExport = new TextExport(context);
+        mSnapshotBackup = new SnapshotBackup(context);
     }
 
     /**
@@ -96,7 +107,20 @@ public class BackupUtils {
      * @return 导出操作的状态码
      */
     public int exportToText() {
-        return mTextExport.exportToText();
+        return mTextExport.exportToText(null);
+    }
+
+    /**
+     * 将笔记导出为文本文件，导出过程中报告进度并可以取消。
+     *
+     * @param listener 进度监听器
+     * @return 导出操作的状态码，取消时返回 {@link #STATE_CANCELLED}
+     */
+    public int exportToText(ExportListener listener) {
+        long start = PerfStats.start();
+        int state = mTextExport.exportToText(listener);
+        PerfStats.record(PerfStats.EXPORT_TEXT, start);
+        return state;
     }
 
     /**
@@ -118,53 +142,43 @@ public class BackupUtils {
     }
 
     /**
-     * 内部类，用于处理文本导出操作。
+     * 将笔记备份为二进制快照。
+     *
+     * @param incremental 是否只备份上次快照以来的变化
+     * @param listener 进度监听器，可以为 null
+     * @return 备份操作的状态码，取消时返回 {@link #STATE_CANCELLED}
      */
-    private static class TextExport {
-        // 笔记查询的投影列
-        private static final String[] NOTE_PROJECTION = {
-                NoteColumns.ID,
-                NoteColumns.MODIFIED_DATE,
-                NoteColumns.SNIPPET,
-                NoteColumns.TYPE
-        };
+    public int backupSnapshot(boolean incremental, ExportListener listener) {
+        return mSnapshotBackup.backup(incremental, listener);
+    }
 
-        // 笔记 ID 列的索引
-        private static final int NOTE_COLUMN_ID = 0;
-        // 笔记修改日期列的索引
-        private static final int NOTE_COLUMN_MODIFIED_DATE = 1;
-        // 笔记摘要列的索引
-        private static final int NOTE_COLUMN_SNIPPET = 2;
-
-        // 数据查询的投影列
-        private static final String[] DATA_PROJECTION = {
-                DataColumns.CONTENT,
-                DataColumns.MIME_TYPE,
-                DataColumns.DATA1,
-                DataColumns.DATA2,
-                DataColumns.DATA3,
-                DataColumns.DATA4,
+    /**
+     * 从最近的二进制快照恢复笔记，当前的笔记会被替换。
+     *
+     * @param listener 进度监听器，可以为 null
+     * @return 恢复操作的状态码，快照损坏时返回 {@link #STATE_DATA_DESTROIED}
+     */
+    public int restoreSnapshot(ExportListener listener) {
+        return mSnapshotBackup.restore(listener);
+    }
+
+    /**
+     * 内部类，用于处理文本导出操作。
+     * 所有文件夹、笔记及其数据通过一次按输出顺序排序的联合查询取出，
+     * 由 {@link TextExportWriter} 逐行写入带缓冲的文件通道。
+     */
+    private static class TextExport extends TextExportWriter {
+        // 联合查询的投影，各列以逗号分隔写在一个表达式中，与基准测试中的查询共用
+        private static final String[] EXPORT_PROJECTION = {
+                TextExportQuery.COLUMNS
         };
 
-        // 数据内容列的索引
-        private static final int DATA_COLUMN_CONTENT = 0;
-        // 数据 MIME 类型列的索引
-        private static final int DATA_COLUMN_MIME_TYPE = 1;
-        // 数据通话日期列的索引
-        private static final int DATA_COLUMN_CALL_DATE = 2;
-        // 数据电话号码列的索引
-        private static final int DATA_COLUMN_PHONE_NUMBER = 4;
-
-        // 文本格式数组
-        private final String [] TEXT_FORMAT;
-        // 文件夹名称格式的索引
-        private static final int FORMAT_FOLDER_NAME          = 0;
-        // 笔记日期格式的索引
-        private static final int FORMAT_NOTE_DATE            = 1;
-        // 笔记内容格式的索引
-        private static final int FORMAT_NOTE_CONTENT         = 2;
+        // 写入缓冲区大小
+        private static final int WRITE_BUFFER_SIZE = 64 * 1024;
 
         private Context mContext;
+        private String mDateFormat;
+        private String mCallRecordFolderName;
         private String mFileName;
         private String mFileDirectory;
 
@@ -174,182 +188,91 @@ public class BackupUtils {
          * @param context 上下文对象
          */
         public TextExport(Context context) {
-            TEXT_FORMAT = context.getResources().getStringArray(R.array.format_for_exported_note);
+            super(context.getResources().getStringArray(R.array.format_for_exported_note));
             mContext = context;
+            mDateFormat = context.getString(R.string.format_datetime_mdhm);
+            mCallRecordFolderName = context.getString(R.string.call_record_folder_name);
             mFileName = "";
             mFileDirectory = "";
         }
 
-        /**
-         * 根据索引获取文本格式。
-         *
-         * @param id 格式索引
-         * @return 对应的文本格式字符串
-         */
-        private String getFormat(int id) {
-            return TEXT_FORMAT[id];
+        @Override
+        protected CharSequence formatDate(long millis) {
+            return DateFormat.format(mDateFormat, millis);
         }
 
-        /**
-         * 将指定文件夹下的笔记导出为文本。
-         *
-         * @param folderId 文件夹 ID
-         * @param ps 打印流对象
-         */
-        private void exportFolderToText(String folderId, PrintStream ps) {
-            // 查询属于该文件夹的笔记
-            Cursor notesCursor = mContext.getContentResolver().query(Notes.CONTENT_NOTE_URI,
-                    NOTE_PROJECTION, NoteColumns.PARENT_ID + "=?", new String[] {
-                        folderId
-                    }, null);
-
-            if (notesCursor != null) {
-                if (notesCursor.moveToFirst()) {
-                    do {
-                        // 打印笔记的最后修改日期
-                        ps.println(String.format(getFormat(FORMAT_NOTE_DATE), DateFormat.format(
-                                mContext.getString(R.string.format_datetime_mdhm),
-                                notesCursor.getLong(NOTE_COLUMN_MODIFIED_DATE))));
-                        // 查询属于该笔记的数据
-                        String noteId = notesCursor.getString(NOTE_COLUMN_ID);
-                        exportNoteToText(noteId, ps);
-                    } while (notesCursor.moveToNext());
-                }
-                notesCursor.close();
-            }
+        @Override
+        protected String getFolderName(long folderId, String snippet) {
+            return folderId == Notes.ID_CALL_RECORD_FOLDER ? mCallRecordFolderName : snippet;
         }
 
-        /**
-         * 将指定 ID 的笔记导出为文本。
-         *
-         * @param noteId 笔记 ID
-         * @param ps 打印流对象
-         */
-        private void exportNoteToText(String noteId, PrintStream ps) {
-            Cursor dataCursor = mContext.getContentResolver().query(Notes.CONTENT_DATA_URI,
-                    DATA_PROJECTION, DataColumns.NOTE_ID + "=?", new String[] {
-                        noteId
-                    }, null);
-
-            if (dataCursor != null) {
-                if (dataCursor.moveToFirst()) {
-                    do {
-                        String mimeType = dataCursor.getString(DATA_COLUMN_MIME_TYPE);
-                        if (DataConstants.CALL_NOTE.equals(mimeType)) {
-                            // 打印电话号码
-                            String phoneNumber = dataCursor.getString(DATA_COLUMN_PHONE_NUMBER);
-                            long callDate = dataCursor.getLong(DATA_COLUMN_CALL_DATE);
-                            String location = dataCursor.getString(DATA_COLUMN_CONTENT);
-
-                            if (!TextUtils.isEmpty(phoneNumber)) {
-                                ps.println(String.format(getFormat(FORMAT_NOTE_CONTENT),
-                                        phoneNumber));
-                            }
-                            // 打印通话日期
-                            ps.println(String.format(getFormat(FORMAT_NOTE_CONTENT), DateFormat
-                                    .format(mContext.getString(R.string.format_datetime_mdhm),
-                                            callDate)));
-                            // 打印通话附件位置
-                            if (!TextUtils.isEmpty(location)) {
-                                ps.println(String.format(getFormat(FORMAT_NOTE_CONTENT),
-                                        location));
-                            }
-                        } else if (DataConstants.NOTE.equals(mimeType)) {
-                            String content = dataCursor.getString(DATA_COLUMN_CONTENT);
-                            if (!TextUtils.isEmpty(content)) {
-                                ps.println(String.format(getFormat(FORMAT_NOTE_CONTENT),
-                                        content));
-                            }
-                        }
-                    } while (dataCursor.moveToNext());
-                }
-                dataCursor.close();
-            }
-            // 在笔记之间打印换行符
-            try {
-                ps.write(new byte[] {
-                        Character.LINE_SEPARATOR, Character.LETTER_NUMBER
-                });
-            } catch (IOException e) {
-                Log.e(TAG, e.toString());
-            }
+        @Override
+        protected String readBody(long dataId, String content) {
+            return NoteBodyStore.read(mContext, dataId, content);
         }
 
         /**
          * 将笔记导出为用户可读的文本。
          *
+         * @param listener 进度监听器，可以为 null
          * @return 导出操作的状态码
          */
-        public int exportToText() {
+        public int exportToText(ExportListener listener) {
             if (!externalStorageAvailable()) {
                 Log.d(TAG, "Media was not mounted");
                 return STATE_SD_CARD_UNMOUONTED;
             }
 
-            PrintStream ps = getExportToTextPrintStream();
-            if (ps == null) {
-                Log.e(TAG, "get print stream error");
+            File file = getExportFile();
+            if (file == null) {
+                Log.e(TAG, "get export file error");
                 return STATE_SYSTEM_ERROR;
             }
-            // 首先导出文件夹及其笔记
-            Cursor folderCursor = mContext.getContentResolver().query(
-                    Notes.CONTENT_NOTE_URI,
-                    NOTE_PROJECTION,
-                    "(" + NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER + " AND "
-                            + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER + ") OR "
-                            + NoteColumns.ID + "=" + Notes.ID_CALL_RECORD_FOLDER, null, null);
-
-            if (folderCursor != null) {
-                if (folderCursor.moveToFirst()) {
-                    do {
-                        // 打印文件夹名称
-                        String folderName = "";
-                        if(folderCursor.getLong(NOTE_COLUMN_ID) == Notes.ID_CALL_RECORD_FOLDER) {
-                            folderName = mContext.getString(R.string.call_record_folder_name);
-                        } else {
-                            folderName = folderCursor.getString(NOTE_COLUMN_SNIPPET);
-                        }
-                        if (!TextUtils.isEmpty(folderName)) {
-                            ps.println(String.format(getFormat(FORMAT_FOLDER_NAME), folderName));
-                        }
-                        String folderId = folderCursor.getString(NOTE_COLUMN_ID);
-                        exportFolderToText(folderId, ps);
-                    } while (folderCursor.moveToNext());
-                }
-                folderCursor.close();
+
+            Cursor cursor = mContext.getContentResolver().query(Notes.CONTENT_NOTE_DATA_URI,
+                    EXPORT_PROJECTION, TextExportQuery.SELECTION, null, TextExportQuery.SORT_ORDER);
+            if (cursor == null) {
+                Log.e(TAG, "query notes to export error");
+                return STATE_SYSTEM_ERROR;
             }
 
-            // 导出根文件夹中的笔记
-            Cursor noteCursor = mContext.getContentResolver().query(
-                    Notes.CONTENT_NOTE_URI,
-                    NOTE_PROJECTION,
-                    NoteColumns.TYPE + "=" + +Notes.TYPE_NOTE + " AND " + NoteColumns.PARENT_ID
-                            + "=0", null, null);
-
-            if (noteCursor != null) {
-                if (noteCursor.moveToFirst()) {
-                    do {
-                        ps.println(String.format(getFormat(FORMAT_NOTE_DATE), DateFormat.format(
-                                mContext.getString(R.string.format_datetime_mdhm),
-                                noteCursor.getLong(NOTE_COLUMN_MODIFIED_DATE))));
-                        // 查询属于该笔记的数据
-                        String noteId = noteCursor.getString(NOTE_COLUMN_ID);
-                        exportNoteToText(noteId, ps);
-                    } while (noteCursor.moveToNext());
+            int state = STATE_SUCCESS;
+            Writer writer = null;
+            try {
+                FileOutputStream fos = new FileOutputStream(file);
+                writer = new BufferedWriter(Channels.newWriter(fos.getChannel(), "UTF-8"),
+                        WRITE_BUFFER_SIZE);
+                if (!write(new CursorRows(cursor), writer, listener)) {
+                    state = STATE_CANCELLED;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+                state = STATE_SYSTEM_ERROR;
+            } finally {
+                cursor.close();
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, e.toString());
+                        state = STATE_SYSTEM_ERROR;
+                    }
                 }
-                noteCursor.close();
             }
-            ps.close();
 
-            return STATE_SUCCESS;
+            if (state == STATE_CANCELLED) {
+                // 取消时不保留不完整的文件
+                file.delete();
+            }
+            return state;
         }
 
         /**
-         * 获取指向导出文本文件的打印流。
+         * 获取导出文本文件。
          *
-         * @return 打印流对象，如果获取失败则返回 null
+         * @return 文件对象，如果创建失败则返回 null
          */
-        private PrintStream getExportToTextPrintStream() {
+        private File getExportFile() {
             File file = generateFileMountedOnSDcard(mContext, R.string.file_path,
                     R.string.file_name_txt_format);
             if (file == null) {
@@ -358,18 +281,7 @@ public class BackupUtils {
             }
             mFileName = file.getName();
             mFileDirectory = mContext.getString(R.string.file_path);
-            PrintStream ps = null;
-            try {
-                FileOutputStream fos = new FileOutputStream(file);
-                ps = new PrintStream(fos);
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-                return null;
-            } catch (NullPointerException e) {
-                e.printStackTrace();
-                return null;
-            }
-            return ps;
+            return file;
         }
     }
 
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.tool;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.micode.notes.core.PerfStats;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据访问的后台执行器，取代各处独立的 AsyncQueryHandler 和 AsyncTask。
+ * <p>
+ * 任务按优先级分为界面、小部件和后台三条队列，空闲线程总是先取优先级高的任务；
+ * 后台任务（导出、备份等）同时最多占用一个线程，慢任务不会挡住界面查询。
+ * 数据库开启 WAL 后读操作可以并行，线程总数限制为 {@link #MAX_THREADS}。
+ * <p>
+ * 以同一个所有者和令牌提交的新任务会取消尚未完成的旧任务，例如切换文件夹后旧文件夹的查询。
+ * 被取消的任务不再回调，返回的游标会被关闭。回调在主线程执行。
+ * 每条队列的排队等待时间记入 {@link PerfStats}，界面任务等待过久时输出警告。
+ */
+public class DataAccessExecutor {
+    private static final String TAG = "DataAccessExecutor";
+
+    // 界面直接等待的查询和操作
+    public static final int PRIORITY_INTERACTIVE = 0;
+    // 小部件刷新
+    public static final int PRIORITY_WIDGET = 1;
+    // 导出、备份等耗时的后台任务
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    private static final int PRIORITY_COUNT = 3;
+
+    // 同时执行的任务数
+    private static final int MAX_THREADS = 3;
+    // 同时执行的后台任务数
+    private static final int MAX_BACKGROUND = 1;
+    // 空闲线程的存活时间
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    // 界面任务等待超过该时间时输出警告
+    private static final long SLOW_WAIT_MS = 100;
+
+    // 各队列排队等待时间的计数名称，按优先级排列
+    private static final String[] WAIT_STATS = new String[] {
+        PerfStats.EXECUTOR_WAIT_INTERACTIVE,
+        PerfStats.EXECUTOR_WAIT_WIDGET,
+        PerfStats.EXECUTOR_WAIT_BACKGROUND
+    };
+
+    /**
+     * 在后台线程执行的任务。
+     */
+    public interface Task<T> {
+        T run();
+    }
+
+    /**
+     * 任务完成后在主线程执行的回调。
+     */
+    public interface Callback<T> {
+        void onComplete(T result);
+    }
+
+    private static DataAccessExecutor sInstance;
+
+    private final ThreadPoolExecutor mThreads;
+    private final Handler mMainHandler;
+    private final ArrayDeque<Job<?>>[] mLanes;
+    // 带令牌的任务，用于取消被新任务取代的旧任务
+    private final HashMap<Key, Job<?>> mKeyedJobs;
+    private int mRunning;
+    private int mRunningBackground;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private DataAccessExecutor() {
+        mThreads = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private int mCount;
+
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, TAG + " #" + (++mCount));
+                    }
+                });
+        mThreads.allowCoreThreadTimeOut(true);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mLanes = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mLanes[i] = new ArrayDeque<Job<?>>();
+        }
+        mKeyedJobs = new HashMap<Key, Job<?>>();
+    }
+
+    public static synchronized DataAccessExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new DataAccessExecutor();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 提交不会被取代的任务。
+     *
+     * @param priority 优先级，见 {@link #PRIORITY_INTERACTIVE} 等常量
+     * @param task 后台任务
+     * @param callback 主线程回调，可以为 null
+     */
+    public <T> void submit(int priority, Task<T> task, Callback<T> callback) {
+        enqueue(new Job<T>(null, priority, task, callback));
+    }
+
+    /**
+     * 提交任务，同一所有者和令牌下尚未完成的旧任务会被取消。
+     *
+     * @param owner 任务的所有者，通常为发起查询的界面
+     * @param token 所有者内区分任务的令牌
+     * @param priority 优先级，见 {@link #PRIORITY_INTERACTIVE} 等常量
+     * @param task 后台任务
+     * @param callback 主线程回调，可以为 null
+     */
+    public <T> void submit(Object owner, int token, int priority, Task<T> task,
+            Callback<T> callback) {
+        enqueue(new Job<T>(new Key(owner, token), priority, task, callback));
+    }
+
+    /**
+     * 取消所有者指定令牌下尚未完成的任务。
+     *
+     * @param owner 任务的所有者
+     * @param token 令牌
+     */
+    public synchronized void cancel(Object owner, int token) {
+        Job<?> job = mKeyedJobs.remove(new Key(owner, token));
+        if (job != null) {
+            cancelJob(job);
+        }
+    }
+
+    /**
+     * 取消所有者的全部任务，通常在界面销毁时调用。
+     *
+     * @param owner 任务的所有者
+     */
+    public synchronized void cancelAll(Object owner) {
+        Iterator<Job<?>> iter = mKeyedJobs.values().iterator();
+        while (iter.hasNext()) {
+            Job<?> job = iter.next();
+            if (job.mKey.mOwner == owner) {
+                iter.remove();
+                cancelJob(job);
+            }
+        }
+    }
+
+    private synchronized void enqueue(Job<?> job) {
+        if (job.mPriority < 0 || job.mPriority >= PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Wrong priority " + job.mPriority);
+        }
+        if (job.mKey != null) {
+            Job<?> old = mKeyedJobs.put(job.mKey, job);
+            if (old != null) {
+                cancelJob(old);
+            }
+        }
+        mLanes[job.mPriority].addLast(job);
+        dispatch();
+    }
+
+    private void cancelJob(Job<?> job) {
+        job.mCancelled = true;
+        mLanes[job.mPriority].remove(job);
+    }
+
+    /**
+     * 按优先级把任务交给空闲线程，调用时需持有锁。
+     */
+    private void dispatch() {
+        while (mRunning < MAX_THREADS) {
+            Job<?> job = null;
+            for (int i = 0; i < PRIORITY_COUNT && job == null; i++) {
+                if (i == PRIORITY_BACKGROUND && mRunningBackground >= MAX_BACKGROUND) {
+                    continue;
+                }
+                job = mLanes[i].pollFirst();
+            }
+            if (job == null) {
+                return;
+            }
+            mRunning++;
+            if (job.mPriority == PRIORITY_BACKGROUND) {
+                mRunningBackground++;
+            }
+            mThreads.execute(job);
+        }
+    }
+
+    private void onStarted(Job<?> job, long wait) {
+        PerfStats.add(WAIT_STATS[job.mPriority], wait * 1000);
+        if (job.mPriority == PRIORITY_INTERACTIVE && wait > SLOW_WAIT_MS) {
+            Log.w(TAG, "Interactive task waited " + wait + "ms");
+        }
+    }
+
+    private synchronized void onFinished(Job<?> job) {
+        mRunning--;
+        if (job.mPriority == PRIORITY_BACKGROUND) {
+            mRunningBackground--;
+        }
+        dispatch();
+    }
+
+    private synchronized boolean onDelivered(Job<?> job) {
+        if (job.mKey != null && mKeyedJobs.get(job.mKey) == job) {
+            mKeyedJobs.remove(job.mKey);
+        }
+        return !job.mCancelled;
+    }
+
+    /**
+     * 丢弃被取消任务的结果。
+     */
+    private static void discard(Object result) {
+        if (result instanceof Cursor) {
+            ((Cursor) result).close();
+        }
+    }
+
+    /**
+     * 所有者和令牌组成的键，所有者按引用比较。
+     */
+    private static class Key {
+        final Object mOwner;
+        final int mToken;
+
+        Key(Object owner, int token) {
+            mOwner = owner;
+            mToken = token;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mOwner == other.mOwner && mToken == other.mToken;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mOwner) * 31 + mToken;
+        }
+    }
+
+    private class Job<T> implements Runnable {
+        final Key mKey;
+        final int mPriority;
+        final Task<T> mTask;
+        final Callback<T> mCallback;
+        final long mEnqueueTime;
+        volatile boolean mCancelled;
+
+        Job(Key key, int priority, Task<T> task, Callback<T> callback) {
+            mKey = key;
+            mPriority = priority;
+            mTask = task;
+            mCallback = callback;
+            mEnqueueTime = SystemClock.elapsedRealtime();
+        }
+
+        public void run() {
+            onStarted(this, SystemClock.elapsedRealtime() - mEnqueueTime);
+            T result = null;
+            try {
+                if (!mCancelled) {
+                    result = mTask.run();
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Task failed", e);
+            } finally {
+                onFinished(this);
+            }
+
+            final T delivered = result;
+            mMainHandler.post(new Runnable() {
+                public void run() {
+                    if (onDelivered(Job.this) && mCallback != null) {
+                        mCallback.onComplete(delivered);
+                    } else {
+                        discard(delivered);
+                    }
+                }
+            });
+        }
+    }
+}
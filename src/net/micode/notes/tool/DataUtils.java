@@ -16,6 +16,7 @@
 
 package net.micode.notes.tool;
 
+import android.appwidget.AppWidgetManager;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
 import android.content.ContentResolver;
@@ -23,15 +24,21 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.os.Bundle;
 import android.os.RemoteException;
 import android.util.Log;
 
+import net.micode.notes.core.Snippet;
+import net.micode.notes.data.Contact;
+import net.micode.notes.data.FolderTree;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.CallNote;
+import net.micode.notes.data.Notes.DataColumns;
 import net.micode.notes.data.Notes.NoteColumns;
 import net.micode.notes.ui.NotesListAdapter.AppWidgetAttribute;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 
 /**
@@ -138,31 +145,13 @@ public class DataUtils {
     }
 
     /**
-     * 获取除系统文件夹外的所有文件夹数量。
+     * 获取除系统文件夹外的所有文件夹数量，取自共享的文件夹树，文件夹未变化时不访问数据库。
      *
      * @param resolver 内容解析器
      * @return 文件夹数量
      */
     public static int getUserFolderCount(ContentResolver resolver) {
-        Cursor cursor =resolver.query(Notes.CONTENT_NOTE_URI,
-                new String[] { "COUNT(*)" },
-                NoteColumns.TYPE + "=? AND " + NoteColumns.PARENT_ID + "<>?",
-                new String[] { String.valueOf(Notes.TYPE_FOLDER), String.valueOf(Notes.ID_TRASH_FOLER)},
-                null);
-
-        int count = 0;
-        if(cursor != null) {
-            if(cursor.moveToFirst()) {
-                try {
-                    count = cursor.getInt(0);
-                } catch (IndexOutOfBoundsException e) {
-                    Log.e(TAG, "get folder count failed:" + e.toString());
-                } finally {
-                    cursor.close();
-                }
-            }
-        }
-        return count;
+        return FolderTree.get(resolver).getUserFolderCount();
     }
 
     /**
@@ -174,20 +163,9 @@ public class DataUtils {
      * @return 如果笔记可见返回 true，否则返回 false
      */
     public static boolean visibleInNoteDatabase(ContentResolver resolver, long noteId, int type) {
-        Cursor cursor = resolver.query(ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId),
-                null,
-                NoteColumns.TYPE + "=? AND " + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER,
-                new String [] {String.valueOf(type)},
-                null);
-
-        boolean exist = false;
-        if (cursor != null) {
-            if (cursor.getCount() > 0) {
-                exist = true;
-            }
-            cursor.close();
-        }
-        return exist;
+        HashSet<Long> ids = new HashSet<Long>();
+        ids.add(noteId);
+        return filterVisibleNotes(resolver, ids, type).contains(noteId);
     }
 
     /**
@@ -198,17 +176,9 @@ public class DataUtils {
      * @return 如果笔记存在返回 true，否则返回 false
      */
     public static boolean existInNoteDatabase(ContentResolver resolver, long noteId) {
-        Cursor cursor = resolver.query(ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId),
-                null, null, null, null);
-
-        boolean exist = false;
-        if (cursor != null) {
-            if (cursor.getCount() > 0) {
-                exist = true;
-            }
-            cursor.close();
-        }
-        return exist;
+        HashSet<Long> ids = new HashSet<Long>();
+        ids.add(noteId);
+        return filterExistingNotes(resolver, ids).contains(noteId);
     }
 
     /**
@@ -220,18 +190,113 @@ public class DataUtils {
      */
     public static boolean existInDataDatabase(ContentResolver resolver, long dataId) {
         Cursor cursor = resolver.query(ContentUris.withAppendedId(Notes.CONTENT_DATA_URI, dataId),
-                null, null, null, null);
+                new String[] { "1" }, null, null, null);
 
         boolean exist = false;
         if (cursor != null) {
-            if (cursor.getCount() > 0) {
-                exist = true;
-            }
+            exist = cursor.moveToFirst();
             cursor.close();
         }
         return exist;
     }
 
+    /**
+     * 从一组笔记中找出可见的笔记，即类型相符且不在回收站中的笔记。
+     * 结果由内容提供者缓存，一次调用完成。
+     *
+     * @param resolver 内容解析器
+     * @param noteIds 笔记 ID 集合
+     * @param type 笔记类型
+     * @return 可见的笔记 ID 集合
+     */
+    public static HashSet<Long> filterVisibleNotes(ContentResolver resolver,
+            Collection<Long> noteIds, int type) {
+        return filterNotes(resolver, noteIds, type, true);
+    }
+
+    /**
+     * 从一组笔记中找出存在于数据库中的笔记，包括回收站中的笔记。
+     *
+     * @param resolver 内容解析器
+     * @param noteIds 笔记 ID 集合
+     * @return 存在的笔记 ID 集合
+     */
+    public static HashSet<Long> filterExistingNotes(ContentResolver resolver,
+            Collection<Long> noteIds) {
+        return filterNotes(resolver, noteIds, Notes.NOTE_STATE_MISSING, false);
+    }
+
+    private static HashSet<Long> filterNotes(ContentResolver resolver, Collection<Long> noteIds,
+            int type, boolean visibleOnly) {
+        HashSet<Long> result = new HashSet<Long>();
+        if (noteIds == null || noteIds.isEmpty()) {
+            return result;
+        }
+        long[] ids = new long[noteIds.size()];
+        int i = 0;
+        for (Long id : noteIds) {
+            ids[i++] = id;
+        }
+        Bundle extras = new Bundle();
+        extras.putLongArray(Notes.EXTRA_NOTE_IDS, ids);
+        Bundle states;
+        try {
+            states = resolver.call(Notes.CONTENT_NOTE_URI, Notes.METHOD_GET_NOTE_STATES, null,
+                    extras);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "get note states failed", e);
+            return result;
+        }
+        int[] types = states == null ? null : states.getIntArray(Notes.EXTRA_NOTE_TYPES);
+        boolean[] trashed = states == null ? null
+                : states.getBooleanArray(Notes.EXTRA_NOTE_TRASHED);
+        if (types == null || trashed == null || types.length != ids.length
+                || trashed.length != ids.length) {
+            Log.e(TAG, "get note states failed");
+            return result;
+        }
+        for (i = 0; i < ids.length; i++) {
+            if (types[i] == Notes.NOTE_STATE_MISSING) {
+                continue;
+            }
+            if (!visibleOnly || (types[i] == type && !trashed[i])) {
+                result.add(ids[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从一组数据行中找出存在于数据库中的数据行，一次查询完成。
+     *
+     * @param resolver 内容解析器
+     * @param dataIds 数据行 ID 集合
+     * @return 存在的数据行 ID 集合
+     */
+    public static HashSet<Long> filterExistingData(ContentResolver resolver,
+            Collection<Long> dataIds) {
+        HashSet<Long> result = new HashSet<Long>();
+        if (dataIds == null || dataIds.isEmpty()) {
+            return result;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Long id : dataIds) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(id);
+        }
+        Cursor cursor = resolver.query(Notes.CONTENT_DATA_URI,
+                new String[] { DataColumns.ID }, DataColumns.ID + " IN (" + sb + ")", null, null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                result.add(cursor.getLong(0));
+            }
+            cursor.close();
+        }
+        return result;
+    }
+
     /**
      * 检查可见文件夹名称是否存在。
      *
@@ -240,19 +305,84 @@ public class DataUtils {
      * @return 如果文件夹名称存在返回 true，否则返回 false
      */
     public static boolean checkVisibleFolderName(ContentResolver resolver, String name) {
-        Cursor cursor = resolver.query(Notes.CONTENT_NOTE_URI, null,
-                NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER +
-                " AND " + NoteColumns.PARENT_ID + "<>" + Notes.ID_TRASH_FOLER +
-                " AND " + NoteColumns.SNIPPET + "=?",
-                new String[] { name }, null);
-        boolean exist = false;
-        if(cursor != null) {
-            if(cursor.getCount() > 0) {
-                exist = true;
+        return FolderTree.get(resolver).containsVisibleName(name);
+    }
+
+    /**
+     * 在一个事务中删除文件夹或把文件夹移到回收站，同时取回文件夹中笔记的小部件。
+     *
+     * @param resolver 内容解析器
+     * @param folderId 文件夹 ID
+     * @param toTrash 为 true 时移到回收站，否则直接删除
+     * @return 受影响的笔记小部件属性集合，操作失败时返回 null
+     */
+    public static HashSet<AppWidgetAttribute> removeFolder(ContentResolver resolver, long folderId,
+            boolean toTrash) {
+        Bundle result;
+        try {
+            result = resolver.call(Notes.CONTENT_NOTE_URI, toTrash ? Notes.METHOD_TRASH_FOLDER
+                    : Notes.METHOD_DELETE_FOLDER, String.valueOf(folderId), null);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "remove folder failed, id:" + folderId, e);
+            return null;
+        }
+        if (result == null) {
+            Log.e(TAG, "remove folder failed, id:" + folderId);
+            return null;
+        }
+
+        HashSet<AppWidgetAttribute> set = new HashSet<AppWidgetAttribute>();
+        int[] ids = result.getIntArray(Notes.EXTRA_WIDGET_IDS);
+        int[] types = result.getIntArray(Notes.EXTRA_WIDGET_TYPES);
+        if (ids != null && types != null) {
+            for (int i = 0; i < ids.length && i < types.length; i++) {
+                AppWidgetAttribute widget = new AppWidgetAttribute();
+                widget.widgetId = ids[i];
+                widget.widgetType = types[i];
+                set.add(widget);
             }
-            cursor.close();
         }
-        return exist;
+        return set;
+    }
+
+    /**
+     * 压缩修改时间早于指定时间的笔记的文本内容，读取时由内容提供者透明解压。
+     *
+     * @param resolver 内容解析器
+     * @param before 修改时间的上限
+     * @return 压缩的数据行数，失败时返回 -1
+     */
+    public static int compressColdContent(ContentResolver resolver, long before) {
+        Bundle result;
+        try {
+            result = resolver.call(Notes.CONTENT_NOTE_URI, Notes.METHOD_COMPRESS_COLD_CONTENT,
+                    String.valueOf(before), null);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "compress cold content failed", e);
+            return -1;
+        }
+        return result == null ? -1 : result.getInt(Notes.EXTRA_COMPRESSED_ROWS);
+    }
+
+    /**
+     * 执行数据库维护，删除回收站中移入时间早于指定时间的笔记并整理数据库。
+     *
+     * @param resolver 内容解析器
+     * @param purgeBefore 移入回收站时间的上限
+     * @param keepSynced 是否保留已同步过的笔记
+     * @return 维护记录，键名见 {@link Notes#METHOD_RUN_MAINTENANCE}，失败时返回 null
+     */
+    public static Bundle runMaintenance(ContentResolver resolver, long purgeBefore,
+            boolean keepSynced) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(Notes.EXTRA_KEEP_SYNCED, keepSynced);
+        try {
+            return resolver.call(Notes.CONTENT_NOTE_URI, Notes.METHOD_RUN_MAINTENANCE,
+                    String.valueOf(purgeBefore), extras);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "run maintenance failed", e);
+            return null;
+        }
     }
 
     /**
@@ -289,6 +419,46 @@ public class DataUtils {
         return set;
     }
 
+    /**
+     * 用一次查询取回指定笔记中绑定了小部件的笔记的小部件属性。
+     *
+     * @param resolver 内容解析器
+     * @param ids 笔记 ID 集合
+     * @return 笔记小部件属性集合，查询失败时返回 null
+     */
+    public static HashSet<AppWidgetAttribute> getNoteWidgets(ContentResolver resolver,
+            HashSet<Long> ids) {
+        HashSet<AppWidgetAttribute> set = new HashSet<AppWidgetAttribute>();
+        if (ids == null || ids.isEmpty()) {
+            return set;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Long id : ids) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(id);
+        }
+        Cursor c = resolver.query(Notes.CONTENT_NOTE_URI,
+                new String[] { NoteColumns.WIDGET_ID, NoteColumns.WIDGET_TYPE },
+                NoteColumns.ID + " IN (" + sb + ") AND " + NoteColumns.WIDGET_ID + "<>"
+                        + AppWidgetManager.INVALID_APPWIDGET_ID + " AND "
+                        + NoteColumns.WIDGET_TYPE + "<>" + Notes.TYPE_WIDGET_INVALIDE,
+                null, null);
+        if (c == null) {
+            Log.e(TAG, "query note widgets failed");
+            return null;
+        }
+        while (c.moveToNext()) {
+            AppWidgetAttribute widget = new AppWidgetAttribute();
+            widget.widgetId = c.getInt(0);
+            widget.widgetType = c.getInt(1);
+            set.add(widget);
+        }
+        c.close();
+        return set;
+    }
+
     /**
      * 根据笔记 ID 获取通话号码。
      *
@@ -317,6 +487,7 @@ public class DataUtils {
 
     /**
      * 根据电话号码和通话日期获取笔记 ID。
+     * 先按号码的最小匹配键和通话日期走索引，再对少量候选行精确比较号码。
      *
      * @param resolver 内容解析器
      * @param phoneNumber 电话号码
@@ -326,9 +497,11 @@ public class DataUtils {
     public static long getNoteIdByPhoneNumberAndCallDate(ContentResolver resolver, String phoneNumber, long callDate) {
         Cursor cursor = resolver.query(Notes.CONTENT_DATA_URI,
                 new String [] { CallNote.NOTE_ID },
-                CallNote.CALL_DATE + "=? AND " + CallNote.MIME_TYPE + "=? AND PHONE_NUMBERS_EQUAL("
-                + CallNote.PHONE_NUMBER + ",?)",
-                new String [] { String.valueOf(callDate), CallNote.CONTENT_ITEM_TYPE, phoneNumber },
+                CallNote.PHONE_KEY + "=? AND " + CallNote.CALL_DATE + "=? AND "
+                + CallNote.MIME_TYPE + "=? AND PHONE_NUMBERS_EQUAL(" + CallNote.PHONE_NUMBER
+                + ",?)",
+                new String [] { Contact.getPhoneKey(phoneNumber), String.valueOf(callDate),
+                        CallNote.CONTENT_ITEM_TYPE, phoneNumber },
                 null);
 
         if (cursor != null) {
@@ -377,13 +550,6 @@ public class DataUtils {
      * @return 格式化后的笔记摘要
      */
     public static String getFormattedSnippet(String snippet) {
-        if (snippet != null) {
-            snippet = snippet.trim();
-            int index = snippet.indexOf('\n');
-            if (index != -1) {
-                snippet = snippet.substring(0, index);
-            }
-        }
-        return snippet;
+        return Snippet.format(snippet);
     }
 }
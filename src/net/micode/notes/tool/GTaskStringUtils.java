@@ -111,6 +111,8 @@ public class GTaskStringUtils {
     public final static String META_HEAD_NOTE = "meta_note";
     // 元数据头部：数据
     public final static String META_HEAD_DATA = "meta_data";
+    // 元数据头部：编码版本
+    public final static String META_HEAD_VERSION = "meta_ver";
     // 元数据笔记名称
     public final static String META_NOTE_NAME = "[META INFO] DON'T UPDATE AND DELETE";
 }
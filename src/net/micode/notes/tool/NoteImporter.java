@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.tool;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import net.micode.notes.R;
+import net.micode.notes.core.CheckListText;
+import net.micode.notes.core.TextImportReader;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.CallNote;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.model.CheckList;
+import net.micode.notes.ui.AlarmScheduler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 笔记批量导入工具，支持 {@link BackupUtils} 导出的文本文件和结构化的 JSON 文件。
+ * 文件按流式方式读取，笔记、数据和清单条目按批次通过反向引用在一个事务中插入，
+ * 每批只更新一次文件夹数量并发出一次通知，全部导入后再核对一次文件夹的笔记数量。
+ * <p>
+ * JSON 文件的格式如下，未知的字段会被忽略：
+ * <pre>
+ * {"folders": [{"id": 1, "name": "..."}],
+ *  "notes": [{"parent_id": 1, "created_date": 0, "modified_date": 0, "alert_date": 0,
+ *             "bg_color_id": 0, "content": "...",
+ *             "check_list": [{"text": "...", "checked": true}],
+ *             "phone_number": "...", "call_date": 0}]}
+ * </pre>
+ * 笔记的 parent_id 对应 folders 中的 id，folders 需要写在 notes 之前。
+ * 文本格式由 {@link TextImportReader} 读取，名称为空的文件夹行之后的笔记导入到根文件夹；
+ * 没有这一行的旧版导出文件中，根文件夹的笔记仍会被导入最后一个文件夹。
+ */
+public class NoteImporter {
+    private static final String TAG = "NoteImporter";
+
+    // 每批最多包含的操作数，每批在一个事务中提交
+    private static final int BATCH_OPERATIONS = 1000;
+    // 读取缓冲区大小
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] FOLDER_PROJECTION = new String[] {
+        NoteColumns.ID
+    };
+
+    /**
+     * 导入进度监听器。
+     */
+    public interface ImportListener {
+        /**
+         * 报告导入进度，每提交一批调用一次。
+         *
+         * @param bytesRead 已读取的字节数
+         * @param totalBytes 文件总字节数，未知时为负数
+         * @param notesImported 已提交的笔记数
+         */
+        void onProgress(long bytesRead, long totalBytes, int notesImported);
+
+        /**
+         * 是否取消导入，已提交的批次会保留。
+         *
+         * @return 需要取消时返回 true
+         */
+        boolean isCancelled();
+    }
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+    private ImportListener mListener;
+    private CountingInputStream mInput;
+    private long mTotalBytes;
+
+    // 当前批次的操作
+    private final ArrayList<ContentProviderOperation> mOperations;
+    // 当前批次中的笔记数
+    private int mPendingNotes;
+    // 已提交的笔记数
+    private int mImportedNotes;
+    // 按名称缓存的文件夹 ID
+    private final HashMap<String, Long> mFolderIds;
+    // JSON 文件中的文件夹 ID 到数据库中文件夹 ID 的映射
+    private final HashMap<Long, Long> mJsonFolderIds;
+
+    public NoteImporter(Context context) {
+        mContext = context;
+        mResolver = context.getContentResolver();
+        mOperations = new ArrayList<ContentProviderOperation>();
+        mFolderIds = new HashMap<String, Long>();
+        mJsonFolderIds = new HashMap<Long, Long>();
+    }
+
+    /**
+     * 获取上一次导入提交的笔记数。
+     *
+     * @return 笔记数
+     */
+    public int getImportedCount() {
+        return mImportedNotes;
+    }
+
+    /**
+     * 导入文件，根据第一个非空白字符判断是 JSON 还是文本格式。
+     *
+     * @param file 要导入的文件
+     * @param listener 进度监听器，可以为 null
+     * @return {@link BackupUtils} 中的状态码
+     */
+    public int importFromFile(File file, ImportListener listener) {
+        if (file == null || !file.exists()) {
+            return BackupUtils.STATE_BACKUP_FILE_NOT_EXIST;
+        }
+        InputStream input;
+        try {
+            input = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, e.toString());
+            return BackupUtils.STATE_BACKUP_FILE_NOT_EXIST;
+        }
+        return importFromStream(input, file.length(), listener);
+    }
+
+    /**
+     * 导入文件选择器等返回的 URI 指向的文件。
+     *
+     * @param uri 文件的 URI，支持 file 和 content
+     * @param listener 进度监听器，可以为 null
+     * @return {@link BackupUtils} 中的状态码
+     */
+    public int importFromUri(Uri uri, ImportListener listener) {
+        long totalBytes = AssetFileDescriptor.UNKNOWN_LENGTH;
+        InputStream input;
+        try {
+            AssetFileDescriptor fd = mResolver.openAssetFileDescriptor(uri, "r");
+            if (fd == null) {
+                return BackupUtils.STATE_BACKUP_FILE_NOT_EXIST;
+            }
+            totalBytes = fd.getLength();
+            input = fd.createInputStream();
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, e.toString());
+            return BackupUtils.STATE_BACKUP_FILE_NOT_EXIST;
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            return BackupUtils.STATE_SYSTEM_ERROR;
+        }
+        return importFromStream(input, totalBytes, listener);
+    }
+
+    /**
+     * 从输入流导入，导入结束后关闭输入流。
+     *
+     * @param input 输入流
+     * @param totalBytes 总字节数，未知时为负数
+     * @param listener 进度监听器，可以为 null
+     * @return {@link BackupUtils} 中的状态码
+     */
+    private int importFromStream(InputStream input, long totalBytes, ImportListener listener) {
+        mListener = listener;
+        mTotalBytes = totalBytes;
+        mOperations.clear();
+        mPendingNotes = 0;
+        mImportedNotes = 0;
+        mFolderIds.clear();
+        mJsonFolderIds.clear();
+
+        int state;
+        BufferedReader reader = null;
+        try {
+            mInput = new CountingInputStream(input);
+            reader = new BufferedReader(new InputStreamReader(mInput, "UTF-8"), READ_BUFFER_SIZE);
+            if (isJson(reader)) {
+                state = importJson(reader);
+            } else {
+                state = importText(reader);
+            }
+            if (state == BackupUtils.STATE_SUCCESS && !flush()) {
+                state = BackupUtils.STATE_CANCELLED;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            state = BackupUtils.STATE_SYSTEM_ERROR;
+        } catch (IllegalStateException e) {
+            // JsonReader 遇到不符合预期的结构
+            Log.e(TAG, e.toString());
+            state = BackupUtils.STATE_DATA_DESTROIED;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, e.toString());
+            state = BackupUtils.STATE_DATA_DESTROIED;
+        } catch (RemoteException e) {
+            Log.e(TAG, e.toString());
+            state = BackupUtils.STATE_SYSTEM_ERROR;
+        } catch (OperationApplicationException e) {
+            Log.e(TAG, e.toString());
+            state = BackupUtils.STATE_SYSTEM_ERROR;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.toString());
+                }
+            }
+            mOperations.clear();
+            mListener = null;
+        }
+
+        if (mImportedNotes > 0) {
+            // 每批已经维护了文件夹数量，这里只做一次核对
+            mResolver.call(Notes.CONTENT_NOTE_URI, Notes.METHOD_REBUILD_FOLDER_COUNTS, null, null);
+            // 导入的笔记可能带有提醒
+            AlarmScheduler.scheduleNext(mContext, System.currentTimeMillis());
+        }
+        return state;
+    }
+
+    /**
+     * 查看第一个非空白字符是否为 '{'，不消耗读取的内容。
+     */
+    private static boolean isJson(BufferedReader reader) throws IOException {
+        reader.mark(READ_BUFFER_SIZE);
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+        reader.reset();
+        return c == '{';
+    }
+
+    /**
+     * 导入 {@link BackupUtils} 导出的文本格式。
+     */
+    private int importText(Reader reader) throws IOException, RemoteException,
+            OperationApplicationException {
+        TextImportReader in = new TextImportReader(reader,
+                mContext.getResources().getStringArray(R.array.format_for_exported_note));
+        String callRecordFolderName = mContext.getString(R.string.call_record_folder_name);
+
+        long folderId = Notes.ID_ROOT_FOLDER;
+        int item;
+        while ((item = in.next()) != TextImportReader.END) {
+            if (item == TextImportReader.FOLDER) {
+                // 名称为空的文件夹行表示之后是根文件夹的笔记
+                String name = in.getText();
+                folderId = callRecordFolderName.equals(name) ? Notes.ID_ROOT_FOLDER
+                        : getOrCreateFolder(name);
+            } else if (!addTextNote(folderId, in.getText())) {
+                return BackupUtils.STATE_CANCELLED;
+            }
+        }
+        return BackupUtils.STATE_SUCCESS;
+    }
+
+    /**
+     * 导入 JSON 格式。
+     */
+    private int importJson(Reader in) throws IOException, RemoteException,
+            OperationApplicationException {
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("folders".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readJsonFolder(reader);
+                }
+                reader.endArray();
+            } else if ("notes".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (!readJsonNote(reader)) {
+                        return BackupUtils.STATE_CANCELLED;
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return BackupUtils.STATE_SUCCESS;
+    }
+
+    private void readJsonFolder(JsonReader reader) throws IOException {
+        long id = 0;
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if ("id".equals(key)) {
+                id = reader.nextLong();
+            } else if ("name".equals(key)) {
+                name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!TextUtils.isEmpty(name)) {
+            mJsonFolderIds.put(id, getOrCreateFolder(name));
+        }
+    }
+
+    private boolean readJsonNote(JsonReader reader) throws IOException, RemoteException,
+            OperationApplicationException {
+        ContentValues values = new ContentValues();
+        long parentId = Notes.ID_ROOT_FOLDER;
+        String content = "";
+        StringBuilder checkList = null;
+        String phoneNumber = null;
+        long callDate = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (NoteColumns.PARENT_ID.equals(key)) {
+                Long folderId = mJsonFolderIds.get(reader.nextLong());
+                parentId = folderId == null ? Notes.ID_ROOT_FOLDER : folderId;
+            } else if (NoteColumns.CREATED_DATE.equals(key)
+                    || NoteColumns.MODIFIED_DATE.equals(key)
+                    || NoteColumns.ALERTED_DATE.equals(key)) {
+                values.put(key, reader.nextLong());
+            } else if (NoteColumns.BG_COLOR_ID.equals(key)) {
+                values.put(key, reader.nextInt());
+            } else if (DataColumns.CONTENT.equals(key)) {
+                content = reader.nextString();
+            } else if ("check_list".equals(key)) {
+                checkList = readJsonCheckList(reader);
+            } else if ("phone_number".equals(key)) {
+                phoneNumber = reader.nextString();
+            } else if ("call_date".equals(key)) {
+                callDate = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        ContentValues callValues = null;
+        if (TextUtils.isEmpty(phoneNumber) && TextUtils.isEmpty(content) && checkList == null) {
+            // 空笔记不导入
+            return true;
+        }
+        if (!TextUtils.isEmpty(phoneNumber)) {
+            parentId = Notes.ID_CALL_RECORD_FOLDER;
+            callValues = new ContentValues();
+            callValues.put(DataColumns.MIME_TYPE, CallNote.CONTENT_ITEM_TYPE);
+            callValues.put(CallNote.PHONE_NUMBER, phoneNumber);
+            callValues.put(CallNote.CALL_DATE, callDate);
+        }
+        String text = checkList != null ? checkList.toString() : content;
+        return addNote(parentId, text, values, callValues, checkList != null);
+    }
+
+    /**
+     * 读取清单条目数组，转换为带勾选标记的旧格式文本。
+     */
+    private static StringBuilder readJsonCheckList(JsonReader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String text = "";
+            boolean checked = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if ("text".equals(key)) {
+                    text = reader.nextString();
+                } else if ("checked".equals(key)) {
+                    checked = reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            CheckListText.appendItem(sb, checked, text);
+        }
+        reader.endArray();
+        return sb;
+    }
+
+    /**
+     * 追加一篇只有文本内容的笔记，内容为空时忽略。
+     */
+    private boolean addTextNote(long parentId, String text)
+            throws RemoteException, OperationApplicationException {
+        if (TextUtils.isEmpty(text)) {
+            return true;
+        }
+        return addNote(parentId, text, new ContentValues(), null, CheckListText.isCheckListText(text));
+    }
+
+    /**
+     * 把一篇笔记追加到当前批次，批次的操作数达到上限时提交。
+     *
+     * @param parentId 所属文件夹 ID
+     * @param text 笔记内容，清单模式时为带勾选标记的旧格式文本
+     * @param values 笔记的其他列
+     * @param callValues 通话数据，没有时为 null
+     * @param checkList 是否为清单模式
+     * @return 被取消时返回 false
+     */
+    private boolean addNote(long parentId, String text, ContentValues values,
+            ContentValues callValues, boolean checkList) throws RemoteException,
+            OperationApplicationException {
+        long now = System.currentTimeMillis();
+        if (!values.containsKey(NoteColumns.CREATED_DATE)) {
+            values.put(NoteColumns.CREATED_DATE, now);
+        }
+        if (!values.containsKey(NoteColumns.MODIFIED_DATE)) {
+            values.put(NoteColumns.MODIFIED_DATE, now);
+        }
+        values.put(NoteColumns.TYPE, Notes.TYPE_NOTE);
+        values.put(NoteColumns.PARENT_ID, parentId);
+        values.put(NoteColumns.LOCAL_MODIFIED, 1);
+        int noteRef = mOperations.size();
+        mOperations.add(ContentProviderOperation.newInsert(Notes.CONTENT_NOTE_URI)
+                .withValues(values).build());
+
+        ContentValues textValues = new ContentValues();
+        textValues.put(DataColumns.MIME_TYPE, TextNote.CONTENT_ITEM_TYPE);
+        textValues.put(DataColumns.CONTENT, checkList ? "" : text);
+        textValues.put(TextNote.MODE, checkList ? TextNote.MODE_CHECK_LIST : 0);
+        int dataRef = mOperations.size();
+        mOperations.add(ContentProviderOperation.newInsert(Notes.CONTENT_DATA_URI)
+                .withValues(textValues)
+                .withValueBackReference(DataColumns.NOTE_ID, noteRef).build());
+        if (checkList) {
+            CheckList.appendInsertOperations(text, noteRef, dataRef, mOperations);
+        }
+        if (callValues != null) {
+            mOperations.add(ContentProviderOperation.newInsert(Notes.CONTENT_DATA_URI)
+                    .withValues(callValues)
+                    .withValueBackReference(DataColumns.NOTE_ID, noteRef).build());
+        }
+        mPendingNotes++;
+
+        if (mOperations.size() >= BATCH_OPERATIONS) {
+            return flush();
+        }
+        return true;
+    }
+
+    /**
+     * 在一个事务中提交当前批次并报告进度。
+     *
+     * @return 被取消时返回 false，当前批次不会提交
+     */
+    private boolean flush() throws RemoteException, OperationApplicationException {
+        if (mListener != null && mListener.isCancelled()) {
+            mOperations.clear();
+            mPendingNotes = 0;
+            return false;
+        }
+        if (mOperations.size() > 0) {
+            mResolver.applyBatch(Notes.AUTHORITY, mOperations);
+            mImportedNotes += mPendingNotes;
+            mOperations.clear();
+            mPendingNotes = 0;
+        }
+        if (mListener != null) {
+            mListener.onProgress(mInput.getCount(), mTotalBytes, mImportedNotes);
+        }
+        return true;
+    }
+
+    /**
+     * 获取同名的文件夹，没有时创建。
+     *
+     * @param name 文件夹名称
+     * @return 文件夹 ID
+     */
+    private long getOrCreateFolder(String name) {
+        if (TextUtils.isEmpty(name)) {
+            return Notes.ID_ROOT_FOLDER;
+        }
+        Long cached = mFolderIds.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        long folderId = 0;
+        Cursor c = mResolver.query(Notes.CONTENT_NOTE_URI, FOLDER_PROJECTION,
+                NoteColumns.TYPE + "=" + Notes.TYPE_FOLDER + " AND " + NoteColumns.PARENT_ID
+                        + "<>" + Notes.ID_TRASH_FOLER + " AND " + NoteColumns.SNIPPET + "=?",
+                new String[] { name }, null);
+        if (c != null) {
+            if (c.moveToFirst()) {
+                folderId = c.getLong(0);
+            }
+            c.close();
+        }
+        if (folderId <= 0) {
+            ContentValues values = new ContentValues();
+            values.put(NoteColumns.SNIPPET, name);
+            values.put(NoteColumns.TYPE, Notes.TYPE_FOLDER);
+            values.put(NoteColumns.PARENT_ID, Notes.ID_ROOT_FOLDER);
+            values.put(NoteColumns.LOCAL_MODIFIED, 1);
+            Uri uri = mResolver.insert(Notes.CONTENT_NOTE_URI, values);
+            try {
+                folderId = Long.valueOf(uri.getPathSegments().get(1));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "Create folder error :" + e.toString());
+                folderId = Notes.ID_ROOT_FOLDER;
+            }
+        }
+        mFolderIds.put(name, folderId);
+        return folderId;
+    }
+
+    /**
+     * 统计已读取字节数的输入流，用于报告进度。
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,953 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.tool;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.RemoteException;
+import android.util.Log;
+
+import net.micode.notes.R;
+import net.micode.notes.core.SnapshotReader;
+import net.micode.notes.core.SnapshotWriter;
+import net.micode.notes.data.CursorRows;
+import net.micode.notes.data.NoteBodyStore;
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.CheckListColumns;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.ui.AlarmScheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * 笔记的二进制快照备份和恢复。
+ * <p>
+ * 快照文件的格式见 {@link SnapshotWriter}：gzip 压缩的文件头、若干记录和结束标记，之后是 CRC32 校验值。
+ * 全量快照包含所有笔记、数据和清单条目；增量快照只包含自上次快照以来版本号变化或新增的笔记，
+ * 这些笔记同时带上它们的数据和清单条目，另外附带当前全部笔记 ID 用于恢复删除。
+ * 每次快照后在同一目录写入索引文件，记录各笔记的版本号，供下一次增量快照比较。
+ * <p>
+ * 恢复时先校验最近一次全量快照及其后连续的增量快照，再按顺序流式写入暂存区，每批操作在一个事务中提交，
+ * 全部写入后才在一个事务中替换原有笔记。
+ */
+public class SnapshotBackup {
+    private static final String TAG = "SnapshotBackup";
+
+    private static final String SNAPSHOT_PREFIX = "notes_snapshot_";
+    private static final String SNAPSHOT_SUFFIX = ".bak";
+    private static final String INDEX_FILE_NAME = "notes_snapshot.idx";
+
+    // 每批最多包含的操作数
+    private static final int BATCH_OPERATIONS = 1000;
+    // 每处理多少条记录报告一次进度
+    private static final int PROGRESS_INTERVAL = 500;
+    // 增量快照中需要带数据的笔记超过该数量时，扫描全部数据行再过滤
+    private static final int MAX_IN_SELECTION = 500;
+    private static final int BUFFER_SIZE = SnapshotWriter.BUFFER_SIZE;
+
+    private static final String[] NOTE_PROJECTION = new String[] {
+        NoteColumns.ID,
+        NoteColumns.PARENT_ID,
+        NoteColumns.ALERTED_DATE,
+        NoteColumns.BG_COLOR_ID,
+        NoteColumns.CREATED_DATE,
+        NoteColumns.MODIFIED_DATE,
+        NoteColumns.HAS_ATTACHMENT,
+        NoteColumns.SNIPPET,
+        NoteColumns.TYPE,
+        NoteColumns.WIDGET_ID,
+        NoteColumns.WIDGET_TYPE,
+        NoteColumns.SYNC_ID,
+        NoteColumns.LOCAL_MODIFIED,
+        NoteColumns.ORIGIN_PARENT_ID,
+        NoteColumns.GTASK_ID,
+        NoteColumns.VERSION
+    };
+
+    private static final int NOTE_ID_COLUMN = 0;
+    private static final int NOTE_VERSION_COLUMN = 15;
+
+    private static final String[] DATA_PROJECTION = new String[] {
+        DataColumns.ID,
+        DataColumns.NOTE_ID,
+        DataColumns.MIME_TYPE,
+        DataColumns.CREATED_DATE,
+        DataColumns.MODIFIED_DATE,
+        DataColumns.CONTENT,
+        DataColumns.DATA1,
+        DataColumns.DATA2,
+        DataColumns.DATA3,
+        DataColumns.DATA4,
+        DataColumns.DATA5
+    };
+
+    private static final String[] CHECKLIST_PROJECTION = new String[] {
+        CheckListColumns.ID,
+        CheckListColumns.NOTE_ID,
+        CheckListColumns.DATA_ID,
+        CheckListColumns.POSITION,
+        CheckListColumns.CHECKED,
+        CheckListColumns.CONTENT
+    };
+
+    // 文件夹排在笔记之前，恢复时笔记的父文件夹已经存在
+    private static final String NOTE_SELECTION = NoteColumns.ID + ">0";
+    private static final String NOTE_SORT_ORDER = NoteColumns.TYPE + " DESC," + NoteColumns.ID;
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+
+    public SnapshotBackup(Context context) {
+        mContext = context;
+        mResolver = context.getContentResolver();
+    }
+
+    /**
+     * 快照所在的目录。
+     */
+    private File getSnapshotDir() {
+        return new File(Environment.getExternalStorageDirectory()
+                + mContext.getString(R.string.file_path));
+    }
+
+    /**
+     * 快照文件的头部信息。
+     */
+    private static class Header {
+        byte mType;
+        int mSequence;
+        int mBaseSequence;
+        long mCreatedTime;
+        File mFile;
+    }
+
+    /**
+     * 上一次快照的索引：各笔记的版本号。
+     */
+    private static class SnapshotIndex {
+        int mSequence;
+        long mCreatedTime;
+        HashMap<Long, Long> mVersions = new HashMap<Long, Long>();
+    }
+
+    /**
+     * 备份笔记。
+     *
+     * @param incremental 是否增量备份，没有上一次快照时自动改为全量备份
+     * @param listener 进度监听器，可以为 null
+     * @return {@link BackupUtils} 中的状态码
+     */
+    public int backup(boolean incremental, BackupUtils.ExportListener listener) {
+        if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+            return BackupUtils.STATE_SD_CARD_UNMOUONTED;
+        }
+        File dir = getSnapshotDir();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "create snapshot directory failed");
+            return BackupUtils.STATE_SYSTEM_ERROR;
+        }
+
+        SnapshotIndex last = readIndex(new File(dir, INDEX_FILE_NAME));
+        if (last == null) {
+            incremental = false;
+        }
+        Header header = new Header();
+        header.mType = incremental ? SnapshotWriter.TYPE_INCREMENTAL : SnapshotWriter.TYPE_FULL;
+        header.mSequence = last == null ? 1 : last.mSequence + 1;
+        header.mBaseSequence = incremental ? last.mSequence : 0;
+        header.mCreatedTime = System.currentTimeMillis();
+        header.mFile = new File(dir, SNAPSHOT_PREFIX + header.mSequence + SNAPSHOT_SUFFIX);
+
+        SnapshotIndex index = new SnapshotIndex();
+        index.mSequence = header.mSequence;
+        index.mCreatedTime = header.mCreatedTime;
+
+        int state = BackupUtils.STATE_SUCCESS;
+        FileOutputStream file = null;
+        SnapshotWriter out = null;
+        try {
+            file = new FileOutputStream(header.mFile);
+            out = new BodySnapshotWriter(file, header);
+
+            HashSet<Long> withData = new HashSet<Long>();
+            if (!writeNotes(out, incremental ? last : null, index, withData, listener)
+                    || !writeRows(out, SnapshotWriter.RECORD_DATA, Notes.CONTENT_DATA_URI,
+                            DATA_PROJECTION, DataColumns.NOTE_ID, incremental ? withData : null,
+                            listener)
+                    || !writeRows(out, SnapshotWriter.RECORD_CHECKLIST,
+                            Notes.CONTENT_CHECKLIST_URI, CHECKLIST_PROJECTION,
+                            CheckListColumns.NOTE_ID, incremental ? withData : null, listener)) {
+                state = BackupUtils.STATE_CANCELLED;
+            } else {
+                if (incremental) {
+                    out.writeNoteIds(index.mVersions.keySet());
+                }
+                out.finish();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            state = BackupUtils.STATE_SYSTEM_ERROR;
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                } else if (file != null) {
+                    file.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+                state = BackupUtils.STATE_SYSTEM_ERROR;
+            }
+        }
+
+        if (state != BackupUtils.STATE_SUCCESS) {
+            header.mFile.delete();
+            return state;
+        }
+        if (!writeIndex(new File(dir, INDEX_FILE_NAME), index)) {
+            return BackupUtils.STATE_SYSTEM_ERROR;
+        }
+        return state;
+    }
+
+    /**
+     * 写入笔记记录，并记录需要带上数据的笔记。
+     *
+     * @param last 上一次快照的索引，全量备份时为 null
+     * @param index 本次快照的索引
+     * @param withData 收集需要写入数据行的笔记 ID
+     * @return 被取消时返回 false
+     */
+    private boolean writeNotes(SnapshotWriter out, SnapshotIndex last, SnapshotIndex index,
+            HashSet<Long> withData, BackupUtils.ExportListener listener) throws IOException {
+        Cursor c = mResolver.query(Notes.CONTENT_NOTE_URI, NOTE_PROJECTION, NOTE_SELECTION, null,
+                NOTE_SORT_ORDER);
+        if (c == null) {
+            throw new IOException("query notes failed");
+        }
+        try {
+            CursorRows rows = new CursorRows(c);
+            int total = c.getCount();
+            while (c.moveToNext()) {
+                if (listener != null && c.getPosition() % PROGRESS_INTERVAL == 0) {
+                    if (listener.isCancelled()) {
+                        return false;
+                    }
+                    listener.onProgress(c.getPosition(), total);
+                }
+                long id = c.getLong(NOTE_ID_COLUMN);
+                long version = c.getLong(NOTE_VERSION_COLUMN);
+                index.mVersions.put(id, version);
+
+                boolean data = true;
+                if (last != null) {
+                    // 按版本号判断，修改日期可能被同步或导入改回较早的时间
+                    Long lastVersion = last.mVersions.get(id);
+                    data = lastVersion == null || lastVersion != version;
+                    if (!data) {
+                        // 未变化的笔记不写入
+                        continue;
+                    }
+                }
+                withData.add(id);
+                out.writeNote(rows, NOTE_PROJECTION.length, data);
+            }
+        } finally {
+            c.close();
+        }
+        return true;
+    }
+
+    /**
+     * 写入数据行或清单条目记录。
+     *
+     * @param noteIds 只写入这些笔记的行，为 null 时写入全部
+     * @return 被取消时返回 false
+     */
+    private boolean writeRows(SnapshotWriter out, byte record, Uri uri,
+            String[] projection, String noteIdColumn, HashSet<Long> noteIds,
+            BackupUtils.ExportListener listener) throws IOException {
+        if (noteIds != null && noteIds.isEmpty()) {
+            return true;
+        }
+        String selection = null;
+        if (noteIds != null && noteIds.size() <= MAX_IN_SELECTION) {
+            StringBuilder sb = new StringBuilder(noteIdColumn).append(" IN (");
+            boolean first = true;
+            for (Long id : noteIds) {
+                if (!first) {
+                    sb.append(',');
+                }
+                sb.append(id);
+                first = false;
+            }
+            selection = sb.append(')').toString();
+        }
+
+        Cursor c = mResolver.query(uri, projection, selection, null, noteIdColumn);
+        if (c == null) {
+            throw new IOException("query rows failed " + uri);
+        }
+        try {
+            CursorRows rows = new CursorRows(c);
+            int total = c.getCount();
+            while (c.moveToNext()) {
+                if (listener != null && c.getPosition() % PROGRESS_INTERVAL == 0) {
+                    if (listener.isCancelled()) {
+                        return false;
+                    }
+                    listener.onProgress(c.getPosition(), total);
+                }
+                // 第二列都是笔记 ID
+                if (noteIds != null && selection == null && !noteIds.contains(c.getLong(1))) {
+                    continue;
+                }
+                if (record == SnapshotWriter.RECORD_DATA) {
+                    out.writeData(rows, projection.length);
+                } else {
+                    out.writeCheckList(rows, projection.length);
+                }
+            }
+        } finally {
+            c.close();
+        }
+        return true;
+    }
+
+    /**
+     * 从文件中读取大正文的快照写入器。
+     */
+    private class BodySnapshotWriter extends SnapshotWriter {
+        BodySnapshotWriter(FileOutputStream out, Header header) throws IOException {
+            super(out, header.mType, header.mSequence, header.mBaseSequence,
+                    header.mCreatedTime);
+        }
+
+        @Override
+        protected String readBody(long dataId, String content) {
+            return NoteBodyStore.read(mContext, dataId, content);
+        }
+    }
+
+    /**
+     * 从最近一次全量快照及其后连续的增量快照恢复笔记，会替换当前的全部笔记。
+     * 所有快照先校验通过才会开始写入。恢复的笔记由数据库分配新 ID，原本位于系统文件夹中的笔记
+     * 先暂存在临时文件夹中，全部写入后在同一个事务中删除原有笔记并把暂存的笔记移回原处；
+     * 写入失败或取消时删除暂存的笔记，原有笔记保持不变。
+     * 恢复成功后删除快照索引，下一次备份为全量备份。
+     *
+     * @param listener 进度监听器，进度为已处理的快照文件数，可以为 null
+     * @return {@link BackupUtils} 中的状态码
+     */
+    public int restore(BackupUtils.ExportListener listener) {
+        if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+            return BackupUtils.STATE_SD_CARD_UNMOUONTED;
+        }
+        File dir = getSnapshotDir();
+        ArrayList<Header> chain = findRestoreChain(dir);
+        if (chain.isEmpty()) {
+            return BackupUtils.STATE_BACKUP_FILE_NOT_EXIST;
+        }
+        for (Header header : chain) {
+            if (!verify(header.mFile)) {
+                Log.e(TAG, "snapshot is destroyed " + header.mFile);
+                return BackupUtils.STATE_DATA_DESTROIED;
+            }
+        }
+
+        RestoreState state = new RestoreState();
+        boolean committed = false;
+        try {
+            // 清除上一次中断的恢复留下的暂存笔记
+            deleteStaged();
+            for (int i = 0; i < chain.size(); i++) {
+                if (listener != null) {
+                    if (listener.isCancelled()) {
+                        return BackupUtils.STATE_CANCELLED;
+                    }
+                    listener.onProgress(i, chain.size());
+                }
+                if (!apply(chain.get(i).mFile, state, listener)) {
+                    return BackupUtils.STATE_CANCELLED;
+                }
+            }
+            commitStaged(state);
+            committed = true;
+            new File(dir, INDEX_FILE_NAME).delete();
+            if (listener != null) {
+                listener.onProgress(chain.size(), chain.size());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            return BackupUtils.STATE_SYSTEM_ERROR;
+        } catch (RemoteException e) {
+            Log.e(TAG, e.toString());
+            return BackupUtils.STATE_SYSTEM_ERROR;
+        } catch (OperationApplicationException e) {
+            Log.e(TAG, e.toString());
+            return BackupUtils.STATE_SYSTEM_ERROR;
+        } finally {
+            if (!committed) {
+                deleteStaged();
+            }
+            mResolver.call(Notes.CONTENT_NOTE_URI, Notes.METHOD_REBUILD_FOLDER_COUNTS, null, null);
+            if (committed) {
+                // 恢复后的提醒替换了原有笔记的提醒
+                AlarmScheduler.scheduleNext(mContext, System.currentTimeMillis());
+            }
+        }
+        return BackupUtils.STATE_SUCCESS;
+    }
+
+    /**
+     * 删除暂存在临时文件夹中的笔记，文件夹中的笔记、数据和清单条目由触发器删除。
+     */
+    private void deleteStaged() {
+        mResolver.delete(Notes.CONTENT_NOTE_URI, NoteColumns.PARENT_ID + "="
+                + Notes.ID_TEMPARAY_FOLDER, null);
+    }
+
+    /**
+     * 在一个事务中删除恢复前的笔记，并把暂存的笔记移回快照中的父文件夹。
+     * 恢复前的笔记是不在临时文件夹中、也不在暂存文件夹中的用户笔记。
+     */
+    private void commitStaged(RestoreState state)
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newDelete(Notes.CONTENT_NOTE_URI)
+                .withSelection(NOTE_SELECTION + " AND " + NoteColumns.PARENT_ID + "<>"
+                        + Notes.ID_TEMPARAY_FOLDER + " AND " + NoteColumns.PARENT_ID
+                        + " NOT IN (SELECT " + NoteColumns.ID + " FROM " + TABLE.NOTE + " WHERE "
+                        + NoteColumns.PARENT_ID + "=" + Notes.ID_TEMPARAY_FOLDER + ")", null)
+                .build());
+
+        HashMap<Long, StringBuilder> moves = new HashMap<Long, StringBuilder>();
+        for (Map.Entry<Long, Long> entry : state.mStaged.entrySet()) {
+            Long id = state.mNotes.get(entry.getKey());
+            if (id == null) {
+                continue;
+            }
+            StringBuilder ids = moves.get(entry.getValue());
+            if (ids == null) {
+                ids = new StringBuilder();
+                moves.put(entry.getValue(), ids);
+            } else {
+                ids.append(',');
+            }
+            ids.append(id);
+            if (ids.length() > 4096) {
+                operations.add(newMoveNotes(ids, entry.getValue()));
+                moves.remove(entry.getValue());
+            }
+        }
+        for (Map.Entry<Long, StringBuilder> entry : moves.entrySet()) {
+            operations.add(newMoveNotes(entry.getValue(), entry.getKey()));
+        }
+        mResolver.applyBatch(Notes.AUTHORITY, operations);
+    }
+
+    private static ContentProviderOperation newMoveNotes(CharSequence ids, long parentId) {
+        return ContentProviderOperation.newUpdate(Notes.CONTENT_NOTE_URI)
+                .withSelection(NoteColumns.ID + " IN (" + ids + ")", null)
+                .withValue(NoteColumns.PARENT_ID, parentId).build();
+    }
+
+    /**
+     * 找出最近一次全量快照及其后按序号连续的增量快照。
+     */
+    private ArrayList<Header> findRestoreChain(File dir) {
+        ArrayList<Header> chain = new ArrayList<Header>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return chain;
+        }
+        HashMap<Integer, Header> headers = new HashMap<Integer, Header>();
+        int lastFull = -1;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(SNAPSHOT_PREFIX) || !name.endsWith(SNAPSHOT_SUFFIX)) {
+                continue;
+            }
+            Header header = readHeader(file);
+            if (header == null) {
+                continue;
+            }
+            headers.put(header.mSequence, header);
+            if (header.mType == SnapshotWriter.TYPE_FULL && header.mSequence > lastFull) {
+                lastFull = header.mSequence;
+            }
+        }
+        if (lastFull < 0) {
+            return chain;
+        }
+        Header header = headers.get(lastFull);
+        while (header != null) {
+            chain.add(header);
+            Header next = headers.get(header.mSequence + 1);
+            if (next == null || next.mType != SnapshotWriter.TYPE_INCREMENTAL
+                    || next.mBaseSequence != header.mSequence) {
+                break;
+            }
+            header = next;
+        }
+        return chain;
+    }
+
+    private static Header readHeader(File file) {
+        SnapshotReader in = null;
+        try {
+            in = openSnapshot(file);
+            Header header = new Header();
+            header.mType = in.getType();
+            header.mSequence = in.getSequence();
+            header.mBaseSequence = in.getBaseSequence();
+            header.mCreatedTime = in.getCreatedTime();
+            header.mFile = file;
+            return header;
+        } catch (IOException e) {
+            Log.e(TAG, "read snapshot header failed " + file + " " + e.toString());
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * 打开快照并读取文件头，文件头不符时关闭文件并抛出 IOException。
+     */
+    private static SnapshotReader openSnapshot(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return new SnapshotReader(in);
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw e;
+        }
+    }
+
+    /**
+     * 完整读取一遍快照并核对校验值。
+     */
+    private static boolean verify(File file) {
+        SnapshotReader in = null;
+        try {
+            in = openSnapshot(file);
+            byte record;
+            while ((record = in.next()) != SnapshotWriter.RECORD_END) {
+                switch (record) {
+                    case SnapshotWriter.RECORD_NOTE:
+                        in.readRow(new Object[NOTE_PROJECTION.length]);
+                        in.readWithData();
+                        break;
+                    case SnapshotWriter.RECORD_DATA:
+                        in.readRow(new Object[DATA_PROJECTION.length]);
+                        break;
+                    case SnapshotWriter.RECORD_CHECKLIST:
+                        in.readRow(new Object[CHECKLIST_PROJECTION.length]);
+                        break;
+                    case SnapshotWriter.RECORD_NOTE_IDS:
+                        in.readNoteIds();
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            return in.checkCrc();
+        } catch (IOException e) {
+            Log.e(TAG, "verify snapshot failed " + file + " " + e.toString());
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * 快照中的 ID 与恢复后数据库中 ID 的对应关系。当前批次中插入的行还没有 ID，
+     * 记录其操作序号，引用它的操作使用回溯引用，批次提交后再换成实际的 ID。
+     */
+    private static class IdMap {
+        private final HashMap<Long, Long> mIds = new HashMap<Long, Long>();
+        private final HashMap<Long, Integer> mPending = new HashMap<Long, Integer>();
+
+        void putPending(long snapshotId, int operation) {
+            mIds.remove(snapshotId);
+            mPending.put(snapshotId, operation);
+        }
+
+        boolean contains(long snapshotId) {
+            return mIds.containsKey(snapshotId) || mPending.containsKey(snapshotId);
+        }
+
+        boolean isPending(long snapshotId) {
+            return mPending.containsKey(snapshotId);
+        }
+
+        Long get(long snapshotId) {
+            return mIds.get(snapshotId);
+        }
+
+        void remove(long snapshotId) {
+            mIds.remove(snapshotId);
+            mPending.remove(snapshotId);
+        }
+
+        HashSet<Long> snapshotIds() {
+            HashSet<Long> ids = new HashSet<Long>(mIds.keySet());
+            ids.addAll(mPending.keySet());
+            return ids;
+        }
+
+        /**
+         * 把对快照中某一行的引用写入操作。
+         *
+         * @return 该行尚未恢复时返回 false
+         */
+        boolean withReference(ContentProviderOperation.Builder builder, String column,
+                long snapshotId) {
+            Integer operation = mPending.get(snapshotId);
+            if (operation != null) {
+                builder.withValueBackReference(column, operation);
+                return true;
+            }
+            Long id = mIds.get(snapshotId);
+            if (id != null) {
+                builder.withValue(column, id);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 批次提交后由插入结果得到新 ID。
+         */
+        void commit(ContentProviderResult[] results) {
+            for (Map.Entry<Long, Integer> entry : mPending.entrySet()) {
+                mIds.put(entry.getKey(), ContentUris.parseId(results[entry.getValue()].uri));
+            }
+            mPending.clear();
+        }
+    }
+
+    /**
+     * 一次恢复过程的状态。
+     */
+    private static class RestoreState {
+        final IdMap mNotes = new IdMap();
+        final IdMap mData = new IdMap();
+        // 暂存在临时文件夹中的笔记（快照中的 ID）和它在快照中的父文件夹
+        final HashMap<Long, Long> mStaged = new HashMap<Long, Long>();
+        final ArrayList<ContentProviderOperation> mOperations =
+                new ArrayList<ContentProviderOperation>();
+    }
+
+    /**
+     * 提交当前批次的操作。
+     */
+    private void flush(RestoreState state) throws RemoteException, OperationApplicationException {
+        if (state.mOperations.isEmpty()) {
+            return;
+        }
+        ContentProviderResult[] results = mResolver.applyBatch(Notes.AUTHORITY, state.mOperations);
+        state.mNotes.commit(results);
+        state.mData.commit(results);
+        state.mOperations.clear();
+    }
+
+    /**
+     * 按顺序写入一个快照中的记录。
+     *
+     * @return 被取消时返回 false
+     */
+    private boolean apply(File file, RestoreState state, BackupUtils.ExportListener listener)
+            throws IOException, RemoteException, OperationApplicationException {
+        SnapshotReader in = null;
+        try {
+            in = openSnapshot(file);
+            int records = 0;
+            byte record;
+            while ((record = in.next()) != SnapshotWriter.RECORD_END) {
+                switch (record) {
+                    case SnapshotWriter.RECORD_NOTE:
+                        readNote(in, state);
+                        break;
+                    case SnapshotWriter.RECORD_DATA:
+                        readData(in, state);
+                        break;
+                    case SnapshotWriter.RECORD_CHECKLIST:
+                        readCheckList(in, state);
+                        break;
+                    case SnapshotWriter.RECORD_NOTE_IDS:
+                        readNoteIds(in, state);
+                        break;
+                    default:
+                        throw new IOException("Unknown record " + record);
+                }
+                if (state.mOperations.size() >= BATCH_OPERATIONS) {
+                    flush(state);
+                }
+                if (listener != null && ++records % PROGRESS_INTERVAL == 0
+                        && listener.isCancelled()) {
+                    return false;
+                }
+            }
+            flush(state);
+        } catch (EOFException e) {
+            throw new IOException("snapshot is truncated " + file);
+        } finally {
+            closeQuietly(in);
+        }
+        return true;
+    }
+
+    /**
+     * 读取一条记录的各列，以投影中的列名为键。
+     */
+    private static ContentValues readValues(SnapshotReader in, String[] projection)
+            throws IOException {
+        Object[] row = new Object[projection.length];
+        in.readRow(row);
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < projection.length; i++) {
+            Object value = row[i];
+            if (value == null) {
+                values.putNull(projection[i]);
+            } else if (value instanceof Long) {
+                values.put(projection[i], (Long) value);
+            } else if (value instanceof Double) {
+                values.put(projection[i], (Double) value);
+            } else if (value instanceof String) {
+                values.put(projection[i], (String) value);
+            } else {
+                values.put(projection[i], (byte[]) value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 已恢复的笔记更新其列，带数据时先删除原有数据行；未恢复的笔记插入新行。
+     * 父文件夹是用户文件夹时引用恢复后的文件夹，否则暂存在临时文件夹中。
+     */
+    private void readNote(SnapshotReader in, RestoreState state)
+            throws IOException, RemoteException, OperationApplicationException {
+        ContentValues values = readValues(in, NOTE_PROJECTION);
+        boolean withData = in.readWithData();
+        long id = values.getAsLong(NoteColumns.ID);
+        long parentId = values.getAsLong(NoteColumns.PARENT_ID);
+        Long originParentId = values.getAsLong(NoteColumns.ORIGIN_PARENT_ID);
+        values.remove(NoteColumns.ID);
+        values.remove(NoteColumns.PARENT_ID);
+        values.remove(NoteColumns.ORIGIN_PARENT_ID);
+
+        ContentProviderOperation.Builder builder;
+        ContentProviderOperation deleteData = null;
+        if (state.mNotes.contains(id)) {
+            if (state.mNotes.isPending(id)) {
+                // 更新操作的 URI 不能使用回溯引用
+                flush(state);
+            }
+            long noteId = state.mNotes.get(id);
+            builder = ContentProviderOperation.newUpdate(
+                    ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId));
+            if (withData) {
+                // 清单条目随数据行由触发器删除
+                deleteData = ContentProviderOperation.newDelete(Notes.CONTENT_DATA_URI)
+                        .withSelection(DataColumns.NOTE_ID + "=?", new String[] {
+                            String.valueOf(noteId)
+                        }).build();
+            }
+        } else {
+            builder = ContentProviderOperation.newInsert(Notes.CONTENT_NOTE_URI);
+            state.mNotes.putPending(id, state.mOperations.size());
+        }
+        builder.withValues(values);
+        if (parentId > 0 && state.mNotes.withReference(builder, NoteColumns.PARENT_ID, parentId)) {
+            state.mStaged.remove(id);
+        } else {
+            builder.withValue(NoteColumns.PARENT_ID, Notes.ID_TEMPARAY_FOLDER);
+            state.mStaged.put(id, parentId > 0 ? Notes.ID_ROOT_FOLDER : parentId);
+        }
+        if (originParentId == null || originParentId <= 0 || !state.mNotes.withReference(
+                builder, NoteColumns.ORIGIN_PARENT_ID, originParentId)) {
+            builder.withValue(NoteColumns.ORIGIN_PARENT_ID, originParentId == null
+                    || originParentId > 0 ? Notes.ID_ROOT_FOLDER : originParentId);
+        }
+        state.mOperations.add(builder.build());
+        if (deleteData != null) {
+            state.mOperations.add(deleteData);
+        }
+    }
+
+    /**
+     * 插入数据行，所属笔记未恢复时跳过。
+     */
+    private void readData(SnapshotReader in, RestoreState state) throws IOException {
+        ContentValues values = readValues(in, DATA_PROJECTION);
+        long id = values.getAsLong(DataColumns.ID);
+        long noteId = values.getAsLong(DataColumns.NOTE_ID);
+        values.remove(DataColumns.ID);
+        values.remove(DataColumns.NOTE_ID);
+        ContentProviderOperation.Builder builder = ContentProviderOperation
+                .newInsert(Notes.CONTENT_DATA_URI).withValues(values);
+        if (!state.mNotes.withReference(builder, DataColumns.NOTE_ID, noteId)) {
+            Log.w(TAG, "data " + id + " without note " + noteId);
+            return;
+        }
+        state.mData.putPending(id, state.mOperations.size());
+        state.mOperations.add(builder.build());
+    }
+
+    /**
+     * 插入清单条目，所属笔记或数据行未恢复时跳过。
+     */
+    private void readCheckList(SnapshotReader in, RestoreState state) throws IOException {
+        ContentValues values = readValues(in, CHECKLIST_PROJECTION);
+        long noteId = values.getAsLong(CheckListColumns.NOTE_ID);
+        long dataId = values.getAsLong(CheckListColumns.DATA_ID);
+        values.remove(CheckListColumns.ID);
+        values.remove(CheckListColumns.NOTE_ID);
+        values.remove(CheckListColumns.DATA_ID);
+        ContentProviderOperation.Builder builder = ContentProviderOperation
+                .newInsert(Notes.CONTENT_CHECKLIST_URI).withValues(values);
+        if (!state.mNotes.withReference(builder, CheckListColumns.NOTE_ID, noteId)
+                || !state.mData.withReference(builder, CheckListColumns.DATA_ID, dataId)) {
+            Log.w(TAG, "check list item without note " + noteId + " or data " + dataId);
+            return;
+        }
+        state.mOperations.add(builder.build());
+    }
+
+    /**
+     * 删除增量快照时已经不存在的笔记。
+     */
+    private void readNoteIds(SnapshotReader in, RestoreState state)
+            throws IOException, RemoteException, OperationApplicationException {
+        long[] snapshotIds = in.readNoteIds();
+        HashSet<Long> ids = new HashSet<Long>(snapshotIds.length * 2);
+        for (long id : snapshotIds) {
+            ids.add(id);
+        }
+        // 先提交当前批次，要删除的笔记都已有实际的 ID
+        flush(state);
+        StringBuilder removed = new StringBuilder();
+        for (Long id : state.mNotes.snapshotIds()) {
+            if (ids.contains(id)) {
+                continue;
+            }
+            if (removed.length() > 0) {
+                removed.append(',');
+            }
+            removed.append(state.mNotes.get(id));
+            state.mNotes.remove(id);
+            state.mStaged.remove(id);
+            if (removed.length() > 4096) {
+                state.mOperations.add(newDeleteNotes(removed));
+                removed.setLength(0);
+            }
+        }
+        if (removed.length() > 0) {
+            state.mOperations.add(newDeleteNotes(removed));
+        }
+    }
+
+    private static ContentProviderOperation newDeleteNotes(CharSequence ids) {
+        return ContentProviderOperation.newDelete(Notes.CONTENT_NOTE_URI)
+                .withSelection(NoteColumns.ID + " IN (" + ids + ")", null).build();
+    }
+
+    private static SnapshotIndex readIndex(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                    BUFFER_SIZE));
+            SnapshotIndex index = new SnapshotIndex();
+            index.mSequence = in.readInt();
+            index.mCreatedTime = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                index.mVersions.put(in.readLong(), in.readLong());
+            }
+            return index;
+        } catch (IOException e) {
+            Log.e(TAG, "read snapshot index failed " + e.toString());
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static boolean writeIndex(File file, SnapshotIndex index) {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp),
+                    BUFFER_SIZE));
+            out.writeInt(index.mSequence);
+            out.writeLong(index.mCreatedTime);
+            out.writeInt(index.mVersions.size());
+            for (Map.Entry<Long, Long> entry : index.mVersions.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.close();
+            out = null;
+            return temp.renameTo(file);
+        } catch (IOException e) {
+            Log.e(TAG, "write snapshot index failed " + e.toString());
+            temp.delete();
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+            }
+        }
+    }
+}
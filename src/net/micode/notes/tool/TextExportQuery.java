@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.tool;
+
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.DataColumns;
+import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.data.NotesDatabaseHelper.TABLE;
+import net.micode.notes.model.CheckList;
+
+/**
+ * 文本导出在笔记与数据的联合查询 {@link Notes#CONTENT_NOTE_DATA_URI} 上的投影、选择条件和排序。
+ * 查询结果按输出顺序排列，由 {@link net.micode.notes.core.TextExportWriter} 逐行写出。
+ */
+public final class TextExportQuery {
+    // 输出分组：文件夹行及其笔记属于同一组，根文件夹中的笔记属于第 0 组
+    private static final String GROUP_EXPR = "(CASE WHEN " + TABLE.NOTE + "."
+            + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE + " THEN " + TABLE.NOTE + "."
+            + NoteColumns.PARENT_ID + " ELSE " + TABLE.NOTE + "." + NoteColumns.ID + " END)";
+
+    // 需要导出的文件夹：不在回收站中的文件夹以及通话记录文件夹
+    private static final String EXPORTED_FOLDER_SELECTION = "(" + NoteColumns.TYPE + "="
+            + Notes.TYPE_FOLDER + " AND " + NoteColumns.PARENT_ID + "<>"
+            + Notes.ID_TRASH_FOLER + ") OR " + NoteColumns.ID + "="
+            + Notes.ID_CALL_RECORD_FOLDER;
+
+    /**
+     * 选择条件：需要导出的文件夹、这些文件夹中的笔记以及根文件夹中的笔记。
+     */
+    public static final String SELECTION = "(" + TABLE.NOTE + "." + NoteColumns.TYPE
+            + "=" + Notes.TYPE_FOLDER + " AND " + TABLE.NOTE + "." + NoteColumns.PARENT_ID
+            + "<>" + Notes.ID_TRASH_FOLER + ") OR " + TABLE.NOTE + "." + NoteColumns.ID
+            + "=" + Notes.ID_CALL_RECORD_FOLDER + " OR (" + TABLE.NOTE + "."
+            + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE + " AND (" + TABLE.NOTE + "."
+            + NoteColumns.PARENT_ID + "=" + Notes.ID_ROOT_FOLDER + " OR " + TABLE.NOTE + "."
+            + NoteColumns.PARENT_ID + " IN (SELECT " + NoteColumns.ID + " FROM " + TABLE.NOTE
+            + " WHERE " + EXPORTED_FOLDER_SELECTION + ")))";
+
+    /**
+     * 排序：先输出各文件夹再输出根文件夹中的笔记，组内文件夹行在前，笔记和数据按 ID 排序。
+     */
+    public static final String SORT_ORDER = GROUP_EXPR + "=" + Notes.ID_ROOT_FOLDER
+            + "," + GROUP_EXPR + "," + TABLE.NOTE + "." + NoteColumns.TYPE + "="
+            + Notes.TYPE_NOTE + "," + TABLE.NOTE + "." + NoteColumns.ID + ","
+            + TABLE.DATA + "." + DataColumns.ID;
+
+    /**
+     * 投影，各列以逗号分隔，顺序与 TextExportWriter 的 COLUMN_* 相同。
+     */
+    public static final String COLUMNS = TABLE.NOTE + "." + NoteColumns.ID + ","
+            + TABLE.NOTE + "." + NoteColumns.TYPE + ","
+            + TABLE.NOTE + "." + NoteColumns.MODIFIED_DATE + ","
+            + TABLE.NOTE + "." + NoteColumns.SNIPPET + ","
+            + TABLE.DATA + "." + DataColumns.CONTENT + ","
+            + TABLE.DATA + "." + DataColumns.MIME_TYPE + ","
+            + TABLE.DATA + "." + DataColumns.DATA1 + ","
+            + TABLE.DATA + "." + DataColumns.DATA3 + ","
+            + CheckList.NOTE_TEXT_SQL + ","
+            + TABLE.DATA + "." + DataColumns.ID + ","
+            + TABLE.DATA + "." + TextNote.BODY_LENGTH + ","
+            + TABLE.NOTE + "." + NoteColumns.PARENT_ID;
+
+    private TextExportQuery() {
+    }
+}
@@ -23,13 +23,18 @@ import android.content.Intent;
 public class AlarmReceiver extends BroadcastReceiver {
     /**
      * 当接收到广播时，此方法会被调用。
-     * 它的主要作用是将接收到的意图（Intent）重定向到 AlarmAlertActivity 并启动该活动。
+     * 链式闹钟交给 {@link AlarmScheduler} 处理，其余意图重定向到 AlarmAlertActivity 并启动该活动。
      * 
      * @param context 广播接收器所在的上下文环境
      * @param intent  接收到的广播意图
      */
     @Override
     public void onReceive(Context context, Intent intent) {
+        if (AlarmScheduler.ACTION_ALERT_DUE.equals(intent.getAction())) {
+            // 提醒所有到期的便签并注册下一个提醒
+            AlarmScheduler.onAlarm(context, intent);
+            return;
+        }
         // 设置意图的目标类为 AlarmAlertActivity，这样当启动该意图时，会打开 AlarmAlertActivity
         intent.setClass(context, AlarmAlertActivity.class);
         // 为意图添加 FLAG_ACTIVITY_NEW_TASK 标志，用于在新的任务栈中启动活动
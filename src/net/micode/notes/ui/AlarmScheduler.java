@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.ui;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import net.micode.notes.data.Notes;
+import net.micode.notes.data.Notes.NoteColumns;
+
+/**
+ * 提醒调度器，只向系统注册一个链式闹钟，指向最近一个即将到来的提醒。
+ * 闹钟触发时提醒所有已到期的便签，然后借助提醒日期索引找到下一个提醒并重新注册。
+ */
+public class AlarmScheduler {
+    // 链式闹钟的广播动作
+    public static final String ACTION_ALERT_DUE = "net.micode.notes.action.ALERT_DUE";
+    // 链式闹钟对应的提醒时间
+    public static final String EXTRA_ALERT_DATE = "net.micode.notes.alert_date";
+
+    // 链式闹钟的请求码，与旧版本按便签注册的闹钟（请求码 0）区分开
+    private static final int REQUEST_CODE_NEXT_ALERT = 1;
+    // 旧版本按便签注册闹钟时使用的请求码
+    private static final int REQUEST_CODE_NOTE_ALERT = 0;
+
+    private static final String TAG = "AlarmScheduler";
+
+    private static final String [] ALERT_PROJECTION = new String [] {
+        NoteColumns.ID
+    };
+
+    private static final int COLUMN_ID = 0;
+
+    // 最近一个提醒的查询只取一行，由提醒日期索引直接定位
+    private static final Uri NEXT_ALERT_URI = Notes.CONTENT_NOTE_URI.buildUpon()
+            .appendQueryParameter(Notes.PARAM_LIMIT, "1").build();
+
+    /**
+     * 晚于指定时间且不在回收站中的提醒，参数为该时间。类型前的一元加号使类型索引不可用，
+     * 没有 ANALYZE 的统计信息时 SQLite 也按提醒日期索引查找，不会先取出全部笔记再排序。
+     */
+    public static final String NEXT_ALERT_SELECTION = NoteColumns.ALERTED_DATE + ">? AND +"
+            + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE + " AND " + NoteColumns.PARENT_ID + "<>"
+            + Notes.ID_TRASH_FOLER;
+
+    /**
+     * 注册晚于指定时间的最近一个提醒，没有提醒时取消链式闹钟。
+     * 批量修改了提醒、删除笔记或把笔记移入回收站之后都需要调用。
+     *
+     * @param context 上下文
+     * @param after 只考虑晚于该时间的提醒
+     */
+    public static void scheduleNext(Context context, long after) {
+        long nextDate = 0;
+        Cursor c = context.getContentResolver().query(NEXT_ALERT_URI,
+                new String [] { NoteColumns.ALERTED_DATE },
+                NEXT_ALERT_SELECTION, new String[] { String.valueOf(after) },
+                NoteColumns.ALERTED_DATE);
+        if (c != null) {
+            if (c.moveToFirst()) {
+                nextDate = c.getLong(0);
+            }
+            c.close();
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (nextDate > 0) {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, nextDate, getNextAlertIntent(context, nextDate));
+        } else {
+            alarmManager.cancel(getNextAlertIntent(context, 0));
+        }
+    }
+
+    /**
+     * 便签的提醒被设置或取消后调用，便签需已保存。只需重新计算链式闹钟，已过去的提醒单独注册以立即触发。
+     *
+     * @param context 上下文
+     * @param noteId 便签 ID
+     * @param date 提醒时间
+     * @param set 是否设置提醒
+     */
+    public static void onAlertChanged(Context context, long noteId, long date, boolean set) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // 取消旧版本为该便签单独注册的闹钟
+        PendingIntent noteIntent = getNoteAlertIntent(context, noteId);
+        alarmManager.cancel(noteIntent);
+
+        long now = System.currentTimeMillis();
+        if (set && date <= now) {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, date, noteIntent);
+        }
+        scheduleNext(context, now);
+    }
+
+    /**
+     * 链式闹钟触发时调用，提醒从闹钟时间到当前时间内到期的所有便签，然后注册下一个提醒。
+     *
+     * @param context 上下文
+     * @param intent 链式闹钟的意图
+     */
+    static void onAlarm(Context context, Intent intent) {
+        long now = System.currentTimeMillis();
+        long from = intent.getLongExtra(EXTRA_ALERT_DATE, now);
+        Cursor c = context.getContentResolver().query(Notes.CONTENT_NOTE_URI,
+                ALERT_PROJECTION,
+                // 与 NEXT_ALERT_SELECTION 相同，按提醒日期索引查找
+                NoteColumns.ALERTED_DATE + ">=? AND " + NoteColumns.ALERTED_DATE + "<=? AND +"
+                        + NoteColumns.TYPE + "=" + Notes.TYPE_NOTE,
+                new String[] { String.valueOf(from), String.valueOf(now) },
+                NoteColumns.ALERTED_DATE);
+        if (c != null) {
+            while (c.moveToNext()) {
+                Intent alert = new Intent(context, AlarmAlertActivity.class);
+                alert.setData(ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI,
+                        c.getLong(COLUMN_ID)));
+                alert.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                context.startActivity(alert);
+            }
+            c.close();
+        } else {
+            Log.e(TAG, "Query due alerts failed");
+        }
+        scheduleNext(context, now);
+    }
+
+    private static PendingIntent getNextAlertIntent(Context context, long alertDate) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_ALERT_DUE);
+        intent.putExtra(EXTRA_ALERT_DATE, alertDate);
+        return PendingIntent.getBroadcast(context, REQUEST_CODE_NEXT_ALERT, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static PendingIntent getNoteAlertIntent(Context context, long noteId) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setData(ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, noteId));
+        return PendingIntent.getBroadcast(context, REQUEST_CODE_NOTE_ALERT, intent, 0);
+    }
+}
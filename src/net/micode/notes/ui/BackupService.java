@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.ui;
+
+import android.app.IntentService;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.micode.notes.R;
+import net.micode.notes.tool.BackupUtils;
+import net.micode.notes.tool.NoteImporter;
+
+/**
+ * 在后台导入、备份和恢复笔记的服务。任务按提交顺序逐个执行，执行期间作为前台服务运行，
+ * 在通知中显示进度，结束后用通知报告结果。
+ */
+public class BackupService extends IntentService {
+    private static final String TAG = "BackupService";
+
+    // 导入 Intent 数据指向的文件
+    public static final String ACTION_IMPORT = "net.micode.notes.action.IMPORT";
+    // 增量备份为快照，没有上一次快照时为全量备份
+    public static final String ACTION_BACKUP = "net.micode.notes.action.BACKUP";
+    // 从最近的快照恢复，替换当前的全部笔记
+    public static final String ACTION_RESTORE = "net.micode.notes.action.RESTORE";
+
+    private static final int NOTIFICATION_ID = 5234236;
+    // 进度条的最大值
+    private static final int PROGRESS_MAX = 1000;
+    // 进度通知的最小更新间隔
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private NotificationManager mNotificationManager;
+    private long mLastProgressTime;
+
+    public BackupService() {
+        super(TAG);
+    }
+
+    /**
+     * 在后台导入文件。
+     *
+     * @param context 上下文
+     * @param uri 文件的 URI
+     */
+    public static void startImport(Context context, Uri uri) {
+        Intent intent = new Intent(context, BackupService.class);
+        intent.setAction(ACTION_IMPORT);
+        intent.setData(uri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startService(intent);
+    }
+
+    /**
+     * 在后台备份笔记。
+     *
+     * @param context 上下文
+     */
+    public static void startBackup(Context context) {
+        Intent intent = new Intent(context, BackupService.class);
+        intent.setAction(ACTION_BACKUP);
+        context.startService(intent);
+    }
+
+    /**
+     * 在后台从最近的快照恢复笔记。
+     *
+     * @param context 上下文
+     */
+    public static void startRestore(Context context) {
+        Intent intent = new Intent(context, BackupService.class);
+        intent.setAction(ACTION_RESTORE);
+        context.startService(intent);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String action = intent.getAction();
+        if (ACTION_IMPORT.equals(action) && intent.getData() != null) {
+            importNotes(intent.getData());
+        } else if (ACTION_BACKUP.equals(action)) {
+            backupNotes();
+        } else if (ACTION_RESTORE.equals(action)) {
+            restoreNotes();
+        } else {
+            Log.e(TAG, "Wrong intent " + intent);
+        }
+    }
+
+    private void importNotes(Uri uri) {
+        startForeground(NOTIFICATION_ID, buildProgress(R.string.ticker_importing, null, 0, 0));
+        NoteImporter importer = new NoteImporter(this);
+        int state;
+        try {
+            state = importer.importFromUri(uri, new NoteImporter.ImportListener() {
+                public void onProgress(long bytesRead, long totalBytes, int notesImported) {
+                    updateProgress(R.string.ticker_importing,
+                            getString(R.string.format_import_progress, notesImported),
+                            bytesRead, totalBytes);
+                }
+
+                public boolean isCancelled() {
+                    return false;
+                }
+            });
+        } finally {
+            stopForeground(true);
+        }
+
+        int count = importer.getImportedCount();
+        if (state == BackupUtils.STATE_SUCCESS) {
+            showResult(R.string.success_import, getString(R.string.format_import_count, count));
+        } else if (state == BackupUtils.STATE_BACKUP_FILE_NOT_EXIST) {
+            showResult(R.string.failed_import, getString(R.string.error_import_file_not_exist));
+        } else if (state == BackupUtils.STATE_DATA_DESTROIED && count == 0) {
+            showResult(R.string.failed_import, getString(R.string.error_import_format));
+        } else {
+            showResult(R.string.failed_import, getString(R.string.format_import_stopped, count));
+        }
+    }
+
+    private void backupNotes() {
+        startForeground(NOTIFICATION_ID, buildProgress(R.string.ticker_backing_up, null, 0, 0));
+        int state;
+        try {
+            state = BackupUtils.getInstance(this).backupSnapshot(true,
+                    newSnapshotListener(R.string.ticker_backing_up));
+        } finally {
+            stopForeground(true);
+        }
+
+        if (state == BackupUtils.STATE_SUCCESS) {
+            showResult(R.string.success_backup, null);
+        } else if (state == BackupUtils.STATE_SD_CARD_UNMOUONTED) {
+            showResult(R.string.failed_backup, getString(R.string.error_sdcard_unmounted));
+        } else {
+            showResult(R.string.failed_backup, getString(R.string.error_sdcard_export));
+        }
+    }
+
+    private void restoreNotes() {
+        startForeground(NOTIFICATION_ID, buildProgress(R.string.ticker_restoring, null, 0, 0));
+        int state;
+        try {
+            state = BackupUtils.getInstance(this).restoreSnapshot(
+                    newSnapshotListener(R.string.ticker_restoring));
+        } finally {
+            stopForeground(true);
+        }
+
+        if (state == BackupUtils.STATE_SUCCESS) {
+            showResult(R.string.success_restore, null);
+        } else if (state == BackupUtils.STATE_SD_CARD_UNMOUONTED) {
+            showResult(R.string.failed_restore, getString(R.string.error_sdcard_unmounted));
+        } else if (state == BackupUtils.STATE_BACKUP_FILE_NOT_EXIST) {
+            showResult(R.string.failed_restore, getString(R.string.error_backup_not_exist));
+        } else if (state == BackupUtils.STATE_DATA_DESTROIED) {
+            showResult(R.string.failed_restore, getString(R.string.error_backup_destroyed));
+        } else {
+            showResult(R.string.failed_restore, getString(R.string.error_restore));
+        }
+    }
+
+    private BackupUtils.ExportListener newSnapshotListener(final int titleId) {
+        return new BackupUtils.ExportListener() {
+            public void onProgress(int current, int total) {
+                updateProgress(titleId, getString(R.string.format_backup_progress, current, total),
+                        current, total);
+            }
+
+            public boolean isCancelled() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 更新进度通知，更新过于频繁时跳过。
+     */
+    private void updateProgress(int titleId, String text, long current, long total) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastProgressTime < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        mLastProgressTime = now;
+        mNotificationManager.notify(NOTIFICATION_ID, buildProgress(titleId, text, current, total));
+    }
+
+    /**
+     * 生成进度通知，总量未知时显示不确定的进度条。
+     */
+    @SuppressWarnings("deprecation")
+    private Notification buildProgress(int titleId, String text, long current, long total) {
+        int progress = total > 0 ? (int) (Math.min(current, total) * PROGRESS_MAX / total) : 0;
+        return new Notification.Builder(this)
+                .setSmallIcon(R.drawable.notification)
+                .setContentTitle(getString(titleId))
+                .setContentText(text)
+                .setContentIntent(getListIntent())
+                .setOngoing(true)
+                .setProgress(PROGRESS_MAX, progress, total <= 0)
+                .getNotification();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void showResult(int titleId, String text) {
+        Notification notification = new Notification.Builder(this)
+                .setSmallIcon(R.drawable.notification)
+                .setTicker(getString(titleId))
+                .setContentTitle(getString(titleId))
+                .setContentText(text)
+                .setContentIntent(getListIntent())
+                .setAutoCancel(true)
+                .getNotification();
+        mNotificationManager.notify(NOTIFICATION_ID, notification);
+    }
+
+    private PendingIntent getListIntent() {
+        return PendingIntent.getActivity(this, 0, new Intent(this, NotesListActivity.class), 0);
+    }
+}
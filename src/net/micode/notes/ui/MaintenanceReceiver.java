@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.ui;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * 数据库维护的定时任务。
+ * 每小时被唤醒一次检查条件，只有在充电且屏幕关闭、距上次维护已满一天时才启动
+ * {@link MaintenanceService} 在后台执行维护。
+ */
+public class MaintenanceReceiver extends BroadcastReceiver {
+    /**
+     * 注册每小时一次的非精确闹钟，重复注册会替换原来的闹钟。
+     *
+     * @param context 上下文
+     */
+    public static void schedule(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(context, MaintenanceReceiver.class), 0);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_HOUR,
+                AlarmManager.INTERVAL_HOUR, pendingIntent);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences settings = appContext.getSharedPreferences(
+                NotesPreferenceActivity.PREFERENCE_NAME, Context.MODE_PRIVATE);
+        if (!MaintenanceService.isDue(settings) || !isIdleAndCharging(appContext)) {
+            return;
+        }
+        MaintenanceService.start(appContext);
+    }
+
+    /**
+     * 设备正在充电且屏幕关闭时视为空闲窗口。
+     */
+    private static boolean isIdleAndCharging(Context context) {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager.isScreenOn()) {
+            return false;
+        }
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+}
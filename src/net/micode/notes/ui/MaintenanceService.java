@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.ui;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.PowerManager;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import net.micode.notes.data.Notes;
+import net.micode.notes.tool.DataUtils;
+
+/**
+ * 执行数据库维护的服务，由 {@link MaintenanceReceiver} 在空闲窗口启动：
+ * 压缩冷数据、清理回收站中超过保留期的笔记、回收空闲页并更新统计信息。
+ * 启动前获取部分唤醒锁，维护结束后释放，执行期间 CPU 不会休眠。
+ * 最近一次维护的结果记录在偏好设置中，便于检查。
+ */
+public class MaintenanceService extends IntentService {
+    private static final String TAG = "MaintenanceService";
+
+    // 回收站中笔记的保留天数
+    private static final int TRASH_RETENTION_DAYS = 30;
+    // 冷数据默认天数
+    private static final String DEFAULT_COLD_CONTENT_DAYS = "30";
+
+    // 最近一次维护的时间
+    public static final String PREFERENCE_LAST_MAINTENANCE_TIME = "pref_last_maintenance_time";
+    // 最近一次维护后的数据库大小
+    public static final String PREFERENCE_MAINTENANCE_DB_SIZE = "pref_maintenance_db_size";
+    // 最近一次维护的耗时
+    public static final String PREFERENCE_MAINTENANCE_DURATION = "pref_maintenance_duration";
+    // 最近一次维护删除的回收站笔记数
+    public static final String PREFERENCE_MAINTENANCE_PURGED = "pref_maintenance_purged";
+    // 最近一次维护压缩的数据行数
+    public static final String PREFERENCE_MAINTENANCE_COMPRESSED = "pref_maintenance_compressed";
+
+    // 从启动到维护结束期间持有的唤醒锁，每次启动获取一次，每次执行结束释放一次
+    private static PowerManager.WakeLock sWakeLock;
+
+    public MaintenanceService() {
+        super(TAG);
+    }
+
+    /**
+     * 获取唤醒锁并启动维护，广播接收器返回后 CPU 也不会在服务开始执行前休眠。
+     *
+     * @param context 上下文
+     */
+    public static void start(Context context) {
+        synchronized (MaintenanceService.class) {
+            if (sWakeLock == null) {
+                PowerManager powerManager = (PowerManager) context.getApplicationContext()
+                        .getSystemService(Context.POWER_SERVICE);
+                sWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+            }
+            sWakeLock.acquire();
+        }
+        if (context.startService(new Intent(context, MaintenanceService.class)) == null) {
+            Log.e(TAG, "start maintenance service failed");
+            releaseWakeLock();
+        }
+    }
+
+    /**
+     * 距上次维护是否已满一天。
+     *
+     * @param settings 记录维护结果的偏好设置
+     */
+    static boolean isDue(SharedPreferences settings) {
+        return System.currentTimeMillis() - settings.getLong(PREFERENCE_LAST_MAINTENANCE_TIME, 0)
+                >= AlarmManager.INTERVAL_DAY;
+    }
+
+    private static void releaseWakeLock() {
+        synchronized (MaintenanceService.class) {
+            if (sWakeLock != null && sWakeLock.isHeld()) {
+                sWakeLock.release();
+            }
+        }
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            SharedPreferences settings = getSharedPreferences(
+                    NotesPreferenceActivity.PREFERENCE_NAME, Context.MODE_PRIVATE);
+            // 排队期间可能已经执行过一次
+            if (isDue(settings)) {
+                runMaintenance(this, settings);
+            }
+        } finally {
+            releaseWakeLock();
+        }
+    }
+
+    private static void runMaintenance(Context context, SharedPreferences settings) {
+        long now = System.currentTimeMillis();
+        settings.edit().putLong(PREFERENCE_LAST_MAINTENANCE_TIME, now).commit();
+
+        int compressed = 0;
+        int coldDays = getColdContentDays(context);
+        if (coldDays > 0) {
+            compressed = DataUtils.compressColdContent(context.getContentResolver(),
+                    now - coldDays * AlarmManager.INTERVAL_DAY);
+        }
+
+        // 设置了同步账户时，已同步过的笔记要等同步删除远端后再删除
+        boolean keepSynced = !TextUtils.isEmpty(
+                NotesPreferenceActivity.getSyncAccountName(context));
+        Bundle stats = DataUtils.runMaintenance(context.getContentResolver(),
+                now - TRASH_RETENTION_DAYS * AlarmManager.INTERVAL_DAY, keepSynced);
+        if (stats == null) {
+            return;
+        }
+        settings.edit()
+                .putLong(PREFERENCE_MAINTENANCE_DB_SIZE, stats.getLong(Notes.EXTRA_DB_SIZE_AFTER))
+                .putLong(PREFERENCE_MAINTENANCE_DURATION,
+                        stats.getLong(Notes.EXTRA_MAINTENANCE_DURATION))
+                .putInt(PREFERENCE_MAINTENANCE_PURGED, stats.getInt(Notes.EXTRA_PURGED_NOTES))
+                .putInt(PREFERENCE_MAINTENANCE_COMPRESSED, compressed)
+                .commit();
+        Log.i(TAG, "Maintenance done, size " + stats.getLong(Notes.EXTRA_DB_SIZE_BEFORE) + "->"
+                + stats.getLong(Notes.EXTRA_DB_SIZE_AFTER) + ", purged "
+                + stats.getInt(Notes.EXTRA_PURGED_NOTES) + ", compressed " + compressed
+                + ", reindexed " + stats.getBoolean(Notes.EXTRA_REINDEXED) + ", took "
+                + stats.getLong(Notes.EXTRA_MAINTENANCE_DURATION) + "ms (purge "
+                + stats.getLong(Notes.EXTRA_PURGE_DURATION) + ", reindex "
+                + stats.getLong(Notes.EXTRA_REINDEX_DURATION) + ", vacuum "
+                + stats.getLong(Notes.EXTRA_VACUUM_DURATION) + ", analyze "
+                + stats.getLong(Notes.EXTRA_ANALYZE_DURATION) + ")");
+    }
+
+    private static int getColdContentDays(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        try {
+            return Integer.parseInt(sp.getString(NotesPreferenceActivity.PREFERENCE_COLD_CONTENT_DAYS,
+                    DEFAULT_COLD_CONTENT_DAYS));
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Wrong cold content days", e);
+            return 0;
+        }
+    }
+}
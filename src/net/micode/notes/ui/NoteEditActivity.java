@@ -34,6 +34,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Paint;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -58,8 +59,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import net.micode.notes.R;
+import net.micode.notes.core.CheckListText;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.TextNote;
+import net.micode.notes.model.CheckList;
 import net.micode.notes.model.WorkingNote;
 import net.micode.notes.model.WorkingNote.NoteSettingChangedListener;
 import net.micode.notes.tool.DataUtils;
@@ -67,8 +70,7 @@ import net.micode.notes.tool.ResourceParser;
 import net.micode.notes.tool.ResourceParser.TextAppearanceResources;
 import net.micode.notes.ui.DateTimePickerDialog.OnDateTimeSetListener;
 import net.micode.notes.ui.NoteEditText.OnTextViewChangeListener;
-import net.micode.notes.widget.NoteWidgetProvider_2x;
-import net.micode.notes.widget.NoteWidgetProvider_4x;
+import net.micode.notes.widget.NoteWidgetRefresher;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -191,9 +193,9 @@ public class NoteEditActivity extends Activity implements OnClickListener,
     private static final int SHORTCUT_ICON_TITLE_MAX_LEN = 10;
 
     // 已勾选标记
-    public static final String TAG_CHECKED = String.valueOf('\u221A');
+    public static final String TAG_CHECKED = CheckList.TAG_CHECKED;
     // 未勾选标记
-    public static final String TAG_UNCHECKED = String.valueOf('\u25A1');
+    public static final String TAG_UNCHECKED = CheckList.TAG_UNCHECKED;
 
     // 编辑文本列表的 LinearLayout
     private LinearLayout mEditTextList;
@@ -203,6 +205,24 @@ public class NoteEditActivity extends Activity implements OnClickListener,
     // 用于匹配用户查询关键词的正则表达式模式
     private Pattern mPattern;
 
+    // 超过该字符数的正文分段载入编辑器
+    private static final int PROGRESSIVE_LOAD_CHARS = 32 * 1024;
+    // 分段载入时每段的字符数
+    private static final int LOAD_CHUNK_CHARS = 16 * 1024;
+
+    // 尚未载入编辑器的正文及已载入的位置
+    private String mPendingText;
+    private int mPendingOffset;
+    private final Handler mLoadHandler = new Handler();
+    private final Runnable mLoadRunnable = new Runnable() {
+        public void run() {
+            appendNextChunk();
+            if (mPendingText != null) {
+                mLoadHandler.post(this);
+            }
+        }
+    };
+
     /**
      * 活动创建时调用的方法，用于初始化界面和状态。
      * @param savedInstanceState 保存的实例状态
@@ -354,6 +374,58 @@ public class NoteEditActivity extends Activity implements OnClickListener,
         initNoteScreen();
     }
 
+    /**
+     * 开始分段载入正文，编辑器中先显示第一段。
+     * @param content 完整正文
+     */
+    private void startProgressiveLoad(String content) {
+        cancelProgressiveLoad();
+        mPendingText = content;
+        mPendingOffset = 0;
+        mNoteEditor.setText("");
+        appendNextChunk();
+        if (mPendingText != null) {
+            mLoadHandler.post(mLoadRunnable);
+        }
+    }
+
+    /**
+     * 追加下一段正文，不拆开代理对，全部载入后清除待载入的正文。
+     */
+    private void appendNextChunk() {
+        int end = Math.min(mPendingOffset + LOAD_CHUNK_CHARS, mPendingText.length());
+        if (end < mPendingText.length() && Character.isHighSurrogate(mPendingText.charAt(end - 1))) {
+            end--;
+        }
+        mNoteEditor.append(getHighlightQueryResult(mPendingText.substring(mPendingOffset, end),
+                mUserQuery));
+        mPendingOffset = end;
+        if (mPendingOffset >= mPendingText.length()) {
+            mPendingText = null;
+        }
+    }
+
+    /**
+     * 立即载入剩余的正文，读取编辑器文本前调用，避免保存不完整的正文。
+     */
+    private void finishProgressiveLoad() {
+        if (mPendingText == null) {
+            return;
+        }
+        mLoadHandler.removeCallbacks(mLoadRunnable);
+        mNoteEditor.append(getHighlightQueryResult(mPendingText.substring(mPendingOffset),
+                mUserQuery));
+        mPendingText = null;
+    }
+
+    /**
+     * 取消分段载入。
+     */
+    private void cancelProgressiveLoad() {
+        mLoadHandler.removeCallbacks(mLoadRunnable);
+        mPendingText = null;
+    }
+
     /**
      * 初始化笔记界面的方法，设置笔记编辑器的文本外观、显示模式、背景颜色等。
      */
@@ -362,13 +434,20 @@ public class NoteEditActivity extends Activity implements OnClickListener,
         mNoteEditor.setTextAppearance(this, TextAppearanceResources
                 .getTexAppearanceResource(mFontSizeId));
         if (mWorkingNote.getCheckListMode() == TextNote.MODE_CHECK_LIST) {
-            // 如果是列表模式，切换到列表模式并显示笔记内容
-            switchToListMode(mWorkingNote.getContent());
+            // 如果是列表模式，切换到列表模式并显示清单条目
+            switchToListMode();
         } else {
             // 如果不是列表模式，设置笔记编辑器的文本并高亮显示查询结果
-            mNoteEditor.setText(getHighlightQueryResult(mWorkingNote.getContent(), mUserQuery));
-            // 将光标移动到文本末尾
-            mNoteEditor.setSelection(mNoteEditor.getText().length());
+            String content = mWorkingNote.getContent();
+            if (content != null && content.length() > PROGRESSIVE_LOAD_CHARS) {
+                // 正文较长时先显示第一段，其余分段追加，光标保持在开头
+                startProgressiveLoad(content);
+            } else {
+                cancelProgressiveLoad();
+                mNoteEditor.setText(getHighlightQueryResult(content, mUserQuery));
+                // 将光标移动到文本末尾
+                mNoteEditor.setSelection(mNoteEditor.getText().length());
+            }
         }
         // 隐藏所有背景选择选中状态视图
         for (Integer id : sBgSelectorSelectionMap.keySet()) {
@@ -562,31 +641,17 @@ public class NoteEditActivity extends Activity implements OnClickListener,
     }
 
     /**
-     * 更新小部件的方法，根据笔记的小部件类型发送广播更新小部件。
+     * 更新小部件的方法，由小部件刷新器合并短时间内的多次刷新后发送广播。
      */
     private void updateWidget() {
-        Intent intent = new Intent(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
-        if (mWorkingNote.getWidgetType() == Notes.TYPE_WIDGET_2X) {
-            // 如果是 2x 小部件，设置广播的目标类为 NoteWidgetProvider_2x
-            intent.setClass(this, NoteWidgetProvider_2x.class);
-        } else if (mWorkingNote.getWidgetType() == Notes.TYPE_WIDGET_4X) {
-            // 如果是 4x 小部件，设置广播的目标类为 NoteWidgetProvider_4x
-            intent.setClass(this, NoteWidgetProvider_4x.class);
-        } else {
-            // 如果是不支持的小部件类型，记录错误日志并返回
-            Log.e(TAG, "Unspported widget type");
+        if (!NoteWidgetRefresher.getInstance(this).requestUpdate(mWorkingNote.getWidgetId(),
+                mWorkingNote.getWidgetType())) {
+            // 如果是不支持的小部件类型，直接返回
             return;
         }
 
-        // 设置广播的小部件 ID
-        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int[] {
-            mWorkingNote.getWidgetId()
-        });
-
-        // 发送广播更新小部件
-        sendBroadcast(intent);
         // 设置活动结果为成功
-        setResult(RESULT_OK, intent);
+        setResult(RESULT_OK);
     }
 
     /**
@@ -615,7 +680,7 @@ public class NoteEditActivity extends Activity implements OnClickListener,
             if (mWorkingNote.getCheckListMode() == TextNote.MODE_CHECK_LIST) {
                 // 如果是列表模式，获取工作文本并切换到列表模式
                 getWorkingText();
-                switchToListMode(mWorkingNote.getContent());
+                switchToListMode();
             } else {
                 // 如果不是列表模式，设置笔记编辑器的文本外观
                 mNoteEditor.setTextAppearance(this,
@@ -746,7 +811,8 @@ public class NoteEditActivity extends Activity implements OnClickListener,
                 findViewById(sFontSelectorSelectionMap.get(mFontSizeId)).setVisibility(View.VISIBLE);
                 break;
             case R.id.menu_list_mode:
-                // 如果点击的是列表模式菜单项，切换笔记的显示模式
+                // 如果点击的是列表模式菜单项，先记录当前编辑的内容再切换笔记的显示模式
+                getWorkingText();
                 mWorkingNote.setCheckListMode(mWorkingNote.getCheckListMode() == 0 ?
                         TextNote.MODE_CHECK_LIST : 0);
                 break;
@@ -844,6 +910,9 @@ public class NoteEditActivity extends Activity implements OnClickListener,
                     Log.e(TAG, "Move notes to trash folder error, should not happens");
                 }
             }
+            if (mWorkingNote.hasClockAlert()) {
+                AlarmScheduler.scheduleNext(this, System.currentTimeMillis());
+            }
         }
         // 标记笔记为已删除
         mWorkingNote.markDeleted(true);
@@ -864,26 +933,15 @@ public class NoteEditActivity extends Activity implements OnClickListener,
      */
     public void onClockAlertChanged(long date, boolean set) {
         /**
-         * 用户可以为未保存的笔记设置时钟提醒，因此在设置提醒时钟之前，应先保存笔记
+         * 用户可以为未保存的笔记设置时钟提醒，因此在设置提醒时钟之前，应先保存笔记；
+         * 已有笔记同样先保存，调度器需要从数据库中读取最新的提醒时间
          */
-        if (!mWorkingNote.existInDatabase()) {
-            // 如果笔记未保存，保存笔记
-            saveNote();
-        }
+        saveNote();
         if (mWorkingNote.getNoteId() > 0) {
-            Intent intent = new Intent(this, AlarmReceiver.class);
-            intent.setData(ContentUris.withAppendedId(Notes.CONTENT_NOTE_URI, mWorkingNote.getNoteId()));
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(this, 0, intent, 0);
-            AlarmManager alarmManager = ((AlarmManager) getSystemService(ALARM_SERVICE));
             // 显示提醒头部信息
             showAlertHeader();
-            if(!set) {
-                // 如果取消提醒，取消闹钟
-                alarmManager.cancel(pendingIntent);
-            } else {
-                // 如果设置提醒，设置闹钟
-                alarmManager.set(AlarmManager.RTC_WAKEUP, date, pendingIntent);
-            }
+            // 重新注册最近一个提醒的闹钟
+            AlarmScheduler.onAlertChanged(this, mWorkingNote.getNoteId(), date, set);
         } else {
             /**
              * 存在用户未输入任何内容（笔记不值得保存）的情况，此时没有笔记 ID，提醒用户应输入内容
@@ -919,8 +977,9 @@ public class NoteEditActivity extends Activity implements OnClickListener,
                     .setIndex(i - 1);
         }
 
-        // 从编辑文本列表中移除指定索引的子项
+        // 从编辑文本列表和清单中移除指定索引的子项
         mEditTextList.removeViewAt(index);
+        mWorkingNote.getCheckList().removeItem(index);
         NoteEditText edit = null;
         if(index == 0) {
             // 如果删除的是第一个子项，获取第一个子项的编辑文本
@@ -955,9 +1014,10 @@ public class NoteEditActivity extends Activity implements OnClickListener,
         }
 
         // 获取新的编辑文本项视图
-        View view = getListItem(text, index);
-        // 将新的编辑文本项视图添加到指定索引位置
+        View view = getListItem(text, false, index);
+        // 将新的编辑文本项视图和清单条目添加到指定索引位置
         mEditTextList.addView(view, index);
+        mWorkingNote.getCheckList().addItem(index, false, text);
         NoteEditText edit = (NoteEditText) view.findViewById(R.id.et_edit_text);
         // 请求焦点
         edit.requestFocus();
@@ -971,24 +1031,22 @@ public class NoteEditActivity extends Activity implements OnClickListener,
     }
 
     /**
-     * 切换到列表模式的方法，将笔记内容显示为列表模式。
-     * @param text 笔记内容
+     * 切换到列表模式的方法，将笔记的清单条目显示为列表模式，每个编辑文本项对应一个清单条目。
      */
-    private void switchToListMode(String text) {
+    private void switchToListMode() {
         // 清空编辑文本列表
         mEditTextList.removeAllViews();
-        // 将笔记内容按换行符分割成多个项
-        String[] items = text.split("\n");
+        CheckList checkList = mWorkingNote.getCheckList();
+        // 去掉上次显示时遗留的空条目
+        checkList.removeEmptyItems();
         int index = 0;
-        for (String item : items) {
-            if(!TextUtils.isEmpty(item)) {
-                // 如果项不为空，将项添加到编辑文本列表中
-                mEditTextList.addView(getListItem(item, index));
-                index++;
-            }
+        for (; index < checkList.size(); index++) {
+            mEditTextList.addView(getListItem(checkList.getText(index),
+                    checkList.isChecked(index), index));
         }
         // 添加一个空的编辑文本项
-        mEditTextList.addView(getListItem("", index));
+        checkList.addItem(index, false, "");
+        mEditTextList.addView(getListItem("", false, index));
         // 请求焦点
         mEditTextList.getChildAt(index).findViewById(R.id.et_edit_text).requestFocus();
 
@@ -1024,12 +1082,13 @@ public class NoteEditActivity extends Activity implements OnClickListener,
     }
 
     /**
-     * 获取列表项视图的方法，根据项内容和索引创建列表项视图。
+     * 获取列表项视图的方法，根据项内容、勾选状态和索引创建列表项视图。
      * @param item 项内容
+     * @param checked 是否已勾选
      * @param index 项索引
      * @return 列表项视图
      */
-    private View getListItem(String item, int index) {
+    private View getListItem(String item, boolean checked, int index) {
         // 从布局文件中加载列表项视图
         View view = LayoutInflater.from(this).inflate(R.layout.note_edit_list_item, null);
         final NoteEditText edit = (NoteEditText) view.findViewById(R.id.et_edit_text);
@@ -1048,16 +1107,14 @@ public class NoteEditActivity extends Activity implements OnClickListener,
             }
         });
 
-        if (item.startsWith(TAG_CHECKED)) {
-            // 如果项内容以已勾选标记开头，设置复选框为选中状态并设置编辑文本的删除线效果
+        if (checked) {
+            // 如果项已勾选，设置复选框为选中状态并设置编辑文本的删除线效果
             cb.setChecked(true);
             edit.setPaintFlags(edit.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-            item = item.substring(TAG_CHECKED.length(), item.length()).trim();
-        } else if (item.startsWith(TAG_UNCHECKED)) {
-            // 如果项内容以未勾选标记开头，设置复选框为未选中状态并清除编辑文本的删除线效果
+        } else {
+            // 如果项未勾选，设置复选框为未选中状态并清除编辑文本的删除线效果
             cb.setChecked(false);
             edit.setPaintFlags(Paint.ANTI_ALIAS_FLAG | Paint.DEV_KERN_TEXT_FLAG);
-            item = item.substring(TAG_UNCHECKED.length(), item.length()).trim();
         }
 
         // 设置编辑文本的文本改变监听器
@@ -1095,16 +1152,12 @@ public class NoteEditActivity extends Activity implements OnClickListener,
      * @param newMode 新的列表模式
      */
     public void onCheckListModeChanged(int oldMode, int newMode) {
+        cancelProgressiveLoad();
         if (newMode == TextNote.MODE_CHECK_LIST) {
-            // 如果新的列表模式是列表模式，切换到列表模式
-            switchToListMode(mNoteEditor.getText().toString());
+            // 如果新的列表模式是列表模式，切换到列表模式，正文已由 WorkingNote 拆分为清单条目
+            switchToListMode();
         } else {
-            if (!getWorkingText()) {
-                // 如果获取工作文本失败，去除笔记内容中的未勾选标记
-                mWorkingNote.setWorkingText(mWorkingNote.getContent().replace(TAG_UNCHECKED + " ",
-                        ""));
-            }
-            // 设置笔记编辑器的文本并高亮显示查询结果
+            // 清单条目已由 WorkingNote 合并为正文，设置笔记编辑器的文本并高亮显示查询结果
             mNoteEditor.setText(getHighlightQueryResult(mWorkingNote.getContent(), mUserQuery));
             // 隐藏编辑文本列表
             mEditTextList.setVisibility(View.GONE);
@@ -1115,30 +1168,25 @@ public class NoteEditActivity extends Activity implements OnClickListener,
 
     /**
      * 获取工作文本的方法，根据笔记的显示模式获取笔记内容。
+     * 列表模式下只把发生变化的条目记录到清单中，保存时逐条更新。
      * @return 如果笔记中有已勾选的项返回 true，否则返回 false
      */
     private boolean getWorkingText() {
         boolean hasChecked = false;
         if (mWorkingNote.getCheckListMode() == TextNote.MODE_CHECK_LIST) {
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < mEditTextList.getChildCount(); i++) {
+            CheckList checkList = mWorkingNote.getCheckList();
+            int count = Math.min(mEditTextList.getChildCount(), checkList.size());
+            for (int i = 0; i < count; i++) {
                 View view = mEditTextList.getChildAt(i);
                 NoteEditText edit = (NoteEditText) view.findViewById(R.id.et_edit_text);
-                if (!TextUtils.isEmpty(edit.getText())) {
-                    if (((CheckBox) view.findViewById(R.id.cb_edit_item)).isChecked()) {
-                        // 如果复选框被选中，添加已勾选标记和编辑文本内容
-                        sb.append(TAG_CHECKED).append(" ").append(edit.getText()).append("\n");
-                        hasChecked = true;
-                    } else {
-                        // 如果复选框未被选中，添加未勾选标记和编辑文本内容
-                        sb.append(TAG_UNCHECKED).append(" ").append(edit.getText()).append("\n");
-                    }
-                }
+                checkList.setText(i, edit.getText().toString());
+                checkList.setChecked(i,
+                        ((CheckBox) view.findViewById(R.id.cb_edit_item)).isChecked());
             }
-            // 设置工作文本
-            mWorkingNote.setWorkingText(sb.toString());
+            hasChecked = checkList.hasChecked();
         } else {
             // 如果不是列表模式，设置工作文本为笔记编辑器的文本
+            finishProgressiveLoad();
             mWorkingNote.setWorkingText(mNoteEditor.getText().toString());
         }
         return hasChecked;
@@ -1206,10 +1254,8 @@ public class NoteEditActivity extends Activity implements OnClickListener,
      * @return 生成的快捷图标标题
      */
     private String makeShortcutIconTitle(String content) {
-        // 去除笔记内容中的已勾选标记
-        content = content.replace(TAG_CHECKED, "");
-        // 去除笔记内容中的未勾选标记
-        content = content.replace(TAG_UNCHECKED, "");
+        // 去除笔记内容中的勾选标记
+        content = CheckListText.stripTags(content);
         return content.length() > SHORTCUT_ICON_TITLE_MAX_LEN ? content.substring(0,
                 SHORTCUT_ICON_TITLE_MAX_LEN) : content;
     }
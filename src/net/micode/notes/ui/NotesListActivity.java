@@ -20,16 +20,19 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.appwidget.AppWidgetManager;
-import android.content.AsyncQueryHandler;
+import android.content.ActivityNotFoundException;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.database.Cursor;
-import android.os.AsyncTask;
+import android.database.MatrixCursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.text.Editable;
 import android.text.TextUtils;
@@ -61,16 +64,19 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import net.micode.notes.R;
+import net.micode.notes.core.PerfStats;
+import net.micode.notes.data.FolderTree;
+import net.micode.notes.data.NoteChangeSet;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.NoteColumns;
 import net.micode.notes.gtask.remote.GTaskSyncService;
 import net.micode.notes.model.WorkingNote;
 import net.micode.notes.tool.BackupUtils;
+import net.micode.notes.tool.DataAccessExecutor;
 import net.micode.notes.tool.DataUtils;
 import net.micode.notes.tool.ResourceParser;
 import net.micode.notes.ui.NotesListAdapter.AppWidgetAttribute;
-import net.micode.notes.widget.NoteWidgetProvider_2x;
-import net.micode.notes.widget.NoteWidgetProvider_4x;
+import net.micode.notes.widget.NoteWidgetRefresher;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -116,8 +122,17 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
     // 当前列表编辑状态
     private ListEditState mState;
 
-    // 用于在后台执行查询操作的处理程序
-    private BackgroundQueryHandler mBackgroundQueryHandler;
+    // 在后台执行查询和批量操作的执行器
+    private DataAccessExecutor mExecutor;
+
+    // 合并短时间内多次变化通知的延迟，单位为毫秒
+    private static final long REQUERY_DELAY = 200;
+
+    // 用于延迟重新查询的处理程序
+    private Handler mRequeryHandler;
+
+    // 监听笔记变化的观察者
+    private NotesChangeObserver mNotesChangeObserver;
 
     // 笔记列表的适配器
     private NotesListAdapter mNotesListAdapter;
@@ -158,19 +173,12 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
     // 当前聚焦的笔记数据项
     private NoteItemData mFocusNoteDataItem;
 
-    // 普通选择条件，用于查询指定父文件夹下的笔记
-    private static final String NORMAL_SELECTION = NoteColumns.PARENT_ID + "=?";
-
-    // 根文件夹选择条件，用于查询根文件夹下的笔记和通话记录文件夹
-    private static final String ROOT_FOLDER_SELECTION = "(" + NoteColumns.TYPE + "<>"
-            + Notes.TYPE_SYSTEM + " AND " + NoteColumns.PARENT_ID + "=?)" + " OR ("
-            + NoteColumns.ID + "=" + Notes.ID_CALL_RECORD_FOLDER + " AND "
-            + NoteColumns.NOTES_COUNT + ">0)";
-
     // 打开笔记的请求码
     private final static int REQUEST_CODE_OPEN_NODE = 102;
     // 创建新笔记的请求码
     private final static int REQUEST_CODE_NEW_NODE  = 103;
+    // 选择导入文件的请求码
+    private final static int REQUEST_CODE_IMPORT    = 104;
 
     /**
      * 活动创建时调用，初始化界面和资源，并插入应用介绍笔记
@@ -187,6 +195,8 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
          * 当用户首次使用该应用时，插入一条介绍信息
          */
         setAppInfoFromRawRes();
+        // 注册空闲时的数据库维护
+        MaintenanceReceiver.schedule(this);
     }
 
     /**
@@ -201,6 +211,10 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
         if (resultCode == RESULT_OK
                 && (requestCode == REQUEST_CODE_OPEN_NODE || requestCode == REQUEST_CODE_NEW_NODE)) {
             mNotesListAdapter.changeCursor(null);
+        } else if (resultCode == RESULT_OK && requestCode == REQUEST_CODE_IMPORT
+                && data != null && data.getData() != null) {
+            BackupService.startImport(this, data.getData());
+            Toast.makeText(this, R.string.info_import_started, Toast.LENGTH_SHORT).show();
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
@@ -264,15 +278,70 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
     @Override
     protected void onStart() {
         super.onStart();
+        mContentResolver.registerContentObserver(Notes.CONTENT_NOTE_URI, true,
+                mNotesChangeObserver);
         startAsyncNotesListQuery();
     }
 
+    /**
+     * 活动停止时调用，不再监听笔记变化
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mContentResolver.unregisterContentObserver(mNotesChangeObserver);
+        mRequeryHandler.removeCallbacks(mRequeryRunnable);
+    }
+
+    /**
+     * 活动销毁时调用，取消尚未完成的查询
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mExecutor.cancelAll(this);
+    }
+
+    // 延迟执行的笔记列表查询
+    private final Runnable mRequeryRunnable = new Runnable() {
+        public void run() {
+            startAsyncNotesListQuery();
+        }
+    };
+
+    /**
+     * 笔记变化观察者，只在变化涉及列表结构或当前显示的笔记时重新查询，
+     * 并把短时间内的多次通知合并为一次查询
+     */
+    private final class NotesChangeObserver extends ContentObserver {
+        public NotesChangeObserver(Handler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            NoteChangeSet changes = NoteChangeSet.fromUri(uri);
+            if (changes.isDataOnly() && !mNotesListAdapter.isDisplayed(changes)) {
+                return;
+            }
+            mRequeryHandler.removeCallbacks(mRequeryRunnable);
+            mRequeryHandler.postDelayed(mRequeryRunnable, REQUERY_DELAY);
+        }
+    }
+
     /**
      * 初始化资源，包括视图、适配器、监听器等
      */
     private void initResources() {
         mContentResolver = this.getContentResolver();
-        mBackgroundQueryHandler = new BackgroundQueryHandler(this.getContentResolver());
+        mExecutor = DataAccessExecutor.getInstance();
+        mRequeryHandler = new Handler();
+        mNotesChangeObserver = new NotesChangeObserver(mRequeryHandler);
         mCurrentFolderId = Notes.ID_ROOT_FOLDER;
         mNotesListView = (ListView) findViewById(R.id.notes_list);
         mNotesListView.addFooterView(LayoutInflater.from(this).inflate(R.layout.note_list_footer, null),
@@ -541,48 +610,54 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
     };
 
     /**
-     * 启动异步笔记列表查询
+     * 启动异步笔记列表查询，尚未完成的上一次查询（例如切换前的文件夹）会被取消
      */
     private void startAsyncNotesListQuery() {
-        String selection = (mCurrentFolderId == Notes.ID_ROOT_FOLDER) ? ROOT_FOLDER_SELECTION
-                : NORMAL_SELECTION;
-        mBackgroundQueryHandler.startQuery(FOLDER_NOTE_LIST_QUERY_TOKEN, null,
-                Notes.CONTENT_NOTE_URI, NoteItemData.PROJECTION, selection, new String[] {
-                    String.valueOf(mCurrentFolderId)
-                }, NoteColumns.TYPE + " DESC," + NoteColumns.MODIFIED_DATE + " DESC");
+        final String selection = (mCurrentFolderId == Notes.ID_ROOT_FOLDER)
+                ? NoteItemData.ROOT_FOLDER_SELECTION : NoteItemData.NORMAL_SELECTION;
+        final String[] selectionArgs = new String[] {
+            String.valueOf(mCurrentFolderId)
+        };
+        mExecutor.submit(this, FOLDER_NOTE_LIST_QUERY_TOKEN,
+                DataAccessExecutor.PRIORITY_INTERACTIVE, new QueryTask(Notes.CONTENT_NOTE_URI,
+                        NoteItemData.PROJECTION, selection, selectionArgs,
+                        NoteItemData.SORT_ORDER),
+                new DataAccessExecutor.Callback<Cursor>() {
+                    public void onComplete(Cursor cursor) {
+                        mNotesListAdapter.changeCursor(cursor);
+                    }
+                });
     }
 
     /**
-     * 后台查询处理类，继承自AsyncQueryHandler，处理查询完成后的回调
+     * 后台查询任务，在后台线程中填充游标的第一个窗口，避免在主线程中读取数据
      */
-    private final class BackgroundQueryHandler extends AsyncQueryHandler {
-        public BackgroundQueryHandler(ContentResolver contentResolver) {
-            super(contentResolver);
+    private final class QueryTask implements DataAccessExecutor.Task<Cursor> {
+        private final Uri mUri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+
+        QueryTask(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                String sortOrder) {
+            mUri = uri;
+            mProjection = projection;
+            mSelection = selection;
+            mSelectionArgs = selectionArgs;
+            mSortOrder = sortOrder;
         }
 
-        /**
-         * 查询完成时调用，根据查询令牌处理不同的查询结果
-         *
-         * @param token  查询令牌
-         * @param cookie 额外信息
-         * @param cursor 查询结果的游标
-         */
-        @Override
-        protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
-            switch (token) {
-                case FOLDER_NOTE_LIST_QUERY_TOKEN:
-                    mNotesListAdapter.changeCursor(cursor);
-                    break;
-                case FOLDER_LIST_QUERY_TOKEN:
-                    if (cursor != null && cursor.getCount() > 0) {
-                        showFolderListMenu(cursor);
-                    } else {
-                        Log.e(TAG, "Query folder failed");
-                    }
-                    break;
-                default:
-                    return;
+        public Cursor run() {
+            Cursor cursor = mContentResolver.query(mUri, mProjection, mSelection, mSelectionArgs,
+                    mSortOrder);
+            if (cursor != null) {
+                // 查询在首次读取时执行，计时包含执行查询和填充第一个窗口
+                long start = PerfStats.start();
+                cursor.getCount();
+                PerfStats.record(PerfStats.LIST_FILL, start);
             }
+            return cursor;
         }
     }
 
@@ -632,39 +707,43 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
      * 批量删除笔记，根据同步模式将笔记直接删除或移动到回收站
      */
     private void batchDelete() {
-        new AsyncTask<Void, Void, HashSet<AppWidgetAttribute>>() {
+        // 选中状态属于界面，在主线程中取出
+        final HashSet<Long> ids = mNotesListAdapter.getSelectedItemIds();
+        final boolean syncMode = isSyncMode();
+        mExecutor.submit(DataAccessExecutor.PRIORITY_INTERACTIVE,
+                new DataAccessExecutor.Task<HashSet<AppWidgetAttribute>>() {
             /**
              * 在后台执行批量删除操作，返回受影响的小部件列表
              *
-             * @param unused 未使用的参数
              * @return 受影响的小部件列表
              */
-            protected HashSet<AppWidgetAttribute> doInBackground(Void... unused) {
-                HashSet<AppWidgetAttribute> widgets = mNotesListAdapter.getSelectedWidget();
-                if (!isSyncMode()) {
+            public HashSet<AppWidgetAttribute> run() {
+                // 删除前取出受影响的小部件
+                HashSet<AppWidgetAttribute> widgets = DataUtils.getNoteWidgets(mContentResolver,
+                        ids);
+                if (!syncMode) {
                     // 如果未同步，直接删除笔记
-                    if (DataUtils.batchDeleteNotes(mContentResolver, mNotesListAdapter
-                            .getSelectedItemIds())) {
-                    } else {
+                    if (!DataUtils.batchDeleteNotes(mContentResolver, ids)) {
                         Log.e(TAG, "Delete notes error, should not happens");
                     }
                 } else {
                     // 在同步模式下，将删除的笔记移动到回收站
-                    if (!DataUtils.batchMoveToFolder(mContentResolver, mNotesListAdapter
-                            .getSelectedItemIds(), Notes.ID_TRASH_FOLER)) {
+                    if (!DataUtils.batchMoveToFolder(mContentResolver, ids,
+                            Notes.ID_TRASH_FOLER)) {
                         Log.e(TAG, "Move notes to trash folder error, should not happens");
                     }
                 }
+                // 删除或移入回收站的笔记可能带有提醒
+                AlarmScheduler.scheduleNext(NotesListActivity.this, System.currentTimeMillis());
                 return widgets;
             }
-
+        }, new DataAccessExecutor.Callback<HashSet<AppWidgetAttribute>>() {
             /**
              * 处理后台任务完成后的操作，更新受影响的小部件
              *
              * @param widgets 受影响的小部件列表
              */
-            @Override
-            protected void onPostExecute(HashSet<AppWidgetAttribute> widgets) {
+            public void onComplete(HashSet<AppWidgetAttribute> widgets) {
                 if (widgets != null) {
                     for (AppWidgetAttribute widget : widgets) {
                         if (widget.widgetId != AppWidgetManager.INVALID_APPWIDGET_ID
@@ -675,7 +754,7 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
                 }
                 mModeCallBack.finishActionMode();
             }
-        }.execute();
+        });
     }
 
     /**
@@ -689,18 +768,12 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
             return;
         }
 
-        HashSet<Long> ids = new HashSet<Long>();
-        ids.add(folderId);
-        HashSet<AppWidgetAttribute> widgets = DataUtils.getFolderNoteWidget(mContentResolver,
-                folderId);
-        if (!isSyncMode()) {
-            // 如果未同步，直接删除文件夹
-            DataUtils.batchDeleteNotes(mContentResolver, ids);
-        } else {
-            // 在同步模式下，将删除的文件夹移动到回收站
-            DataUtils.batchMoveToFolder(mContentResolver, ids, Notes.ID_TRASH_FOLER);
-        }
+        // 未同步时直接删除文件夹，同步模式下将文件夹移动到回收站，同时取回受影响的小部件
+        HashSet<AppWidgetAttribute> widgets = DataUtils.removeFolder(mContentResolver, folderId,
+                isSyncMode());
         if (widgets != null) {
+            // 文件夹中的笔记可能带有提醒
+            AlarmScheduler.scheduleNext(this, System.currentTimeMillis());
             for (AppWidgetAttribute widget : widgets) {
                 if (widget.widgetId != AppWidgetManager.INVALID_APPWIDGET_ID
                         && widget.widgetType != Notes.TYPE_WIDGET_INVALIDE) {
@@ -929,28 +1002,17 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
     }
 
     /**
-     * 更新小部件，发送广播通知小部件更新
+     * 更新小部件，由小部件刷新器合并多次刷新后发送广播通知小部件更新
      *
      * @param appWidgetId  小部件ID
      * @param appWidgetType 小部件类型
      */
     private void updateWidget(int appWidgetId, int appWidgetType) {
-        Intent intent = new Intent(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
-        if (appWidgetType == Notes.TYPE_WIDGET_2X) {
-            intent.setClass(this, NoteWidgetProvider_2x.class);
-        } else if (appWidgetType == Notes.TYPE_WIDGET_4X) {
-            intent.setClass(this, NoteWidgetProvider_4x.class);
-        } else {
-            Log.e(TAG, "Unspported widget type");
+        if (!NoteWidgetRefresher.getInstance(this).requestUpdate(appWidgetId, appWidgetType)) {
             return;
         }
 
-        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int[] {
-            appWidgetId
-        });
-
-        sendBroadcast(intent);
-        setResult(RESULT_OK, intent);
+        setResult(RESULT_OK);
     }
 
     /**
@@ -1074,6 +1136,19 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
                 exportNoteToText();
                 break;
             }
+            case R.id.menu_import: {
+                pickImportFile();
+                break;
+            }
+            case R.id.menu_backup: {
+                BackupService.startBackup(this);
+                Toast.makeText(this, R.string.info_backup_started, Toast.LENGTH_SHORT).show();
+                break;
+            }
+            case R.id.menu_restore: {
+                confirmRestore();
+                break;
+            }
             case R.id.menu_sync: {
                 if (isSyncMode()) {
                     if (TextUtils.equals(item.getTitle(), getString(R.string.menu_sync))) {
@@ -1119,26 +1194,28 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
      */
     private void exportNoteToText() {
         final BackupUtils backup = BackupUtils.getInstance(NotesListActivity.this);
-        new AsyncTask<Void, Void, Integer>() {
+        mExecutor.submit(DataAccessExecutor.PRIORITY_BACKGROUND,
+                new DataAccessExecutor.Task<Integer>() {
 
             /**
              * 在后台执行导出操作，返回导出结果状态码
              *
-             * @param unused 未使用的参数
              * @return 导出结果状态码
              */
-            @Override
-            protected Integer doInBackground(Void... unused) {
+            public Integer run() {
                 return backup.exportToText();
             }
+        }, new DataAccessExecutor.Callback<Integer>() {
 
             /**
              * 处理后台任务完成后的操作，根据导出结果显示相应的提示对话框
              *
              * @param result 导出结果状态码
              */
-            @Override
-            protected void onPostExecute(Integer result) {
+            public void onComplete(Integer result) {
+                if (result == null) {
+                    return;
+                }
                 if (result == BackupUtils.STATE_SD_CARD_UNMOUONTED) {
                     AlertDialog.Builder builder = new AlertDialog.Builder(NotesListActivity.this);
                     builder.setTitle(NotesListActivity.this
@@ -1166,8 +1243,38 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
                     builder.show();
                 }
             }
+        });
+    }
 
-        }.execute();
+    /**
+     * 打开文件选择器选择要导入的文本或 JSON 文件，选中后交给 {@link BackupService} 在后台导入
+     */
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        try {
+            startActivityForResult(intent, REQUEST_CODE_IMPORT);
+        } catch (ActivityNotFoundException e) {
+            Toast.makeText(this, R.string.error_no_file_picker, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * 确认后交给 {@link BackupService} 在后台用最近的快照替换当前的全部笔记
+     */
+    private void confirmRestore() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.alert_title_restore);
+        builder.setIcon(android.R.drawable.ic_dialog_alert);
+        builder.setMessage(R.string.alert_message_restore);
+        builder.setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                BackupService.startRestore(NotesListActivity.this);
+            }
+        });
+        builder.setNegativeButton(android.R.string.cancel, null);
+        builder.show();
     }
 
     /**
@@ -1241,24 +1348,39 @@ public class NotesListActivity extends Activity implements OnClickListener, OnIt
     }
 
     /**
-     * 启动查询目标文件夹的异步查询
+     * 启动查询目标文件夹的异步查询，目标文件夹取自共享的文件夹树，文件夹未变化时不访问数据库
      */
     private void startQueryDestinationFolders() {
-        String selection = NoteColumns.TYPE + "=? AND " + NoteColumns.PARENT_ID + "<>? AND " + NoteColumns.ID + "<>?";
-        selection = (mState == ListEditState.NOTE_LIST) ? selection:
-            "(" + selection + ") OR (" + NoteColumns.ID + "=" + Notes.ID_ROOT_FOLDER + ")";
-
-        mBackgroundQueryHandler.startQuery(FOLDER_LIST_QUERY_TOKEN,
-                null,
-                Notes.CONTENT_NOTE_URI,
-                FoldersListAdapter.PROJECTION,
-                selection,
-                new String[] {
-                        String.valueOf(Notes.TYPE_FOLDER),
-                        String.valueOf(Notes.ID_TRASH_FOLER),
-                        String.valueOf(mCurrentFolderId)
+        final long currentFolderId = mCurrentFolderId;
+        final boolean includeRoot = mState != ListEditState.NOTE_LIST;
+        mExecutor.submit(this, FOLDER_LIST_QUERY_TOKEN, DataAccessExecutor.PRIORITY_INTERACTIVE,
+                new DataAccessExecutor.Task<Cursor>() {
+                    public Cursor run() {
+                        MatrixCursor cursor = new MatrixCursor(FoldersListAdapter.PROJECTION);
+                        for (FolderTree.Folder folder : FolderTree.get(mContentResolver)
+                                .getVisibleFolders()) {
+                            if (folder.id != currentFolderId) {
+                                cursor.addRow(new Object[] { folder.id, folder.name });
+                            }
+                        }
+                        if (includeRoot) {
+                            cursor.addRow(new Object[] { (long) Notes.ID_ROOT_FOLDER, "" });
+                        }
+                        return cursor;
+                    }
                 },
-                NoteColumns.MODIFIED_DATE + " DESC");
+                new DataAccessExecutor.Callback<Cursor>() {
+                    public void onComplete(Cursor cursor) {
+                        if (cursor != null && cursor.getCount() > 0) {
+                            showFolderListMenu(cursor);
+                        } else {
+                            Log.e(TAG, "Query folder failed");
+                            if (cursor != null) {
+                                cursor.close();
+                            }
+                        }
+                    }
+                });
     }
 
     /**
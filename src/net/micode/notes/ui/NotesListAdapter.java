@@ -30,29 +30,34 @@ import android.view.ViewGroup;
 // 导入 Android 游标适配器类，用于将游标数据绑定到视图
 import android.widget.CursorAdapter;
 
+// 导入笔记变化集合类，用于判断变化是否涉及当前显示的笔记
+import net.micode.notes.data.NoteChangeSet;
 // 导入应用的笔记数据类
 import net.micode.notes.data.Notes;
 
-// 导入 Java 中的集合接口，用于表示一组对象
-import java.util.Collection;
-// 导入 Java 中的哈希映射类，用于存储键值对
-import java.util.HashMap;
 // 导入 Java 中的哈希集合类，用于存储唯一的元素
 import java.util.HashSet;
-// 导入 Java 中的迭代器接口，用于遍历集合中的元素
-import java.util.Iterator;
 
 /**
  * NotesListAdapter 类继承自 CursorAdapter，用于将数据库中的笔记数据绑定到视图列表中。
  * 该类提供了笔记列表项的选择、全选、获取选中项 ID 等功能，同时支持选择模式的切换。
+ * <p>
+ * 选中状态按笔记 ID 记录，重新查询后仍然有效。全选时只记录被取消选中的笔记，
+ * 全选、取消全选和统计选中数量都不需要遍历列表。
  */
 public class NotesListAdapter extends CursorAdapter {
     // 定义日志标签，用于在日志中标识该类的日志信息
     private static final String TAG = "NotesListAdapter";
     // 上下文对象，用于获取系统服务和资源
     private Context mContext;
-    // 存储选中项的索引及其选中状态的映射
-    private HashMap<Integer, Boolean> mSelectedIndex;
+    // 选中的笔记 ID；全选模式下为被取消选中的笔记 ID
+    private HashSet<Long> mSelectedIds;
+    // 是否处于全选模式
+    private boolean mSelectAll;
+    // 当前游标中显示的笔记和文件夹 ID
+    private HashSet<Long> mDisplayedIds;
+    // 当前游标中显示的普通笔记 ID
+    private HashSet<Long> mDisplayedNoteIds;
     // 笔记的数量
     private int mNotesCount;
     // 是否处于选择模式
@@ -74,10 +79,13 @@ public class NotesListAdapter extends CursorAdapter {
      * @param context 上下文对象，用于获取系统服务和资源
      */
     public NotesListAdapter(Context context) {
-        // 调用父类的构造函数，传入上下文和初始游标为 null
-        super(context, null);
-        // 初始化选中项索引映射
-        mSelectedIndex = new HashMap<Integer, Boolean>();
+        // 调用父类的构造函数，不自动重新查询，内容变化由列表界面按笔记 ID 过滤后重新查询
+        super(context, null, 0);
+        // 初始化选中的笔记 ID 集合
+        mSelectedIds = new HashSet<Long>();
+        // 初始化当前显示的笔记 ID 集合
+        mDisplayedIds = new HashSet<Long>();
+        mDisplayedNoteIds = new HashSet<Long>();
         // 保存上下文对象
         mContext = context;
         // 初始化笔记数量为 0
@@ -124,8 +132,17 @@ public class NotesListAdapter extends CursorAdapter {
      * @param checked  是否选中
      */
     public void setCheckedItem(final int position, final boolean checked) {
-        // 将指定位置的选中状态存入映射
-        mSelectedIndex.put(position, checked);
+        long id = getItemId(position);
+        if (!mDisplayedNoteIds.contains(id)) {
+            Log.d(TAG, "Wrong item id, should not happen");
+            return;
+        }
+        // 全选模式下记录的是被取消选中的笔记
+        if (checked != mSelectAll) {
+            mSelectedIds.add(id);
+        } else {
+            mSelectedIds.remove(id);
+        }
         // 通知适配器数据已更改，刷新视图
         notifyDataSetChanged();
     }
@@ -145,8 +162,9 @@ public class NotesListAdapter extends CursorAdapter {
      * @param mode 是否开启选择模式
      */
     public void setChoiceMode(boolean mode) {
-        // 清空选中项索引映射
-        mSelectedIndex.clear();
+        // 清空选中状态
+        mSelectedIds.clear();
+        mSelectAll = false;
         // 设置选择模式
         mChoiceMode = mode;
     }
@@ -157,19 +175,9 @@ public class NotesListAdapter extends CursorAdapter {
      * @param checked 是否全选
      */
     public void selectAll(boolean checked) {
-        // 获取游标
-        Cursor cursor = getCursor();
-        // 遍历所有笔记项
-        for (int i = 0; i < getCount(); i++) {
-            // 将游标移动到指定位置
-            if (cursor.moveToPosition(i)) {
-                // 如果笔记项的类型为普通笔记
-                if (NoteItemData.getNoteType(cursor) == Notes.TYPE_NOTE) {
-                    // 设置指定位置的笔记项的选中状态
-                    setCheckedItem(i, checked);
-                }
-            }
-        }
+        mSelectAll = checked;
+        mSelectedIds.clear();
+        notifyDataSetChanged();
     }
 
     /**
@@ -178,66 +186,11 @@ public class NotesListAdapter extends CursorAdapter {
      * @return 包含所有选中笔记项 ID 的哈希集合
      */
     public HashSet<Long> getSelectedItemIds() {
-        // 创建一个哈希集合，用于存储选中笔记项的 ID
-        HashSet<Long> itemSet = new HashSet<Long>();
-        // 遍历选中项索引映射的键集
-        for (Integer position : mSelectedIndex.keySet()) {
-            // 如果指定位置的笔记项被选中
-            if (mSelectedIndex.get(position) == true) {
-                // 获取指定位置的笔记项的 ID
-                Long id = getItemId(position);
-                // 如果笔记项的 ID 为根文件夹的 ID
-                if (id == Notes.ID_ROOT_FOLDER) {
-                    // 记录日志，提示错误的笔记项 ID
-                    Log.d(TAG, "Wrong item id, should not happen");
-                } else {
-                    // 将笔记项的 ID 存入哈希集合
-                    itemSet.add(id);
-                }
-            }
-        }
-        // 返回哈希集合
-        return itemSet;
-    }
-
-    /**
-     * 获取所有选中的笔记项的小部件属性。
-     *
-     * @return 包含所有选中笔记项小部件属性的哈希集合
-     */
-    public HashSet<AppWidgetAttribute> getSelectedWidget() {
-        // 创建一个哈希集合，用于存储选中笔记项的小部件属性
-        HashSet<AppWidgetAttribute> itemSet = new HashSet<AppWidgetAttribute>();
-        // 遍历选中项索引映射的键集
-        for (Integer position : mSelectedIndex.keySet()) {
-            // 如果指定位置的笔记项被选中
-            if (mSelectedIndex.get(position) == true) {
-                // 获取指定位置的游标数据
-                Cursor c = (Cursor) getItem(position);
-                // 如果游标数据不为空
-                if (c != null) {
-                    // 创建一个 AppWidgetAttribute 对象，用于存储小部件属性
-                    AppWidgetAttribute widget = new AppWidgetAttribute();
-                    // 创建一个 NoteItemData 对象，用于封装笔记项的数据
-                    NoteItemData item = new NoteItemData(mContext, c);
-                    // 设置小部件的 ID
-                    widget.widgetId = item.getWidgetId();
-                    // 设置小部件的类型
-                    widget.widgetType = item.getWidgetType();
-                    // 将小部件属性存入哈希集合
-                    itemSet.add(widget);
-                    /**
-                     * 不要在这里关闭游标，只有适配器可以关闭它
-                     */
-                } else {
-                    // 记录错误日志，提示无效的游标
-                    Log.e(TAG, "Invalid cursor");
-                    // 返回 null
-                    return null;
-                }
-            }
+        if (!mSelectAll) {
+            return new HashSet<Long>(mSelectedIds);
         }
-        // 返回哈希集合
+        HashSet<Long> itemSet = new HashSet<Long>(mDisplayedNoteIds);
+        itemSet.removeAll(mSelectedIds);
         return itemSet;
     }
 
@@ -247,27 +200,7 @@ public class NotesListAdapter extends CursorAdapter {
      * @return 选中的笔记项的数量
      */
     public int getSelectedCount() {
-        // 获取选中项索引映射的值集
-        Collection<Boolean> values = mSelectedIndex.values();
-        // 如果值集为空
-        if (null == values) {
-            // 返回 0
-            return 0;
-        }
-        // 获取值集的迭代器
-        Iterator<Boolean> iter = values.iterator();
-        // 初始化选中项数量为 0
-        int count = 0;
-        // 遍历值集
-        while (iter.hasNext()) {
-            // 如果当前元素为 true
-            if (true == iter.next()) {
-                // 选中项数量加 1
-                count++;
-            }
-        }
-        // 返回选中项数量
-        return count;
+        return mSelectAll ? mNotesCount - mSelectedIds.size() : mSelectedIds.size();
     }
 
     /**
@@ -289,30 +222,24 @@ public class NotesListAdapter extends CursorAdapter {
      * @return 如果被选中则返回 true，否则返回 false
      */
     public boolean isSelectedItem(final int position) {
-        // 如果指定位置的选中状态为 null
-        if (null == mSelectedIndex.get(position)) {
-            // 返回 false
-            return false;
-        }
-        // 返回指定位置的选中状态
-        return mSelectedIndex.get(position);
+        long id = getItemId(position);
+        return mDisplayedNoteIds.contains(id) && mSelectedIds.contains(id) != mSelectAll;
     }
 
     /**
      * 当内容发生变化时的回调方法。
-     * 重新计算笔记的数量。
+     * 重新收集显示的笔记 ID 和数量。
      */
     @Override
     protected void onContentChanged() {
         // 调用父类的内容变化处理方法
         super.onContentChanged();
-        // 重新计算笔记的数量
-        calcNotesCount();
+        collectDisplayedIds(getCursor());
     }
 
     /**
      * 更改游标时的回调方法。
-     * 重新计算笔记的数量。
+     * 重新收集显示的笔记 ID 和数量，选中状态中只保留仍然显示的笔记。
      *
      * @param cursor 新的游标
      */
@@ -320,33 +247,48 @@ public class NotesListAdapter extends CursorAdapter {
     public void changeCursor(Cursor cursor) {
         // 调用父类的更改游标方法
         super.changeCursor(cursor);
-        // 重新计算笔记的数量
-        calcNotesCount();
+        // 重新收集显示的笔记 ID
+        collectDisplayedIds(cursor);
     }
 
     /**
-     * 计算笔记的数量。
+     * 判断变化中是否包含当前显示的笔记。
+     *
+     * @param changes 笔记的变化
+     * @return 包含当前显示的笔记时返回 true
      */
-    private void calcNotesCount() {
-        // 初始化笔记数量为 0
+    public boolean isDisplayed(NoteChangeSet changes) {
+        if (changes.affectsAll()) {
+            return true;
+        }
+        for (Long id : changes.getIds()) {
+            if (mDisplayedIds.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 收集游标中所有条目的 ID 并计算笔记的数量。
+     *
+     * @param cursor 游标
+     */
+    private void collectDisplayedIds(Cursor cursor) {
+        mDisplayedIds.clear();
+        mDisplayedNoteIds.clear();
         mNotesCount = 0;
-        // 遍历所有笔记项
-        for (int i = 0; i < getCount(); i++) {
-            // 获取指定位置的游标数据
-            Cursor c = (Cursor) getItem(i);
-            // 如果游标数据不为空
-            if (c != null) {
-                // 如果笔记项的类型为普通笔记
-                if (NoteItemData.getNoteType(c) == Notes.TYPE_NOTE) {
-                    // 笔记数量加 1
+        if (cursor != null && cursor.moveToFirst()) {
+            do {
+                long id = cursor.getLong(0);
+                mDisplayedIds.add(id);
+                if (NoteItemData.getNoteType(cursor) == Notes.TYPE_NOTE) {
+                    mDisplayedNoteIds.add(id);
                     mNotesCount++;
                 }
-            } else {
-                // 记录错误日志，提示无效的游标
-                Log.e(TAG, "Invalid cursor");
-                // 返回
-                return;
-            }
+            } while (cursor.moveToNext());
         }
+        // 已不在列表中的笔记不再计入选中状态
+        mSelectedIds.retainAll(mDisplayedNoteIds);
     }
 }
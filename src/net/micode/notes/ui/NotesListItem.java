@@ -34,6 +34,8 @@ import android.widget.TextView;
 
 // 导入应用的资源类，用于访问应用的资源
 import net.micode.notes.R;
+// 导入性能计数，用于记录列表项绑定的耗时
+import net.micode.notes.core.PerfStats;
 // 导入应用的笔记数据类
 import net.micode.notes.data.Notes;
 // 导入应用的数据工具类，提供一些数据处理的实用方法
@@ -91,6 +93,7 @@ public class NotesListItem extends LinearLayout {
      * @param checked    笔记项是否被选中
      */
     public void bind(Context context, NoteItemData data, boolean choiceMode, boolean checked) {
+        long start = PerfStats.start();
         // 如果处于选择模式且笔记类型为普通笔记
         if (choiceMode && data.getType() == Notes.TYPE_NOTE) {
             // 显示复选框
@@ -171,6 +174,7 @@ public class NotesListItem extends LinearLayout {
 
         // 设置背景资源
         setBackground(data);
+        PerfStats.record(PerfStats.LIST_BIND, start);
     }
 
     /**
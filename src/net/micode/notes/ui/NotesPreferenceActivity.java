@@ -47,6 +47,8 @@ import android.preference.Preference.OnPreferenceClickListener;
 import android.preference.PreferenceActivity;
 // 导入 Android 偏好类别类，用于对偏好设置项进行分组
 import android.preference.PreferenceCategory;
+// 导入 Android 偏好管理类，用于读取默认的偏好设置
+import android.preference.PreferenceManager;
 // 导入 Android 文本工具类，用于处理文本操作
 import android.text.TextUtils;
 // 导入 Android 日期格式化类，用于格式化日期和时间
@@ -89,6 +91,10 @@ public class NotesPreferenceActivity extends PreferenceActivity {
     public static final String PREFERENCE_LAST_SYNC_TIME = "pref_last_sync_time";
     // 定义设置背景颜色的偏好键
     public static final String PREFERENCE_SET_BG_COLOR_KEY = "pref_key_bg_random_appear";
+    // 定义冷数据天数的偏好键，笔记超过该天数未修改时压缩其内容，0 表示不压缩
+    public static final String PREFERENCE_COLD_CONTENT_DAYS = "pref_key_cold_content_days";
+    // 定义同步服务器地址的偏好键，为空时使用 Google 任务服务
+    public static final String PREFERENCE_SYNC_SERVER_URL = "pref_key_sync_server_url";
     // 定义同步账户的偏好键
     private static final String PREFERENCE_SYNC_ACCOUNT_KEY = "pref_sync_account_key";
     // 定义权限过滤器的键
@@ -588,6 +594,21 @@ public class NotesPreferenceActivity extends PreferenceActivity {
         return settings.getString(PREFERENCE_SYNC_ACCOUNT_NAME, "");
     }
 
+    /**
+     * 获取设置的同步服务器地址，用于把同步指向兼容 Google 任务协议的测试服务端。
+     *
+     * @param context 上下文对象
+     * @return 以 "/" 结尾的基础 URL，未设置时返回 null
+     */
+    public static String getSyncServerUrl(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String url = sp.getString(PREFERENCE_SYNC_SERVER_URL, "").trim();
+        if (url.length() == 0) {
+            return null;
+        }
+        return url.endsWith("/") ? url : url + "/";
+    }
+
     /**
      * 设置最后同步时间。
      *
@@ -23,11 +23,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.RemoteViews;
 
 import net.micode.notes.R;
 import net.micode.notes.data.Notes;
 import net.micode.notes.data.Notes.NoteColumns;
+import net.micode.notes.tool.DataAccessExecutor;
 import net.micode.notes.tool.ResourceParser;
 import net.micode.notes.ui.NoteEditActivity;
 import net.micode.notes.ui.NotesListActivity;
@@ -40,17 +42,90 @@ public abstract class NoteWidgetProvider extends AppWidgetProvider {
     public static final String [] PROJECTION = new String [] {
         NoteColumns.ID,
         NoteColumns.BG_COLOR_ID,
-        NoteColumns.SNIPPET
+        NoteColumns.SNIPPET,
+        NoteColumns.WIDGET_ID,
+        NoteColumns.VERSION
     };
 
     // 投影列的索引
     public static final int COLUMN_ID           = 0;
     public static final int COLUMN_BG_COLOR_ID  = 1;
     public static final int COLUMN_SNIPPET      = 2;
+    public static final int COLUMN_WIDGET_ID    = 3;
+    public static final int COLUMN_VERSION      = 4;
 
     // 日志标签
     private static final String TAG = "NoteWidgetProvider";
 
+    // 各小部件上次显示内容对应的便签状态，用于跳过没有变化的小部件
+    private static final SparseArray<WidgetState> sWidgetStates = new SparseArray<WidgetState>();
+
+    /**
+     * 小部件显示的便签状态，便签 ID、版本号和背景颜色都相同时无需重新绘制。
+     */
+    private static class WidgetState {
+        final long noteId;
+        final long version;
+        final int bgId;
+
+        WidgetState(long noteId, long version, int bgId) {
+            this.noteId = noteId;
+            this.version = version;
+            this.bgId = bgId;
+        }
+
+        boolean sameAs(WidgetState other) {
+            return other != null && noteId == other.noteId && version == other.version
+                    && bgId == other.bgId;
+        }
+    }
+
+    /**
+     * 小部件对应的便签信息，查询结果按小部件 ID 保存。
+     */
+    private static class WidgetNote {
+        long noteId;
+        long version;
+        int bgId;
+        String snippet;
+        // 存在多个便签使用同一小部件 ID
+        boolean duplicated;
+    }
+
+    /**
+     * 接收广播，{@link NoteWidgetRefresher} 发出的更新只重绘便签发生变化的小部件，
+     * 查询在数据访问执行器的小部件队列中进行，不阻塞主线程。
+     *
+     * @param context 应用程序上下文
+     * @param intent  广播意图
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (AppWidgetManager.ACTION_APPWIDGET_UPDATE.equals(intent.getAction())
+                && intent.getBooleanExtra(NoteWidgetRefresher.EXTRA_CHANGED_ONLY, false)) {
+            final int[] appWidgetIds = intent.getIntArrayExtra(
+                    AppWidgetManager.EXTRA_APPWIDGET_IDS);
+            if (appWidgetIds != null && appWidgetIds.length > 0) {
+                final Context appContext = context.getApplicationContext();
+                final PendingResult result = goAsync();
+                DataAccessExecutor.getInstance().submit(DataAccessExecutor.PRIORITY_WIDGET,
+                        new DataAccessExecutor.Task<Void>() {
+                            public Void run() {
+                                try {
+                                    update(appContext, AppWidgetManager.getInstance(appContext),
+                                            appWidgetIds, false, true);
+                                } finally {
+                                    result.finish();
+                                }
+                                return null;
+                            }
+                        }, null);
+            }
+            return;
+        }
+        super.onReceive(context, intent);
+    }
+
     /**
      * 当小部件被删除时调用此方法。
      *
@@ -59,31 +134,73 @@ public abstract class NoteWidgetProvider extends AppWidgetProvider {
      */
     @Override
     public void onDeleted(Context context, int[] appWidgetIds) {
+        if (appWidgetIds == null || appWidgetIds.length == 0) {
+            return;
+        }
         // 创建 ContentValues 对象，用于更新数据库中的便签信息
         ContentValues values = new ContentValues();
         values.put(NoteColumns.WIDGET_ID, AppWidgetManager.INVALID_APPWIDGET_ID);
-        // 遍历被删除的小部件 ID 数组，更新数据库中的便签信息
+        // 一次更新所有使用被删除小部件的便签
+        context.getContentResolver().update(Notes.CONTENT_NOTE_URI,
+                values,
+                NoteColumns.WIDGET_ID + " IN (" + joinIds(appWidgetIds) + ")",
+                null);
+        synchronized (sWidgetStates) {
+            for (int widgetId : appWidgetIds) {
+                sWidgetStates.remove(widgetId);
+            }
+        }
+    }
+
+    /**
+     * 将小部件 ID 拼接为逗号分隔的字符串，用于 IN 条件。
+     */
+    private static String joinIds(int[] appWidgetIds) {
+        StringBuilder sb = new StringBuilder();
         for (int i = 0; i < appWidgetIds.length; i++) {
-            context.getContentResolver().update(Notes.CONTENT_NOTE_URI,
-                    values,
-                    NoteColumns.WIDGET_ID + "=?",
-                    new String[] { String.valueOf(appWidgetIds[i])});
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(appWidgetIds[i]);
         }
+        return sb.toString();
     }
 
     /**
-     * 根据小部件 ID 获取便签信息的游标。
+     * 一次查询所有小部件对应的便签信息。
      *
-     * @param context   应用程序上下文
-     * @param widgetId  小部件 ID
-     * @return 包含便签信息的游标
+     * @param context       应用程序上下文
+     * @param appWidgetIds  小部件 ID 数组
+     * @return 以小部件 ID 为键的便签信息
      */
-    private Cursor getNoteWidgetInfo(Context context, int widgetId) {
-        return context.getContentResolver().query(Notes.CONTENT_NOTE_URI,
+    private SparseArray<WidgetNote> getNoteWidgetInfo(Context context, int[] appWidgetIds) {
+        SparseArray<WidgetNote> notes = new SparseArray<WidgetNote>();
+        Cursor c = context.getContentResolver().query(Notes.CONTENT_NOTE_URI,
                 PROJECTION,
-                NoteColumns.WIDGET_ID + "=? AND " + NoteColumns.PARENT_ID + "<>?",
-                new String[] { String.valueOf(widgetId), String.valueOf(Notes.ID_TRASH_FOLER) },
+                NoteColumns.WIDGET_ID + " IN (" + joinIds(appWidgetIds) + ") AND "
+                        + NoteColumns.PARENT_ID + "<>?",
+                new String[] { String.valueOf(Notes.ID_TRASH_FOLER) },
                 null);
+        if (c != null) {
+            while (c.moveToNext()) {
+                int widgetId = c.getInt(COLUMN_WIDGET_ID);
+                WidgetNote note = notes.get(widgetId);
+                if (note != null) {
+                    // 日志记录：存在多个具有相同小部件 ID 的便签
+                    Log.e(TAG, "Multiple message with same widget id:" + widgetId);
+                    note.duplicated = true;
+                    continue;
+                }
+                note = new WidgetNote();
+                note.noteId = c.getLong(COLUMN_ID);
+                note.version = c.getLong(COLUMN_VERSION);
+                note.bgId = c.getInt(COLUMN_BG_COLOR_ID);
+                note.snippet = c.getString(COLUMN_SNIPPET);
+                notes.put(widgetId, note);
+            }
+            c.close();
+        }
+        return notes;
     }
 
     /**
@@ -94,7 +211,7 @@ public abstract class NoteWidgetProvider extends AppWidgetProvider {
      * @param appWidgetIds     要更新的小部件 ID 数组
      */
     protected void update(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        update(context, appWidgetManager, appWidgetIds, false);
+        update(context, appWidgetManager, appWidgetIds, false, false);
     }
 
     /**
@@ -104,12 +221,18 @@ public abstract class NoteWidgetProvider extends AppWidgetProvider {
      * @param appWidgetManager AppWidgetManager 实例
      * @param appWidgetIds     要更新的小部件 ID 数组
      * @param privacyMode      是否处于隐私模式
+     * @param changedOnly      是否只更新便签版本号或背景颜色发生变化的小部件
      */
     private void update(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds,
-            boolean privacyMode) {
+            boolean privacyMode, boolean changedOnly) {
+        SparseArray<WidgetNote> notes = getNoteWidgetInfo(context, appWidgetIds);
         // 遍历要更新的小部件 ID 数组
         for (int i = 0; i < appWidgetIds.length; i++) {
             if (appWidgetIds[i] != AppWidgetManager.INVALID_APPWIDGET_ID) {
+                WidgetNote note = notes.get(appWidgetIds[i]);
+                if (note != null && note.duplicated) {
+                    continue;
+                }
                 // 默认背景 ID
                 int bgId = ResourceParser.getDefaultBgId(context);
                 // 便签摘要
@@ -120,33 +243,31 @@ public abstract class NoteWidgetProvider extends AppWidgetProvider {
                 intent.putExtra(Notes.INTENT_EXTRA_WIDGET_ID, appWidgetIds[i]);
                 intent.putExtra(Notes.INTENT_EXTRA_WIDGET_TYPE, getWidgetType());
 
-                // 获取便签信息的游标
-                Cursor c = getNoteWidgetInfo(context, appWidgetIds[i]);
-                if (c != null && c.moveToFirst()) {
-                    if (c.getCount() > 1) {
-                        // 日志记录：存在多个具有相同小部件 ID 的便签
-                        Log.e(TAG, "Multiple message with same widget id:" + appWidgetIds[i]);
-                        c.close();
-                        return;
-                    }
+                WidgetState state;
+                if (note != null) {
                     // 获取便签摘要
-                    snippet = c.getString(COLUMN_SNIPPET);
+                    snippet = note.snippet;
                     // 获取背景 ID
-                    bgId = c.getInt(COLUMN_BG_COLOR_ID);
+                    bgId = note.bgId;
                     // 添加便签 ID 到意图中
-                    intent.putExtra(Intent.EXTRA_UID, c.getLong(COLUMN_ID));
+                    intent.putExtra(Intent.EXTRA_UID, note.noteId);
                     // 设置意图动作为查看
                     intent.setAction(Intent.ACTION_VIEW);
+                    state = new WidgetState(note.noteId, note.version, bgId);
                 } else {
                     // 如果没有找到便签信息，设置默认摘要
                     snippet = context.getResources().getString(R.string.widget_havenot_content);
                     // 设置意图动作为插入或编辑
                     intent.setAction(Intent.ACTION_INSERT_OR_EDIT);
+                    state = new WidgetState(0, 0, bgId);
                 }
 
-                if (c != null) {
-                    // 关闭游标
-                    c.close();
+                synchronized (sWidgetStates) {
+                    if (changedOnly && state.sameAs(sWidgetStates.get(appWidgetIds[i]))) {
+                        // 便签没有变化，无需重新绘制
+                        continue;
+                    }
+                    sWidgetStates.put(appWidgetIds[i], state);
                 }
 
                 // 创建 RemoteViews 对象，用于更新小部件的视图
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.micode.notes.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import net.micode.notes.data.Notes;
+
+/**
+ * 小部件刷新器，合并短时间内的多次刷新请求，按小部件类型各发出一次更新广播。
+ * 小部件收到广播后只重绘便签版本号或背景颜色发生变化的部分。
+ */
+public class NoteWidgetRefresher {
+    // 广播中标记只更新发生变化的小部件
+    public static final String EXTRA_CHANGED_ONLY = "net.micode.notes.widget.changed_only";
+
+    // 合并刷新请求的延迟时间
+    private static final long REFRESH_DELAY_MS = 500;
+
+    private static final String TAG = "NoteWidgetRefresher";
+
+    private static NoteWidgetRefresher sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    // 等待刷新的小部件 ID 及其类型
+    private final SparseIntArray mPendingWidgets;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    private NoteWidgetRefresher(Context context) {
+        mContext = context;
+        mHandler = new Handler(Looper.getMainLooper());
+        mPendingWidgets = new SparseIntArray();
+    }
+
+    public static synchronized NoteWidgetRefresher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NoteWidgetRefresher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * 请求刷新小部件，刷新会延迟执行并与其他请求合并。
+     *
+     * @param appWidgetId   小部件 ID
+     * @param appWidgetType 小部件类型
+     * @return 小部件 ID 和类型有效时返回 true
+     */
+    public boolean requestUpdate(int appWidgetId, int appWidgetType) {
+        if (appWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID
+                || getProviderClass(appWidgetType) == null) {
+            Log.e(TAG, "Unspported widget type");
+            return false;
+        }
+
+        synchronized (mPendingWidgets) {
+            mPendingWidgets.put(appWidgetId, appWidgetType);
+        }
+        mHandler.removeCallbacks(mRefreshRunnable);
+        mHandler.postDelayed(mRefreshRunnable, REFRESH_DELAY_MS);
+        return true;
+    }
+
+    /**
+     * 立即发出所有等待中的刷新。
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mRefreshRunnable);
+        int[] ids2x;
+        int[] ids4x;
+        synchronized (mPendingWidgets) {
+            ids2x = collectIds(Notes.TYPE_WIDGET_2X);
+            ids4x = collectIds(Notes.TYPE_WIDGET_4X);
+            mPendingWidgets.clear();
+        }
+        sendUpdate(Notes.TYPE_WIDGET_2X, ids2x);
+        sendUpdate(Notes.TYPE_WIDGET_4X, ids4x);
+    }
+
+    private int[] collectIds(int appWidgetType) {
+        int count = 0;
+        for (int i = 0; i < mPendingWidgets.size(); i++) {
+            if (mPendingWidgets.valueAt(i) == appWidgetType) {
+                count++;
+            }
+        }
+        int[] ids = new int[count];
+        count = 0;
+        for (int i = 0; i < mPendingWidgets.size(); i++) {
+            if (mPendingWidgets.valueAt(i) == appWidgetType) {
+                ids[count++] = mPendingWidgets.keyAt(i);
+            }
+        }
+        return ids;
+    }
+
+    private void sendUpdate(int appWidgetType, int[] appWidgetIds) {
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        Intent intent = new Intent(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+        intent.setClass(mContext, getProviderClass(appWidgetType));
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds);
+        intent.putExtra(EXTRA_CHANGED_ONLY, true);
+        mContext.sendBroadcast(intent);
+    }
+
+    private static Class<?> getProviderClass(int appWidgetType) {
+        if (appWidgetType == Notes.TYPE_WIDGET_2X) {
+            return NoteWidgetProvider_2x.class;
+        } else if (appWidgetType == Notes.TYPE_WIDGET_4X) {
+            return NoteWidgetProvider_4x.class;
+        }
+        return null;
+    }
+}